@@ -39,6 +39,8 @@ public class MongoClientSession implements Closeable {
     protected final MongoClient mongoClient;
     protected final String db;
     protected final Integer batchSize;
+    protected final int bulkWriteChunkSize;
+    protected final boolean rawDecodingEnabled;
 
     public MongoClientSession(Properties properties) {
         super();
@@ -55,6 +57,10 @@ public class MongoClientSession implements Closeable {
         Integer maxConnectionLifeTimeMs = getIntegerProperty(properties, "maxConnectionLifeTimeMs");
         Integer maxWaitTimeMs = getIntegerProperty(properties, "maxWaitTimeMs");
         batchSize = getIntegerProperty(properties, "batchSize", 1000);
+        // Maximum number of entities written by each bulk write of save(Iterable)
+        bulkWriteChunkSize = getIntegerProperty(properties, "bulkWriteChunkSize", 1000);
+        // Decode the entities of the classes registered in MongoDBEntityDecoders directly from the raw BSON documents
+        rawDecodingEnabled = Boolean.parseBoolean(properties.getProperty("rawDecoding", "true"));
 
         db = properties.getProperty("database", "step");
         String credentialsDB = properties.getProperty("credentialsDB", db);
@@ -110,6 +116,14 @@ public class MongoClientSession implements Closeable {
         return batchSize;
     }
 
+    public int getBulkWriteChunkSize() {
+        return bulkWriteChunkSize;
+    }
+
+    public boolean isRawDecodingEnabled() {
+        return rawDecodingEnabled;
+    }
+
     @Override
     public void close() throws IOException {
         mongoClient.close();
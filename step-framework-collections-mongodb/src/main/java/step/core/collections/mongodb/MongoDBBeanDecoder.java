@@ -0,0 +1,334 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections.mongodb;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.codecs.Decoder;
+import org.bson.codecs.DecoderContext;
+import org.bson.types.ObjectId;
+
+import com.fasterxml.jackson.annotation.JsonBackReference;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonManagedReference;
+import com.fasterxml.jackson.annotation.JsonMerge;
+import com.fasterxml.jackson.annotation.JsonSetter;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.introspect.AnnotatedClass;
+import com.fasterxml.jackson.databind.introspect.AnnotatedConstructor;
+import com.fasterxml.jackson.databind.introspect.AnnotatedField;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMethod;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+
+import step.core.collections.mongodb.MongoDBEntityDecoders.UnsupportedValueException;
+import step.core.collections.serialization.DottedKeyMap;
+
+/**
+ * Decoder of a bean class generated from the bean description introspected by Jackson: the properties are set through
+ * method handles of their setters (or fields) and their values are read with readers selected once per property
+ * according to its type. Like with the Jackson mapping, the unknown fields are skipped and the null values of primitive
+ * properties are set to 0.
+ * <p>
+ * The properties with custom deserialization or of other types than primitives, String, ObjectId, Object and maps of
+ * these types are only supported if their value is null. The other documents are reported as unsupported.
+ */
+class MongoDBBeanDecoder<T> implements Decoder<T> {
+
+    private static final List<Class<? extends Annotation>> CLASS_ANNOTATIONS = List.of(JsonTypeInfo.class, JsonDeserialize.class);
+    private static final List<Class<? extends Annotation>> PROPERTY_ANNOTATIONS = List.of(JsonDeserialize.class, JsonFormat.class,
+        JsonTypeInfo.class, JsonMerge.class, JsonSetter.class, JsonUnwrapped.class, JsonManagedReference.class, JsonBackReference.class);
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    private final Class<T> beanClass;
+    private final MethodHandle constructor;
+    private final Map<String, Property> properties = new HashMap<>();
+
+    private interface ValueReader {
+        Object read(BsonReader reader);
+    }
+
+    private static class Property {
+
+        // Null for the containers without mutator
+        private final MethodHandle setter;
+        // Null for the unsupported properties
+        private final ValueReader reader;
+        private final Object nullValue;
+
+        private Property(MethodHandle setter, ValueReader reader, Object nullValue) {
+            this.setter = setter;
+            this.reader = reader;
+            this.nullValue = nullValue;
+        }
+    }
+
+    MongoDBBeanDecoder(Class<T> beanClass, ObjectMapper objectMapper) {
+        this.beanClass = beanClass;
+        BeanDescription description = objectMapper.getDeserializationConfig().introspect(objectMapper.constructType(beanClass));
+        AnnotatedClass classInfo = description.getClassInfo();
+        AnnotatedConstructor defaultConstructor = description.findDefaultConstructor();
+        if (defaultConstructor == null || Modifier.isAbstract(beanClass.getModifiers()) || description.findAnySetterAccessor() != null ||
+            CLASS_ANNOTATIONS.stream().anyMatch(classInfo::hasAnnotation) ||
+            description.getConstructors().stream().anyMatch(c -> c.hasAnnotation(JsonCreator.class)) ||
+            description.getFactoryMethods().stream().anyMatch(m -> m.hasAnnotation(JsonCreator.class))) {
+            throw new IllegalArgumentException("The class " + beanClass.getName() + " requires a custom deserialization");
+        }
+        try {
+            defaultConstructor.fixAccess(true);
+            constructor = LOOKUP.unreflectConstructor(defaultConstructor.getAnnotated()).asType(CONSTRUCTOR_TYPE);
+            for (BeanPropertyDefinition definition : description.findProperties()) {
+                // Jackson ignores the properties without mutator, except the containers it fills through their getter
+                if (definition.getMutator() != null) {
+                    properties.put(definition.getName(), createProperty(definition));
+                } else if (definition.getPrimaryType().isContainerType()) {
+                    properties.put(definition.getName(), new Property(null, null, null));
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("The class " + beanClass.getName() + " cannot be accessed", e);
+        }
+    }
+
+    private static Property createProperty(BeanPropertyDefinition definition) throws IllegalAccessException {
+        JavaType type = definition.getPrimaryType();
+        AnnotatedMember mutator = definition.getMutator();
+        mutator.fixAccess(true);
+        MethodHandle setter = mutator instanceof AnnotatedMethod ? LOOKUP.unreflect(((AnnotatedMethod) mutator).getAnnotated()) :
+            LOOKUP.unreflectSetter(((AnnotatedField) mutator).getAnnotated());
+        boolean customDeserialization = PROPERTY_ANNOTATIONS.stream().anyMatch(mutator::hasAnnotation);
+        return new Property(setter.asType(SETTER_TYPE), customDeserialization ? null : valueReader(type), nullValue(type));
+    }
+
+    private static Object nullValue(JavaType type) {
+        Class<?> rawClass = type.getRawClass();
+        if (rawClass == long.class) {
+            return 0L;
+        } else if (rawClass == int.class) {
+            return 0;
+        } else if (rawClass == double.class) {
+            return 0d;
+        } else if (rawClass == boolean.class) {
+            return false;
+        } else if (rawClass == float.class) {
+            return 0f;
+        } else if (rawClass == short.class) {
+            return (short) 0;
+        } else if (rawClass == byte.class) {
+            return (byte) 0;
+        } else if (rawClass == char.class) {
+            return '\0';
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * @return the reader of the values of the type or null if the type isn't supported
+     */
+    private static ValueReader valueReader(JavaType type) {
+        Class<?> rawClass = type.getRawClass();
+        if (rawClass == long.class || rawClass == Long.class) {
+            return reader -> {
+                BsonType bsonType = reader.getCurrentBsonType();
+                if (bsonType == BsonType.INT64) {
+                    return reader.readInt64();
+                } else if (bsonType == BsonType.INT32) {
+                    return (long) reader.readInt32();
+                } else {
+                    throw unsupportedType(bsonType);
+                }
+            };
+        } else if (rawClass == int.class || rawClass == Integer.class) {
+            return reader -> {
+                expectType(reader, BsonType.INT32);
+                return reader.readInt32();
+            };
+        } else if (rawClass == double.class || rawClass == Double.class) {
+            return reader -> {
+                BsonType bsonType = reader.getCurrentBsonType();
+                if (bsonType == BsonType.DOUBLE) {
+                    return reader.readDouble();
+                } else if (bsonType == BsonType.INT32) {
+                    return (double) reader.readInt32();
+                } else if (bsonType == BsonType.INT64) {
+                    return (double) reader.readInt64();
+                } else {
+                    throw unsupportedType(bsonType);
+                }
+            };
+        } else if (rawClass == boolean.class || rawClass == Boolean.class) {
+            return reader -> {
+                expectType(reader, BsonType.BOOLEAN);
+                return reader.readBoolean();
+            };
+        } else if (rawClass == String.class) {
+            return reader -> {
+                expectType(reader, BsonType.STRING);
+                return reader.readString();
+            };
+        } else if (rawClass == ObjectId.class) {
+            return reader -> {
+                expectType(reader, BsonType.OBJECT_ID);
+                return reader.readObjectId();
+            };
+        } else if (rawClass == Object.class) {
+            return MongoDBDocumentDecoder::readValue;
+        } else if (type.isMapLikeType() && !DottedKeyMap.class.isAssignableFrom(rawClass)) {
+            return mapReader(type);
+        } else {
+            return null;
+        }
+    }
+
+    private static ValueReader mapReader(JavaType type) {
+        Supplier<Map<Object, Object>> mapFactory = mapFactory(type.getRawClass());
+        Function<String, Object> keyReader = keyReader(type.getKeyType());
+        ValueReader contentReader = valueReader(type.getContentType());
+        if (mapFactory == null || keyReader == null || contentReader == null) {
+            return null;
+        }
+        return reader -> {
+            expectType(reader, BsonType.DOCUMENT);
+            Map<Object, Object> map = mapFactory.get();
+            reader.readStartDocument();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                Object key = keyReader.apply(reader.readName());
+                if (reader.getCurrentBsonType() == BsonType.NULL) {
+                    reader.readNull();
+                    map.put(key, null);
+                } else {
+                    map.put(key, contentReader.read(reader));
+                }
+            }
+            reader.readEndDocument();
+            return map;
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Supplier<Map<Object, Object>> mapFactory(Class<?> mapClass) {
+        if (mapClass == Map.class) {
+            // Default implementation of Jackson
+            return LinkedHashMap::new;
+        } else if (mapClass.isInterface() || Modifier.isAbstract(mapClass.getModifiers())) {
+            return null;
+        }
+        MethodHandle mapConstructor;
+        try {
+            mapConstructor = LOOKUP.unreflectConstructor(mapClass.getConstructor()).asType(CONSTRUCTOR_TYPE);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+        return () -> {
+            try {
+                Object map = mapConstructor.invokeExact();
+                return (Map<Object, Object>) map;
+            } catch (Throwable e) {
+                throw new RuntimeException("Unable to create an instance of " + mapClass.getName(), e);
+            }
+        };
+    }
+
+    private static Function<String, Object> keyReader(JavaType keyType) {
+        Class<?> rawClass = keyType.getRawClass();
+        if (rawClass == String.class || rawClass == Object.class) {
+            return key -> key;
+        } else if (rawClass == Long.class) {
+            return key -> {
+                try {
+                    return Long.parseLong(key);
+                } catch (NumberFormatException e) {
+                    throw new UnsupportedValueException("Invalid long key " + key);
+                }
+            };
+        } else if (rawClass == Integer.class) {
+            return key -> {
+                try {
+                    return Integer.parseInt(key);
+                } catch (NumberFormatException e) {
+                    throw new UnsupportedValueException("Invalid integer key " + key);
+                }
+            };
+        } else {
+            return null;
+        }
+    }
+
+    private static void expectType(BsonReader reader, BsonType expectedType) {
+        if (reader.getCurrentBsonType() != expectedType) {
+            throw unsupportedType(reader.getCurrentBsonType());
+        }
+    }
+
+    private static UnsupportedValueException unsupportedType(BsonType type) {
+        return new UnsupportedValueException("Unsupported BSON type " + type);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T decode(BsonReader reader, DecoderContext decoderContext) {
+        try {
+            Object bean = constructor.invokeExact();
+            reader.readStartDocument();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                String name = reader.readName();
+                Property property = properties.get(name);
+                if (property == null) {
+                    reader.skipValue();
+                } else if (reader.getCurrentBsonType() == BsonType.NULL) {
+                    reader.readNull();
+                    if (property.setter != null) {
+                        property.setter.invokeExact(bean, property.nullValue);
+                    }
+                } else if (property.reader == null) {
+                    throw new UnsupportedValueException("Unsupported property " + name);
+                } else {
+                    property.setter.invokeExact(bean, property.reader.read(reader));
+                }
+            }
+            reader.readEndDocument();
+            return (T) bean;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException("Unable to decode an instance of " + beanClass.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections.mongodb;
+
+import java.util.Map;
+
+import org.bson.types.ObjectId;
+
+/**
+ * Thrown by {@link MongoDBCollection#save(Iterable)} once all the entities have been written if some of them failed.
+ * The other entities are saved.
+ */
+@SuppressWarnings("serial")
+public class MongoDBBulkSaveException extends RuntimeException {
+
+    private final Map<ObjectId, String> errors;
+
+    public MongoDBBulkSaveException(String collectionName, Map<ObjectId, String> errors) {
+        super(errors.size() + " entities could not be saved to the collection " + collectionName + ". First error: " +
+            errors.values().iterator().next());
+        this.errors = errors;
+    }
+
+    /**
+     * @return the error messages by id of the entities which could not be saved
+     */
+    public Map<ObjectId, String> getErrors() {
+        return errors;
+    }
+}
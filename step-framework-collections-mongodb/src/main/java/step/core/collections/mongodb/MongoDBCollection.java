@@ -24,9 +24,20 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
+import org.bson.BsonDocument;
+import org.bson.BsonNull;
+import org.bson.BsonReader;
+import org.bson.BsonValue;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
 import org.bson.UuidRepresentation;
+import org.bson.codecs.BsonValueCodecProvider;
+import org.bson.codecs.Decoder;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.configuration.CodecRegistries;
 import org.bson.conversions.Bson;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
 import org.bson.types.ObjectId;
 import org.mongojack.JacksonMongoCollection;
 import org.mongojack.ObjectMapperConfigurer;
@@ -34,12 +45,20 @@ import org.mongojack.SerializationOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoExecutionTimeoutException;
 import com.mongodb.MongoNamespace;
 import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
 import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
 
 import step.core.accessors.AbstractIdentifiableObject;
 import step.core.collections.*;
@@ -51,6 +70,22 @@ public class MongoDBCollection<T> extends AbstractCollection<T> implements Colle
     private static final Logger logger = LoggerFactory.getLogger(MongoDBCollection.class);
 
     protected static final String CSV_DELIMITER = ";";
+    // Content of the continuation tokens of findAfter
+    private static final String TOKEN_SORT_KEYS = "sortKeys";
+    private static final String TOKEN_ID = "id";
+    private static final String SORT_KEY_PREFIX = "k";
+    // Fields of the aggregation pipeline of aggregate()
+    private static final String GROUP_KEY_FIELD = "key";
+    private static final String GROUP_FIELD_PREFIX = "g";
+    private static final String TIME_SLICE_FIELD = "t";
+    private static final String SUM_FIELD_PREFIX = "s";
+    private static final String MIN_FIELD_PREFIX = "n";
+    private static final String MAX_FIELD_PREFIX = "x";
+    private static final String MAP_FIELD = "m";
+    private static final String MAP_INDEX_FIELD = "mi";
+    private static final String MAP_KEY_FIELD = "mk";
+    private static final String MAP_VALUE_FIELD = "mv";
+    private static final DecoderContext DECODER_CONTEXT = DecoderContext.builder().build();
 
     private final MongoClientSession mongoClientSession;
     private final Class<T> entityClass;
@@ -136,9 +171,48 @@ public class MongoDBCollection<T> extends AbstractCollection<T> implements Colle
         //option.skip(0).limit(DEFAULT_LIMIT);
         //long countResults = collection.countDocuments(query, option);
 
-        FindIterable<T> find = (reduceFields != null && !reduceFields.isEmpty()) ?
-            collection.find(query).projection(Projections.include(reduceFields)).maxTime(maxTime, TimeUnit.SECONDS).batchSize(mongoClientSession.getBatchSize()) :
-            collection.find(query).maxTime(maxTime, TimeUnit.SECONDS).batchSize(mongoClientSession.getBatchSize());
+        Decoder<T> rawDecoder = mongoClientSession.isRawDecodingEnabled() ? MongoDBEntityDecoders.get(entityClass) : null;
+        Iterator<T> enrichedIterator;
+        if (rawDecoder != null) {
+            MongoCursor<RawBsonDocument> iterator = openCursor(getRawCollection(), query, order, skip, limit, maxTime, reduceFields);
+            enrichedIterator = new Iterator<T>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public T next() {
+                    T next = decodeRaw(iterator.next(), rawDecoder);
+                    fixIdAfterRead(next);
+                    return next;
+                }
+            };
+        } else {
+            MongoCursor<T> iterator = openCursor(collection, query, order, skip, limit, maxTime, reduceFields);
+            enrichedIterator = new Iterator<T>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public T next() {
+                    T next = iterator.next();
+                    fixIdAfterRead(next);
+                    return next;
+                }
+            };
+        }
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(enrichedIterator, Spliterator.ORDERED), false);
+    }
+
+    private <D> MongoCursor<D> openCursor(MongoCollection<D> mongoCollection, Bson query, SearchOrder order, Integer skip, Integer limit, int maxTime,
+                                          List<String> reduceFields) {
+        FindIterable<D> find = (reduceFields != null && !reduceFields.isEmpty()) ?
+            mongoCollection.find(query).projection(Projections.include(reduceFields)).maxTime(maxTime, TimeUnit.SECONDS).batchSize(mongoClientSession.getBatchSize()) :
+            mongoCollection.find(query).maxTime(maxTime, TimeUnit.SECONDS).batchSize(mongoClientSession.getBatchSize());
 
         if (order != null && !order.getFieldsSearchOrder().isEmpty()) {
             Document sortDoc = new Document();
@@ -151,9 +225,8 @@ public class MongoDBCollection<T> extends AbstractCollection<T> implements Colle
         if (limit != null) {
             find.limit(limit);
         }
-        MongoCursor<T> iterator;
         try {
-            iterator = find.iterator();
+            return find.iterator();
         } catch (MongoExecutionTimeoutException e) {
             // We check if debugging is enabled, but still use the error loglevel. This is on purpose.
             if (logger.isDebugEnabled()) {
@@ -163,22 +236,238 @@ public class MongoDBCollection<T> extends AbstractCollection<T> implements Colle
             }
             throw e;
         }
+    }
+
+    /**
+     * @return the collection returning the raw BSON documents. The values of the filters are encoded by the codecs
+     * of the Jackson mapping
+     */
+    private MongoCollection<RawBsonDocument> getRawCollection() {
+        return mongoClientSession.getMongoDatabase().getCollection(getName(), RawBsonDocument.class)
+            .withCodecRegistry(CodecRegistries.fromRegistries(CodecRegistries.fromProviders(new BsonValueCodecProvider()), collection.getCodecRegistry()));
+    }
 
-        Iterator<T> enrichedIterator = new Iterator<T>() {
-            @Override
-            public boolean hasNext() {
-                return iterator.hasNext();
+    /**
+     * Decodes the raw document with the registered decoder or with the Jackson mapping if the decoder doesn't support it
+     */
+    private T decodeRaw(RawBsonDocument document, Decoder<T> rawDecoder) {
+        try (BsonReader reader = document.asBsonReader()) {
+            return rawDecoder.decode(reader, DECODER_CONTEXT);
+        } catch (MongoDBEntityDecoders.UnsupportedValueException e) {
+            return document.decode(collection.getCodecRegistry().get(entityClass));
+        }
+    }
+
+    /**
+     * Keyset pagination: the page is selected by comparing the sort keys and the id to the ones of the last entity of the
+     * previous page instead of skipping the preceding documents. The continuation token contains the BSON values of the
+     * sort keys (as extended JSON) and the id of the last entity of the page.
+     * <p>
+     * Like the range operators of MongoDB, the keyset comparisons only match values of the same BSON type as the sort keys
+     * of the last entity. The sort fields are therefore expected to have a consistent type across the documents
+     */
+    @Override
+    public ResultPage<T> findAfter(Filter filter, SearchOrder order, String continuationToken, int limit, int maxTime) {
+        List<SearchOrder.FieldSearchOrder> fieldsSearchOrder = order != null ? order.getFieldsSearchOrder() : List.of();
+        List<String> sortFields = fieldsSearchOrder.stream().map(o -> fixAttributeName(o.attributeName)).collect(Collectors.toList());
+        Bson query = filterToQuery(filter);
+        if (continuationToken != null) {
+            Map<String, Object> token = ContinuationToken.decode(order, continuationToken);
+            Document lastSortKeys;
+            try {
+                lastSortKeys = Document.parse((String) token.get(TOKEN_SORT_KEYS));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid continuation token: " + continuationToken, e);
             }
+            if (!(token.get(TOKEN_ID) instanceof String) || !ObjectId.isValid((String) token.get(TOKEN_ID))) {
+                throw new IllegalArgumentException("Invalid continuation token: " + continuationToken);
+            }
+            query = com.mongodb.client.model.Filters.and(query,
+                buildKeysetFilter(sortFields, fieldsSearchOrder, lastSortKeys, new ObjectId((String) token.get(TOKEN_ID))));
+        }
+        Document sortDoc = new Document();
+        for (int i = 0; i < sortFields.size(); i++) {
+            sortDoc.put(sortFields.get(i), fieldsSearchOrder.get(i).order);
+        }
+        sortDoc.putIfAbsent("_id", 1);
+
+        // Fetch one extra document to determine whether a next page exists. The raw documents are read to take the
+        // sort keys of the last entity as stored
+        List<RawBsonDocument> documents = new ArrayList<>();
+        try (MongoCursor<RawBsonDocument> iterator = getRawCollection().find(query).sort(sortDoc).limit(limit + 1)
+            .maxTime(maxTime, TimeUnit.SECONDS).batchSize(mongoClientSession.getBatchSize()).iterator()) {
+            iterator.forEachRemaining(documents::add);
+        }
+        boolean hasNext = documents.size() > limit;
+        if (hasNext) {
+            documents.remove(limit);
+        }
+        Decoder<T> rawDecoder = mongoClientSession.isRawDecodingEnabled() ? MongoDBEntityDecoders.get(entityClass) : null;
+        List<T> results = new ArrayList<>(documents.size());
+        for (RawBsonDocument document : documents) {
+            T entity = rawDecoder != null ? decodeRaw(document, rawDecoder) : document.decode(collection.getCodecRegistry().get(entityClass));
+            fixIdAfterRead(entity);
+            results.add(entity);
+        }
+        String nextToken = null;
+        if (hasNext) {
+            ObjectId lastId = getId(results.get(limit - 1));
+            RawBsonDocument lastDocument = documents.get(limit - 1);
+            BsonDocument lastSortKeys = new BsonDocument();
+            for (int i = 0; i < sortFields.size(); i++) {
+                lastSortKeys.put(SORT_KEY_PREFIX + i, getEmbeddedValue(lastDocument, sortFields.get(i)));
+            }
+            Map<String, Object> token = new LinkedHashMap<>();
+            token.put(TOKEN_SORT_KEYS, lastSortKeys.toJson(JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build()));
+            token.put(TOKEN_ID, lastId.toHexString());
+            nextToken = ContinuationToken.encode(order, token);
+        }
+        return new ResultPage<>(results, nextToken);
+    }
 
-            @Override
-            public T next() {
-                T next = iterator.next();
-                fixIdAfterRead(next);
-                return next;
+    /**
+     * @return the BSON value of the dotted field in the document or {@link BsonNull} if the field is missing
+     */
+    private static BsonValue getEmbeddedValue(BsonDocument document, String field) {
+        BsonValue value = document;
+        for (String key : field.split("\\.")) {
+            if (!(value instanceof BsonDocument)) {
+                return BsonNull.VALUE;
             }
-        };
+            value = ((BsonDocument) value).get(key);
+        }
+        return value != null ? value : BsonNull.VALUE;
+    }
 
-        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(enrichedIterator, Spliterator.ORDERED), false);
+    /**
+     * Aggregation pipeline grouping the documents by the group fields and the time slice and reducing the numeric and map
+     * fields with $sum, $min and $max. The map fields are converted to arrays of key-value pairs and unwound, the
+     * values are summed by key in a first $group stage and collected per group in a second one. Only one map field is
+     * supported, as unwinding several arrays would multiply the documents
+     */
+    @Override
+    public Optional<List<GroupAggregationResult>> aggregate(GroupAggregationQuery query) {
+        List<String> mapSumFields = query.getMapSumFields();
+        if (mapSumFields.size() > 1) {
+            return Optional.empty();
+        }
+        Document groupKey = new Document();
+        for (int i = 0; i < query.getGroupFields().size(); i++) {
+            groupKey.append(GROUP_FIELD_PREFIX + i, "$" + query.getGroupFields().get(i));
+        }
+        if (query.getTimeField() != null) {
+            String timeField = "$" + query.getTimeField();
+            groupKey.append(TIME_SLICE_FIELD, query.getTimeSliceSize() > 0 ? new Document("$subtract", List.of(timeField,
+                new Document("$mod", List.of(new Document("$subtract", List.of(timeField, query.getTimeOrigin())), query.getTimeSliceSize())))) :
+                new Document("$literal", query.getTimeOrigin()));
+        }
+        Document projection = new Document("_id", 0).append(GROUP_KEY_FIELD, groupKey);
+        Document accumulators = new Document();
+        Document groupAccumulators = new Document();
+        for (int i = 0; i < query.getSumFields().size(); i++) {
+            String field = SUM_FIELD_PREFIX + i;
+            projection.append(field, "$" + query.getSumFields().get(i));
+            // The values are only summed once per document, i.e. for the first key of the unwound map
+            accumulators.append(field, new Document("$sum", mapSumFields.isEmpty() ? "$" + field :
+                new Document("$cond", List.of(new Document("$gt", List.of("$" + MAP_INDEX_FIELD, 0)), 0, "$" + field))));
+            groupAccumulators.append(field, new Document("$sum", "$" + field));
+        }
+        for (int i = 0; i < query.getMinFields().size(); i++) {
+            String field = MIN_FIELD_PREFIX + i;
+            projection.append(field, "$" + query.getMinFields().get(i));
+            accumulators.append(field, new Document("$min", "$" + field));
+            groupAccumulators.append(field, new Document("$min", "$" + field));
+        }
+        for (int i = 0; i < query.getMaxFields().size(); i++) {
+            String field = MAX_FIELD_PREFIX + i;
+            projection.append(field, "$" + query.getMaxFields().get(i));
+            accumulators.append(field, new Document("$max", "$" + field));
+            groupAccumulators.append(field, new Document("$max", "$" + field));
+        }
+
+        List<Bson> pipeline = new ArrayList<>();
+        pipeline.add(Aggregates.match(filterToQuery(query.getFilter())));
+        if (mapSumFields.isEmpty()) {
+            pipeline.add(Aggregates.project(projection));
+            pipeline.add(new Document("$group", new Document("_id", "$" + GROUP_KEY_FIELD).append(accumulators)));
+        } else {
+            projection.append(MAP_FIELD, new Document("$objectToArray", new Document("$ifNull", List.of("$" + mapSumFields.get(0), new Document()))));
+            pipeline.add(Aggregates.project(projection));
+            pipeline.add(new Document("$unwind", new Document("path", "$" + MAP_FIELD).append("includeArrayIndex", MAP_INDEX_FIELD)
+                .append("preserveNullAndEmptyArrays", true)));
+            pipeline.add(new Document("$group", new Document("_id", new Document(GROUP_KEY_FIELD, "$" + GROUP_KEY_FIELD)
+                .append(MAP_KEY_FIELD, "$" + MAP_FIELD + ".k")).append(MAP_VALUE_FIELD, new Document("$sum", "$" + MAP_FIELD + ".v"))
+                .append(accumulators)));
+            pipeline.add(new Document("$group", new Document("_id", "$_id." + GROUP_KEY_FIELD).append(groupAccumulators)
+                .append(MAP_FIELD, new Document("$push", new Document("k", "$_id." + MAP_KEY_FIELD).append("v", "$" + MAP_VALUE_FIELD)))));
+        }
+
+        List<GroupAggregationResult> results = new ArrayList<>();
+        for (Document group : mongoClientSession.getMongoDatabase().getCollection(getName()).aggregate(pipeline).allowDiskUse(true)) {
+            Document key = group.get("_id", Document.class);
+            Map<String, Object> groupValues = new HashMap<>();
+            for (int i = 0; i < query.getGroupFields().size(); i++) {
+                // Missing fields are absent of the group key
+                if (key.containsKey(GROUP_FIELD_PREFIX + i)) {
+                    groupValues.put(query.getGroupFields().get(i), key.get(GROUP_FIELD_PREFIX + i));
+                }
+            }
+            long timeSlice = query.getTimeField() != null ? ((Number) key.get(TIME_SLICE_FIELD)).longValue() : query.getTimeOrigin();
+            GroupAggregationResult result = new GroupAggregationResult(groupValues, timeSlice);
+            for (int i = 0; i < query.getSumFields().size(); i++) {
+                result.setSum(query.getSumFields().get(i), (Number) group.get(SUM_FIELD_PREFIX + i));
+            }
+            for (int i = 0; i < query.getMinFields().size(); i++) {
+                result.setMin(query.getMinFields().get(i), (Number) group.get(MIN_FIELD_PREFIX + i));
+            }
+            for (int i = 0; i < query.getMaxFields().size(); i++) {
+                result.setMax(query.getMaxFields().get(i), (Number) group.get(MAX_FIELD_PREFIX + i));
+            }
+            if (!mapSumFields.isEmpty()) {
+                Map<String, Long> mapSum = new HashMap<>();
+                for (Document entry : group.getList(MAP_FIELD, Document.class)) {
+                    // The documents without entries are unwound to a null key
+                    if (entry.get("k") != null) {
+                        mapSum.put(entry.getString("k"), ((Number) entry.get("v")).longValue());
+                    }
+                }
+                result.setMapSum(mapSumFields.get(0), mapSum);
+            }
+            results.add(result);
+        }
+        return Optional.of(results);
+    }
+
+    /**
+     * Builds the filter selecting the documents following the provided sort keys and id according to the order of the query.
+     * Null and missing values are sorted first in ascending order and last in descending order, as MongoDB does
+     */
+    private static Bson buildKeysetFilter(List<String> sortFields, List<SearchOrder.FieldSearchOrder> fieldsSearchOrder, Document lastSortKeys, ObjectId lastId) {
+        List<Bson> alternatives = new ArrayList<>();
+        List<Bson> equalPrefix = new ArrayList<>();
+        for (int i = 0; i < sortFields.size(); i++) {
+            String field = sortFields.get(i);
+            Object lastValue = lastSortKeys.get(SORT_KEY_PREFIX + i);
+            boolean ascending = fieldsSearchOrder.get(i).order >= 0;
+            Bson after;
+            if (lastValue == null) {
+                // Nothing follows the null values in descending order
+                after = ascending ? com.mongodb.client.model.Filters.ne(field, null) : null;
+            } else {
+                after = ascending ? com.mongodb.client.model.Filters.gt(field, lastValue) :
+                    com.mongodb.client.model.Filters.or(com.mongodb.client.model.Filters.lt(field, lastValue), com.mongodb.client.model.Filters.eq(field, null));
+            }
+            if (after != null) {
+                List<Bson> alternative = new ArrayList<>(equalPrefix);
+                alternative.add(after);
+                alternatives.add(com.mongodb.client.model.Filters.and(alternative));
+            }
+            equalPrefix.add(com.mongodb.client.model.Filters.eq(field, lastValue));
+        }
+        List<Bson> alternative = new ArrayList<>(equalPrefix);
+        alternative.add(com.mongodb.client.model.Filters.gt("_id", lastId));
+        alternatives.add(com.mongodb.client.model.Filters.and(alternative));
+        return com.mongodb.client.model.Filters.or(alternatives);
     }
 
     private String fixAttributeName(String attributeName) {
@@ -230,9 +519,59 @@ public class MongoDBCollection<T> extends AbstractCollection<T> implements Colle
         return entity;
     }
 
+    /**
+     * Saves the entities by chunks of unordered bulk writes, with one round trip per chunk instead of one per entity.
+     * The failures of single entities don't prevent the others from being saved, they are reported together once
+     * all the chunks have been written
+     *
+     * @throws MongoDBBulkSaveException if some entities could not be saved
+     * @throws com.mongodb.MongoBulkWriteException if the write concern of a chunk could not be satisfied. The remaining chunks are not written
+     */
     @Override
     public void save(Iterable<T> entities) {
-        entities.forEach(this::save);
+        int chunkSize = Math.max(1, mongoClientSession.getBulkWriteChunkSize());
+        Map<ObjectId, String> errors = new LinkedHashMap<>();
+        List<T> chunk = new ArrayList<>();
+        for (T entity : entities) {
+            chunk.add(entity);
+            if (chunk.size() == chunkSize) {
+                saveChunk(chunk, errors);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            saveChunk(chunk, errors);
+        }
+        if (!errors.isEmpty()) {
+            throw new MongoDBBulkSaveException(getName(), errors);
+        }
+    }
+
+    private void saveChunk(List<T> chunk, Map<ObjectId, String> errors) {
+        List<ObjectId> ids = new ArrayList<>(chunk.size());
+        List<ReplaceOneModel<T>> models = new ArrayList<>(chunk.size());
+        ReplaceOptions replaceOptions = new ReplaceOptions().upsert(true);
+        for (T entity : chunk) {
+            if (getId(entity) == null) {
+                setId(entity, new ObjectId());
+            }
+            // The id has to be read before the fix which removes it from the documents
+            ObjectId id = getId(entity);
+            ids.add(id);
+            fixIdBeforeSave(entity);
+            models.add(new ReplaceOneModel<>(com.mongodb.client.model.Filters.eq("_id", id), entity, replaceOptions));
+        }
+        try {
+            collection.bulkWrite(models, new BulkWriteOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            if (e.getWriteConcernError() != null || e.getWriteErrors().isEmpty()) {
+                // Write concern error, the whole chunk is affected. The write errors of the chunk are reported by the exception
+                throw e;
+            }
+            e.getWriteErrors().forEach(error -> errors.put(ids.get(error.getIndex()), error.getMessage()));
+        } finally {
+            chunk.forEach(this::fixIdAfterRead);
+        }
     }
 
     @Override
@@ -270,6 +609,28 @@ public class MongoDBCollection<T> extends AbstractCollection<T> implements Colle
         }
     }
 
+    /**
+     * Creates the text index of the collection, replacing the text index on other fields if any as MongoDB only supports
+     * one text index per collection. The language 'none' disables the stemming and stop words like in the other implementations.
+     */
+    @Override
+    public void createOrUpdateTextIndex(String... fields) {
+        List<String> textFields = List.of(fields);
+        for (Document index : collection.listIndexes()) {
+            Object weights = index.get("weights");
+            if (weights instanceof Document) {
+                if (((Document) weights).keySet().equals(new HashSet<>(textFields))) {
+                    return;
+                }
+                logger.info("Dropping text index {} of collection {}", index.getString("name"), getName());
+                collection.dropIndex(index.getString("name"));
+            }
+        }
+        logIndexCreation(getName(), String.join(",", textFields));
+        collection.createIndex(Indexes.compoundIndex(textFields.stream().map(Indexes::text).collect(Collectors.toList())),
+            new IndexOptions().defaultLanguage("none"));
+    }
+
     private static void logIndexCreation(String collectionName, String fields) {
         logger.info("Creating index for collection {} and fields: {}", collectionName, fields);
     }
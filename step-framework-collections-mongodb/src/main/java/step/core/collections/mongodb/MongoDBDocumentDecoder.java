@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections.mongodb;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.codecs.Decoder;
+import org.bson.codecs.DecoderContext;
+
+import step.core.collections.Document;
+import step.core.collections.mongodb.MongoDBEntityDecoders.UnsupportedValueException;
+
+/**
+ * Decodes the BSON documents to {@link Document} like the Jackson mapping does. The _id is kept as is and converted
+ * by {@link MongoDBCollection} afterwards for both mappings.
+ */
+class MongoDBDocumentDecoder implements Decoder<Document> {
+
+    @Override
+    public Document decode(BsonReader reader, DecoderContext decoderContext) {
+        Document document = new Document();
+        readDocument(reader, document);
+        return document;
+    }
+
+    private static void readDocument(BsonReader reader, Map<String, Object> map) {
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String name = reader.readName();
+            map.put(name, readValue(reader));
+        }
+        reader.readEndDocument();
+    }
+
+    /**
+     * Reads the current value as the untyped object Jackson would map it to: nested documents to LinkedHashMap, arrays
+     * to ArrayList and 32-bit integers to Integer
+     *
+     * @throws UnsupportedValueException for the BSON types without obvious Jackson mapping (binary, decimal128...)
+     */
+    static Object readValue(BsonReader reader) {
+        BsonType type = reader.getCurrentBsonType();
+        switch (type) {
+            case STRING:
+                return reader.readString();
+            case INT32:
+                return reader.readInt32();
+            case INT64:
+                return reader.readInt64();
+            case DOUBLE:
+                return reader.readDouble();
+            case BOOLEAN:
+                return reader.readBoolean();
+            case OBJECT_ID:
+                return reader.readObjectId();
+            case DATE_TIME:
+                return new Date(reader.readDateTime());
+            case NULL:
+                reader.readNull();
+                return null;
+            case DOCUMENT:
+                Map<String, Object> map = new LinkedHashMap<>();
+                readDocument(reader, map);
+                return map;
+            case ARRAY:
+                List<Object> list = new ArrayList<>();
+                reader.readStartArray();
+                while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                    list.add(readValue(reader));
+                }
+                reader.readEndArray();
+                return list;
+            default:
+                throw new UnsupportedValueException("Unsupported BSON type " + type);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections.mongodb;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bson.codecs.Decoder;
+import org.mongojack.ObjectMapperConfigurer;
+
+import step.core.collections.Document;
+
+/**
+ * Registry of the decoders reading the entities of a class directly from the raw BSON documents returned by MongoDB,
+ * instead of going through the Jackson mapping of the collections. A decoder has to produce the same entity as the
+ * Jackson mapping and throws an {@link UnsupportedValueException} for the documents it cannot decode, these documents
+ * being then mapped with Jackson.
+ * <p>
+ * The decoder of {@link Document} is registered by default. The decoders of simple bean classes are built with
+ * {@link #registerBean(Class)}, either explicitly or automatically for the entity classes which don't require a custom
+ * deserialization.
+ */
+public class MongoDBEntityDecoders {
+
+    private static final Map<Class<?>, Decoder<?>> decoders = new ConcurrentHashMap<>();
+    // Classes mapped with Jackson: the classes unregistered and the ones for which no bean decoder can be built
+    private static final Set<Class<?>> jacksonClasses = ConcurrentHashMap.newKeySet();
+
+    static {
+        decoders.put(Document.class, new MongoDBDocumentDecoder());
+    }
+
+    public static <T> void register(Class<T> entityClass, Decoder<T> decoder) {
+        decoders.put(entityClass, decoder);
+        jacksonClasses.remove(entityClass);
+    }
+
+    /**
+     * Registers a decoder setting the properties of the bean class as introspected by Jackson. Only the properties of
+     * primitive, String, ObjectId and map types without custom deserialization are decoded, the documents containing
+     * other properties are mapped with Jackson.
+     *
+     * @param beanClass the bean class
+     * @throws IllegalArgumentException if the class requires a custom deserialization (type information, creators,
+     *                                  any setter...)
+     */
+    public static <T> void registerBean(Class<T> beanClass) {
+        register(beanClass, createBeanDecoder(beanClass));
+    }
+
+    private static <T> MongoDBBeanDecoder<T> createBeanDecoder(Class<T> beanClass) {
+        return new MongoDBBeanDecoder<>(beanClass, ObjectMapperConfigurer.configureObjectMapper(MongoDBCollectionJacksonMapperProvider.getObjectMapper()));
+    }
+
+    /**
+     * Unregisters the decoder of the class. The entities of the class are then mapped with Jackson
+     */
+    public static void unregister(Class<?> entityClass) {
+        jacksonClasses.add(entityClass);
+        decoders.remove(entityClass);
+    }
+
+    /**
+     * @return the decoder of the class or null if the entities of the class have to be mapped with Jackson. The classes which
+     * haven't been registered get a bean decoder unless they require a custom deserialization. The properties only
+     * supported when null (like the custom fields of {@link step.core.accessors.AbstractIdentifiableObject}) don't prevent
+     * it: the documents setting them are mapped with Jackson
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Decoder<T> get(Class<T> entityClass) {
+        Decoder<?> decoder = decoders.get(entityClass);
+        if (decoder == null && !jacksonClasses.contains(entityClass)) {
+            try {
+                decoders.putIfAbsent(entityClass, createBeanDecoder(entityClass));
+                decoder = decoders.get(entityClass);
+            } catch (IllegalArgumentException e) {
+                // The class requires a custom deserialization
+                jacksonClasses.add(entityClass);
+            }
+        }
+        return (Decoder<T>) decoder;
+    }
+
+    /**
+     * Thrown by the decoders for the documents that have to be mapped with Jackson
+     */
+    @SuppressWarnings("serial")
+    public static class UnsupportedValueException extends RuntimeException {
+
+        public UnsupportedValueException(String message) {
+            // The exception is part of the normal flow, its stack trace is never used
+            super(message, null, false, false);
+        }
+    }
+}
@@ -22,9 +22,11 @@ import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import step.core.collections.Filter;
 import step.core.collections.Filters.FilterFactory;
+import step.core.collections.FulltextTokenizer;
 import step.core.collections.filters.*;
 
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class MongoDBFilterFactory implements FilterFactory<Bson> {
@@ -95,6 +97,14 @@ public class MongoDBFilterFactory implements FilterFactory<Bson> {
         } else if (filter instanceof Includes includesFilter) {
             // MongoDB natively checks array containment when matching a scalar against an array field
             return com.mongodb.client.model.Filters.eq(includesFilter.getField(), includesFilter.getExpectedValue());
+        } else if (filter instanceof Fulltext fulltextFilter) {
+            // Requires the text index of the collection. The words are split like in the other implementations and
+            // searched as quoted phrases, which MongoDB combines with an AND instead of the OR applied to plain terms
+            Set<String> words = FulltextTokenizer.tokenize(fulltextFilter.getExpression());
+            if (words.isEmpty()) {
+                return com.mongodb.client.model.Filters.expr(true);
+            }
+            return com.mongodb.client.model.Filters.text(words.stream().map(w -> "\"" + w + "\"").collect(Collectors.joining(" ")));
         } else {
             throw new IllegalArgumentException("Unsupported filter type " + filter.getClass());
         }
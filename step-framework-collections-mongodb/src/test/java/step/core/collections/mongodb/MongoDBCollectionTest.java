@@ -6,14 +6,25 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
+import org.bson.BsonReader;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Decoder;
+import org.bson.codecs.DecoderContext;
 import org.bson.conversions.Bson;
 import org.junit.Assert;
+import org.junit.Ignore;
 import org.junit.Test;
 
 import org.mongojack.JacksonMongoCollection;
@@ -80,6 +91,370 @@ public class MongoDBCollectionTest extends AbstractCollectionTest {
         assertEquals(0, documents.find(Filters.empty(), null, null, null, 0).collect(Collectors.toList()).size());
     }
 
+    @Test
+    public void testBulkSave() throws IOException {
+        Properties properties = getProperties();
+        properties.put("bulkWriteChunkSize", "100");
+        MongoDBCollectionFactory factory = new MongoDBCollectionFactory(properties);
+        try {
+            Collection<Bean> collection = factory.getCollection("beans", Bean.class);
+            collection.remove(Filters.empty());
+            List<Bean> beans = new ArrayList<>();
+            for (int i = 0; i < 250; i++) {
+                beans.add(new Bean("property" + i));
+            }
+            collection.save(beans);
+            assertEquals(250, collection.count(Filters.empty(), null));
+
+            // Existing entities are replaced
+            beans.forEach(b -> b.setProperty1(b.getProperty1() + "updated"));
+            collection.save(beans);
+            assertEquals(250, collection.count(Filters.empty(), null));
+            assertEquals(250, collection.count(Filters.regex("property1", "updated$", true), null));
+
+            // The ids of the documents are restored after the save
+            Collection<Document> documents = factory.getCollection("beans", Document.class);
+            documents.remove(Filters.empty());
+            List<Document> documentList = new ArrayList<>();
+            for (int i = 0; i < 150; i++) {
+                Document document = new Document();
+                document.put("property1", "value" + i);
+                documentList.add(document);
+            }
+            documents.save(documentList);
+            documentList.forEach(d -> Assert.assertNotNull(d.getId()));
+            assertEquals(150, documents.count(Filters.empty(), null));
+            Document document = documents.find(Filters.id(documentList.get(120).getId()), null, null, null, 0).findFirst().orElseThrow();
+            assertEquals("value120", document.get("property1"));
+
+            // The failures are reported together and don't prevent the other entities from being saved
+            factory.getMongoClientSession().getMongoDatabase().getCollection("beans")
+                .createIndex(new org.bson.Document("property1", 1), new IndexOptions().unique(true));
+            List<Document> duplicates = new ArrayList<>();
+            for (int i = 0; i < 150; i++) {
+                Document duplicate = new Document();
+                duplicate.put("property1", i % 50 == 0 ? "value0" : "other" + i);
+                duplicates.add(duplicate);
+            }
+            MongoDBBulkSaveException exception = Assert.assertThrows(MongoDBBulkSaveException.class, () -> documents.save(duplicates));
+            assertEquals(3, exception.getErrors().size());
+            assertEquals(297, documents.count(Filters.empty(), null));
+        } finally {
+            factory.getMongoClientSession().getMongoDatabase().getCollection("beans").drop();
+            factory.close();
+        }
+    }
+
+    @Test
+    public void testAggregate() {
+        Collection<Document> collection = collectionFactory.getCollection("buckets", Document.class);
+        collection.remove(Filters.empty());
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            Document document = new Document();
+            document.put("begin", 1000L + i * 10L);
+            document.put("attributes", i % 4 == 3 ? new Document() : new Document(Map.of("name", "name" + (i % 2))));
+            document.put("count", 2L);
+            document.put("sum", (long) i);
+            document.put("min", (long) -i);
+            document.put("max", (long) i);
+            document.put("distribution", i % 5 == 0 ? new Document() : new Document(Map.of("0", 1L, String.valueOf(10 + i % 3 * 10), 1L)));
+            documents.add(document);
+        }
+        collection.save(documents);
+
+        GroupAggregationQuery query = new GroupAggregationQuery()
+            .setFilter(Filters.lt("begin", 1300))
+            .setGroupFields(List.of("attributes.name"))
+            .setTimeSlicing("begin", 1000L, 100L)
+            .setSumFields(List.of("count", "sum"))
+            .setMinFields(List.of("min"))
+            .setMaxFields(List.of("max"))
+            .setMapSumFields(List.of("distribution"));
+        List<GroupAggregationResult> results = collection.aggregate(query).orElseThrow();
+        // 3 time slices of 3 groups: name0, name1 and the documents without name
+        assertEquals(9, results.size());
+        GroupAggregationResult result = results.stream().filter(r -> "name0".equals(r.getGroupValues().get("attributes.name")) && r.getTimeSlice() == 1100L)
+            .findFirst().orElseThrow();
+        // Documents 10, 12, 14, 16 and 18
+        assertEquals(10, result.getSum("count").longValue());
+        assertEquals(70, result.getSum("sum").longValue());
+        assertEquals(-18, result.getMin("min").longValue());
+        assertEquals(18, result.getMax("max").longValue());
+        assertEquals(Map.of("0", 4L, "10", 2L, "20", 1L, "30", 1L), result.getMapSum("distribution"));
+        result = results.stream().filter(r -> r.getGroupValues().isEmpty() && r.getTimeSlice() == 1000L).findFirst().orElseThrow();
+        // Documents 3 and 7
+        assertEquals(4, result.getSum("count").longValue());
+        assertEquals(Map.of("0", 2L, "10", 1L, "20", 1L), result.getMapSum("distribution"));
+
+        // Single time slice without map field
+        results = collection.aggregate(new GroupAggregationQuery().setTimeSlicing("begin", 1000L, 0).setSumFields(List.of("count")))
+            .orElseThrow();
+        assertEquals(1, results.size());
+        assertEquals(1000L, results.get(0).getTimeSlice());
+        assertEquals(80, results.get(0).getSum("count").longValue());
+        collection.drop();
+    }
+
+    @Test
+    public void testRawDecoding() throws IOException {
+        Properties properties = getProperties();
+        properties.put("rawDecoding", "false");
+        MongoDBCollectionFactory jacksonFactory = new MongoDBCollectionFactory(properties);
+        MongoDBEntityDecoders.registerBean(RawBean.class);
+        try {
+            Collection<RawBean> collection = collectionFactory.getCollection("rawBeans", RawBean.class);
+            collection.remove(Filters.empty());
+            for (int i = 0; i < 10; i++) {
+                RawBean bean = new RawBean();
+                bean.setLongValue(i);
+                bean.setIntValue(i);
+                bean.setDoubleValue(i / 2d);
+                bean.setBooleanValue(i % 2 == 0);
+                bean.setStringValue(i % 3 == 0 ? null : "value" + i);
+                bean.setDistribution(Map.of((long) i, 1L, 100L, (long) i));
+                bean.setAttributes(new HashMap<>(Map.of("name", "name" + i, "index", i, "nested", Map.of("list", List.of(1L, "2")))));
+                // Unsupported property, the bean is decoded with Jackson
+                bean.setList(i == 9 ? List.of("a", "b") : null);
+                collection.save(bean);
+            }
+            Collection<RawBean> jacksonCollection = jacksonFactory.getCollection("rawBeans", RawBean.class);
+            SearchOrder order = new SearchOrder("longValue", 1);
+            List<RawBean> beans = collection.find(Filters.empty(), order, null, null, 0).collect(Collectors.toList());
+            List<RawBean> expectedBeans = jacksonCollection.find(Filters.empty(), order, null, null, 0).collect(Collectors.toList());
+            assertEquals(10, beans.size());
+            ObjectMapper mapper = new ObjectMapper();
+            for (int i = 0; i < beans.size(); i++) {
+                assertEquals(expectedBeans.get(i).getId(), beans.get(i).getId());
+                assertEquals(mapper.writeValueAsString(expectedBeans.get(i)), mapper.writeValueAsString(beans.get(i)));
+            }
+            assertEquals(Map.of(3L, 1L, 100L, 3L), beans.get(3).getDistribution());
+            assertEquals(List.of("a", "b"), beans.get(9).getList());
+
+            // Projections
+            RawBean reducedBean = collection.findReduced(Filters.equals("longValue", 5), null, null, null, 0, List.of("stringValue"))
+                .findFirst().orElseThrow();
+            assertEquals("value5", reducedBean.getStringValue());
+            assertEquals(0, reducedBean.getLongValue());
+
+            Collection<Document> documents = collectionFactory.getCollection("rawBeans", Document.class);
+            Collection<Document> jacksonDocuments = jacksonFactory.getCollection("rawBeans", Document.class);
+            Document document = new Document();
+            document.put("date", new Date(1000));
+            document.put("array", List.of(Map.of("a", 1), 2L, 3.5));
+            documents.save(document);
+            assertEquals(jacksonDocuments.find(Filters.empty(), order, null, null, 0).collect(Collectors.toList()),
+                documents.find(Filters.empty(), order, null, null, 0).collect(Collectors.toList()));
+
+            // Classes requiring a custom deserialization
+            Assert.assertThrows(IllegalArgumentException.class, () -> MongoDBEntityDecoders.registerBean(Bean.class));
+        } finally {
+            MongoDBEntityDecoders.unregister(RawBean.class);
+            jacksonFactory.getMongoClientSession().getMongoDatabase().getCollection("rawBeans").drop();
+            jacksonFactory.close();
+        }
+    }
+
+    @Test
+    public void testRawDecodingWithoutRegistration() throws IOException {
+        Properties properties = getProperties();
+        properties.put("rawDecoding", "false");
+        MongoDBCollectionFactory jacksonFactory = new MongoDBCollectionFactory(properties);
+        try {
+            Collection<SimpleBean> collection = collectionFactory.getCollection("simpleBeans", SimpleBean.class);
+            collection.remove(Filters.empty());
+            for (int i = 0; i < 5; i++) {
+                SimpleBean bean = new SimpleBean();
+                bean.setValue(i);
+                bean.setName(i % 2 == 0 ? null : "name" + i);
+                bean.setDistribution(Map.of((long) i, 1L));
+                if (i == 4) {
+                    // The custom fields have a custom deserialization, such documents are mapped with Jackson
+                    bean.addCustomField("key", "value");
+                }
+                collection.save(bean);
+            }
+            SearchOrder order = new SearchOrder("value", 1);
+            List<SimpleBean> beans = collection.find(Filters.empty(), order, null, null, 0).collect(Collectors.toList());
+            List<SimpleBean> expectedBeans = jacksonFactory.getCollection("simpleBeans", SimpleBean.class)
+                .find(Filters.empty(), order, null, null, 0).collect(Collectors.toList());
+
+            // The decoder of the bean classes is built on first use. The documents without custom fields are decoded raw
+            Decoder<SimpleBean> decoder = MongoDBEntityDecoders.get(SimpleBean.class);
+            Assert.assertTrue(decoder instanceof MongoDBBeanDecoder);
+            MongoCollection<RawBsonDocument> rawCollection = jacksonFactory.getMongoClientSession().getMongoDatabase()
+                .getCollection("simpleBeans", RawBsonDocument.class);
+            try (BsonReader reader = rawCollection.find(com.mongodb.client.model.Filters.eq("value", 1L)).first().asBsonReader()) {
+                assertEquals("name1", decoder.decode(reader, DecoderContext.builder().build()).getName());
+            }
+            try (BsonReader reader = rawCollection.find(com.mongodb.client.model.Filters.eq("value", 4L)).first().asBsonReader()) {
+                Assert.assertThrows(MongoDBEntityDecoders.UnsupportedValueException.class, () -> decoder.decode(reader, DecoderContext.builder().build()));
+            }
+            assertEquals(5, beans.size());
+            assertEquals("value", beans.get(4).getCustomField("key"));
+            ObjectMapper mapper = new ObjectMapper();
+            for (int i = 0; i < beans.size(); i++) {
+                assertEquals(expectedBeans.get(i).getId(), beans.get(i).getId());
+                assertEquals(mapper.writeValueAsString(expectedBeans.get(i)), mapper.writeValueAsString(beans.get(i)));
+            }
+            // The other classes are mapped with Jackson
+            Assert.assertNull(MongoDBEntityDecoders.get(Bean.class));
+        } finally {
+            jacksonFactory.getMongoClientSession().getMongoDatabase().getCollection("simpleBeans").drop();
+            jacksonFactory.close();
+        }
+    }
+
+    @Test
+    @Ignore
+    public void benchmarkRawDecoding() throws IOException {
+        Properties properties = getProperties();
+        properties.put("rawDecoding", "false");
+        MongoDBCollectionFactory jacksonFactory = new MongoDBCollectionFactory(properties);
+        MongoDBEntityDecoders.registerBean(RawBean.class);
+        try {
+            Collection<RawBean> collection = collectionFactory.getCollection("rawBeans", RawBean.class);
+            collection.remove(Filters.empty());
+            int total = 50000;
+            List<RawBean> beans = new ArrayList<>();
+            for (int i = 0; i < total; i++) {
+                RawBean bean = new RawBean();
+                bean.setLongValue(i);
+                bean.setStringValue("value" + i);
+                bean.setDistribution(Map.of(1L, 1L, 10L, 2L, 100L, 3L));
+                bean.setAttributes(new HashMap<>(Map.of("name", "name" + (i % 10), "type", "type")));
+                beans.add(bean);
+            }
+            collection.save(beans);
+
+            for (boolean rawDecoding : List.of(false, true)) {
+                Collection<RawBean> beanCollection = rawDecoding ? collection : jacksonFactory.getCollection("rawBeans", RawBean.class);
+                Collection<Document> documentCollection = (rawDecoding ? collectionFactory : jacksonFactory).getCollection("rawBeans", Document.class);
+                for (int loop = 1; loop <= 3; loop++) {
+                    long start = System.nanoTime();
+                    assertEquals(total, beanCollection.findLazy(Filters.empty(), null, null, null, 0).count());
+                    long beanDuration = System.nanoTime() - start;
+                    start = System.nanoTime();
+                    assertEquals(total, documentCollection.findLazy(Filters.empty(), null, null, null, 0).count());
+                    long documentDuration = System.nanoTime() - start;
+                    System.out.println("Raw decoding " + rawDecoding + ", loop " + loop + ": " + total * 1_000_000_000L / beanDuration +
+                        " beans/s, " + total * 1_000_000_000L / documentDuration + " documents/s");
+                }
+            }
+        } finally {
+            MongoDBEntityDecoders.unregister(RawBean.class);
+            jacksonFactory.getMongoClientSession().getMongoDatabase().getCollection("rawBeans").drop();
+            jacksonFactory.close();
+        }
+    }
+
+    public static class RawBean extends AbstractIdentifiableObject {
+
+        private long longValue;
+        private int intValue;
+        private double doubleValue;
+        private boolean booleanValue;
+        private String stringValue;
+        private Map<Long, Long> distribution;
+        private HashMap<String, Object> attributes;
+        private List<String> list;
+
+        public long getLongValue() {
+            return longValue;
+        }
+
+        public void setLongValue(long longValue) {
+            this.longValue = longValue;
+        }
+
+        public int getIntValue() {
+            return intValue;
+        }
+
+        public void setIntValue(int intValue) {
+            this.intValue = intValue;
+        }
+
+        public double getDoubleValue() {
+            return doubleValue;
+        }
+
+        public void setDoubleValue(double doubleValue) {
+            this.doubleValue = doubleValue;
+        }
+
+        public boolean isBooleanValue() {
+            return booleanValue;
+        }
+
+        public void setBooleanValue(boolean booleanValue) {
+            this.booleanValue = booleanValue;
+        }
+
+        public String getStringValue() {
+            return stringValue;
+        }
+
+        public void setStringValue(String stringValue) {
+            this.stringValue = stringValue;
+        }
+
+        public Map<Long, Long> getDistribution() {
+            return distribution;
+        }
+
+        public void setDistribution(Map<Long, Long> distribution) {
+            this.distribution = distribution;
+        }
+
+        public HashMap<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        public void setAttributes(HashMap<String, Object> attributes) {
+            this.attributes = attributes;
+        }
+
+        public List<String> getList() {
+            return list;
+        }
+
+        public void setList(List<String> list) {
+            this.list = list;
+        }
+    }
+
+    public static class SimpleBean extends AbstractIdentifiableObject {
+
+        private long value;
+        private String name;
+        private Map<Long, Long> distribution;
+
+        public long getValue() {
+            return value;
+        }
+
+        public void setValue(long value) {
+            this.value = value;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Map<Long, Long> getDistribution() {
+            return distribution;
+        }
+
+        public void setDistribution(Map<Long, Long> distribution) {
+            this.distribution = distribution;
+        }
+    }
+
     @SuppressWarnings({"rawtypes", "unchecked"})
     @Test
     public void testTimeout() throws Exception {
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections.postgresql;
+
+/**
+ * Fetch size of a server-side cursor adapted to the progress of the scan. The first fetch is sized by the limit of the
+ * query if any, so that small pages are read in a single round trip without over-fetching. The fetch size then grows
+ * geometrically for the long scans, bounded by a maximum and by a memory budget estimated from the average size of the
+ * rows already read.
+ */
+class AdaptiveFetchSize {
+
+    private static final int GROWTH_FACTOR = 2;
+
+    private final int maxFetchSize;
+    private final long memoryBudgetBytes;
+    private int fetchSize;
+    // Number of rows read from the current fetch
+    private int fetchedRowsRead;
+    private long measuredRows;
+    private long measuredBytes;
+
+    /**
+     * Fixed fetch size
+     */
+    AdaptiveFetchSize(int fetchSize) {
+        this(fetchSize, fetchSize, 0);
+    }
+
+    /**
+     * @param initialFetchSize  the number of rows of the first fetch
+     * @param maxFetchSize      the maximum number of rows per fetch
+     * @param memoryBudgetBytes the maximum estimated size of the rows of a fetch, 0 for no budget
+     */
+    AdaptiveFetchSize(int initialFetchSize, int maxFetchSize, long memoryBudgetBytes) {
+        this.maxFetchSize = Math.max(1, maxFetchSize);
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.fetchSize = Math.max(1, Math.min(initialFetchSize, this.maxFetchSize));
+    }
+
+    /**
+     * @param limit  the limit of the query. Nullable
+     * @param config the configuration of the collection
+     * @return the fetch size of a query starting from its limit if any
+     */
+    static AdaptiveFetchSize forQuery(Integer limit, PostgreSQLCollectionConfig config) {
+        int initialFetchSize = limit != null && limit > 0 ? limit : config.getInitialFetchSize();
+        return new AdaptiveFetchSize(initialFetchSize, config.getMaxFetchSize(), config.getFetchMemoryBudgetBytes());
+    }
+
+    int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Records the size of a row read from the cursor for the estimation of the memory required by the next fetches
+     */
+    void rowSize(int bytes) {
+        measuredRows++;
+        measuredBytes += bytes;
+    }
+
+    /**
+     * To be called for each row read from the cursor
+     *
+     * @return true if the row was the last one of the current fetch and the size of the next fetch changed
+     */
+    boolean rowRead() {
+        if (++fetchedRowsRead < fetchSize) {
+            return false;
+        }
+        fetchedRowsRead = 0;
+        long nextFetchSize = Math.min((long) fetchSize * GROWTH_FACTOR, maxFetchSize);
+        if (memoryBudgetBytes > 0 && measuredRows > 0) {
+            long averageRowBytes = Math.max(1, measuredBytes / measuredRows);
+            nextFetchSize = Math.min(nextFetchSize, Math.max(1, memoryBudgetBytes / averageRowBytes));
+        }
+        if (nextFetchSize != fetchSize) {
+            fetchSize = (int) nextFetchSize;
+            return true;
+        } else {
+            return false;
+        }
+    }
+}
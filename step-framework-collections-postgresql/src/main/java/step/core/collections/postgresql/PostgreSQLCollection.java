@@ -19,20 +19,35 @@
 package step.core.collections.postgresql;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.zaxxer.hikari.HikariDataSource;
 import org.apache.commons.beanutils.PropertyUtils;
 import org.bson.types.ObjectId;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import step.core.accessors.AbstractIdentifiableObject;
 import step.core.collections.*;
 import step.core.collections.AbstractCollection;
 import step.core.collections.Collection;
+import step.core.collections.filters.Fulltext;
 
 import java.beans.PropertyDescriptor;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
 import java.lang.reflect.*;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -46,6 +61,29 @@ public class PostgreSQLCollection<T> extends AbstractCollection<T> implements Co
     private static Pattern p = Pattern.compile("([^.]+)");
 
     private static final Logger logger = LoggerFactory.getLogger(PostgreSQLCollection.class);
+    // Closes the queries of the streams abandoned without being closed nor fully consumed
+    private static final Cleaner STREAM_CLEANER = Cleaner.create();
+    // Background threads of the read-ahead of findLazy
+    private static final ExecutorService READ_AHEAD_EXECUTOR = createReadAheadExecutor();
+    // jsonb values transferred in binary format are prefixed by the version of the format
+    private static final byte JSONB_BINARY_FORMAT_VERSION = 1;
+    // Maximum number of rows of the multi-row inserts of save(Iterable)
+    private static final int MAX_ROWS_PER_INSERT = 100;
+    // Session scoped staging table of the bulk saves using COPY. The rows are deleted at the end of each transaction
+    private static final String BULK_SAVE_TABLE = "step_bulk_save";
+    // Content of the continuation tokens of findAfter
+    private static final String TOKEN_SORT_KEYS = "sortKeys";
+    private static final String TOKEN_ID = "id";
+    // Property containing the type information of the polymorphic entities
+    private static final String TYPE_FIELD = "_class";
+
+    private static final TypeReference<Map<String, Long>> MAP_SUM_TYPE = new TypeReference<>() {
+    };
+    // Content of the comment of the partitioned tables describing their partitioning
+    private static final String PARTITIONING_FIELD = "partitionField";
+    private static final String PARTITIONING_RANGE_SIZE = "partitionRangeSize";
+    private static final Pattern PARTITION_BOUND_PATTERN = Pattern.compile("FROM \\('?(-?\\d+)'?\\) TO \\('?(-?\\d+)'?\\)");
+    private static final byte[] COPY_BINARY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
 
     private final HikariDataSource ds;
 
@@ -56,21 +94,85 @@ public class PostgreSQLCollection<T> extends AbstractCollection<T> implements Co
 
     private final ObjectMapper objectMapper;
 
-    private final String insertOrUpdateQuery;
+    private final ObjectReader entityReader;
+
+    private volatile String insertOrUpdateQuery;
+
+    private final PostgreSQLCollectionConfig config;
+
+    private final PostgreSQLCountCache countCache;
+
+    // Typed columns of the collection by field
+    private final Map<String, PostgreSQLTypedColumn> typedColumns = new ConcurrentHashMap<>();
+
+    // Range partitioning of the table, null if the table isn't partitioned
+    private volatile PostgreSQLRangePartitioning partitioning;
+
+    // Text index of the table, null if the table has no text column
+    private volatile PostgreSQLTextIndex textIndex;
 
     public PostgreSQLCollection(HikariDataSource ds, String collectionName, Class<T> entityClass) throws SQLException {
+        this(ds, collectionName, entityClass, new PostgreSQLCollectionConfig());
+    }
+
+    public PostgreSQLCollection(HikariDataSource ds, String collectionName, Class<T> entityClass, PostgreSQLCollectionConfig config) throws SQLException {
+        this(ds, collectionName, entityClass, config, new PostgreSQLCountCache(config.getCountCacheTtlMs()));
+    }
+
+    /**
+     * @param countCache the cache of the counts shared by the collections of the factory
+     */
+    PostgreSQLCollection(HikariDataSource ds, String collectionName, Class<T> entityClass, PostgreSQLCollectionConfig config,
+                         PostgreSQLCountCache countCache) throws SQLException {
         this.ds = ds;
+        this.config = config;
+        this.countCache = countCache;
         this.collectionName = collectionName;
         this.collectionNameStr = getCollectionNameStr(collectionName);
         this.entityClass = entityClass;
         objectMapper = PostgreSQLCollectionJacksonMapperProvider.getObjectMapper();
-        insertOrUpdateQuery = "INSERT INTO " + collectionNameStr + " (object)\n" +
-            "VALUES(?::jsonb) \n" +
-            "ON CONFLICT (id) \n" +
-            "DO \n" +
-            "   UPDATE SET object = ?::jsonb";
+        entityReader = config.isSharedObjectReaders() ? PostgreSQLCollectionJacksonMapperProvider.getSharedObjectReader(entityClass) :
+            objectMapper.readerFor(entityClass);
+        insertOrUpdateQuery = buildInsertOrUpdateQuery(1);
 
         createTableIfRequired();
+        try (Connection connection = ds.getConnection()) {
+            PostgreSQLRangePartitioning existingPartitioning = readPartitioning(connection);
+            if (existingPartitioning != null) {
+                setPartitioning(connection, existingPartitioning);
+            }
+            textIndex = readTextIndex(connection);
+        }
+        for (PostgreSQLTypedColumn typedColumn : config.getTypedColumns(collectionName).values()) {
+            createOrUpdateTypedColumn(typedColumn.getField(), typedColumn.getType());
+        }
+    }
+
+    private String buildInsertOrUpdateQuery(int rowCount) {
+        PostgreSQLRangePartitioning partitioning = this.partitioning;
+        StringBuilder query = new StringBuilder("INSERT INTO ").append(collectionNameStr);
+        if (partitioning == null) {
+            query.append(" (object)\n").append("VALUES ");
+        } else {
+            // The partition key is computed from the inserted objects
+            query.append(" (object, ").append(partitioning.getKeyColumn().getColumnName()).append(")\n")
+                .append("SELECT object, ").append(partitioning.getKeyExpression()).append(" FROM (VALUES ");
+        }
+        for (int i = 0; i < rowCount; i++) {
+            query.append(i > 0 ? ", " : "").append("(?::jsonb)");
+        }
+        if (partitioning != null) {
+            query.append(") AS v(object)");
+        }
+        return query.append(" \n").append(onConflictUpdate()).toString();
+    }
+
+    private String onConflictUpdate() {
+        PostgreSQLRangePartitioning partitioning = this.partitioning;
+        String conflictTarget = partitioning == null ? "id" : "id, " + partitioning.getKeyColumn().getColumnName();
+        return "ON CONFLICT (" + conflictTarget + ") \n" +
+            "DO \n" +
+            "   UPDATE SET object = EXCLUDED.object";
     }
 
     private static String getCollectionNameStr(String collectionName) {
@@ -90,6 +192,321 @@ public class PostgreSQLCollection<T> extends AbstractCollection<T> implements Co
         }
     }
 
+    /**
+     * Extracts a field of the entities to a column of the given type generated by PostgreSQL and indexed with a B-tree
+     * index. The filters and sort orders on this field are then evaluated against the typed column.
+     * Adding the column to an existing table rewrites the table. An existing column of another type is replaced.
+     *
+     * @param field the field of the entities
+     * @param type  the type of the column
+     */
+    public synchronized void createOrUpdateTypedColumn(String field, PostgreSQLTypedColumn.Type type) {
+        PostgreSQLTypedColumn typedColumn = new PostgreSQLTypedColumn(field, type);
+        String columnName = typedColumn.getColumnName();
+        String columnDefinition = columnName + " " + type.getSqlType() + " GENERATED ALWAYS AS (" + typedColumn.getGenerationExpression() + ") STORED";
+        try (Connection connection = ds.getConnection();
+             Statement statement = connection.createStatement()) {
+            String existingType = readColumnType(connection, columnName);
+            if (existingType == null) {
+                logger.info("Creating typed column {} if it doesn't exist.", columnName);
+                statement.executeUpdate("ALTER TABLE " + collectionNameStr + " ADD COLUMN IF NOT EXISTS " + columnDefinition);
+            } else if (!existingType.equals(type.getFormattedSqlType())) {
+                // ADD COLUMN IF NOT EXISTS would keep the column of the previous type
+                logger.info("Replacing typed column {} of type {} by a column of type {}.", columnName, existingType, type.getSqlType());
+                connection.setAutoCommit(false);
+                try {
+                    statement.executeUpdate("ALTER TABLE " + collectionNameStr + " DROP COLUMN " + columnName);
+                    statement.executeUpdate("ALTER TABLE " + collectionNameStr + " ADD COLUMN " + columnDefinition);
+                    connection.commit();
+                } catch (SQLException | RuntimeException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to create the typed column " + columnName + " of the collection " + collectionName, e);
+        }
+        createIndex("idx_" + collectionName + "_" + field.replaceAll("\\.", "_") + "_typed", "(" + columnName + ")");
+        typedColumns.put(field, typedColumn);
+    }
+
+    /**
+     * @param columnName the quoted name of the column
+     * @return the type of the column or null if the column doesn't exist
+     */
+    private String readColumnType(Connection connection, String columnName) throws SQLException {
+        try (PreparedStatement preparedStatement = connection.prepareStatement(
+            "SELECT format_type(a.atttypid, NULL) FROM pg_attribute a WHERE a.attrelid = to_regclass(?) AND a.attname = ? AND NOT a.attisdropped")) {
+            preparedStatement.setString(1, collectionNameStr);
+            preparedStatement.setString(2, columnName.substring(1, columnName.length() - 1));
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                return resultSet.next() ? resultSet.getString(1) : null;
+            }
+        }
+    }
+
+    /**
+     * Creates the tsvector column of the text index and its GIN index. The column of a previous text index on other fields
+     * or generated by a previous version is replaced. As for the typed columns, adding the column to an existing table
+     * rewrites the table.
+     */
+    @Override
+    public synchronized void createOrUpdateTextIndex(String... fields) {
+        PostgreSQLTextIndex newTextIndex = new PostgreSQLTextIndex(List.of(fields));
+        PostgreSQLTextIndex currentTextIndex = this.textIndex;
+        if (currentTextIndex == null || !currentTextIndex.getDefinition().equals(newTextIndex.getDefinition())) {
+            createTextColumn(newTextIndex);
+        }
+    }
+
+    private void createTextColumn(PostgreSQLTextIndex newTextIndex) {
+        String columnName = newTextIndex.getColumnName();
+        try (Connection connection = ds.getConnection();
+             Statement statement = connection.createStatement()) {
+            logger.info("Creating text column {} of the collection {} for the fields {}.", columnName, collectionName, newTextIndex.getFields());
+            connection.setAutoCommit(false);
+            try {
+                statement.executeUpdate("ALTER TABLE " + collectionNameStr + " DROP COLUMN IF EXISTS " + columnName);
+                statement.executeUpdate("ALTER TABLE " + collectionNameStr + " ADD COLUMN " + columnName + " tsvector GENERATED ALWAYS AS (" +
+                    newTextIndex.getGenerationExpression() + ") STORED");
+                // The fields of the index are described by the comment of the column
+                statement.executeUpdate("COMMENT ON COLUMN " + collectionNameStr + "." + columnName + " IS '" +
+                    newTextIndex.getDefinition().replace("'", "''") + "'");
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to create the text column of the collection " + collectionName, e);
+        }
+        createIndex("idx_" + collectionName + "_fulltext", "USING GIN (" + columnName + ")");
+        textIndex = newTextIndex;
+    }
+
+    private PostgreSQLFilterFactory filterFactory(Filter filter) {
+        PostgreSQLTextIndex textIndex = this.textIndex;
+        if (textIndex == null && hasFulltextFilter(filter)) {
+            // The text index may have been created by another instance of the collection
+            try (Connection connection = ds.getConnection()) {
+                textIndex = readTextIndex(connection);
+            } catch (SQLException e) {
+                throw new RuntimeException("Unable to read the text index of the collection " + collectionName, e);
+            }
+            if (textIndex != null) {
+                this.textIndex = textIndex;
+            }
+        }
+        return new PostgreSQLFilterFactory(typedColumns, textIndex);
+    }
+
+    private static boolean hasFulltextFilter(Filter filter) {
+        if (filter instanceof Fulltext) {
+            return true;
+        }
+        List<Filter> children = filter != null ? filter.getChildren() : null;
+        return children != null && children.stream().anyMatch(PostgreSQLCollection::hasFulltextFilter);
+    }
+
+    /**
+     * @return the text index described by the comment of the text column or null if the table has no text column
+     */
+    private PostgreSQLTextIndex readTextIndex(Connection connection) throws SQLException {
+        try (PreparedStatement preparedStatement = connection.prepareStatement(
+            "SELECT col_description(a.attrelid, a.attnum) FROM pg_attribute a WHERE a.attrelid = to_regclass(?) AND a.attname = ? AND NOT a.attisdropped")) {
+            preparedStatement.setString(1, collectionNameStr);
+            preparedStatement.setString(2, PostgreSQLTextIndex.COLUMN);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                return resultSet.next() && resultSet.getString(1) != null ? PostgreSQLTextIndex.parse(resultSet.getString(1)) : null;
+            }
+        }
+    }
+
+    /**
+     * @return the typed column of the field if any or the jsonb value of the field
+     */
+    private String formatSortField(String field) {
+        PostgreSQLTypedColumn typedColumn = typedColumns.get(field);
+        return typedColumn != null ? typedColumn.getColumnName() : PostgreSQLFilterFactory.formatField(field, Object.class);
+    }
+
+    /**
+     * Partitions the table by ranges of the values of the field. As the partitioning of an existing table cannot be
+     * changed, the table is replaced by a partitioned table if it is empty. Its typed columns and text index are recreated,
+     * the other indexes have to be created after the partitioning
+     */
+    @Override
+    public synchronized boolean enableRangePartitioning(String field, long rangeSize, long from, long to) {
+        if (partitioning == null) {
+            try (Connection connection = ds.getConnection()) {
+                PostgreSQLRangePartitioning newPartitioning = createPartitionedTable(connection, field, rangeSize);
+                if (newPartitioning == null) {
+                    return false;
+                }
+                setPartitioning(connection, newPartitioning);
+            } catch (SQLException e) {
+                throw new RuntimeException("Unable to partition the collection " + collectionName, e);
+            }
+        }
+        PostgreSQLRangePartitioning partitioning = this.partitioning;
+        if (!partitioning.getField().equals(field) || partitioning.getRangeSize() != rangeSize) {
+            logger.warn("The collection {} is already partitioned by {} with ranges of {}. Ignoring the requested partitioning by {} with ranges of {}.",
+                collectionName, partitioning.getField(), partitioning.getRangeSize(), field, rangeSize);
+        }
+        for (long rangeStart = partitioning.getRangeStart(from); rangeStart < to; rangeStart += partitioning.getRangeSize()) {
+            if (!partitioning.getPartitions().contains(rangeStart)) {
+                createPartition(partitioning, rangeStart);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the table of the collection by a partitioned table if it is empty
+     *
+     * @return the partitioning of the table or null if the table contains entities
+     */
+    private PostgreSQLRangePartitioning createPartitionedTable(Connection connection, String field, long rangeSize) throws SQLException {
+        PostgreSQLRangePartitioning newPartitioning = new PostgreSQLRangePartitioning(field, rangeSize);
+        String keyColumn = newPartitioning.getKeyColumn().getColumnName();
+        String description;
+        try {
+            description = objectMapper.writeValueAsString(Map.of(PARTITIONING_FIELD, field, PARTITIONING_RANGE_SIZE, rangeSize));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("LOCK TABLE " + collectionNameStr + " IN ACCESS EXCLUSIVE MODE");
+            // The table might have been partitioned in the meantime by another instance
+            PostgreSQLRangePartitioning existingPartitioning = readPartitioning(connection);
+            if (existingPartitioning != null) {
+                connection.commit();
+                return existingPartitioning;
+            }
+            try (ResultSet resultSet = statement.executeQuery("SELECT EXISTS (SELECT 1 FROM " + collectionNameStr + ")")) {
+                resultSet.next();
+                if (resultSet.getBoolean(1)) {
+                    logger.warn("The collection {} already contains entities and cannot be partitioned.", collectionName);
+                    connection.rollback();
+                    return null;
+                }
+            }
+            statement.executeUpdate("DROP TABLE " + collectionNameStr);
+            statement.executeUpdate("CREATE TABLE " + collectionNameStr + " (" +
+                "id text GENERATED ALWAYS AS  (object ->> 'id') STORED, " +
+                "object jsonb NOT NULL, " +
+                keyColumn + " bigint NOT NULL, " +
+                "PRIMARY KEY (id, " + keyColumn + ")) PARTITION BY RANGE (" + keyColumn + ")");
+            statement.executeUpdate("COMMENT ON TABLE " + collectionNameStr + " IS '" + description.replace("'", "''") + "'");
+            connection.commit();
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        logger.info("The collection {} has been partitioned by {} with ranges of {}.", collectionName, field, rangeSize);
+        for (PostgreSQLTypedColumn typedColumn : typedColumns.values()) {
+            if (!typedColumn.getField().equals(field)) {
+                createOrUpdateTypedColumn(typedColumn.getField(), typedColumn.getType());
+            }
+        }
+        PostgreSQLTextIndex textIndex = this.textIndex;
+        if (textIndex != null) {
+            createTextColumn(textIndex);
+        }
+        return newPartitioning;
+    }
+
+    /**
+     * @return the partitioning of the table described by its comment or null if the table isn't partitioned
+     */
+    private PostgreSQLRangePartitioning readPartitioning(Connection connection) throws SQLException {
+        try (PreparedStatement preparedStatement = connection.prepareStatement(
+            "SELECT obj_description(c.oid, 'pg_class') FROM pg_class c WHERE c.oid = to_regclass(?) AND c.relkind = 'p'")) {
+            preparedStatement.setString(1, collectionNameStr);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                if (resultSet.next() && resultSet.getString(1) != null) {
+                    Map<?, ?> description = objectMapper.readValue(resultSet.getString(1), Map.class);
+                    return new PostgreSQLRangePartitioning((String) description.get(PARTITIONING_FIELD),
+                        ((Number) description.get(PARTITIONING_RANGE_SIZE)).longValue());
+                } else {
+                    return null;
+                }
+            }
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Unable to read the partitioning of the collection " + collectionName, e);
+        }
+    }
+
+    private void setPartitioning(Connection connection, PostgreSQLRangePartitioning partitioning) throws SQLException {
+        listPartitions(connection).values().forEach(bounds -> partitioning.getPartitions().add(bounds[0]));
+        // The filters and sort orders on the partitioning field target the partition key to benefit from partition pruning
+        typedColumns.put(partitioning.getField(), partitioning.getKeyColumn());
+        this.partitioning = partitioning;
+        insertOrUpdateQuery = buildInsertOrUpdateQuery(1);
+    }
+
+    /**
+     * @return the bounds (inclusive start and exclusive end) of the partitions of the table by partition name
+     */
+    private Map<String, long[]> listPartitions(Connection connection) throws SQLException {
+        Map<String, long[]> partitions = new LinkedHashMap<>();
+        try (PreparedStatement preparedStatement = connection.prepareStatement(
+            "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = to_regclass(?)")) {
+            preparedStatement.setString(1, collectionNameStr);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    Matcher matcher = PARTITION_BOUND_PATTERN.matcher(resultSet.getString(2));
+                    if (matcher.find()) {
+                        partitions.put(resultSet.getString(1), new long[]{Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2))});
+                    }
+                }
+            }
+        }
+        return partitions;
+    }
+
+    private void createPartition(PostgreSQLRangePartitioning partitioning, long rangeStart) {
+        executeUpdateQuery("CREATE TABLE IF NOT EXISTS " + getCollectionNameStr(collectionName + "_p" + rangeStart) +
+            " PARTITION OF " + collectionNameStr + " FOR VALUES FROM (" + rangeStart + ") TO (" + (rangeStart + partitioning.getRangeSize()) + ")");
+        partitioning.getPartitions().add(rangeStart);
+    }
+
+    /**
+     * Creates the missing partitions of the entities to be saved
+     */
+    private void createMissingPartitions(Iterable<T> entities) {
+        PostgreSQLRangePartitioning partitioning = this.partitioning;
+        if (partitioning != null) {
+            Set<Long> rangeStarts = new TreeSet<>();
+            for (T entity : entities) {
+                rangeStarts.add(partitioning.getRangeStart(getPartitionKey(partitioning, entity)));
+            }
+            rangeStarts.removeAll(partitioning.getPartitions());
+            rangeStarts.forEach(rangeStart -> createPartition(partitioning, rangeStart));
+        }
+    }
+
+    private long getPartitionKey(PostgreSQLRangePartitioning partitioning, T entity) {
+        Object value;
+        try {
+            value = PropertyUtils.getProperty(entity, partitioning.getField());
+        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
+            throw new RuntimeException("Unable to read the partition key " + partitioning.getField() + " of the entity " + getId(entity), e);
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        } else {
+            throw new IllegalArgumentException("The partition key " + partitioning.getField() + " of the entity " + getId(entity) + " isn't a number: " + value);
+        }
+    }
+
     private boolean tableExists(Connection connection) throws SQLException {
         DatabaseMetaData meta = connection.getMetaData();
         ResultSet resultSet = meta.getTables(null, null, collectionName, new String[]{"TABLE"});
@@ -101,20 +518,72 @@ public class PostgreSQLCollection<T> extends AbstractCollection<T> implements Co
         return collectionName;
     }
 
+    /**
+     * Counts the entities matching the filter. The counts are cached for the configured {@link PostgreSQLCollectionConfig#getCountCacheTtlMs()}.
+     * If a limit is provided and the row estimate of the planner exceeds it by the configured
+     * {@link PostgreSQLCollectionConfig#getCountEstimateFactor()}, the limit is returned without counting.
+     * Otherwise, the count stops at the limit.
+     */
     @Override
     public long count(Filter filter, Integer limit) {
-        String query = "SELECT count(d.*) FROM (SELECT id FROM " + collectionNameStr +
-            " WHERE " + filterToWhereClause(filter) + " LIMIT " + limit + ") d";
-        try (Connection connection = ds.getConnection();
-             Statement statement = connection.createStatement();
-             ResultSet resultSet = statement.executeQuery(query)) {
-            if (resultSet.next()) {
-                return resultSet.getInt(1);
+        PostgreSQLFilterFactory filterFactory = filterFactory(filter);
+        String where = filterFactory.buildFilter(filter);
+        List<Object> parameters = filterFactory.getParameters();
+        String cacheKey = where + "\n" + parameters.stream().map(p -> p instanceof Object[] ? Arrays.toString((Object[]) p) : String.valueOf(p))
+            .collect(Collectors.joining("\n")) + "\n" + limit;
+        return countCache.get(collectionName, cacheKey, () -> {
+            if (limit != null && config.getCountEstimateFactor() > 0 &&
+                estimateRowCount(where, parameters) >= (long) limit * config.getCountEstimateFactor()) {
+                return limit;
             } else {
-                throw new RuntimeException("Unable to estimate the count for collection: " + collectionName + ", query: " + query);
+                return exactCount(where, parameters, limit);
+            }
+        });
+    }
+
+    private long exactCount(String where, List<Object> filterParameters, Integer limit) {
+        List<Object> parameters = new ArrayList<>(filterParameters);
+        String query;
+        if (limit != null) {
+            query = "SELECT count(*) FROM (SELECT id FROM " + collectionNameStr + " WHERE " + where + " LIMIT ?) d";
+            parameters.add(limit);
+        } else {
+            query = "SELECT count(*) FROM " + collectionNameStr + " WHERE " + where;
+        }
+        try (Connection connection = ds.getConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
+            PostgreSQLFilterFactory.bindParameters(statement, parameters);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    return resultSet.getLong(1);
+                } else {
+                    throw new RuntimeException("Unable to count the entities of the collection: " + collectionName + ", query: " + query);
+                }
+            }
+        } catch (SQLException e) {
+            throw toRuntimeException(e, query, null);
+        }
+    }
+
+    /**
+     * @return the number of rows matching the where clause estimated by the planner
+     */
+    private long estimateRowCount(String where, List<Object> parameters) {
+        String query = "EXPLAIN (FORMAT JSON) SELECT id FROM " + collectionNameStr + " WHERE " + where;
+        try (Connection connection = ds.getConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
+            PostgreSQLFilterFactory.bindParameters(statement, parameters);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    return objectMapper.readTree(resultSet.getString(1)).get(0).get("Plan").get("Plan Rows").asLong();
+                } else {
+                    throw new RuntimeException("Unable to estimate the count of the collection: " + collectionName + ", query: " + query);
+                }
             }
         } catch (SQLException e) {
             throw toRuntimeException(e, query, null);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Unable to parse the plan of the query: " + query, e);
         }
     }
 
@@ -128,88 +597,293 @@ public class PostgreSQLCollection<T> extends AbstractCollection<T> implements Co
         }
     }
 
+    /**
+     * Estimates the number of entities from the statistics of the table. The entities of the tables which have never
+     * been analyzed are counted
+     */
     @Override
     public long estimatedCount() {
-        String query = "SELECT reltuples AS estimate FROM pg_class WHERE relname = ?";
-        try {
-            try (Connection connection = ds.getConnection();
-                 PreparedStatement preparedStatement = connection.prepareStatement(query)) {
-                preparedStatement.setString(1, collectionName);
-                try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                    if (resultSet.next()) {
-                        return resultSet.getInt(1);
-                    } else {
-                        throw new RuntimeException("Unable to estimate the count for collection: " + collectionName + " , query: " + query);
-                    }
+        // The statistics of partitioned tables are the ones of their partitions. The tuple count of the tables which
+        // have never been analyzed is -1. The partitions created in advance stay empty and unanalyzed until their range is
+        // reached: the unanalyzed partitions are ignored and the entities are only counted if no partition has been analyzed
+        String query = partitioning == null ? "SELECT reltuples, reltuples < 0 FROM pg_class WHERE oid = to_regclass(?)" :
+            "SELECT COALESCE(SUM(GREATEST(c.reltuples, 0)), 0), COALESCE(bool_and(c.reltuples < 0), false) " +
+                "FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = to_regclass(?)";
+        boolean neverAnalyzed;
+        long estimate;
+        try (Connection connection = ds.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+            preparedStatement.setString(1, collectionNameStr);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                if (resultSet.next()) {
+                    estimate = (long) resultSet.getDouble(1);
+                    neverAnalyzed = resultSet.getBoolean(2);
+                } else {
+                    throw new RuntimeException("Unable to estimate the count for collection: " + collectionName + " , query: " + query);
                 }
             }
         } catch (SQLException e) {
             throw toRuntimeException(e, query, null);
         }
+        return neverAnalyzed ? count(Filters.empty(), null) : estimate;
     }
 
     @Override
     public Stream<T> find(Filter filter, SearchOrder order, Integer skip, Integer limit, int maxTime) {
-        String query = buildQuery(filter, order, skip, limit);
-        List<String> resultList = new ArrayList<>();
-        try (StreamingQuery sq = new StreamingQuery(ds, query, maxTime)) {
-            while (sq.resultSet.next()) {
-                resultList.add(sq.resultSet.getString(2));
+        return find(filter, order, skip, limit, maxTime, null);
+    }
+
+    private Stream<T> find(Filter filter, SearchOrder order, Integer skip, Integer limit, int maxTime, List<String> reduceFields) {
+        PostgreSQLFilterFactory filterFactory = filterFactory(filter);
+        String query = buildQuery(filterFactory, filter, order, skip, limit, reduceFields);
+        StreamingQuery sq = null;
+        try {
+            sq = new StreamingQuery(ds, query, filterFactory.getParameters(), maxTime, AdaptiveFetchSize.forQuery(limit, config));
+            // The results are fully read before returning so that the connection is released even if the caller doesn't
+            // close the stream. Large results are streamed by findLazy
+            List<T> result = new ArrayList<>();
+            while (sq.next()) {
+                result.add(decodeEntity(sq));
             }
+            sq.close();
+            return result.stream();
         } catch (SQLException e) {
+            safeClose(sq);
             throw toRuntimeException(e, query, maxTime);
+        } catch (RuntimeException e) {
+            safeClose(sq);
+            throw e;
         }
-        return resultList.stream().map(s -> {
-            try {
-                return objectMapper.readValue(s, entityClass);
-            } catch (JsonProcessingException e) {
-                throw new RuntimeException(e);
+    }
+
+    /**
+     * Streams the remaining rows of the query. The query is closed once the rows are consumed, when the stream is closed or
+     * when the stream becomes unreachable
+     */
+    private Stream<T> streamQuery(StreamingQuery sq) {
+        AtomicReference<Cleaner.Cleanable> cleanable = new AtomicReference<>();
+        ResultSetIterator<T> iterator = new ResultSetIterator<>(sq, this::decodeEntity, () -> {
+            if (cleanable.get() != null) {
+                cleanable.get().clean();
+            } else {
+                safeClose(sq);
             }
         });
+        if (iterator.hasNext()) {
+            cleanable.set(STREAM_CLEANER.register(iterator, () -> safeClose(sq)));
+        }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.IMMUTABLE | Spliterator.NONNULL | Spliterator.ORDERED), false)
+            .onClose(() -> {
+                if (cleanable.get() != null) {
+                    cleanable.get().clean();
+                }
+            });
+    }
+
+    /**
+     * Streams the remaining rows of the query, reading them ahead in a background thread while the consumer decodes them.
+     * The reading stops when the stream is closed or when it becomes unreachable
+     */
+    private Stream<T> streamQueryReadAhead(StreamingQuery sq) {
+        ReadAheadIterator<T> iterator = new ReadAheadIterator<>(sq, 2, config.getFindLazyReadAheadSize(), READ_AHEAD_EXECUTOR,
+            this::decodeEntity, this::safeClose);
+        Cleaner.Cleanable cleanable = STREAM_CLEANER.register(iterator, iterator.closeAction());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.IMMUTABLE | Spliterator.NONNULL | Spliterator.ORDERED), false)
+            .onClose(cleanable::clean);
+    }
+
+    private static ExecutorService createReadAheadExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        // The threads are released when the collections are idle
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread thread = new Thread(r, "PostgreSQLCollectionReadAhead-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Decodes the entity of the current row and records its size for the adaptation of the fetch size of the query
+     */
+    private T decodeEntity(StreamingQuery sq) throws SQLException {
+        byte[] bytes = sq.resultSet.getBytes(2);
+        sq.rowSize(bytes.length);
+        return decodeEntity(bytes);
+    }
+
+    /**
+     * Decodes the entity directly from the bytes of the jsonb column without creating an intermediate String. The jsonb
+     * values are transferred in binary format (see binaryTransferEnable in {@link PostgreSQLCollectionFactory}) once the
+     * statements are prepared on the server, in text format otherwise
+     */
+    private T decodeEntity(byte[] bytes) {
+        int offset = bytes.length > 0 && bytes[0] == JSONB_BINARY_FORMAT_VERSION ? 1 : 0;
+        try {
+            return entityReader.readValue(bytes, offset, bytes.length - offset);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
-    private String buildQuery(Filter filter, SearchOrder order, Integer skip, Integer limit) {
+    private String buildQuery(PostgreSQLFilterFactory filterFactory, Filter filter, SearchOrder order, Integer skip, Integer limit,
+                              List<String> reduceFields) {
         StringBuffer query = new StringBuffer();
-        query.append("SELECT * FROM ").append(collectionNameStr).append(" WHERE ").append(filterToWhereClause(filter));
+        if (reduceFields != null && !reduceFields.isEmpty()) {
+            query.append("SELECT id, ").append(buildProjection(reduceFields)).append(" AS object FROM ");
+        } else {
+            query.append("SELECT id, object FROM ");
+        }
+        query.append(collectionNameStr).append(" WHERE ").append(filterFactory.buildFilter(filter));
         if (order != null && !order.getFieldsSearchOrder().isEmpty()) {
             query.append(" ORDER BY ");
             query.append(order.getFieldsSearchOrder().stream()
-                .map(o -> PostgreSQLFilterFactory.formatField(o.attributeName, Object.class) + (o.order >= 0 ? " ASC" : " DESC"))
+                .map(o -> formatSortField(o.attributeName) + (o.order >= 0 ? " ASC" : " DESC"))
                 .collect(Collectors.joining(", ")));
         }
         if (skip != null) {
-            query.append(" OFFSET ").append(skip);
+            query.append(" OFFSET ").append(filterFactory.parameter(skip));
         }
         if (limit != null) {
-            query.append(" LIMIT ").append(limit);
+            query.append(" LIMIT ").append(filterFactory.parameter(limit));
         }
         if (logger.isDebugEnabled()) {
-            logger.debug("Executing query: " + query);
+            logger.debug("Executing query: " + query + ", parameters: " + filterFactory.getParameters());
         }
         return query.toString();
     }
 
     @Override
     public Stream<T> findLazy(Filter filter, SearchOrder order, Integer skip, Integer limit, int maxTime) {
-        String query = buildQuery(filter, order, skip, limit);
-        AtomicReference<StreamingQuery> queryRef = new AtomicReference<>();
+        PostgreSQLFilterFactory filterFactory = filterFactory(filter);
+        String query = buildQuery(filterFactory, filter, order, skip, limit, null);
+        StreamingQuery sq = null;
         try {
-            queryRef.set(new StreamingQuery(ds, query, maxTime));
-            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new ResultSetIterator(queryRef.get().resultSet),
-                    Spliterator.IMMUTABLE | Spliterator.NONNULL | Spliterator.ORDERED), false)
-                .map(s -> {
-                    try {
-                        return objectMapper.readValue(s, entityClass);
-                    } catch (JsonProcessingException e) {
-                        throw new RuntimeException(e);
-                    }
-                }).onClose(() -> safeClose(queryRef.get()));
+            sq = new StreamingQuery(ds, query, filterFactory.getParameters(), maxTime, AdaptiveFetchSize.forQuery(limit, config));
+            return config.getFindLazyReadAheadSize() > 0 ? streamQueryReadAhead(sq) : streamQuery(sq);
         } catch (SQLException e) {
-            safeClose(queryRef.get());
+            safeClose(sq);
             throw toRuntimeException(e, query, maxTime);
+        } catch (RuntimeException e) {
+            safeClose(sq);
+            throw e;
         }
     }
 
+    /**
+     * Keyset pagination: the page is selected by comparing the sort keys and the id to the ones of the last entity of the
+     * previous page instead of skipping the preceding rows. The sort keys are the same as the ones of find: the id column,
+     * the typed columns or the jsonb values of the fields. The continuation token contains the text representation of the
+     * sort keys and the id of the last entity of the page
+     */
+    @Override
+    public ResultPage<T> findAfter(Filter filter, SearchOrder order, String continuationToken, int limit, int maxTime) {
+        List<SearchOrder.FieldSearchOrder> fieldsSearchOrder = order != null ? order.getFieldsSearchOrder() : List.of();
+        List<String> sortKeys = fieldsSearchOrder.stream().map(o -> formatSortField(o.attributeName)).collect(Collectors.toList());
+        List<String> sortKeyCasts = fieldsSearchOrder.stream().map(o -> getSortKeyCast(o.attributeName)).collect(Collectors.toList());
+        PostgreSQLFilterFactory filterFactory = filterFactory(filter);
+        StringBuilder query = new StringBuilder("SELECT id, object");
+        for (String sortKey : sortKeys) {
+            query.append(", (").append(sortKey).append(")::text");
+        }
+        query.append(" FROM ").append(collectionNameStr).append(" WHERE (").append(filterFactory.buildFilter(filter)).append(")");
+        if (continuationToken != null) {
+            Map<String, Object> token = ContinuationToken.decode(order, continuationToken);
+            List<?> lastSortKeys = (List<?>) token.get(TOKEN_SORT_KEYS);
+            if (lastSortKeys == null || lastSortKeys.size() != sortKeys.size() || !(token.get(TOKEN_ID) instanceof String)) {
+                throw new IllegalArgumentException("Invalid continuation token: " + continuationToken);
+            }
+            query.append(" AND (").append(buildKeysetPredicate(filterFactory, sortKeys, sortKeyCasts, fieldsSearchOrder, lastSortKeys,
+                (String) token.get(TOKEN_ID))).append(")");
+        }
+        query.append(" ORDER BY ");
+        for (int i = 0; i < sortKeys.size(); i++) {
+            query.append(sortKeys.get(i)).append(fieldsSearchOrder.get(i).order >= 0 ? " ASC" : " DESC").append(", ");
+        }
+        // Fetch one extra row to determine whether a next page exists
+        query.append("id ASC LIMIT ").append(filterFactory.parameter(limit + 1));
+
+        List<T> results = new ArrayList<>();
+        List<String> lastRowSortKeys = new ArrayList<>();
+        String lastRowId = null;
+        boolean hasNext = false;
+        try (StreamingQuery sq = new StreamingQuery(ds, query.toString(), filterFactory.getParameters(), maxTime,
+            AdaptiveFetchSize.forQuery(limit + 1, config))) {
+            while (sq.next()) {
+                if (results.size() == limit) {
+                    hasNext = true;
+                    break;
+                }
+                results.add(decodeEntity(sq));
+                lastRowId = sq.resultSet.getString(1);
+                lastRowSortKeys.clear();
+                for (int i = 0; i < sortKeys.size(); i++) {
+                    lastRowSortKeys.add(sq.resultSet.getString(3 + i));
+                }
+            }
+        } catch (SQLException e) {
+            throw toRuntimeException(e, query.toString(), maxTime);
+        }
+        String nextToken = null;
+        if (hasNext) {
+            Map<String, Object> token = new LinkedHashMap<>();
+            token.put(TOKEN_SORT_KEYS, lastRowSortKeys);
+            token.put(TOKEN_ID, lastRowId);
+            nextToken = ContinuationToken.encode(order, token);
+        }
+        return new ResultPage<>(results, nextToken);
+    }
+
+    /**
+     * @return the cast converting the text representation of the sort key of the field back to the type of the sort key
+     * @see #formatSortField(String)
+     */
+    private String getSortKeyCast(String field) {
+        PostgreSQLTypedColumn typedColumn = typedColumns.get(field);
+        if (typedColumn != null) {
+            return "::" + typedColumn.getType().getSqlType();
+        } else {
+            return field.equals(AbstractIdentifiableObject.ID) ? "::text" : "::jsonb";
+        }
+    }
+
+    /**
+     * Builds the predicate selecting the rows following the provided sort keys and id according to the order of the query.
+     * Missing values (SQL NULL) are sorted last in ascending order and first in descending order, as PostgreSQL does by default
+     */
+    private static String buildKeysetPredicate(PostgreSQLFilterFactory filterFactory, List<String> sortKeys, List<String> sortKeyCasts,
+                                               List<SearchOrder.FieldSearchOrder> fieldsSearchOrder, List<?> lastSortKeys, String lastId) {
+        // The parameters are registered in the order of their placeholders, the alternatives are therefore built one after the other
+        List<String> alternatives = new ArrayList<>();
+        for (int i = 0; i <= sortKeys.size(); i++) {
+            StringBuilder alternative = new StringBuilder("(");
+            for (int j = 0; j < i; j++) {
+                Object lastValue = lastSortKeys.get(j);
+                alternative.append(sortKeys.get(j)).append(lastValue == null ? " IS NULL" : " = " + filterFactory.parameter(lastValue.toString()) + sortKeyCasts.get(j))
+                    .append(" AND ");
+            }
+            if (i == sortKeys.size()) {
+                alternative.append("id > ").append(filterFactory.parameter(lastId));
+            } else {
+                String sortKey = sortKeys.get(i);
+                Object lastValue = lastSortKeys.get(i);
+                boolean ascending = fieldsSearchOrder.get(i).order >= 0;
+                if (lastValue == null) {
+                    // Nothing follows the missing values in ascending order
+                    alternative.append(ascending ? "FALSE" : sortKey + " IS NOT NULL");
+                } else if (ascending) {
+                    alternative.append("(").append(sortKey).append(" > ").append(filterFactory.parameter(lastValue.toString())).append(sortKeyCasts.get(i))
+                        .append(" OR ").append(sortKey).append(" IS NULL)");
+                } else {
+                    alternative.append(sortKey).append(" < ").append(filterFactory.parameter(lastValue.toString())).append(sortKeyCasts.get(i));
+                }
+            }
+            alternatives.add(alternative.append(")").toString());
+        }
+        return String.join(" OR ", alternatives);
+    }
+
     private void safeClose(StreamingQuery streamingQuery) {
         try {
             if (streamingQuery != null) {
@@ -222,18 +896,82 @@ public class PostgreSQLCollection<T> extends AbstractCollection<T> implements Co
 
     @Override
     public Stream<T> findReduced(Filter filter, SearchOrder order, Integer skip, Integer limit, int maxTime, List<String> reduceFields) {
-        //TODO implement proper find reducer? Not sure how to handle this with serializations. Usage only in RTM executeAdvancedQuery
-        return find(filter, order, skip, limit, maxTime);
+        return find(filter, order, skip, limit, maxTime, reduceFields);
+    }
+
+    /**
+     * Builds the jsonb expression projecting the provided fields of the documents, like the inclusion projections of MongoDB.
+     * The id and the type information of the documents and their nested objects are always included. Missing fields are
+     * omitted from the projected documents. If a field and one of its sub-fields are both requested, the whole field is included.
+     * The sub-fields of a field that isn't an object (array, scalar or null) cannot be projected, the whole field is included
+     *
+     * @param reduceFields the fields to be included. Nested fields are separated by dots
+     * @return the projection expression
+     */
+    @SuppressWarnings("unchecked")
+    static String buildProjection(List<String> reduceFields) {
+        Map<String, Object> tree = new LinkedHashMap<>();
+        List<String> fields = new ArrayList<>(List.of(AbstractIdentifiableObject.ID, TYPE_FIELD));
+        fields.addAll(reduceFields);
+        for (String field : fields) {
+            Map<String, Object> node = tree;
+            String[] path = field.split("\\.");
+            for (int i = 0; i < path.length && node != null; i++) {
+                String key = path[i].equals("_id") ? "id" : path[i];
+                if (i == path.length - 1) {
+                    // Leaf: the whole value is included
+                    node.put(key, null);
+                } else {
+                    if (node.containsKey(key) && node.get(key) == null) {
+                        // The parent field is already fully included
+                        node = null;
+                    } else {
+                        node = (Map<String, Object>) node.computeIfAbsent(key, k -> {
+                            // The type information of the nested objects is required for their deserialization
+                            Map<String, Object> subTree = new LinkedHashMap<>();
+                            subTree.put(TYPE_FIELD, null);
+                            return subTree;
+                        });
+                    }
+                }
+            }
+        }
+        return buildProjection(List.of(), tree);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String buildProjection(List<String> parentPath, Map<String, Object> tree) {
+        StringBuilder projection = new StringBuilder("'{}'::jsonb");
+        tree.forEach((key, subTree) -> {
+            List<String> path = new ArrayList<>(parentPath);
+            path.add(key);
+            String value = "object #> " + path.stream().map(k -> "'" + k.replace("'", "''") + "'")
+                .collect(Collectors.joining(",", "ARRAY[", "]::text[]"));
+            String quotedKey = "'" + key.replace("'", "''") + "'";
+            projection.append(" || CASE WHEN ").append(value).append(" IS NULL THEN '{}'::jsonb");
+            if (subTree != null) {
+                // The sub-fields are only projected from objects, the arrays, scalars and JSON nulls are included whole
+                projection.append(" WHEN jsonb_typeof(").append(value).append(") <> 'object' THEN jsonb_build_object(")
+                    .append(quotedKey).append(", ").append(value).append(")");
+            }
+            String projectedValue = subTree == null ? value : buildProjection(path, (Map<String, Object>) subTree);
+            projection.append(" ELSE jsonb_build_object(").append(quotedKey).append(", ").append(projectedValue).append(") END");
+        });
+        return projection.toString();
     }
 
     @Override
     public List<String> distinct(String columnName, Filter filter) {
         Class fieldClass = getFieldClass(columnName);
+        PostgreSQLFilterFactory filterFactory = filterFactory(filter);
         StringBuffer query = new StringBuffer();
-        query.append("SELECT DISTINCT(").append(PostgreSQLFilterFactory.formatField(columnName, fieldClass)).append(") FROM ").append(collectionNameStr).append(" WHERE ").append(filterToWhereClause(filter));
-        try (StreamingQuery sq = new StreamingQuery(ds, query.toString())) {
+        // The distinct values are converted to text as the jsonb values might be transferred in binary format
+        query.append("SELECT d::text FROM (SELECT DISTINCT(").append(PostgreSQLFilterFactory.formatField(columnName, fieldClass)).append(") AS d FROM ")
+            .append(collectionNameStr).append(" WHERE ").append(filterFactory.buildFilter(filter)).append(") s");
+        try (StreamingQuery sq = new StreamingQuery(ds, query.toString(), filterFactory.getParameters(), 0,
+            AdaptiveFetchSize.forQuery(null, config))) {
             List<String> resultList = new ArrayList<>();
-            while (sq.resultSet.next()) {
+            while (sq.next()) {
                 resultList.add(sq.resultSet.getString(1));
             }
             return resultList;
@@ -242,10 +980,164 @@ public class PostgreSQLCollection<T> extends AbstractCollection<T> implements Co
         }
     }
 
+    /**
+     * Groups the rows by the jsonb values of the group fields and the time slice and reduces the numeric fields with
+     * sum, min and max. The entries of each map field are expanded with jsonb_each_text and summed by key in a
+     * dedicated grouping joined to the main one, the filtered rows being selected once in a common table expression
+     */
+    @Override
+    public Optional<List<GroupAggregationResult>> aggregate(GroupAggregationQuery query) {
+        PostgreSQLFilterFactory filterFactory = filterFactory(query.getFilter());
+        List<String> keys = new ArrayList<>();
+        StringBuilder selection = new StringBuilder("SELECT ");
+        for (int i = 0; i < query.getGroupFields().size(); i++) {
+            selection.append(PostgreSQLFilterFactory.formatField(query.getGroupFields().get(i), Object.class)).append(" AS g").append(i).append(", ");
+            keys.add("g" + i);
+        }
+        boolean timeSlicing = query.getTimeField() != null && query.getTimeSliceSize() > 0;
+        if (timeSlicing) {
+            // The origin and size are longs and can be inlined
+            String time = formatNumericField(query.getTimeField());
+            selection.append(time).append(" - mod(").append(time).append(" - ").append(query.getTimeOrigin()).append(", ")
+                .append(query.getTimeSliceSize()).append(") AS t, ");
+            keys.add("t");
+        }
+        selection.append("object FROM ").append(collectionNameStr).append(" WHERE ").append(filterFactory.buildFilter(query.getFilter()));
+        String groupBy = keys.isEmpty() ? "" : " GROUP BY " + String.join(", ", keys);
+
+        StringBuilder sql = new StringBuilder("WITH s AS (").append(selection).append("), a AS (SELECT ");
+        keys.forEach(k -> sql.append(k).append(", "));
+        for (int i = 0; i < query.getSumFields().size(); i++) {
+            sql.append("coalesce(sum(").append(formatJsonNumericField(query.getSumFields().get(i))).append("), 0) AS s").append(i).append(", ");
+        }
+        for (int i = 0; i < query.getMinFields().size(); i++) {
+            sql.append("min(").append(formatJsonNumericField(query.getMinFields().get(i))).append(") AS n").append(i).append(", ");
+        }
+        for (int i = 0; i < query.getMaxFields().size(); i++) {
+            sql.append("max(").append(formatJsonNumericField(query.getMaxFields().get(i))).append(") AS x").append(i).append(", ");
+        }
+        // The reduced fields are read from the jsonb objects as the typed columns aren't selected by the common table expression s.
+        // Without group key the aggregation of no row would return one row
+        sql.append("count(*) AS c FROM s").append(groupBy).append(" HAVING count(*) > 0)");
+        for (int i = 0; i < query.getMapSumFields().size(); i++) {
+            String map = PostgreSQLFilterFactory.formatField(query.getMapSumFields().get(i), Object.class);
+            String keyList = keys.stream().map(k -> k + ", ").collect(Collectors.joining());
+            sql.append(", m").append(i).append(" AS (SELECT ").append(keyList).append("jsonb_object_agg(k, v) AS m FROM (SELECT ").append(keyList)
+                .append("e.key AS k, sum(e.value::numeric) AS v FROM s, jsonb_each_text(CASE WHEN jsonb_typeof(").append(map)
+                .append(") = 'object' THEN ").append(map).append(" END) e GROUP BY ").append(keyList).append("e.key) d")
+                .append(groupBy).append(")");
+        }
+        // The jsonb values are converted to text as they might be transferred in binary format
+        sql.append(" SELECT a.*");
+        for (int i = 0; i < query.getGroupFields().size(); i++) {
+            sql.append(", a.g").append(i).append("::text AS gt").append(i);
+        }
+        for (int i = 0; i < query.getMapSumFields().size(); i++) {
+            sql.append(", m").append(i).append(".m::text AS m").append(i);
+        }
+        sql.append(" FROM a");
+        for (int i = 0; i < query.getMapSumFields().size(); i++) {
+            String m = "m" + i;
+            String join = keys.isEmpty() ? "true" : keys.stream().map(k -> "a." + k + " IS NOT DISTINCT FROM " + m + "." + k)
+                .collect(Collectors.joining(" AND "));
+            sql.append(" LEFT JOIN ").append(m).append(" ON ").append(join);
+        }
+
+        String queryString = sql.toString();
+        try (Connection connection = ds.getConnection();
+             PreparedStatement statement = connection.prepareStatement(queryString)) {
+            PostgreSQLFilterFactory.bindParameters(statement, filterFactory.getParameters());
+            List<GroupAggregationResult> results = new ArrayList<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    Map<String, Object> groupValues = new HashMap<>();
+                    for (int i = 0; i < query.getGroupFields().size(); i++) {
+                        // The values are read as json text to preserve their type. Missing fields are absent of the group values
+                        String value = resultSet.getString("gt" + i);
+                        if (value != null) {
+                            groupValues.put(query.getGroupFields().get(i), objectMapper.readValue(value, Object.class));
+                        }
+                    }
+                    GroupAggregationResult result = new GroupAggregationResult(groupValues, timeSlicing ? resultSet.getLong("t") : query.getTimeOrigin());
+                    for (int i = 0; i < query.getSumFields().size(); i++) {
+                        result.setSum(query.getSumFields().get(i), (Number) resultSet.getObject("s" + i));
+                    }
+                    for (int i = 0; i < query.getMinFields().size(); i++) {
+                        result.setMin(query.getMinFields().get(i), (Number) resultSet.getObject("n" + i));
+                    }
+                    for (int i = 0; i < query.getMaxFields().size(); i++) {
+                        result.setMax(query.getMaxFields().get(i), (Number) resultSet.getObject("x" + i));
+                    }
+                    for (int i = 0; i < query.getMapSumFields().size(); i++) {
+                        String mapSum = resultSet.getString("m" + i);
+                        result.setMapSum(query.getMapSumFields().get(i), mapSum != null ? objectMapper.readValue(mapSum, MAP_SUM_TYPE) : new HashMap<>());
+                    }
+                    results.add(result);
+                }
+            }
+            return Optional.of(results);
+        } catch (SQLException e) {
+            throw toRuntimeException(e, queryString, null);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Unable to parse the results of the aggregation query: " + queryString, e);
+        }
+    }
+
+    /**
+     * @return the bigint typed column of the field if any or the value of the field converted to numeric
+     */
+    private String formatNumericField(String field) {
+        PostgreSQLTypedColumn typedColumn = typedColumns.get(field);
+        if (typedColumn != null && typedColumn.getType() == PostgreSQLTypedColumn.Type.BIGINT) {
+            return typedColumn.getColumnName();
+        } else {
+            return formatJsonNumericField(field);
+        }
+    }
+
+    private static String formatJsonNumericField(String field) {
+        return "(" + PostgreSQLFilterFactory.formatFieldForValueAsText(field) + ")::numeric";
+    }
+
     @Override
     public void remove(Filter filter) {
-        executeUpdateQuery("DELETE FROM " + collectionNameStr +
-            " WHERE " + filterToWhereClause(filter));
+        PostgreSQLFilterFactory filterFactory = filterFactory(filter);
+        String query = "DELETE FROM " + collectionNameStr + " WHERE " + filterFactory.buildFilter(filter);
+        try (Connection connection = ds.getConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
+            PostgreSQLFilterFactory.bindParameters(statement, filterFactory.getParameters());
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            throw toRuntimeException(e, query, null);
+        } finally {
+            countCache.invalidate(collectionName);
+        }
+    }
+
+    /**
+     * Drops the partitions entirely below the value if the table is partitioned by the field. Only the entities of
+     * the partition containing the value are then deleted
+     */
+    @Override
+    public void removeLowerThan(String field, long value) {
+        PostgreSQLRangePartitioning partitioning = this.partitioning;
+        if (partitioning != null && partitioning.getField().equals(field)) {
+            try (Connection connection = ds.getConnection()) {
+                for (Map.Entry<String, long[]> partition : listPartitions(connection).entrySet()) {
+                    if (partition.getValue()[1] <= value) {
+                        partitioning.getPartitions().remove(partition.getValue()[0]);
+                        try (Statement statement = connection.createStatement()) {
+                            statement.executeUpdate("DROP TABLE IF EXISTS " + getCollectionNameStr(partition.getKey()));
+                        }
+                        logger.debug("Dropped the partition {} of the collection {}", partition.getKey(), collectionName);
+                    }
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException("Unable to drop the partitions of the collection " + collectionName, e);
+            }
+        }
+        // The filter on the partition key only scans the partitions containing values lower than the value
+        remove(Filters.lt(field, value));
     }
 
     @Override
@@ -253,44 +1145,179 @@ public class PostgreSQLCollection<T> extends AbstractCollection<T> implements Co
         if (getId(entity) == null) {
             setId(entity, new ObjectId());
         }
-        try (Connection connection = ds.getConnection();
-             PreparedStatement preparedStatement = connection.prepareStatement(insertOrUpdateQuery);) {
-            String jsonString = objectMapper.writeValueAsString(entity);
-            preparedStatement.setString(1, jsonString);
-            preparedStatement.setString(2, jsonString);
-            preparedStatement.executeUpdate();
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        } catch (JsonProcessingException e) {
+        try {
+            saveWithPartitioning(List.of(entity), () -> {
+                try (Connection connection = ds.getConnection();
+                     PreparedStatement preparedStatement = connection.prepareStatement(insertOrUpdateQuery);) {
+                    String jsonString = objectMapper.writeValueAsString(entity);
+                    preparedStatement.setString(1, jsonString);
+                    preparedStatement.executeUpdate();
+                }
+            });
+        } catch (SQLException | IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            countCache.invalidate(collectionName);
         }
         return entity;
     }
 
+    /**
+     * Saves the entities in bulk. Small bulks are saved with multi-row inserts, bulks reaching the configured
+     * {@link PostgreSQLCollectionConfig#getBulkCopyThreshold()} are copied into a staging table and merged with a single
+     * insert. If an entity is contained multiple times, the last occurrence is saved
+     */
     @Override
     public void save(Iterable<T> entities) {
-        try (Connection connection = ds.getConnection();
-             PreparedStatement preparedStatement = connection.prepareStatement(insertOrUpdateQuery);) {
-            entities.forEach(entity -> {
-                try {
-                    if (getId(entity) == null) {
-                        setId(entity, new ObjectId());
+        // A single upsert cannot affect the same row twice, the entities are therefore deduplicated by id
+        Map<ObjectId, T> entitiesById = new LinkedHashMap<>();
+        entities.forEach(entity -> {
+            if (getId(entity) == null) {
+                setId(entity, new ObjectId());
+            }
+            entitiesById.put(getId(entity), entity);
+        });
+        if (entitiesById.isEmpty()) {
+            return;
+        }
+        try {
+            saveWithPartitioning(entitiesById.values(), () -> {
+                try (Connection connection = ds.getConnection()) {
+                    if (entitiesById.size() >= config.getBulkCopyThreshold()) {
+                        copyAndMerge(connection, entitiesById.values());
+                    } else {
+                        insertMultiRows(connection, new ArrayList<>(entitiesById.values()));
                     }
-                    preparedStatement.clearParameters();
-                    String jsonString = objectMapper.writeValueAsString(entity);
-                    preparedStatement.setString(1, jsonString);
-                    preparedStatement.setString(2, jsonString);
-                    preparedStatement.addBatch();
-                    ;
-                } catch (SQLException ex) {
-                    throw new RuntimeException(ex);
-                } catch (JsonProcessingException ex) {
-                    throw new RuntimeException(ex);
                 }
             });
-            preparedStatement.executeBatch();
-        } catch (SQLException e) {
+        } catch (SQLException | IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            countCache.invalidate(collectionName);
+        }
+    }
+
+    private interface SaveAction {
+        void run() throws SQLException, IOException;
+    }
+
+    /**
+     * Creates the missing partitions of the entities and saves them. The table may have been partitioned or its
+     * partitions dropped by another instance of the collection: if the save fails on the partition key, the partitioning
+     * of the table is read again and the save retried once
+     */
+    private void saveWithPartitioning(Iterable<T> entities, SaveAction action) throws SQLException, IOException {
+        createMissingPartitions(entities);
+        try {
+            action.run();
+        } catch (SQLException e) {
+            if (!isPartitioningException(e)) {
+                throw e;
+            }
+            logger.info("Saving into the collection {} failed on its partitioning, reading its partitioning again.", collectionName);
+            refreshPartitioning();
+            createMissingPartitions(entities);
+            action.run();
+        }
+    }
+
+    /**
+     * @return true if the exception may be caused by an outdated partitioning: missing partition key (not_null_violation),
+     * missing partition (check_violation) or conflict target not matching the primary key (invalid_column_reference)
+     */
+    private static boolean isPartitioningException(SQLException e) {
+        for (SQLException current = e; current != null; current = current.getNextException()) {
+            String state = current.getSQLState();
+            if ("23502".equals(state) || "23514".equals(state) || "42P10".equals(state)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void refreshPartitioning() throws SQLException {
+        try (Connection connection = ds.getConnection()) {
+            PostgreSQLRangePartitioning existingPartitioning = readPartitioning(connection);
+            if (existingPartitioning != null) {
+                setPartitioning(connection, existingPartitioning);
+            } else {
+                clearPartitioning();
+            }
+        }
+    }
+
+    private void clearPartitioning() {
+        PostgreSQLRangePartitioning partitioning = this.partitioning;
+        if (partitioning != null) {
+            typedColumns.remove(partitioning.getField());
+            this.partitioning = null;
+            insertOrUpdateQuery = buildInsertOrUpdateQuery(1);
+        }
+    }
+
+    private void insertMultiRows(Connection connection, List<T> entities) throws SQLException, JsonProcessingException {
+        int fullStatementCount = entities.size() / MAX_ROWS_PER_INSERT;
+        if (fullStatementCount > 0) {
+            try (PreparedStatement preparedStatement = connection.prepareStatement(buildInsertOrUpdateQuery(MAX_ROWS_PER_INSERT))) {
+                for (int i = 0; i < fullStatementCount; i++) {
+                    bindEntities(preparedStatement, entities.subList(i * MAX_ROWS_PER_INSERT, (i + 1) * MAX_ROWS_PER_INSERT));
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+            }
+        }
+        List<T> remainingEntities = entities.subList(fullStatementCount * MAX_ROWS_PER_INSERT, entities.size());
+        if (!remainingEntities.isEmpty()) {
+            try (PreparedStatement preparedStatement = connection.prepareStatement(buildInsertOrUpdateQuery(remainingEntities.size()))) {
+                bindEntities(preparedStatement, remainingEntities);
+                preparedStatement.executeUpdate();
+            }
+        }
+    }
+
+    private void bindEntities(PreparedStatement preparedStatement, List<T> entities) throws SQLException, JsonProcessingException {
+        for (int i = 0; i < entities.size(); i++) {
+            preparedStatement.setString(i + 1, objectMapper.writeValueAsString(entities.get(i)));
+        }
+    }
+
+    private void copyAndMerge(Connection connection, Iterable<T> entities) throws SQLException, IOException {
+        connection.setAutoCommit(false);
+        try {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TEMP TABLE IF NOT EXISTS " + BULK_SAVE_TABLE + " (object jsonb NOT NULL) ON COMMIT DELETE ROWS");
+            }
+            PGConnection pgConnection = connection.unwrap(PGConnection.class);
+            try (DataOutputStream out = new DataOutputStream(new PGCopyOutputStream(pgConnection,
+                "COPY " + BULK_SAVE_TABLE + " (object) FROM STDIN (FORMAT binary)", 1 << 16))) {
+                // Header: signature, flags and length of the header extension
+                out.write(COPY_BINARY_SIGNATURE);
+                out.writeInt(0);
+                out.writeInt(0);
+                for (T entity : entities) {
+                    byte[] json = objectMapper.writeValueAsBytes(entity);
+                    out.writeShort(1);
+                    out.writeInt(json.length + 1);
+                    out.writeByte(JSONB_BINARY_FORMAT_VERSION);
+                    out.write(json);
+                }
+                // Trailer
+                out.writeShort(-1);
+            }
+            try (Statement statement = connection.createStatement()) {
+                PostgreSQLRangePartitioning partitioning = this.partitioning;
+                String merge = partitioning == null ?
+                    "INSERT INTO " + collectionNameStr + " (object) SELECT object FROM " + BULK_SAVE_TABLE :
+                    "INSERT INTO " + collectionNameStr + " (object, " + partitioning.getKeyColumn().getColumnName() + ") SELECT object, " +
+                        partitioning.getKeyExpression() + " FROM " + BULK_SAVE_TABLE;
+                statement.executeUpdate(merge + " \n" + onConflictUpdate());
+            }
+            connection.commit();
+        } catch (SQLException | IOException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
         }
     }
 
@@ -348,7 +1375,9 @@ public class PostgreSQLCollection<T> extends AbstractCollection<T> implements Co
                 if (fieldClass.getClass().equals(Object.class)) {
                     throw new UnsupportedOperationException("Creation of index on fields with resolved type 'Object' is not supported, use the index creation method specifying the type explicitly");
                 }
-                index.append("(").append(PostgreSQLFilterFactory.formatField(fieldName, fieldClass)).append(") ").append(order).append(",");
+                PostgreSQLTypedColumn typedColumn = typedColumns.get(fieldName);
+                String indexedValue = typedColumn != null ? typedColumn.getColumnName() : PostgreSQLFilterFactory.formatField(fieldName, fieldClass);
+                index.append("(").append(indexedValue).append(") ").append(order).append(",");
             });
             index.deleteCharAt(index.length() - 1).append(")");
             createIndex(indexId.toString(), index.toString());
@@ -456,14 +1485,19 @@ public class PostgreSQLCollection<T> extends AbstractCollection<T> implements Co
     @Override
     public void rename(String newName) {
         executeUpdateQuery("ALTER TABLE " + collectionNameStr + " RENAME TO " + newName);
+        countCache.invalidate(collectionName);
+        countCache.invalidate(newName);
         collectionName = newName;
         collectionNameStr = getCollectionNameStr(collectionName);
+        insertOrUpdateQuery = buildInsertOrUpdateQuery(1);
     }
 
     @Override
     public void drop() {
         executeUpdateQuery("DROP TABLE " + collectionNameStr);
-
+        countCache.invalidate(collectionName);
+        textIndex = null;
+        clearPartitioning();
     }
 
     @Override
@@ -485,10 +1519,6 @@ public class PostgreSQLCollection<T> extends AbstractCollection<T> implements Co
         }
     }
 
-    private String filterToWhereClause(Filter filter) {
-        return new PostgreSQLFilterFactory().buildFilter(filter);
-    }
-
     public static boolean isTimeoutException(SQLException e) {
         // This is the "official" Postgres-specific error/state code for "query_canceled" (which is
         // what timeouts result in), see https://www.postgresql.org/docs/current/errcodes-appendix.html
@@ -0,0 +1,160 @@
+package step.core.collections.postgresql;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+public class PostgreSQLCollectionConfig {
+
+    public static final String BULK_COPY_THRESHOLD = "bulkCopyThreshold";
+    public static final String COUNT_CACHE_TTL_MS = "countCacheTtlMs";
+    public static final String COUNT_ESTIMATE_FACTOR = "countEstimateFactor";
+    public static final String SHARED_OBJECT_READERS = "sharedObjectReaders";
+    public static final String INITIAL_FETCH_SIZE = "initialFetchSize";
+    public static final String MAX_FETCH_SIZE = "maxFetchSize";
+    public static final String FETCH_MEMORY_BUDGET_BYTES = "fetchMemoryBudgetBytes";
+    public static final String FIND_LAZY_READ_AHEAD_SIZE = "findLazyReadAheadSize";
+    // Prefix of the properties declaring the typed columns of a collection, i.e. typedColumns.<collection>=begin:bigint,attributes.eId:text
+    public static final String TYPED_COLUMNS_PREFIX = "typedColumns.";
+
+    // Minimum number of entities saved by save(Iterable) to use COPY instead of multi-row inserts
+    private int bulkCopyThreshold = 1000;
+    // Time to live of the cached counts, 0 to disable the cache
+    private long countCacheTtlMs = 5000;
+    // The bounded counts return their limit without counting if the row estimate of the planner exceeds the limit by
+    // this factor, 0 to always count
+    private int countEstimateFactor = 10;
+    // Decode the entities with readers shared by all the collections of the same entity class instead of one reader per collection instance
+    private boolean sharedObjectReaders = true;
+    // Number of rows of the first fetch of the queries without limit. The fetch size of the queries with limit starts from the limit
+    private int initialFetchSize = 100;
+    // Maximum number of rows per fetch. The fetch size doubles at each fetch up to this size
+    private int maxFetchSize = 10000;
+    // Maximum size of the rows of a fetch estimated from the average size of the rows already read, 0 for no budget
+    private long fetchMemoryBudgetBytes = 32 * 1024 * 1024;
+    // Number of rows read ahead by a background thread while the entities returned by findLazy are decoded, 0 to disable
+    private int findLazyReadAheadSize = 0;
+    // Typed columns by field by collection name
+    private final Map<String, Map<String, PostgreSQLTypedColumn>> typedColumns = new HashMap<>();
+
+    public static PostgreSQLCollectionConfig fromProperties(Properties properties) {
+        PostgreSQLCollectionConfig config = new PostgreSQLCollectionConfig();
+        if (properties.containsKey(BULK_COPY_THRESHOLD)) {
+            config.setBulkCopyThreshold(Integer.parseInt(properties.getProperty(BULK_COPY_THRESHOLD)));
+        }
+        if (properties.containsKey(COUNT_CACHE_TTL_MS)) {
+            config.setCountCacheTtlMs(Long.parseLong(properties.getProperty(COUNT_CACHE_TTL_MS)));
+        }
+        if (properties.containsKey(COUNT_ESTIMATE_FACTOR)) {
+            config.setCountEstimateFactor(Integer.parseInt(properties.getProperty(COUNT_ESTIMATE_FACTOR)));
+        }
+        if (properties.containsKey(SHARED_OBJECT_READERS)) {
+            config.setSharedObjectReaders(Boolean.parseBoolean(properties.getProperty(SHARED_OBJECT_READERS)));
+        }
+        if (properties.containsKey(INITIAL_FETCH_SIZE)) {
+            config.setInitialFetchSize(Integer.parseInt(properties.getProperty(INITIAL_FETCH_SIZE)));
+        }
+        if (properties.containsKey(MAX_FETCH_SIZE)) {
+            config.setMaxFetchSize(Integer.parseInt(properties.getProperty(MAX_FETCH_SIZE)));
+        }
+        if (properties.containsKey(FETCH_MEMORY_BUDGET_BYTES)) {
+            config.setFetchMemoryBudgetBytes(Long.parseLong(properties.getProperty(FETCH_MEMORY_BUDGET_BYTES)));
+        }
+        if (properties.containsKey(FIND_LAZY_READ_AHEAD_SIZE)) {
+            config.setFindLazyReadAheadSize(Integer.parseInt(properties.getProperty(FIND_LAZY_READ_AHEAD_SIZE)));
+        }
+        for (String propertyName : properties.stringPropertyNames()) {
+            if (propertyName.startsWith(TYPED_COLUMNS_PREFIX)) {
+                String collectionName = propertyName.substring(TYPED_COLUMNS_PREFIX.length());
+                PostgreSQLTypedColumn.parse(properties.getProperty(propertyName)).values()
+                    .forEach(c -> config.addTypedColumn(collectionName, c.getField(), c.getType()));
+            }
+        }
+        return config;
+    }
+
+    public int getBulkCopyThreshold() {
+        return bulkCopyThreshold;
+    }
+
+    public PostgreSQLCollectionConfig setBulkCopyThreshold(int bulkCopyThreshold) {
+        this.bulkCopyThreshold = bulkCopyThreshold;
+        return this;
+    }
+
+    public long getCountCacheTtlMs() {
+        return countCacheTtlMs;
+    }
+
+    public PostgreSQLCollectionConfig setCountCacheTtlMs(long countCacheTtlMs) {
+        this.countCacheTtlMs = countCacheTtlMs;
+        return this;
+    }
+
+    public int getCountEstimateFactor() {
+        return countEstimateFactor;
+    }
+
+    public PostgreSQLCollectionConfig setCountEstimateFactor(int countEstimateFactor) {
+        this.countEstimateFactor = countEstimateFactor;
+        return this;
+    }
+
+    public boolean isSharedObjectReaders() {
+        return sharedObjectReaders;
+    }
+
+    public PostgreSQLCollectionConfig setSharedObjectReaders(boolean sharedObjectReaders) {
+        this.sharedObjectReaders = sharedObjectReaders;
+        return this;
+    }
+
+    public int getInitialFetchSize() {
+        return initialFetchSize;
+    }
+
+    public PostgreSQLCollectionConfig setInitialFetchSize(int initialFetchSize) {
+        this.initialFetchSize = initialFetchSize;
+        return this;
+    }
+
+    public int getMaxFetchSize() {
+        return maxFetchSize;
+    }
+
+    public PostgreSQLCollectionConfig setMaxFetchSize(int maxFetchSize) {
+        this.maxFetchSize = maxFetchSize;
+        return this;
+    }
+
+    public long getFetchMemoryBudgetBytes() {
+        return fetchMemoryBudgetBytes;
+    }
+
+    public PostgreSQLCollectionConfig setFetchMemoryBudgetBytes(long fetchMemoryBudgetBytes) {
+        this.fetchMemoryBudgetBytes = fetchMemoryBudgetBytes;
+        return this;
+    }
+
+    public int getFindLazyReadAheadSize() {
+        return findLazyReadAheadSize;
+    }
+
+    public PostgreSQLCollectionConfig setFindLazyReadAheadSize(int findLazyReadAheadSize) {
+        this.findLazyReadAheadSize = findLazyReadAheadSize;
+        return this;
+    }
+
+    /**
+     * @param collectionName the name of the collection
+     * @return the typed columns declared for the collection by field
+     */
+    public Map<String, PostgreSQLTypedColumn> getTypedColumns(String collectionName) {
+        return typedColumns.getOrDefault(collectionName, Map.of());
+    }
+
+    public PostgreSQLCollectionConfig addTypedColumn(String collectionName, String field, PostgreSQLTypedColumn.Type type) {
+        typedColumns.computeIfAbsent(collectionName, k -> new HashMap<>()).put(field, new PostgreSQLTypedColumn(field, type));
+        return this;
+    }
+}
@@ -34,19 +34,25 @@ import java.util.Properties;
 public class PostgreSQLCollectionFactory implements CollectionFactory {
 
     private static final Logger logger = LoggerFactory.getLogger(PostgreSQLCollectionFactory.class);
+    // Type OID of jsonb
+    private static final int JSONB_OID = 3802;
 
     private final HikariDataSource ds;
+    private final PostgreSQLCollectionConfig collectionConfig;
+    private final PostgreSQLCountCache countCache;
 
     public PostgreSQLCollectionFactory(Properties properties) {
         super();
 
         ds = createConnectionPool(properties);
+        collectionConfig = PostgreSQLCollectionConfig.fromProperties(properties);
+        countCache = new PostgreSQLCountCache(collectionConfig.getCountCacheTtlMs());
     }
 
     @Override
     public <T> Collection<T> getCollection(String name, Class<T> entityClass) {
         try {
-            return new PostgreSQLCollection<T>(ds, name, entityClass);
+            return new PostgreSQLCollection<T>(ds, name, entityClass, collectionConfig, countCache);
         } catch (SQLException e) {
             throw new RuntimeException("Unable to get Jdbc Collection", e);
         }
@@ -56,7 +62,7 @@ public class PostgreSQLCollectionFactory implements CollectionFactory {
     public Collection<EntityVersion> getVersionedCollection(String name) {
         try {
             return new PostgreSQLCollection(ds, name + CollectionFactory.VERSION_COLLECTION_SUFFIX,
-                EntityVersion.class);
+                EntityVersion.class, collectionConfig, countCache);
         } catch (SQLException e) {
             throw new RuntimeException("Unable to get Jdbc Collection", e);
         }
@@ -80,6 +86,12 @@ public class PostgreSQLCollectionFactory implements CollectionFactory {
         config.addDataSourceProperty("cachePrepStmts", "true");
         config.addDataSourceProperty("prepStmtCacheSize", "250");
         config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        // The statements of the collections are parameterized and reused by SQL text. The PostgreSQL driver switches
+        // to named server-side statements after prepareThreshold executions and caches them per connection
+        config.addDataSourceProperty("prepareThreshold", properties.getProperty("prepareThreshold", "5"));
+        config.addDataSourceProperty("preparedStatementCacheQueries", properties.getProperty("preparedStatementCacheQueries", "256"));
+        // Receive the jsonb values in binary format. The entities are decoded from the bytes without text conversion
+        config.addDataSourceProperty("binaryTransferEnable", properties.getProperty("binaryTransferEnable", String.valueOf(JSONB_OID)));
         // Just to make the default explicit: every connection acquired from the data source will initially have auto-commit on.
         // (this is also the case if the connection is re-used: it will be reset with auto-commit on before being returned)
         config.setAutoCommit(true);
@@ -21,6 +21,7 @@ package step.core.collections.postgresql;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import step.core.accessors.DefaultJacksonMapperProvider;
 import step.core.collections.serialization.DottedKeyMap;
@@ -29,11 +30,16 @@ import step.core.collections.serialization.DottedMapKeySerializer;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 class PostgreSQLCollectionJacksonMapperProvider {
 
     public static List<Module> modules = new ArrayList<>();
 
+    // Readers shared by the collection instances. They are rebuilt if modules have been registered in the meantime
+    private static volatile SharedReaders sharedReaders;
+
     static {
         modules.add(new DefaultAccessorModule());
     }
@@ -45,6 +51,37 @@ class PostgreSQLCollectionJacksonMapperProvider {
         return objectMapper;
     }
 
+    /**
+     * @param entityClass the class of the entities
+     * @return the reader of the class shared by all the collections. Unlike the object mappers of the collection
+     * instances, its deserializers are only built once
+     */
+    static ObjectReader getSharedObjectReader(Class<?> entityClass) {
+        SharedReaders readers = sharedReaders;
+        if (readers == null || readers.moduleCount != modules.size()) {
+            synchronized (PostgreSQLCollectionJacksonMapperProvider.class) {
+                readers = sharedReaders;
+                if (readers == null || readers.moduleCount != modules.size()) {
+                    readers = new SharedReaders(modules.size(), getObjectMapper());
+                    sharedReaders = readers;
+                }
+            }
+        }
+        return readers.readers.computeIfAbsent(entityClass, readers.objectMapper::readerFor);
+    }
+
+    private static class SharedReaders {
+
+        private final int moduleCount;
+        private final ObjectMapper objectMapper;
+        private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+
+        private SharedReaders(int moduleCount, ObjectMapper objectMapper) {
+            this.moduleCount = moduleCount;
+            this.objectMapper = objectMapper;
+        }
+    }
+
     private static class DefaultAccessorModule extends SimpleModule {
 
         private static final long serialVersionUID = 5544301456563146100L;
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections.postgresql;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches the counts of the collections of a factory for a short time. The counts of a collection are invalidated by
+ * the writes performed through the collections of the factory, the writes performed by other processes are only
+ * reflected after the expiry of the cached counts.
+ */
+class PostgreSQLCountCache {
+
+    // Maximum number of cached counts per collection. The cache of a collection is cleared when it is reached
+    private static final int MAX_ENTRIES_PER_COLLECTION = 1000;
+
+    private final long ttlMs;
+    private final Map<String, CollectionCounts> countsByCollection = new ConcurrentHashMap<>();
+
+    /**
+     * @param ttlMs the time to live of the cached counts in milliseconds, 0 to disable the cache
+     */
+    PostgreSQLCountCache(long ttlMs) {
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * @param collectionName the name of the collection
+     * @param key            the key of the count, i.e. the query and its parameters
+     * @param counter        computes the count if it isn't cached
+     * @return the cached or computed count
+     */
+    long get(String collectionName, String key, LongSupplier counter) {
+        if (ttlMs <= 0) {
+            return counter.getAsLong();
+        }
+        CollectionCounts collectionCounts = countsByCollection.computeIfAbsent(collectionName, k -> new CollectionCounts());
+        long now = System.currentTimeMillis();
+        CachedCount cachedCount = collectionCounts.counts.get(key);
+        if (cachedCount != null && now - cachedCount.timestamp < ttlMs) {
+            return cachedCount.count;
+        }
+        // The count is only cached if the collection hasn't been modified in the meantime
+        long generation = collectionCounts.generation.get();
+        long count = counter.getAsLong();
+        if (collectionCounts.generation.get() == generation) {
+            if (collectionCounts.counts.size() >= MAX_ENTRIES_PER_COLLECTION) {
+                collectionCounts.counts.clear();
+            }
+            collectionCounts.counts.put(key, new CachedCount(count, now));
+        }
+        return count;
+    }
+
+    /**
+     * Invalidates the cached counts of a collection
+     *
+     * @param collectionName the name of the modified collection
+     */
+    void invalidate(String collectionName) {
+        if (ttlMs > 0) {
+            CollectionCounts collectionCounts = countsByCollection.get(collectionName);
+            if (collectionCounts != null) {
+                collectionCounts.generation.incrementAndGet();
+                collectionCounts.counts.clear();
+            }
+        }
+    }
+
+    private static class CollectionCounts {
+
+        private final AtomicLong generation = new AtomicLong();
+        private final Map<String, CachedCount> counts = new ConcurrentHashMap<>();
+    }
+
+    private static class CachedCount {
+
+        private final long count;
+        private final long timestamp;
+
+        private CachedCount(long count, long timestamp) {
+            this.count = count;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -24,18 +24,68 @@ import org.bson.types.ObjectId;
 import step.core.accessors.AbstractIdentifiableObject;
 import step.core.collections.Filter;
 import step.core.collections.Filters;
+import step.core.collections.FulltextTokenizer;
 import step.core.collections.filters.*;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+/**
+ * Builds the where clauses of the PostgreSQL collections. The values of the filters are not inlined in the SQL but
+ * replaced by bind parameters, so that the SQL only depends on the shape of the filter and the prepared statements and
+ * query plans can be reused by the driver and the server. The values are collected in the order of the placeholders
+ * and have to be bound with {@link #bindParameters(PreparedStatement, List)}.
+ * <p>
+ * The filters on the fields declared as {@link PostgreSQLTypedColumn} are evaluated against the typed columns with
+ * typed parameters when the type of the value matches the type of the column, the other filters are evaluated against
+ * the jsonb object. The {@link Fulltext} filters are evaluated against the {@link PostgreSQLTextIndex} of the collection.
+ * <p>
+ * A new instance has to be used for each query.
+ */
 public class PostgreSQLFilterFactory implements Filters.FilterFactory<String> {
 
     private static final ObjectMapper OBJECT_MAPPER = PostgreSQLCollectionJacksonMapperProvider.getObjectMapper();
     private static final Pattern p = Pattern.compile("([^.]+)");
 
+    private final List<Object> parameters = new ArrayList<>();
+    private final Map<String, PostgreSQLTypedColumn> typedColumns;
+    private final PostgreSQLTextIndex textIndex;
+
+    public PostgreSQLFilterFactory() {
+        this(Map.of());
+    }
+
+    /**
+     * @param typedColumns the typed columns of the collection by field
+     */
+    public PostgreSQLFilterFactory(Map<String, PostgreSQLTypedColumn> typedColumns) {
+        this(typedColumns, null);
+    }
+
+    /**
+     * @param typedColumns the typed columns of the collection by field
+     * @param textIndex    the text index of the collection. If null the {@link Fulltext} filters are rejected
+     */
+    public PostgreSQLFilterFactory(Map<String, PostgreSQLTypedColumn> typedColumns, PostgreSQLTextIndex textIndex) {
+        this.typedColumns = typedColumns;
+        this.textIndex = textIndex;
+    }
+
+    /**
+     * @return the values of the bind parameters of the filters built by this factory, in the order of their placeholders
+     */
+    public List<Object> getParameters() {
+        return parameters;
+    }
+
     @Override
     public String buildFilter(Filter filter) {
         List<String> childerPojoFilters;
@@ -47,6 +97,11 @@ public class PostgreSQLFilterFactory implements Filters.FilterFactory<String> {
             childerPojoFilters = null;
         }
 
+        String typedColumnFilter = buildTypedColumnFilter(filter);
+        if (typedColumnFilter != null) {
+            return typedColumnFilter;
+        }
+
         if (filter instanceof And) {
             return subQueryWithChildren(childerPojoFilters, "AND");
         } else if (filter instanceof Or) {
@@ -67,50 +122,100 @@ public class PostgreSQLFilterFactory implements Filters.FilterFactory<String> {
             } else {
                 if (expectedValue instanceof ObjectId) {
                     expectedValue = ((ObjectId) expectedValue).toHexString();
-                } else if (expectedValue instanceof String) {
-                    expectedValue = escapeValue((String) expectedValue);
                 }
-                return formattedFieldName + " = '" + expectedValue + "'";
+                // Non-string values are compared as jsonb
+                String cast = (expectedValue instanceof String) ? "" : "::jsonb";
+                return formattedFieldName + " = " + parameter(expectedValue.toString()) + cast;
             }
         } else if (filter instanceof Regex) {
             Regex regexFilter = (Regex) filter;
             String operator = (regexFilter.isCaseSensitive()) ? " ~ " : " ~* ";
-            return formatFieldForValueAsText(regexFilter.getField()) + operator + "'" + escapeValue(regexFilter.getExpression()) + "'";
+            return formatFieldForValueAsText(regexFilter.getField()) + operator + parameter(regexFilter.getExpression());
         } else if (filter instanceof Gt) {
             Gt gtFilter = (Gt) filter;
             return formatField(gtFilter.getField(), true) + " IS NOT NULL AND "
-                + formatField(gtFilter.getField(), false) + " > '" + gtFilter.getValue() + "'";
+                + formatField(gtFilter.getField(), false) + " > " + parameter(String.valueOf(gtFilter.getValue())) + "::jsonb";
         } else if (filter instanceof Gte) {
             Gte gteFilter = (Gte) filter;
             return formatField(gteFilter.getField(), true) + " IS NOT NULL AND "
-                + formatField(gteFilter.getField(), false) + " >= '" + gteFilter.getValue() + "'";
+                + formatField(gteFilter.getField(), false) + " >= " + parameter(String.valueOf(gteFilter.getValue())) + "::jsonb";
         } else if (filter instanceof Lt) {
             Lt ltFilter = (Lt) filter;
             return formatField(ltFilter.getField(), true) + " IS NOT NULL AND "
-                + formatField(ltFilter.getField(), false) + " < '" + ltFilter.getValue() + "'";
+                + formatField(ltFilter.getField(), false) + " < " + parameter(String.valueOf(ltFilter.getValue())) + "::jsonb";
         } else if (filter instanceof Lte) {
             Lte lteFilter = (Lte) filter;
             return formatField(lteFilter.getField(), true) + " IS NOT NULL AND "
-                + formatField(lteFilter.getField(), false) + " <= '" + lteFilter.getValue() + "'";
+                + formatField(lteFilter.getField(), false) + " <= " + parameter(String.valueOf(lteFilter.getValue())) + "::jsonb";
         } else if (filter instanceof Exists) {
             Exists existsFilter = (Exists) filter;
             return formatField(existsFilter.getField(), false) + " IS NOT NULL ";
         } else if (filter instanceof In) {
             In inFilter = (In) filter;
             //In filter values implementation only support comparison as Strings, so the field and values are formated to string
-            String values = inFilter.getValues().stream()
-                .map(this::formatInValue) // Escape single quotes for SQL
-                .collect(Collectors.joining(",", "(", ")"));
-            return formatField(inFilter.getField(), true) + " IN " + values + " ";
+            //The values are bound as a single text array so that the SQL doesn't depend on the number of values
+            String[] values = inFilter.getValues().stream()
+                .map(this::formatInValue)
+                .toArray(String[]::new);
+            return formatField(inFilter.getField(), true) + " = ANY(" + parameter(values) + ") ";
         } else if (filter instanceof Includes) {
             Includes includesFilter = (Includes) filter;
             // Use JSONB @> containment to check if the array field contains the given element (GIN-index friendly)
             return formatField(includesFilter.getField(), List.class) + " @> " + formatIncludesValue(includesFilter.getExpectedValue());
+        } else if (filter instanceof Fulltext) {
+            if (textIndex == null) {
+                throw new IllegalArgumentException("Fulltext filters require a text index, see Collection#createOrUpdateTextIndex");
+            }
+            // The words are split like in the other implementations and matched with an AND
+            Set<String> words = FulltextTokenizer.tokenize(((Fulltext) filter).getExpression());
+            return words.isEmpty() ? "TRUE" : textIndex.buildFilter(parameter(String.join(" ", words)));
         } else {
             throw new IllegalArgumentException("Unsupported filter type " + filter.getClass());
         }
     }
 
+    /**
+     * @return the clause evaluating the filter against a typed column or null if the filter doesn't apply to a typed
+     * column or if its value doesn't match the type of the column
+     */
+    private String buildTypedColumnFilter(Filter filter) {
+        if (typedColumns.isEmpty() || filter.getField() == null) {
+            return null;
+        }
+        PostgreSQLTypedColumn column = typedColumns.get(filter.getField());
+        if (column == null) {
+            return null;
+        }
+        boolean numeric = column.getType() != PostgreSQLTypedColumn.Type.TEXT;
+        String columnName = column.getColumnName();
+        if (filter instanceof Equals) {
+            Object expectedValue = ((Equals) filter).getExpectedValue();
+            if (numeric && (expectedValue instanceof Integer || expectedValue instanceof Long)) {
+                return columnName + " = " + column.typedParameter(parameter(((Number) expectedValue).longValue()));
+            } else if (!numeric && expectedValue instanceof String) {
+                return columnName + " = " + parameter(expectedValue);
+            } else if (!numeric && expectedValue instanceof ObjectId) {
+                return columnName + " = " + parameter(((ObjectId) expectedValue).toHexString());
+            }
+        } else if (numeric && filter instanceof Gt) {
+            return columnName + " > " + column.typedParameter(parameter(((Gt) filter).getValue()));
+        } else if (numeric && filter instanceof Gte) {
+            return columnName + " >= " + column.typedParameter(parameter(((Gte) filter).getValue()));
+        } else if (numeric && filter instanceof Lt) {
+            return columnName + " < " + column.typedParameter(parameter(((Lt) filter).getValue()));
+        } else if (numeric && filter instanceof Lte) {
+            return columnName + " <= " + column.typedParameter(parameter(((Lte) filter).getValue()));
+        } else if (!numeric && filter instanceof In) {
+            String[] values = ((In) filter).getValues().stream().map(this::formatInValue).toArray(String[]::new);
+            return columnName + " = ANY(" + parameter(values) + ") ";
+        } else if (!numeric && filter instanceof Regex) {
+            Regex regexFilter = (Regex) filter;
+            String operator = (regexFilter.isCaseSensitive()) ? " ~ " : " ~* ";
+            return columnName + operator + parameter(regexFilter.getExpression());
+        }
+        return null;
+    }
+
     private String notPsqlClause(Not notFilter, List<String> childerPojoFilters) {
         //For psql filering out with NOT field = value will also filter out field is null
         if (notFilter.getChildren().get(0) instanceof Equals && ((Equals) notFilter.getChildren().get(0)).getExpectedValue() != null) {
@@ -124,26 +229,54 @@ public class PostgreSQLFilterFactory implements Filters.FilterFactory<String> {
     private String formatIncludesValue(Object expectedValue) {
         try {
             String jsonElement = OBJECT_MAPPER.writeValueAsString(expectedValue);
-            return "'[" + jsonElement.replace("'", "''") + "]'::jsonb";
+            return parameter("[" + jsonElement + "]") + "::jsonb";
         } catch (JsonProcessingException e) {
             throw new RuntimeException("Failed to serialize filter value to JSON", e);
         }
     }
 
     private String formatInValue(Object expectedValue) {
-        String result;
-        if (expectedValue instanceof String) {
-            result = escapeValue((String) expectedValue);
-        } else if (expectedValue instanceof ObjectId) {
-            result = ((ObjectId) expectedValue).toHexString();
+        if (expectedValue instanceof ObjectId) {
+            return ((ObjectId) expectedValue).toHexString();
         } else {
-            result = expectedValue.toString();
+            return expectedValue.toString();
         }
-        return "'" + result + "'";
     }
 
-    private String escapeValue(String expectedValue) {
-        return expectedValue.replaceAll("'", "''");
+    /**
+     * Registers a bind parameter
+     *
+     * @param value the value of the parameter
+     * @return the placeholder of the parameter
+     */
+    String parameter(Object value) {
+        parameters.add(value);
+        return "?";
+    }
+
+    /**
+     * Binds the parameters to the statement starting at the first parameter index
+     *
+     * @param statement  the statement to be bound
+     * @param parameters the values of the parameters. Strings are bound as text, arrays of strings as text arrays,
+     *                   integers and longs as bigint and null values as null bigint (used for unbounded limits)
+     */
+    public static void bindParameters(PreparedStatement statement, List<Object> parameters) throws SQLException {
+        for (int i = 0; i < parameters.size(); i++) {
+            Object value = parameters.get(i);
+            int index = i + 1;
+            if (value == null) {
+                statement.setNull(index, Types.BIGINT);
+            } else if (value instanceof String) {
+                statement.setString(index, (String) value);
+            } else if (value instanceof String[]) {
+                statement.setArray(index, statement.getConnection().createArrayOf("text", (String[]) value));
+            } else if (value instanceof Integer || value instanceof Long) {
+                statement.setLong(index, ((Number) value).longValue());
+            } else {
+                throw new IllegalArgumentException("Unsupported parameter type " + value.getClass());
+            }
+        }
     }
 
     public static String formatField(String field, Class<?> clazz) {
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections.postgresql;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Range partitioning of the table of a collection by a numeric field of the entities.
+ * <p>
+ * Generated columns cannot be used as partition keys: the value of the field is copied to a regular bigint column by
+ * the inserts. This column has the name of the {@link PostgreSQLTypedColumn} of the field so that the filters and sort
+ * orders on the field target it and benefit from the partition pruning. The primary key of partitioned tables has to
+ * contain the partition key, it is therefore (id, key): the value of the field of an entity cannot be changed once saved.
+ */
+class PostgreSQLRangePartitioning {
+
+    private final String field;
+    private final long rangeSize;
+    private final PostgreSQLTypedColumn keyColumn;
+    // Start of the ranges of the partitions known to exist
+    private final Set<Long> partitions = ConcurrentHashMap.newKeySet();
+
+    PostgreSQLRangePartitioning(String field, long rangeSize) {
+        if (rangeSize <= 0) {
+            throw new IllegalArgumentException("The range size must be greater than zero");
+        }
+        this.field = field;
+        this.rangeSize = rangeSize;
+        this.keyColumn = new PostgreSQLTypedColumn(field, PostgreSQLTypedColumn.Type.BIGINT);
+    }
+
+    String getField() {
+        return field;
+    }
+
+    long getRangeSize() {
+        return rangeSize;
+    }
+
+    PostgreSQLTypedColumn getKeyColumn() {
+        return keyColumn;
+    }
+
+    /**
+     * @return the expression computing the partition key from the jsonb object of an entity. The decimal values are
+     * truncated like by the selection of the partitions to be created
+     */
+    String getKeyExpression() {
+        return "trunc((" + PostgreSQLFilterFactory.formatFieldForValueAsText(field) + ")::numeric)::bigint";
+    }
+
+    /**
+     * @param value a value of the field
+     * @return the start of the range of the partition containing the value
+     */
+    long getRangeStart(long value) {
+        return Math.floorDiv(value, rangeSize) * rangeSize;
+    }
+
+    Set<Long> getPartitions() {
+        return partitions;
+    }
+}
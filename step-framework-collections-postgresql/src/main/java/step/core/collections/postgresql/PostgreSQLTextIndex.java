@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections.postgresql;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The text index of a collection: a tsvector column generated by PostgreSQL (GENERATED ALWAYS AS ... STORED) from the
+ * text fields of the entities and indexed with a GIN index. The {@link step.core.collections.filters.Fulltext} filters
+ * are evaluated against this column with plainto_tsquery and match the entities containing all the words of their
+ * expression.
+ * <p>
+ * The 'simple' text search configuration is used so that the words are only lower-cased, without stemming nor stop
+ * words, like in the other implementations of the text indexes. As its parser keeps some punctuated values like host
+ * names and version numbers as single tokens, the non-alphanumeric characters are replaced by spaces beforehand so that
+ * the words are the same as the ones of the {@link step.core.collections.FulltextTokenizer}.
+ */
+public class PostgreSQLTextIndex {
+
+    // Unquoted name of the column
+    static final String COLUMN = "fulltext_tsv";
+    private static final String COLUMN_NAME = "\"" + COLUMN + "\"";
+    private static final String TEXT_SEARCH_CONFIG = "'simple'";
+    // Version of the generation expression prefixing the definition. The columns of the previous versions are rebuilt
+    private static final int VERSION = 2;
+    private static final String VERSION_PREFIX = "v";
+    private static final String VERSION_SEPARATOR = ":";
+
+    private final List<String> fields;
+    private final int version;
+
+    public PostgreSQLTextIndex(List<String> fields) {
+        this(fields, VERSION);
+    }
+
+    private PostgreSQLTextIndex(List<String> fields, int version) {
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("A text index requires at least one field");
+        }
+        this.fields = List.copyOf(fields);
+        this.version = version;
+    }
+
+    /**
+     * @param definition the comma separated fields of the index prefixed by its version as returned by {@link #getDefinition()}.
+     *                   The definitions of the first version have no prefix
+     */
+    public static PostgreSQLTextIndex parse(String definition) {
+        int version = 1;
+        if (definition.startsWith(VERSION_PREFIX) && definition.contains(VERSION_SEPARATOR)) {
+            int separatorIndex = definition.indexOf(VERSION_SEPARATOR);
+            version = Integer.parseInt(definition.substring(VERSION_PREFIX.length(), separatorIndex));
+            definition = definition.substring(separatorIndex + 1);
+        }
+        return new PostgreSQLTextIndex(Arrays.asList(definition.split(",")), version);
+    }
+
+    /**
+     * @return the version and the comma separated fields of the index, stored in the comment of the column
+     */
+    public String getDefinition() {
+        return VERSION_PREFIX + version + VERSION_SEPARATOR + String.join(",", fields);
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return the quoted name of the column
+     */
+    public String getColumnName() {
+        return COLUMN_NAME;
+    }
+
+    /**
+     * @return the expression computing the tsvector of the column from the jsonb object
+     */
+    public String getGenerationExpression() {
+        return "to_tsvector(" + TEXT_SEARCH_CONFIG + ", regexp_replace(" + fields.stream()
+            .map(f -> "coalesce(" + PostgreSQLFilterFactory.formatFieldForValueAsText(f) + ", '')")
+            .collect(Collectors.joining(" || ' ' || ")) + ", '[^[:alnum:]]+', ' ', 'g'))";
+    }
+
+    /**
+     * @param parameter the placeholder of the space separated words to be searched
+     * @return the clause matching the rows containing all the words
+     */
+    String buildFilter(String parameter) {
+        return COLUMN_NAME + " @@ plainto_tsquery(" + TEXT_SEARCH_CONFIG + ", " + parameter + ")";
+    }
+}
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections.postgresql;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A JSONB field of the entities extracted to a typed column generated by PostgreSQL (GENERATED ALWAYS AS ... STORED)
+ * and indexed with a B-tree index. The filters and sort orders on such fields are evaluated against the column with
+ * typed comparisons instead of jsonb comparisons so that range predicates can use index range scans.
+ * <p>
+ * The bigint and timestamptz columns are null for values which aren't JSON numbers, bigint columns truncate the decimal
+ * values and timestamptz columns are built from epoch milliseconds. They are intended for integral fields like timestamps and counters.
+ */
+public class PostgreSQLTypedColumn {
+
+    public enum Type {
+        BIGINT("bigint", "bigint"),
+        TEXT("text", "text"),
+        TIMESTAMPTZ("timestamptz", "timestamp with time zone");
+
+        private final String sqlType;
+        private final String formattedSqlType;
+
+        Type(String sqlType, String formattedSqlType) {
+            this.sqlType = sqlType;
+            this.formattedSqlType = formattedSqlType;
+        }
+
+        public String getSqlType() {
+            return sqlType;
+        }
+
+        /**
+         * @return the name of the type as returned by the format_type function of PostgreSQL
+         */
+        public String getFormattedSqlType() {
+            return formattedSqlType;
+        }
+    }
+
+    private static final String COLUMN_PREFIX = "f_";
+
+    private final String field;
+    private final Type type;
+
+    public PostgreSQLTypedColumn(String field, Type type) {
+        if (field.equals("id") || field.equals("_id")) {
+            throw new IllegalArgumentException("The id is already stored in a dedicated column");
+        }
+        this.field = field;
+        this.type = type;
+    }
+
+    /**
+     * Parses a list of typed columns
+     *
+     * @param definition the comma separated definitions of the columns in the form field:type, for instance
+     *                   "begin:bigint,attributes.eId:text"
+     * @return the typed columns by field
+     */
+    public static Map<String, PostgreSQLTypedColumn> parse(String definition) {
+        Map<String, PostgreSQLTypedColumn> columns = new LinkedHashMap<>();
+        for (String columnDefinition : definition.split(",")) {
+            if (!columnDefinition.isBlank()) {
+                String[] split = columnDefinition.trim().split(":");
+                if (split.length != 2) {
+                    throw new IllegalArgumentException("Invalid typed column definition '" + columnDefinition + "', expected field:type");
+                }
+                PostgreSQLTypedColumn column = new PostgreSQLTypedColumn(split[0].trim(), Type.valueOf(split[1].trim().toUpperCase()));
+                columns.put(column.getField(), column);
+            }
+        }
+        return columns;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the quoted name of the column
+     */
+    public String getColumnName() {
+        return "\"" + COLUMN_PREFIX + field.replaceAll("[^A-Za-z0-9_]", "_") + "\"";
+    }
+
+    /**
+     * @return the expression computing the value of the column from the jsonb object
+     */
+    public String getGenerationExpression() {
+        String jsonValue = PostgreSQLFilterFactory.formatField(field, Object.class);
+        String textValue = PostgreSQLFilterFactory.formatFieldForValueAsText(field);
+        switch (type) {
+            case BIGINT:
+                // The decimal values are truncated like by Number.longValue()
+                return "CASE WHEN jsonb_typeof(" + jsonValue + ") = 'number' THEN trunc((" + textValue + ")::numeric)::bigint END";
+            case TIMESTAMPTZ:
+                return "CASE WHEN jsonb_typeof(" + jsonValue + ") = 'number' THEN to_timestamp((" + textValue + ")::double precision / 1000) END";
+            case TEXT:
+                return textValue;
+            default:
+                throw new IllegalStateException("Unsupported type " + type);
+        }
+    }
+
+    /**
+     * @param parameter the placeholder of a value. Epoch milliseconds for timestamptz columns
+     * @return the expression converting the value to the type of the column
+     */
+    String typedParameter(String parameter) {
+        return type == Type.TIMESTAMPTZ ? "to_timestamp(" + parameter + " / 1000.0)" : parameter;
+    }
+}
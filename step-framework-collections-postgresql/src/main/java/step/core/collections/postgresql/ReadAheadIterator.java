@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections.postgresql;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Iterator reading the rows of a query in a background thread while the consumer decodes them, so that the decoding of
+ * the entities overlaps with the fetching of the next rows from the server. The background thread owns the query: it
+ * closes it once all the rows are read or once the iterator is closed.
+ */
+class ReadAheadIterator<T> implements Iterator<T>, AutoCloseable {
+
+    @FunctionalInterface
+    interface RowDecoder<T> {
+        T decode(byte[] row);
+    }
+
+    private static final Object END = new Object();
+    private static final long OFFER_TIMEOUT_MS = 100;
+
+    private final BlockingQueue<Object> queue;
+    private final RowDecoder<T> decoder;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private Object next;
+
+    /**
+     * @param query       the query positioned before the first row to be returned
+     * @param column      the index of the column to be decoded
+     * @param bufferSize  the maximum number of rows read ahead
+     * @param executor    the executor of the background thread
+     * @param decoder     the decoder of the rows
+     * @param queryCloser the callback closing the query, invoked by the background thread
+     */
+    ReadAheadIterator(StreamingQuery query, int column, int bufferSize, Executor executor, RowDecoder<T> decoder,
+                      Consumer<StreamingQuery> queryCloser) {
+        this.queue = new ArrayBlockingQueue<>(bufferSize);
+        this.decoder = decoder;
+        executor.execute(new Reader(queue, closed, query, column, queryCloser));
+    }
+
+    /**
+     * The background reading of the rows. It doesn't reference the iterator so that the iterator becomes unreachable
+     * when the consumer drops it without closing it and the {@link java.lang.ref.Cleaner} can stop the reading
+     */
+    private static class Reader implements Runnable {
+
+        private final BlockingQueue<Object> queue;
+        private final AtomicBoolean closed;
+        private final StreamingQuery query;
+        private final int column;
+        private final Consumer<StreamingQuery> queryCloser;
+
+        private Reader(BlockingQueue<Object> queue, AtomicBoolean closed, StreamingQuery query, int column,
+                       Consumer<StreamingQuery> queryCloser) {
+            this.queue = queue;
+            this.closed = closed;
+            this.query = query;
+            this.column = column;
+            this.queryCloser = queryCloser;
+        }
+
+        @Override
+        public void run() {
+            try {
+                read();
+            } finally {
+                queryCloser.accept(query);
+            }
+        }
+
+        private void read() {
+            try {
+                while (!closed.get() && query.next()) {
+                    byte[] row = query.resultSet.getBytes(column);
+                    query.rowSize(row.length);
+                    put(row);
+                }
+                put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                try {
+                    put(e);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void put(Object element) throws InterruptedException {
+            // The offer is retried until the consumer takes the element or closes the iterator
+            while (!closed.get()) {
+                if (queue.offer(element, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            if (closed.get()) {
+                return false;
+            }
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        if (next instanceof Exception) {
+            Exception exception = (Exception) next;
+            next = END;
+            throw new RuntimeException(exception);
+        }
+        return next != END;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        byte[] row = (byte[]) next;
+        next = null;
+        return decoder.decode(row);
+    }
+
+    /**
+     * @return the action stopping the background thread. It doesn't reference the iterator and can therefore be
+     * registered to a {@link java.lang.ref.Cleaner} for the iterator
+     */
+    Runnable closeAction() {
+        AtomicBoolean closed = this.closed;
+        return () -> closed.set(true);
+    }
+
+    @Override
+    public void close() {
+        closed.set(true);
+    }
+}
@@ -1,21 +1,42 @@
 package step.core.collections.postgresql;
 
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
-public class ResultSetIterator implements Iterator<String> {
+public class ResultSetIterator<T> implements Iterator<T> {
 
-    private ResultSet resultSet;
+    @FunctionalInterface
+    public interface RowDecoder<T> {
+        T decode(StreamingQuery query) throws SQLException;
+    }
+
+    private final StreamingQuery query;
+    private final RowDecoder<T> decoder;
+    private final Runnable onExhausted;
     boolean hasNext;
 
-    public ResultSetIterator(ResultSet resultSet) {
-        this.resultSet = resultSet;
+    /**
+     * @param query       the query positioned before the first row to be returned
+     * @param decoder     the decoder of the rows
+     * @param onExhausted the callback invoked once the last row has been read. Nullable
+     */
+    public ResultSetIterator(StreamingQuery query, RowDecoder<T> decoder, Runnable onExhausted) {
+        this.query = query;
+        this.decoder = decoder;
+        this.onExhausted = onExhausted;
+        advance();
+    }
+
+    private void advance() {
         try {
-            this.hasNext = resultSet.next();
+            hasNext = query.next();
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        if (!hasNext && onExhausted != null) {
+            onExhausted.run();
+        }
     }
 
     @Override
@@ -24,13 +45,17 @@ public class ResultSetIterator implements Iterator<String> {
     }
 
     @Override
-    public String next() {
+    public T next() {
+        if (!hasNext) {
+            throw new NoSuchElementException();
+        }
+        T row;
         try {
-            String string = resultSet.getString(2);
-            hasNext = resultSet.next();
-            return string;
+            row = decoder.decode(query);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        advance();
+        return row;
     }
 }
@@ -13,6 +13,7 @@ public class StreamingQuery implements AutoCloseable {
     private static final int FETCH_SIZE = 1000;
     private final Connection connection;
     private final PreparedStatement statement;
+    private final AdaptiveFetchSize fetchSize;
     // The resultSet is the only thing our "users" are interested in, the rest is just plumbing
     public final ResultSet resultSet;
 
@@ -21,6 +22,24 @@ public class StreamingQuery implements AutoCloseable {
     }
 
     public StreamingQuery(DataSource ds, String sql, int timeoutSeconds) throws SQLException {
+        this(ds, sql, List.of(), timeoutSeconds);
+    }
+
+    /**
+     * @param ds             the data source
+     * @param sql            the query with bind parameters
+     * @param parameters     the values of the bind parameters (see {@link PostgreSQLFilterFactory#bindParameters(PreparedStatement, List)})
+     * @param timeoutSeconds the query timeout in seconds. 0 for no timeout
+     */
+    public StreamingQuery(DataSource ds, String sql, List<Object> parameters, int timeoutSeconds) throws SQLException {
+        this(ds, sql, parameters, timeoutSeconds, new AdaptiveFetchSize(FETCH_SIZE));
+    }
+
+    /**
+     * @param fetchSize the fetch size of the cursor. The rows have to be read with {@link #next()} for the fetch size to adapt
+     */
+    StreamingQuery(DataSource ds, String sql, List<Object> parameters, int timeoutSeconds, AdaptiveFetchSize fetchSize) throws SQLException {
+        this.fetchSize = fetchSize;
         Connection conn = null;
         PreparedStatement stmt = null;
         try {
@@ -28,7 +47,8 @@ public class StreamingQuery implements AutoCloseable {
             conn.setReadOnly(true); // Should result in a "BEGIN READ ONLY" transaction which can help psql with optimizations
             conn.setAutoCommit(false); // required to obtain server-side cursor (as are the 2 next lines)
             stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
-            stmt.setFetchSize(FETCH_SIZE);
+            stmt.setFetchSize(fetchSize.getFetchSize());
+            PostgreSQLFilterFactory.bindParameters(stmt, parameters);
 
             if (timeoutSeconds > 0) {
                 stmt.setQueryTimeout(timeoutSeconds);
@@ -57,6 +77,26 @@ public class StreamingQuery implements AutoCloseable {
         }
     }
 
+    /**
+     * Moves the cursor to the next row, adapting the size of the next fetch once the rows of the current fetch are read
+     *
+     * @return true if the new current row is valid
+     */
+    public boolean next() throws SQLException {
+        boolean hasNext = resultSet.next();
+        if (hasNext && fetchSize.rowRead()) {
+            // Applies to the next fetch of the cursor
+            resultSet.setFetchSize(fetchSize.getFetchSize());
+        }
+        return hasNext;
+    }
+
+    /**
+     * Records the size of a row for the estimation of the memory required by the next fetches
+     */
+    public void rowSize(int bytes) {
+        fetchSize.rowSize(bytes);
+    }
 
     @Override
     public void close() throws SQLException {
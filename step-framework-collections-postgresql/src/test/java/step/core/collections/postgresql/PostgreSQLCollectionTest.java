@@ -27,9 +27,15 @@ import org.junit.Test;
 import step.core.accessors.AbstractOrganizableObject;
 import step.core.collections.AbstractCollectionTest;
 import step.core.collections.Collection;
+import step.core.collections.Document;
 import step.core.collections.Filters;
+import step.core.collections.GroupAggregationQuery;
+import step.core.collections.GroupAggregationResult;
+import step.core.collections.ResultPage;
+import step.core.collections.SearchOrder;
 import step.core.entities.Bean;
 
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.sql.Connection;
 import java.sql.ResultSet;
@@ -37,10 +43,12 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
@@ -103,6 +111,181 @@ public class PostgreSQLCollectionTest extends AbstractCollectionTest {
         }
     }
 
+    @Test
+    @Ignore
+    public void benchmarkFind() throws IOException {
+        int total = 50000;
+        for (boolean sharedObjectReaders : List.of(false, true)) {
+            Properties properties = getProperties();
+            properties.put(PostgreSQLCollectionConfig.SHARED_OBJECT_READERS, Boolean.toString(sharedObjectReaders));
+            PostgreSQLCollectionFactory factory = new PostgreSQLCollectionFactory(properties);
+            try {
+                Collection<Bean> beanCollection = factory.getCollection("Beans", Bean.class);
+                if (beanCollection.count(Filters.empty(), null) != total) {
+                    beanCollection.remove(Filters.empty());
+                    List<Bean> beans = new ArrayList<>();
+                    for (int i = 0; i < total; i++) {
+                        // Representative entity: nested object, attributes and numeric fields
+                        Bean bean = new Bean("property1");
+                        bean.setLongProperty((long) i);
+                        bean.addAttribute("name", "Bean " + i);
+                        bean.addAttribute("project", "project" + (i % 10));
+                        Bean nested = new Bean("nested");
+                        nested.setLongProperty((long) i);
+                        bean.setNested(nested);
+                        beans.add(bean);
+                    }
+                    beanCollection.save(beans);
+                }
+                for (int loop = 1; loop <= 3; loop++) {
+                    long start = System.currentTimeMillis();
+                    // New collection instances, as obtained by the accessors for each request
+                    try (Stream<Bean> stream = factory.getCollection("Beans", Bean.class).findLazy(Filters.empty(), null, null, null, 0)) {
+                        assertEquals(total, stream.count());
+                    }
+                    System.out.println("sharedObjectReaders: " + sharedObjectReaders + ", find duration " + (System.currentTimeMillis() - start) + " ms");
+                }
+            } finally {
+                factory.close();
+            }
+        }
+    }
+
+    @Test
+    public void testFindStreaming() throws IOException {
+        Properties properties = getProperties();
+        properties.put("maxConnections", "2");
+        PostgreSQLCollectionFactory factory = new PostgreSQLCollectionFactory(properties);
+        try {
+            Collection<Bean> beanCollection = factory.getCollection("Beans", Bean.class);
+            beanCollection.remove(Filters.empty());
+            List<Bean> beans = new ArrayList<>();
+            for (int i = 0; i < 25; i++) {
+                beans.add(new Bean("property" + i));
+            }
+            beanCollection.save(beans);
+
+            // The results of find are fully read: the connections are released even if the streams aren't closed
+            for (int i = 0; i < 10; i++) {
+                assertEquals(15, beanCollection.find(Filters.empty(), new SearchOrder("property1", 1), null, null, 0).limit(15).count());
+            }
+            // Results streamed from the cursor
+            try (Stream<Bean> stream = beanCollection.findLazy(Filters.empty(), new SearchOrder("property1", 1), null, null, 0)) {
+                assertEquals(25, stream.count());
+            }
+            // Partially consumed stream
+            try (Stream<Bean> stream = beanCollection.findLazy(Filters.empty(), null, null, null, 0)) {
+                assertEquals(15, stream.limit(15).count());
+            }
+        } finally {
+            factory.close();
+        }
+    }
+
+    @Test
+    public void testAdaptiveFetchSize() {
+        PostgreSQLCollectionConfig config = new PostgreSQLCollectionConfig().setInitialFetchSize(10).setMaxFetchSize(50)
+            .setFetchMemoryBudgetBytes(0);
+        // The first fetch of the queries with limit is sized by the limit
+        assertEquals(5, AdaptiveFetchSize.forQuery(5, config).getFetchSize());
+        assertEquals(50, AdaptiveFetchSize.forQuery(500, config).getFetchSize());
+
+        // The fetch size doubles once the rows of each fetch are read up to the maximum
+        AdaptiveFetchSize fetchSize = AdaptiveFetchSize.forQuery(null, config);
+        assertEquals(10, fetchSize.getFetchSize());
+        readRows(fetchSize, 9, 100);
+        assertEquals(10, fetchSize.getFetchSize());
+        assertTrue(fetchSize.rowRead());
+        assertEquals(20, fetchSize.getFetchSize());
+        readRows(fetchSize, 20, 100);
+        assertEquals(40, fetchSize.getFetchSize());
+        readRows(fetchSize, 40, 100);
+        assertEquals(50, fetchSize.getFetchSize());
+        readRows(fetchSize, 49, 100);
+        Assert.assertFalse(fetchSize.rowRead());
+        assertEquals(50, fetchSize.getFetchSize());
+
+        // The fetch size is capped by the memory budget
+        fetchSize = AdaptiveFetchSize.forQuery(null, config.setFetchMemoryBudgetBytes(1500));
+        readRows(fetchSize, 10, 100);
+        assertEquals(15, fetchSize.getFetchSize());
+    }
+
+    private static void readRows(AdaptiveFetchSize fetchSize, int rows, int rowSize) {
+        for (int i = 0; i < rows; i++) {
+            fetchSize.rowSize(rowSize);
+            fetchSize.rowRead();
+        }
+    }
+
+    @Test
+    public void testFindLazyReadAhead() throws IOException {
+        Properties properties = getProperties();
+        properties.put(PostgreSQLCollectionConfig.FIND_LAZY_READ_AHEAD_SIZE, "10");
+        properties.put(PostgreSQLCollectionConfig.INITIAL_FETCH_SIZE, "5");
+        PostgreSQLCollectionFactory factory = new PostgreSQLCollectionFactory(properties);
+        try {
+            Collection<Bean> beanCollection = factory.getCollection("Beans", Bean.class);
+            beanCollection.remove(Filters.empty());
+            List<Bean> beans = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                Bean bean = new Bean("property" + i);
+                bean.setLongProperty((long) i);
+                beans.add(bean);
+            }
+            beanCollection.save(beans);
+
+            // The rows are read ahead over several growing fetches and returned in order
+            try (Stream<Bean> stream = beanCollection.findLazy(Filters.empty(), new SearchOrder("longProperty", 1), null, null, 0)) {
+                List<Long> values = stream.map(Bean::getLongProperty).collect(Collectors.toList());
+                assertEquals(100, values.size());
+                for (int i = 0; i < 100; i++) {
+                    assertEquals(i, (long) values.get(i));
+                }
+            }
+            // Partially consumed stream: the background reading stops and the connection is released
+            for (int i = 0; i < 20; i++) {
+                try (Stream<Bean> stream = beanCollection.findLazy(Filters.empty(), null, null, null, 0)) {
+                    assertEquals(3, stream.limit(3).count());
+                }
+            }
+            // Query with limit
+            try (Stream<Bean> stream = beanCollection.findLazy(Filters.empty(), null, null, 7, 0)) {
+                assertEquals(7, stream.count());
+            }
+        } finally {
+            factory.close();
+        }
+    }
+
+    @Test
+    public void testFindLazyReadAheadUnclosedStream() throws Exception {
+        HikariDataSource ds = PostgreSQLCollectionFactory.createConnectionPool(getProperties());
+        try {
+            PostgreSQLCollectionConfig config = new PostgreSQLCollectionConfig().setFindLazyReadAheadSize(10).setInitialFetchSize(5);
+            Collection<Bean> beanCollection = new PostgreSQLCollection<>(ds, "Beans", Bean.class, config);
+            beanCollection.remove(Filters.empty());
+            List<Bean> beans = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                beans.add(new Bean("property" + i));
+            }
+            beanCollection.save(beans);
+
+            // Partially consumed stream dropped without being closed
+            assertEquals(3, beanCollection.findLazy(Filters.empty(), null, null, null, 0).limit(3).count());
+
+            // The background reading stops once the stream is unreachable and the connection is released
+            long deadline = System.currentTimeMillis() + 10000;
+            while (ds.getHikariPoolMXBean().getActiveConnections() > 0 && System.currentTimeMillis() < deadline) {
+                System.gc();
+                Thread.sleep(100);
+            }
+            assertEquals(0, ds.getHikariPoolMXBean().getActiveConnections());
+        } finally {
+            ds.close();
+        }
+    }
+
     @Test
     public void testGetFieldClass() throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
         PostgreSQLCollection<Bean> beanCollection = (PostgreSQLCollection<Bean>) collectionFactory.getCollection("Beans", Bean.class);
@@ -130,6 +313,392 @@ public class PostgreSQLCollectionTest extends AbstractCollectionTest {
         Assert.assertEquals(String.class, beanCollection.getFieldClass("publicFinalField"));
     }
 
+    @Test
+    public void testBulkSave() throws IOException {
+        Properties properties = getProperties();
+        properties.put(PostgreSQLCollectionConfig.BULK_COPY_THRESHOLD, "200");
+        PostgreSQLCollectionFactory factory = new PostgreSQLCollectionFactory(properties);
+        try {
+            Collection<Bean> beanCollection = factory.getCollection("Beans", Bean.class);
+            beanCollection.remove(Filters.empty());
+
+            // Multi-row inserts: 1 full statement and the remaining rows
+            List<Bean> beans = new ArrayList<>();
+            for (int i = 0; i < 150; i++) {
+                beans.add(new Bean("multiRows"));
+            }
+            beanCollection.save(beans);
+            assertEquals(150, beanCollection.count(Filters.equals("property1", "multiRows"), null));
+
+            // Copy, including updates of existing entities and duplicates
+            beans.forEach(b -> b.setProperty1("copy"));
+            beans.add(beans.get(0));
+            for (int i = 0; i < 100; i++) {
+                beans.add(new Bean("copy"));
+            }
+            beanCollection.save(beans);
+            assertEquals(250, beanCollection.count(Filters.empty(), null));
+            assertEquals(250, beanCollection.count(Filters.equals("property1", "copy"), null));
+        } finally {
+            factory.close();
+        }
+    }
+
+    @Test
+    public void testFindReduced() {
+        Collection<Bean> beanCollection = collectionFactory.getCollection("Beans", Bean.class);
+        beanCollection.remove(Filters.empty());
+        Bean bean = new Bean("value1");
+        bean.setLongProperty(10L);
+        Bean nested = new Bean("nestedValue");
+        nested.setLongProperty(20L);
+        bean.setNested(nested);
+        beanCollection.save(bean);
+
+        Bean reducedBean = beanCollection.findReduced(Filters.empty(), null, null, null, 0, List.of("property1", "nested.longProperty"))
+            .findFirst().orElseThrow();
+        assertEquals(bean.getId(), reducedBean.getId());
+        assertEquals("value1", reducedBean.getProperty1());
+        // Only the requested fields are returned
+        Assert.assertNull(reducedBean.getLongProperty());
+        assertEquals(Long.valueOf(20), reducedBean.getNested().getLongProperty());
+        Assert.assertNull(reducedBean.getNested().getProperty1());
+    }
+
+    @Test
+    public void testFindReducedNonObjectParent() {
+        Collection<Document> documentCollection = collectionFactory.getCollection("Documents", Document.class);
+        documentCollection.remove(Filters.empty());
+        Document arrayDocument = new Document();
+        arrayDocument.put("name", "array");
+        arrayDocument.put("a", List.of(Map.of("b", 1, "c", 2), 3));
+        Document scalarDocument = new Document();
+        scalarDocument.put("name", "scalar");
+        scalarDocument.put("a", "value");
+        Document nullDocument = new Document();
+        nullDocument.put("name", "null");
+        nullDocument.put("a", null);
+        documentCollection.save(List.of(arrayDocument, scalarDocument, nullDocument));
+
+        // The sub-fields of arrays, scalars and nulls cannot be projected: the whole field is returned
+        Map<ObjectId, Document> reduced = documentCollection.findReduced(Filters.empty(), null, null, null, 0, List.of("a.b"))
+            .collect(Collectors.toMap(Document::getId, d -> d));
+        assertEquals(List.of(Map.of("b", 1, "c", 2), 3), reduced.get(arrayDocument.getId()).get("a"));
+        assertEquals("value", reduced.get(scalarDocument.getId()).get("a"));
+        assertTrue(reduced.get(nullDocument.getId()).containsKey("a"));
+        Assert.assertNull(reduced.get(nullDocument.getId()).get("a"));
+        // The other fields are still excluded
+        Assert.assertNull(reduced.get(arrayDocument.getId()).get("name"));
+    }
+
+    @Test
+    public void testBuildProjection() {
+        assertEquals("'{}'::jsonb" +
+                " || CASE WHEN object #> ARRAY['id']::text[] IS NULL THEN '{}'::jsonb ELSE jsonb_build_object('id', object #> ARRAY['id']::text[]) END" +
+                " || CASE WHEN object #> ARRAY['_class']::text[] IS NULL THEN '{}'::jsonb ELSE jsonb_build_object('_class', object #> ARRAY['_class']::text[]) END" +
+                " || CASE WHEN object #> ARRAY['a']::text[] IS NULL THEN '{}'::jsonb" +
+                " WHEN jsonb_typeof(object #> ARRAY['a']::text[]) <> 'object' THEN jsonb_build_object('a', object #> ARRAY['a']::text[])" +
+                " ELSE jsonb_build_object('a', '{}'::jsonb" +
+                " || CASE WHEN object #> ARRAY['a','_class']::text[] IS NULL THEN '{}'::jsonb ELSE jsonb_build_object('_class', object #> ARRAY['a','_class']::text[]) END" +
+                " || CASE WHEN object #> ARRAY['a','b']::text[] IS NULL THEN '{}'::jsonb ELSE jsonb_build_object('b', object #> ARRAY['a','b']::text[]) END) END",
+            PostgreSQLCollection.buildProjection(List.of("a.b")));
+        // A field and one of its sub-fields: the whole field is included
+        assertEquals(PostgreSQLCollection.buildProjection(List.of("a")), PostgreSQLCollection.buildProjection(List.of("a.b", "a")));
+        assertEquals(PostgreSQLCollection.buildProjection(List.of("a")), PostgreSQLCollection.buildProjection(List.of("a", "a.b")));
+    }
+
+    @Test
+    public void testFilterParameters() {
+        PostgreSQLFilterFactory filterFactory = new PostgreSQLFilterFactory();
+        String where = filterFactory.buildFilter(Filters.and(List.of(Filters.equals("property1", "it's"),
+            Filters.gt("longProperty", 5), Filters.in("property2", List.of("a", "b")))));
+        // The values are not inlined, the SQL only depends on the shape of the filter
+        assertEquals("(object->>'property1' = ? AND object->>'longProperty' IS NOT NULL AND object->'longProperty' > ?::jsonb " +
+            "AND object->>'property2' = ANY(?) )", where);
+        List<Object> parameters = filterFactory.getParameters();
+        assertEquals(3, parameters.size());
+        assertEquals("it's", parameters.get(0));
+        assertEquals("5", parameters.get(1));
+        Assert.assertArrayEquals(new String[]{"a", "b"}, (String[]) parameters.get(2));
+
+        PostgreSQLFilterFactory otherFilterFactory = new PostgreSQLFilterFactory();
+        assertEquals(where, otherFilterFactory.buildFilter(Filters.and(List.of(Filters.equals("property1", "other"),
+            Filters.gt("longProperty", 10), Filters.in("property2", List.of("c"))))));
+    }
+
+    @Test
+    public void testTypedColumnFilters() {
+        Map<String, PostgreSQLTypedColumn> typedColumns = PostgreSQLTypedColumn.parse("longProperty:bigint,begin:timestamptz,property1:text");
+        PostgreSQLFilterFactory filterFactory = new PostgreSQLFilterFactory(typedColumns);
+        String where = filterFactory.buildFilter(Filters.and(List.of(Filters.gte("longProperty", 5), Filters.lt("begin", 1000),
+            Filters.equals("property1", "value"), Filters.in("property1", List.of("a")), Filters.equals("property2", "value"))));
+        assertEquals("(\"f_longProperty\" >= ? AND \"f_begin\" < to_timestamp(? / 1000.0) AND \"f_property1\" = ? " +
+            "AND \"f_property1\" = ANY(?)  AND object->>'property2' = ?)", where);
+        List<Object> parameters = filterFactory.getParameters();
+        assertEquals(5L, parameters.get(0));
+        assertEquals(1000L, parameters.get(1));
+        // Values not matching the type of the column are compared as jsonb
+        assertEquals("object->'longProperty' = ?::jsonb", new PostgreSQLFilterFactory(typedColumns).buildFilter(Filters.equals("longProperty", true)));
+        assertEquals("\"f_attributes_eId\"", new PostgreSQLTypedColumn("attributes.eId", PostgreSQLTypedColumn.Type.TEXT).getColumnName());
+    }
+
+    @Test
+    public void testTypedColumns() throws IOException {
+        Properties properties = getProperties();
+        properties.put(PostgreSQLCollectionConfig.TYPED_COLUMNS_PREFIX + "TypedBeans", "longProperty:bigint,property1:text");
+        PostgreSQLCollectionFactory factory = new PostgreSQLCollectionFactory(properties);
+        try {
+            Collection<Bean> beanCollection = factory.getCollection("TypedBeans", Bean.class);
+            beanCollection.remove(Filters.empty());
+            for (long i = 0; i < 10; i++) {
+                Bean bean = new Bean("value" + i);
+                bean.setLongProperty(i);
+                beanCollection.save(bean);
+            }
+            beanCollection.save(new Bean("noLongProperty"));
+
+            assertEquals(3, beanCollection.count(Filters.and(List.of(Filters.gte("longProperty", 2), Filters.lt("longProperty", 5))), null));
+            assertEquals(1, beanCollection.count(Filters.equals("longProperty", 7L), null));
+            assertEquals(1, beanCollection.count(Filters.equals("property1", "value3"), null));
+            List<Long> values = beanCollection.find(Filters.gt("longProperty", 6), new SearchOrder("longProperty", -1), null, null, 0)
+                .map(Bean::getLongProperty).collect(Collectors.toList());
+            assertEquals(List.of(9L, 8L, 7L), values);
+
+            beanCollection.drop();
+        } finally {
+            factory.close();
+        }
+    }
+
+    @Test
+    public void testTypedColumnUpdate() {
+        Collection<Document> documentCollection = collectionFactory.getCollection("TypedDocuments", Document.class);
+        documentCollection.remove(Filters.empty());
+        for (Object value : List.of(2.6, 3, "text")) {
+            Document document = new Document();
+            document.put("value", value);
+            documentCollection.save(document);
+        }
+        PostgreSQLCollection<Document> postgreSQLCollection = (PostgreSQLCollection<Document>) documentCollection;
+
+        // The decimal values are truncated
+        postgreSQLCollection.createOrUpdateTypedColumn("value", PostgreSQLTypedColumn.Type.BIGINT);
+        assertEquals(1, documentCollection.count(Filters.lt("value", 3), null));
+        assertEquals(1, documentCollection.count(Filters.equals("value", 2L), null));
+
+        // The column is replaced by a column of the new type
+        postgreSQLCollection.createOrUpdateTypedColumn("value", PostgreSQLTypedColumn.Type.TEXT);
+        assertEquals(1, documentCollection.count(Filters.equals("value", "text"), null));
+        assertEquals(1, documentCollection.count(Filters.equals("value", "2.6"), null));
+
+        documentCollection.drop();
+    }
+
+    @Test
+    public void testFindAfterTypedColumns() {
+        Properties properties = getProperties();
+        properties.put(PostgreSQLCollectionConfig.TYPED_COLUMNS_PREFIX + "PagedBeans", "longProperty:bigint");
+        PostgreSQLCollectionFactory factory = new PostgreSQLCollectionFactory(properties);
+        try {
+            Collection<Bean> beanCollection = factory.getCollection("PagedBeans", Bean.class);
+            beanCollection.remove(Filters.empty());
+            for (int i = 0; i < 11; i++) {
+                Bean bean = new Bean("value" + i);
+                // Values whose numeric and text orders differ, duplicated and null sort keys
+                bean.setLongProperty(i < 9 ? (long) (i % 3) * 5 : null);
+                beanCollection.save(bean);
+            }
+
+            // Sorted by the id column and by a typed column
+            for (SearchOrder order : List.of(new SearchOrder("id", 1), new SearchOrder("id", -1), new SearchOrder("longProperty", 1),
+                new SearchOrder("longProperty", -1))) {
+                List<Bean> expected = beanCollection.find(Filters.empty(), order, null, null, 0).collect(Collectors.toList());
+                List<Bean> actual = new ArrayList<>();
+                String continuationToken = null;
+                do {
+                    ResultPage<Bean> page = beanCollection.findAfter(Filters.empty(), order, continuationToken, 4, 0);
+                    actual.addAll(page.getResults());
+                    continuationToken = page.getContinuationToken();
+                } while (continuationToken != null);
+
+                assertEquals(11, actual.stream().map(Bean::getId).distinct().count());
+                // The entities with the same sort keys might be returned in another order
+                Function<Bean, Object> sortKey = order.getFieldsSearchOrder().get(0).attributeName.equals("id") ? Bean::getId : Bean::getLongProperty;
+                assertEquals(expected.stream().map(sortKey).collect(Collectors.toList()), actual.stream().map(sortKey).collect(Collectors.toList()));
+            }
+
+            beanCollection.drop();
+        } finally {
+            factory.close();
+        }
+    }
+
+    @Test
+    public void testAggregate() {
+        Properties properties = getProperties();
+        // The time slices are computed from the typed column
+        properties.put(PostgreSQLCollectionConfig.TYPED_COLUMNS_PREFIX + "AggregatedBuckets", "begin:bigint");
+        PostgreSQLCollectionFactory factory = new PostgreSQLCollectionFactory(properties);
+        try {
+            Collection<Document> collection = factory.getCollection("AggregatedBuckets", Document.class);
+            collection.remove(Filters.empty());
+            List<Document> documents = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                Document document = new Document();
+                document.put("begin", 1000L + i * 10L);
+                document.put("attributes", i % 4 == 3 ? new Document() : new Document(Map.of("name", "name" + (i % 2), "index", (long) (i % 2))));
+                document.put("count", 2L);
+                document.put("sum", (long) i);
+                document.put("min", (long) -i);
+                document.put("max", (long) i);
+                document.put("distribution", i % 5 == 0 ? new Document() : new Document(Map.of("0", 1L, String.valueOf(10 + i % 3 * 10), 1L)));
+                documents.add(document);
+            }
+            collection.save(documents);
+
+            GroupAggregationQuery query = new GroupAggregationQuery()
+                .setFilter(Filters.lt("begin", 1300))
+                .setGroupFields(List.of("attributes.name", "attributes.index"))
+                .setTimeSlicing("begin", 1000L, 100L)
+                .setSumFields(List.of("count", "sum"))
+                .setMinFields(List.of("min"))
+                .setMaxFields(List.of("max"))
+                .setMapSumFields(List.of("distribution"));
+            List<GroupAggregationResult> results = collection.aggregate(query).orElseThrow();
+            // 3 time slices of 3 groups: name0, name1 and the documents without name
+            assertEquals(9, results.size());
+            GroupAggregationResult result = results.stream().filter(r -> "name0".equals(r.getGroupValues().get("attributes.name")) && r.getTimeSlice() == 1100L)
+                .findFirst().orElseThrow();
+            // The group values keep their json type
+            assertEquals(0L, result.getGroupValues().get("attributes.index"));
+            // Documents 10, 12, 14, 16 and 18
+            assertEquals(10, result.getSum("count").longValue());
+            assertEquals(70, result.getSum("sum").longValue());
+            assertEquals(-18, result.getMin("min").longValue());
+            assertEquals(18, result.getMax("max").longValue());
+            assertEquals(Map.of("0", 4L, "10", 2L, "20", 1L, "30", 1L), result.getMapSum("distribution"));
+            result = results.stream().filter(r -> r.getGroupValues().isEmpty() && r.getTimeSlice() == 1000L).findFirst().orElseThrow();
+            // Documents 3 and 7
+            assertEquals(4, result.getSum("count").longValue());
+            assertEquals(Map.of("0", 2L, "10", 1L, "20", 1L), result.getMapSum("distribution"));
+
+            // Single time slice without map field
+            results = collection.aggregate(new GroupAggregationQuery().setTimeSlicing("begin", 1000L, 0).setSumFields(List.of("count")))
+                .orElseThrow();
+            assertEquals(1, results.size());
+            assertEquals(1000L, results.get(0).getTimeSlice());
+            assertEquals(80, results.get(0).getSum("count").longValue());
+
+            // No matching row
+            assertTrue(collection.aggregate(new GroupAggregationQuery().setFilter(Filters.gt("begin", 5000)).setSumFields(List.of("count"))
+                .setMapSumFields(List.of("distribution"))).orElseThrow().isEmpty());
+            collection.drop();
+        } finally {
+            factory.close();
+        }
+    }
+
+    @Test
+    public void testRangePartitioning() throws SQLException {
+        Collection<Bean> beanCollection = collectionFactory.getCollection("PartitionedBeans", Bean.class);
+        beanCollection.drop();
+        beanCollection = collectionFactory.getCollection("PartitionedBeans", Bean.class);
+        Collection<Bean> existingInstance = collectionFactory.getCollection("PartitionedBeans", Bean.class);
+        HikariDataSource ds = PostgreSQLCollectionFactory.createConnectionPool(getProperties());
+        try {
+            assertTrue(beanCollection.enableRangePartitioning("longProperty", 10, 0, 20));
+            // The partition of the values from 20 to 29 is created when saving
+            for (long i = 0; i < 30; i++) {
+                Bean bean = new Bean("value");
+                bean.setLongProperty(i);
+                beanCollection.save(bean);
+            }
+            assertEquals(30, beanCollection.count(Filters.empty(), null));
+            assertEquals(5, beanCollection.count(Filters.and(List.of(Filters.gte("longProperty", 12), Filters.lt("longProperty", 17))), null));
+
+            // The empty partitions created in advance are never analyzed and ignored by the estimation
+            assertTrue(beanCollection.enableRangePartitioning("longProperty", 10, 0, 100));
+            try (Connection connection = ds.getConnection(); Statement statement = connection.createStatement()) {
+                for (long rangeStart = 0; rangeStart < 30; rangeStart += 10) {
+                    statement.execute("ANALYZE \"PartitionedBeans_p" + rangeStart + "\"");
+                }
+            }
+            Bean unanalyzedBean = new Bean("value");
+            unanalyzedBean.setLongProperty(25L);
+            beanCollection.save(unanalyzedBean);
+            // The estimate is the one of the statistics, the entities are not counted
+            assertEquals(30, beanCollection.estimatedCount());
+            beanCollection.remove(Filters.id(unanalyzedBean.getId()));
+
+            // The partition from 0 to 9 is dropped and the values from 10 to 14 are deleted
+            beanCollection.removeLowerThan("longProperty", 15);
+            assertEquals(15, beanCollection.count(Filters.empty(), null));
+            assertEquals(15, beanCollection.find(Filters.empty(), new SearchOrder("longProperty", 1), null, null, 0)
+                .findFirst().orElseThrow().getLongProperty().longValue());
+
+            // The partitioning is restored by the new instances of the collection
+            Collection<Bean> otherInstance = collectionFactory.getCollection("PartitionedBeans", Bean.class);
+            Bean bean = new Bean("value");
+            bean.setLongProperty(100L);
+            otherInstance.save(bean);
+            assertEquals(16, otherInstance.count(Filters.empty(), null));
+
+            // The instances created before the partitioning read it again when saving, the dropped partition is recreated
+            Bean staleBean = new Bean("value");
+            staleBean.setLongProperty(5L);
+            existingInstance.save(List.of(staleBean));
+            assertEquals(17, existingInstance.count(Filters.empty(), null));
+        } finally {
+            beanCollection.drop();
+            ds.close();
+        }
+
+        // Collections containing entities cannot be partitioned
+        Collection<Bean> nonEmptyCollection = collectionFactory.getCollection("PartitionedBeans", Bean.class);
+        try {
+            nonEmptyCollection.save(new Bean("value"));
+            Assert.assertFalse(nonEmptyCollection.enableRangePartitioning("longProperty", 10, 0, 20));
+        } finally {
+            nonEmptyCollection.drop();
+        }
+    }
+
+    @Test
+    public void testCountStrategy() throws Exception {
+        Properties properties = getProperties();
+        properties.put(PostgreSQLCollectionConfig.COUNT_CACHE_TTL_MS, "60000");
+        PostgreSQLCollectionFactory factory = new PostgreSQLCollectionFactory(properties);
+        HikariDataSource ds = PostgreSQLCollectionFactory.createConnectionPool(getProperties());
+        Collection<Bean> beanCollection = factory.getCollection("CountedBeans", Bean.class);
+        try {
+            beanCollection.remove(Filters.empty());
+            List<Bean> beans = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                beans.add(new Bean("value"));
+            }
+            beanCollection.save(beans);
+            assertEquals(100, beanCollection.count(Filters.empty(), null));
+            assertEquals(100, beanCollection.estimatedCount());
+
+            // The cached counts are invalidated by the writes of the collections of the factory
+            factory.getCollection("CountedBeans", Bean.class).save(new Bean("value"));
+            assertEquals(101, beanCollection.count(Filters.empty(), null));
+            assertEquals(50, beanCollection.count(Filters.empty(), 50));
+
+            // The row estimate exceeds the limit by the estimate factor: the limit is returned without counting
+            try (Connection connection = ds.getConnection(); Statement statement = connection.createStatement()) {
+                statement.execute("ANALYZE \"CountedBeans\"");
+            }
+            assertEquals(101, beanCollection.estimatedCount());
+            assertEquals(10, beanCollection.count(Filters.empty(), 10));
+            assertEquals(0, beanCollection.count(Filters.equals("property1", "otherValue"), 10));
+        } finally {
+            beanCollection.drop();
+            ds.close();
+            factory.close();
+        }
+    }
+
     @Test
     public void testFieldFormatter() {
         String test;
@@ -18,8 +18,11 @@
  ******************************************************************************/
 package step.core.collections;
 
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public interface Collection<T> {
@@ -73,6 +76,37 @@ public interface Collection<T> {
 
     Stream<T> findReduced(Filter filter, SearchOrder order, Integer skip, Integer limit, int maxTime, List<String> reduceFields);
 
+    /**
+     * Cursor based paging: returns the page of entities following the position described by the continuation token.
+     * Unlike the paging with skip, the cost of a page doesn't depend on its position for the implementations seeking
+     * directly to the sort keys of the last entity of the previous page. The entities are sorted by the provided order
+     * and then by id.
+     * <p>
+     * This default implementation pages by offset.
+     *
+     * @param filter            the query filter
+     * @param order             the search order. Nullable. The same order has to be passed for all the pages
+     * @param continuationToken the token returned with the previous page or null to get the first page
+     * @param limit             the maximum number of entities of the page
+     * @param maxTime           the maximum execution time of the query in seconds
+     * @return the page of entities and the token of the next page
+     * @throws IllegalArgumentException if the continuation token is invalid
+     */
+    default ResultPage<T> findAfter(Filter filter, SearchOrder order, String continuationToken, int limit, int maxTime) {
+        int skip = continuationToken != null ? ContinuationToken.decodeOffset(order, continuationToken) : 0;
+        List<T> results;
+        // Fetch one extra entity to determine whether a next page exists
+        try (Stream<T> stream = findLazy(filter, order, skip, limit + 1, maxTime)) {
+            results = stream.collect(Collectors.toCollection(ArrayList::new));
+        }
+        String nextToken = null;
+        if (results.size() > limit) {
+            results.remove(limit);
+            nextToken = ContinuationToken.encodeOffset(order, skip + limit);
+        }
+        return new ResultPage<>(results, nextToken);
+    }
+
     /**
      * @param columnName the name of the column (field)
      * @param filter:    the query filter
@@ -82,6 +116,46 @@ public interface Collection<T> {
 
     void remove(Filter filter);
 
+    /**
+     * Removes the entities whose value of the provided numeric field is lower than the provided value.
+     * The implementations partitioning their storage by this field (see {@link #enableRangePartitioning(String, long, long, long)})
+     * drop the partitions entirely below the value instead of deleting the entities one by one.
+     *
+     * @param field the numeric field
+     * @param value the exclusive upper bound of the values to be removed
+     */
+    default void removeLowerThan(String field, long value) {
+        remove(Filters.lt(field, value));
+    }
+
+    /**
+     * Partitions the storage of the collection by ranges of the values of a numeric field. This is only supported by
+     * some implementations and only for empty collections, the other ones ignore it and return false.
+     * Calling this method on a partitioned collection creates the missing partitions of the provided range.
+     *
+     * @param field     the numeric field. Its value is required for all the entities and cannot be changed after the first save
+     * @param rangeSize the size of the range of values of each partition
+     * @param from      the start of the range of values whose partitions are created immediately, the other partitions
+     *                  are created when the first entity of their range is saved
+     * @param to        the end (exclusive) of the range of values whose partitions are created immediately
+     * @return true if the collection is partitioned
+     */
+    default boolean enableRangePartitioning(String field, long rangeSize, long from, long to) {
+        return false;
+    }
+
+    /**
+     * Executes the grouped aggregation in the underlying database, without transferring the aggregated entities.
+     * This is only supported by some implementations, the other ones return an empty optional and the caller is
+     * expected to aggregate the entities itself.
+     *
+     * @param query the aggregation
+     * @return the aggregated groups in no particular order or an empty optional if the aggregation isn't supported
+     */
+    default Optional<List<GroupAggregationResult>> aggregate(GroupAggregationQuery query) {
+        return Optional.empty();
+    }
+
     T save(T entity);
 
     void save(Iterable<T> entities);
@@ -96,6 +170,19 @@ public interface Collection<T> {
 
     void createOrUpdateCompoundIndex(LinkedHashSet<IndexField> fields);
 
+    /**
+     * Defines the fields searched by the {@link step.core.collections.filters.Fulltext} filters and indexes their words.
+     * A collection has a single text index, calling this method with other fields replaces it. The fulltext filters
+     * match the entities containing all the words of their expression in these fields, the words being compared
+     * case-insensitively and without stemming (see {@link FulltextTokenizer}). They are rejected on collections
+     * without text index.
+     *
+     * @param fields the string or string list fields to be searched
+     */
+    default void createOrUpdateTextIndex(String... fields) {
+        throw new UnsupportedOperationException("Text indexes are not supported by " + getClass().getSimpleName());
+    }
+
     void rename(String newName);
 
     void drop();
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import step.core.accessors.DefaultJacksonMapperProvider;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Encodes and decodes the continuation tokens of {@link Collection#findAfter(Filter, SearchOrder, String, int, int)}.
+ * The content of the tokens is defined by each collection implementation, the tokens are opaque for the callers.
+ * <p>
+ * The tokens contain the search order they have been created for, so that tokens passed with another order are rejected
+ */
+public class ContinuationToken {
+
+    private static final ObjectMapper MAPPER = DefaultJacksonMapperProvider.getObjectMapper();
+    private static final String ORDER = "order";
+    private static final String OFFSET = "offset";
+
+    /**
+     * @param order   the search order of the query
+     * @param content the content of the token. Its values have to be serializable to JSON
+     * @return the encoded token
+     */
+    public static String encode(SearchOrder order, Map<String, Object> content) {
+        Map<String, Object> token = new LinkedHashMap<>(content);
+        token.put(ORDER, orderKey(order));
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(MAPPER.writeValueAsBytes(token));
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to encode continuation token", e);
+        }
+    }
+
+    /**
+     * @param order the search order of the query
+     * @param token the encoded token
+     * @return the content of the token
+     * @throws IllegalArgumentException if the token is invalid or has been created for another search order
+     */
+    public static Map<String, Object> decode(SearchOrder order, String token) {
+        Map<String, Object> content;
+        try {
+            content = MAPPER.readValue(Base64.getUrlDecoder().decode(token), new TypeReference<Map<String, Object>>() {});
+        } catch (IllegalArgumentException | IOException e) {
+            throw new IllegalArgumentException("Invalid continuation token: " + token, e);
+        }
+        if (!Objects.equals(orderKey(order), content.remove(ORDER))) {
+            throw new IllegalArgumentException("The continuation token has been created for another search order");
+        }
+        return content;
+    }
+
+    /**
+     * @return the token of the collections paging by offset
+     */
+    public static String encodeOffset(SearchOrder order, int offset) {
+        return encode(order, Map.of(OFFSET, offset));
+    }
+
+    /**
+     * @return the offset of a token created by {@link #encodeOffset(SearchOrder, int)}
+     */
+    public static int decodeOffset(SearchOrder order, String token) {
+        Object offset = decode(order, token).get(OFFSET);
+        if (!(offset instanceof Number)) {
+            throw new IllegalArgumentException("Invalid continuation token: " + token);
+        }
+        return ((Number) offset).intValue();
+    }
+
+    private static List<String> orderKey(SearchOrder order) {
+        return order != null ? order.getFieldsSearchOrder().stream().map(o -> o.attributeName + ":" + o.order).collect(Collectors.toList()) : List.of();
+    }
+}
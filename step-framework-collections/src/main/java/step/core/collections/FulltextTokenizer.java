@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits the expressions of the {@link step.core.collections.filters.Fulltext} filters and the values of the text
+ * indexed fields into words. The words are the sequences of letters and digits, lower-cased so that they are
+ * compared case-insensitively. No stemming is applied.
+ */
+public class FulltextTokenizer {
+
+    private static final Pattern WORD_PATTERN = Pattern.compile("[\\p{L}\\p{N}]+");
+
+    /**
+     * @param text the text to be split. Nullable
+     * @return the distinct words of the text in order of appearance
+     */
+    public static Set<String> tokenize(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        addWords(text, words);
+        return words;
+    }
+
+    /**
+     * Adds the words of a field value. The elements of collections are split individually
+     *
+     * @param value the value of a field. Nullable
+     * @param words the set the words are added to
+     */
+    public static void addWords(Object value, Set<String> words) {
+        if (value instanceof Iterable<?> iterable) {
+            iterable.forEach(e -> addWords(e, words));
+        } else if (value != null) {
+            Matcher matcher = WORD_PATTERN.matcher(value.toString());
+            while (matcher.find()) {
+                words.add(matcher.group().toLowerCase(Locale.ROOT));
+            }
+        }
+    }
+}
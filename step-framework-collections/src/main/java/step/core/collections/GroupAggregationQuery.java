@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections;
+
+import java.util.List;
+
+/**
+ * Grouped aggregation executed by the underlying database, see {@link Collection#aggregate(GroupAggregationQuery)}.
+ * The entities matching the filter are grouped by the values of the group fields and, optionally, by the time slice
+ * of a numeric time field. For each group the numeric fields are reduced to their sum, min or max and the entries of
+ * the map fields (map of numeric values) are summed by key.
+ */
+public class GroupAggregationQuery {
+
+    private Filter filter = Filters.empty();
+    private List<String> groupFields = List.of();
+    private String timeField;
+    private long timeOrigin;
+    private long timeSliceSize;
+    private List<String> sumFields = List.of();
+    private List<String> minFields = List.of();
+    private List<String> maxFields = List.of();
+    private List<String> mapSumFields = List.of();
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    public GroupAggregationQuery setFilter(Filter filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    public List<String> getGroupFields() {
+        return groupFields;
+    }
+
+    /**
+     * @param groupFields the fields whose values define the groups. The entities missing a field are grouped under the
+     *                    absence of its value
+     */
+    public GroupAggregationQuery setGroupFields(List<String> groupFields) {
+        this.groupFields = groupFields;
+        return this;
+    }
+
+    public String getTimeField() {
+        return timeField;
+    }
+
+    public long getTimeOrigin() {
+        return timeOrigin;
+    }
+
+    public long getTimeSliceSize() {
+        return timeSliceSize;
+    }
+
+    /**
+     * Groups the entities by time slice in addition to the group fields. The time slice of an entity is the start of
+     * the slice of the provided size containing the value of its time field, the slices being aligned on the origin.
+     *
+     * @param timeField     the numeric time field. Its value is expected to be greater than or equal to the origin
+     * @param timeOrigin    the start of the first slice
+     * @param timeSliceSize the size of the slices, 0 for one single slice starting at the origin
+     */
+    public GroupAggregationQuery setTimeSlicing(String timeField, long timeOrigin, long timeSliceSize) {
+        this.timeField = timeField;
+        this.timeOrigin = timeOrigin;
+        this.timeSliceSize = timeSliceSize;
+        return this;
+    }
+
+    public List<String> getSumFields() {
+        return sumFields;
+    }
+
+    public GroupAggregationQuery setSumFields(List<String> sumFields) {
+        this.sumFields = sumFields;
+        return this;
+    }
+
+    public List<String> getMinFields() {
+        return minFields;
+    }
+
+    public GroupAggregationQuery setMinFields(List<String> minFields) {
+        this.minFields = minFields;
+        return this;
+    }
+
+    public List<String> getMaxFields() {
+        return maxFields;
+    }
+
+    public GroupAggregationQuery setMaxFields(List<String> maxFields) {
+        this.maxFields = maxFields;
+        return this;
+    }
+
+    public List<String> getMapSumFields() {
+        return mapSumFields;
+    }
+
+    /**
+     * @param mapSumFields the map fields whose numeric values are summed by key
+     */
+    public GroupAggregationQuery setMapSumFields(List<String> mapSumFields) {
+        this.mapSumFields = mapSumFields;
+        return this;
+    }
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A group returned by {@link Collection#aggregate(GroupAggregationQuery)}
+ */
+public class GroupAggregationResult {
+
+    private final Map<String, Object> groupValues;
+    private final long timeSlice;
+    private final Map<String, Number> sums = new HashMap<>();
+    private final Map<String, Number> mins = new HashMap<>();
+    private final Map<String, Number> maxs = new HashMap<>();
+    private final Map<String, Map<String, Long>> mapSums = new HashMap<>();
+
+    /**
+     * @param groupValues the values of the group fields by field. The fields missing in the entities of the group are absent
+     * @param timeSlice   the start of the time slice of the group, the time origin of the query if it isn't sliced by time
+     */
+    public GroupAggregationResult(Map<String, Object> groupValues, long timeSlice) {
+        this.groupValues = groupValues;
+        this.timeSlice = timeSlice;
+    }
+
+    public Map<String, Object> getGroupValues() {
+        return groupValues;
+    }
+
+    public long getTimeSlice() {
+        return timeSlice;
+    }
+
+    public Number getSum(String field) {
+        return sums.get(field);
+    }
+
+    public GroupAggregationResult setSum(String field, Number sum) {
+        sums.put(field, sum);
+        return this;
+    }
+
+    public Number getMin(String field) {
+        return mins.get(field);
+    }
+
+    public GroupAggregationResult setMin(String field, Number min) {
+        mins.put(field, min);
+        return this;
+    }
+
+    public Number getMax(String field) {
+        return maxs.get(field);
+    }
+
+    public GroupAggregationResult setMax(String field, Number max) {
+        maxs.put(field, max);
+        return this;
+    }
+
+    /**
+     * @return the sums of the values of the map field by key
+     */
+    public Map<String, Long> getMapSum(String field) {
+        return mapSums.get(field);
+    }
+
+    public GroupAggregationResult setMapSum(String field, Map<String, Long> mapSum) {
+        mapSums.put(field, mapSum);
+        return this;
+    }
+}
@@ -25,8 +25,12 @@ import step.core.collections.filters.*;
 
 import java.lang.reflect.InvocationTargetException;
 import java.math.BigDecimal;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -35,6 +39,36 @@ public class PojoFilters {
 
     public static class PojoFilterFactory<POJO> implements FilterFactory<PojoFilter<?>> {
 
+        private final Function<String, PojoPropertyAccessor> accessorFactory;
+        private final List<String> textFields;
+
+        /**
+         * Creates a factory building filters which resolve the properties through compiled accessors
+         */
+        public PojoFilterFactory() {
+            this(true);
+        }
+
+        /**
+         * @param compiled if true the properties are resolved through compiled accessors (see {@link PojoPropertyAccessor#compiled(String)}),
+         *                 otherwise they are resolved by reflection on each evaluation
+         */
+        public PojoFilterFactory(boolean compiled) {
+            this(compiled, List.of());
+        }
+
+        /**
+         * @param compiled   if true the properties are resolved through compiled accessors (see {@link PojoPropertyAccessor#compiled(String)}),
+         *                   otherwise they are resolved by reflection on each evaluation
+         * @param textFields the fields searched by the {@link Fulltext} filters (see {@link Collection#createOrUpdateTextIndex(String...)}).
+         *                   {@link Fulltext} filters are rejected if empty
+         */
+        public PojoFilterFactory(boolean compiled, List<String> textFields) {
+            super();
+            this.accessorFactory = compiled ? PojoPropertyAccessor::compiled : PojoPropertyAccessor::reflective;
+            this.textFields = textFields;
+        }
+
         @Override
         public PojoFilter<POJO> buildFilter(Filter filter) {
 
@@ -60,31 +94,40 @@ public class PojoFilters {
             } else if (filter instanceof Not) {
                 return new NotPojoFilter<>(childerPojoFilters.get(0));
             } else if (filter instanceof Equals) {
-                return new EqualsPojoFilter<>((Equals) filter);
+                return new EqualsPojoFilter<>((Equals) filter, accessor(filter));
             } else if (filter instanceof Regex) {
-                return new RegexPojoFilter<>((Regex) filter);
+                return new RegexPojoFilter<>((Regex) filter, accessor(filter));
             } else if (filter instanceof True) {
                 return new TruePojoFilter<>();
             } else if (filter instanceof False) {
                 return new FalsePojoFilter<>();
             } else if (filter instanceof Lt) {
-                return new LtPojoFilter<>((Lt) filter);
+                return new LtPojoFilter<>((Lt) filter, accessor(filter));
             } else if (filter instanceof Lte) {
-                return new LtePojoFilter<>((Lte) filter);
+                return new LtePojoFilter<>((Lte) filter, accessor(filter));
             } else if (filter instanceof Gt) {
-                return new GtPojoFilter<>((Gt) filter);
+                return new GtPojoFilter<>((Gt) filter, accessor(filter));
             } else if (filter instanceof Gte) {
-                return new GtePojoFilter<>((Gte) filter);
+                return new GtePojoFilter<>((Gte) filter, accessor(filter));
             } else if (filter instanceof Exists) {
-                return new ExistsPojoFilter<>((Exists) filter);
+                return new ExistsPojoFilter<>((Exists) filter, accessor(filter));
             } else if (filter instanceof In) {
-                return new InPojoFilter<>((In) filter);
+                return new InPojoFilter<>((In) filter, accessor(filter));
             } else if (filter instanceof Includes) {
-                return new IncludesPojoFilter<>((Includes) filter);
+                return new IncludesPojoFilter<>((Includes) filter, accessor(filter));
+            } else if (filter instanceof Fulltext) {
+                if (textFields.isEmpty()) {
+                    throw new IllegalArgumentException("Fulltext filters require a text index, see Collection#createOrUpdateTextIndex");
+                }
+                return new FulltextPojoFilter<>((Fulltext) filter, textFields.stream().map(accessorFactory).collect(Collectors.toList()));
             } else {
                 throw new IllegalArgumentException("Unsupported filter type " + filter.getClass());
             }
         }
+
+        private PojoPropertyAccessor accessor(Filter filter) {
+            return accessorFactory.apply(filter.getField());
+        }
     }
 
     public static class AndPojoFilter<T> implements PojoFilter<T> {
@@ -158,12 +201,17 @@ public class PojoFilters {
 
     public static class EqualsPojoFilter<T> implements PojoFilter<T> {
 
-        private final Equals equalsFilter;
+        private final PojoPropertyAccessor propertyAccessor;
         private final Object expectedValue;
+        private final Predicate<Object> valueMatcher;
 
         public EqualsPojoFilter(Equals equalsFilter) {
+            this(equalsFilter, PojoPropertyAccessor.compiled(equalsFilter.getField()));
+        }
+
+        public EqualsPojoFilter(Equals equalsFilter, PojoPropertyAccessor propertyAccessor) {
             super();
-            this.equalsFilter = equalsFilter;
+            this.propertyAccessor = propertyAccessor;
             String field = equalsFilter.getField();
             Object expectedValue = equalsFilter.getExpectedValue();
             if (field.equals(AbstractIdentifiableObject.ID) && expectedValue instanceof String) {
@@ -171,49 +219,83 @@ public class PojoFilters {
             } else {
                 this.expectedValue = expectedValue;
             }
+            this.valueMatcher = buildValueMatcher(this.expectedValue);
+        }
+
+        /**
+         * Selects the comparison according to the type of the expected value once for all the tested objects
+         */
+        private static Predicate<Object> buildValueMatcher(Object expectedValue) {
+            if (expectedValue == null) {
+                return Objects::isNull;
+            } else if (isIntegral(expectedValue)) {
+                long expected = ((Number) expectedValue).longValue();
+                return beanProperty -> {
+                    if (isIntegral(beanProperty)) {
+                        return ((Number) beanProperty).longValue() == expected;
+                    } else if (beanProperty instanceof Double) {
+                        return compareLongToDouble(expected, (Double) beanProperty) == 0;
+                    } else {
+                        return beanProperty instanceof Number && compareNumbers((Number) expectedValue, (Number) beanProperty) == 0;
+                    }
+                };
+            } else if (expectedValue instanceof Double) {
+                double expected = (Double) expectedValue;
+                return beanProperty -> {
+                    if (beanProperty instanceof Double) {
+                        return (Double) beanProperty == expected;
+                    } else if (isIntegral(beanProperty)) {
+                        return compareLongToDouble(((Number) beanProperty).longValue(), expected) == 0;
+                    } else {
+                        return beanProperty instanceof Number && compareNumbers((Number) expectedValue, (Number) beanProperty) == 0;
+                    }
+                };
+            } else if (expectedValue instanceof Number) {
+                return beanProperty -> beanProperty instanceof Number && compareNumbers((Number) expectedValue, (Number) beanProperty) == 0;
+            } else if (expectedValue instanceof String) {
+                return beanProperty -> {
+                    if (beanProperty instanceof String) {
+                        return expectedValue.equals(beanProperty);
+                    } else {
+                        return beanProperty != null && beanProperty.getClass().isEnum() && expectedValue.equals(beanProperty.toString());
+                    }
+                };
+            } else {
+                // ObjectId, enums, booleans and other objects
+                return expectedValue::equals;
+            }
         }
 
         @Override
         public boolean test(T t) {
             try {
-                String field = equalsFilter.getField();
-                Object beanProperty = getBeanProperty(t, field);
+                Object beanProperty = propertyAccessor.get(t);
+                if (beanProperty == PojoPropertyAccessor.NO_SUCH_PROPERTY) {
+                    return (expectedValue == null);
+                }
                 return testProperty(beanProperty);
-            } catch (NoSuchMethodException e) {
-                return (expectedValue == null);
             } catch (IllegalAccessException | InvocationTargetException e) {
                 return false;
             }
         }
 
         public boolean testProperty(Object beanProperty) {
-            if (expectedValue != null) {
-                if (expectedValue instanceof Number) {
-                    if (beanProperty instanceof Number) {
-                        return new BigDecimal(expectedValue.toString()).compareTo(new BigDecimal(beanProperty.toString())) == 0;
-                    } else {
-                        return false;
-                    }
-                }
-                if (expectedValue instanceof String && beanProperty != null && beanProperty.getClass().isEnum()) {
-                    return expectedValue.equals(beanProperty.toString());
-                } else {
-                    return expectedValue.equals(beanProperty);
-                }
-            } else {
-                return beanProperty == null;
-            }
+            return valueMatcher.test(beanProperty);
         }
     }
 
     public static class RegexPojoFilter<T> implements PojoFilter<T> {
 
-        private final Regex regexFilter;
+        private final PojoPropertyAccessor propertyAccessor;
         private final Pattern pattern;
 
         public RegexPojoFilter(Regex regexFilter) {
+            this(regexFilter, PojoPropertyAccessor.compiled(regexFilter.getField()));
+        }
+
+        public RegexPojoFilter(Regex regexFilter, PojoPropertyAccessor propertyAccessor) {
             super();
-            this.regexFilter = regexFilter;
+            this.propertyAccessor = propertyAccessor;
             String expression = "";
             if (!regexFilter.isCaseSensitive()) {
                 expression += "(?i)";
@@ -225,165 +307,207 @@ public class PojoFilters {
         @Override
         public boolean test(T t) {
             try {
-                Object beanProperty = getBeanProperty(t, regexFilter.getField());
-                if (beanProperty != null) {
+                Object beanProperty = propertyAccessor.get(t);
+                if (beanProperty != null && beanProperty != PojoPropertyAccessor.NO_SUCH_PROPERTY) {
                     Matcher matcher = pattern.matcher(beanProperty.toString());
                     return matcher.find();
                 } else {
                     return false;
                 }
-            } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
+            } catch (IllegalAccessException | InvocationTargetException e) {
                 return false;
             }
         }
     }
 
-    public static class LtPojoFilter<T> implements PojoFilter<T> {
+    /**
+     * Matches the beans containing all the words of the expression in the provided text fields,
+     * the words being split by the {@link FulltextTokenizer}
+     */
+    public static class FulltextPojoFilter<T> implements PojoFilter<T> {
 
-        private final Lt ltFilter;
+        private final List<PojoPropertyAccessor> propertyAccessors;
+        private final Set<String> words;
 
-        public LtPojoFilter(Lt ltFilter) {
+        public FulltextPojoFilter(Fulltext fulltextFilter, List<PojoPropertyAccessor> propertyAccessors) {
             super();
-            this.ltFilter = ltFilter;
+            this.propertyAccessors = propertyAccessors;
+            this.words = FulltextTokenizer.tokenize(fulltextFilter.getExpression());
         }
 
         @Override
         public boolean test(T t) {
-            try {
-                String field = ltFilter.getField();
-                Object beanProperty = getBeanProperty(t, field);
-                long value = ltFilter.getValue();
-                if (beanProperty instanceof Number) {
-                    Number fieldValue = (Number) beanProperty;
-                    return (fieldValue.longValue() < value);
-                } else {
-                    throw new RuntimeException("Gt,Gte,Lt and Lte filters only support numbers, provided field is not compatible: " + field);
+            if (words.isEmpty()) {
+                return true;
+            }
+            Set<String> beanWords = new HashSet<>();
+            for (PojoPropertyAccessor propertyAccessor : propertyAccessors) {
+                try {
+                    Object beanProperty = propertyAccessor.get(t);
+                    if (beanProperty != PojoPropertyAccessor.NO_SUCH_PROPERTY) {
+                        FulltextTokenizer.addWords(beanProperty, beanWords);
+                    }
+                } catch (IllegalAccessException | InvocationTargetException e) {
+                    // Such properties are ignored
                 }
-            } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-                return false;
             }
+            return beanWords.containsAll(words);
         }
     }
 
-    public static class LtePojoFilter<T> implements PojoFilter<T> {
+    public static abstract class AbstractRangePojoFilter<T> implements PojoFilter<T> {
 
-        private final Lte lteFilter;
+        private final String field;
+        private final long value;
+        private final PojoPropertyAccessor propertyAccessor;
 
-        public LtePojoFilter(Lte lteFilter) {
+        protected AbstractRangePojoFilter(String field, long value, PojoPropertyAccessor propertyAccessor) {
             super();
-            this.lteFilter = lteFilter;
+            this.field = field;
+            this.value = value;
+            this.propertyAccessor = propertyAccessor;
         }
 
         @Override
         public boolean test(T t) {
             try {
-                String field = lteFilter.getField();
-                Object beanProperty = getBeanProperty(t, field);
-                long value = lteFilter.getValue();
-                if (beanProperty instanceof Number) {
-                    Number fieldValue = (Number) beanProperty;
-                    return (fieldValue.longValue() <= value);
+                Object beanProperty = propertyAccessor.get(t);
+                if (beanProperty == PojoPropertyAccessor.NO_SUCH_PROPERTY) {
+                    return false;
+                }
+                long fieldValue;
+                if (beanProperty instanceof Long) {
+                    fieldValue = (Long) beanProperty;
+                } else if (beanProperty instanceof Integer) {
+                    fieldValue = (Integer) beanProperty;
+                } else if (beanProperty instanceof Number) {
+                    fieldValue = ((Number) beanProperty).longValue();
                 } else {
                     throw new RuntimeException("Gt,Gte,Lt and Lte filters only support numbers, provided field is not compatible: " + field);
                 }
-            } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
+                return compare(fieldValue, value);
+            } catch (IllegalAccessException | InvocationTargetException e) {
                 return false;
             }
         }
+
+        protected abstract boolean compare(long fieldValue, long value);
     }
 
-    public static class GtPojoFilter<T> implements PojoFilter<T> {
+    public static class LtPojoFilter<T> extends AbstractRangePojoFilter<T> {
 
-        private final Gt gtFilter;
+        public LtPojoFilter(Lt ltFilter) {
+            this(ltFilter, PojoPropertyAccessor.compiled(ltFilter.getField()));
+        }
 
-        public GtPojoFilter(Gt gtFilter) {
-            super();
-            this.gtFilter = gtFilter;
+        public LtPojoFilter(Lt ltFilter, PojoPropertyAccessor propertyAccessor) {
+            super(ltFilter.getField(), ltFilter.getValue(), propertyAccessor);
         }
 
         @Override
-        public boolean test(T t) {
-            try {
-                String field = gtFilter.getField();
-                Object beanProperty = getBeanProperty(t, field);
-                long value = gtFilter.getValue();
-                if (beanProperty instanceof Number) {
-                    Number fieldValue = (Number) beanProperty;
-                    return (fieldValue.longValue() > value);
-                } else {
-                    throw new RuntimeException("Gt,Gte,Lt and Lte filters only support numbers, provided field is not compatible: " + field);
-                }
-            } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-                return false;
-            }
+        protected boolean compare(long fieldValue, long value) {
+            return fieldValue < value;
+        }
+    }
+
+    public static class LtePojoFilter<T> extends AbstractRangePojoFilter<T> {
+
+        public LtePojoFilter(Lte lteFilter) {
+            this(lteFilter, PojoPropertyAccessor.compiled(lteFilter.getField()));
+        }
+
+        public LtePojoFilter(Lte lteFilter, PojoPropertyAccessor propertyAccessor) {
+            super(lteFilter.getField(), lteFilter.getValue(), propertyAccessor);
+        }
+
+        @Override
+        protected boolean compare(long fieldValue, long value) {
+            return fieldValue <= value;
         }
     }
 
-    public static class GtePojoFilter<T> implements PojoFilter<T> {
+    public static class GtPojoFilter<T> extends AbstractRangePojoFilter<T> {
 
-        private final Gte gteFilter;
+        public GtPojoFilter(Gt gtFilter) {
+            this(gtFilter, PojoPropertyAccessor.compiled(gtFilter.getField()));
+        }
+
+        public GtPojoFilter(Gt gtFilter, PojoPropertyAccessor propertyAccessor) {
+            super(gtFilter.getField(), gtFilter.getValue(), propertyAccessor);
+        }
+
+        @Override
+        protected boolean compare(long fieldValue, long value) {
+            return fieldValue > value;
+        }
+    }
+
+    public static class GtePojoFilter<T> extends AbstractRangePojoFilter<T> {
 
         public GtePojoFilter(Gte gteFilter) {
-            super();
-            this.gteFilter = gteFilter;
+            this(gteFilter, PojoPropertyAccessor.compiled(gteFilter.getField()));
+        }
+
+        public GtePojoFilter(Gte gteFilter, PojoPropertyAccessor propertyAccessor) {
+            super(gteFilter.getField(), gteFilter.getValue(), propertyAccessor);
         }
 
         @Override
-        public boolean test(T t) {
-            try {
-                String field = gteFilter.getField();
-                Object beanProperty = getBeanProperty(t, field);
-                long value = gteFilter.getValue();
-                if (beanProperty instanceof Number) {
-                    Number fieldValue = (Number) beanProperty;
-                    return (fieldValue.longValue() >= value);
-                } else {
-                    throw new RuntimeException("Gt,Gte,Lt and Lte filters only support numbers, provided field is not compatible: " + field);
-                }
-            } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-                return false;
-            }
+        protected boolean compare(long fieldValue, long value) {
+            return fieldValue >= value;
         }
     }
 
     public static class ExistsPojoFilter<T> implements PojoFilter<T> {
 
-        private final Exists existsFilter;
+        private final PojoPropertyAccessor propertyAccessor;
 
         public ExistsPojoFilter(Exists existsFilter) {
+            this(existsFilter, PojoPropertyAccessor.compiled(existsFilter.getField()));
+        }
+
+        public ExistsPojoFilter(Exists existsFilter, PojoPropertyAccessor propertyAccessor) {
             super();
-            this.existsFilter = existsFilter;
+            this.propertyAccessor = propertyAccessor;
         }
 
         @Override
         public boolean test(T t) {
             Object beanProperty = null;
             try {
-                beanProperty = getBeanProperty(t, existsFilter.getField());
+                beanProperty = propertyAccessor.get(t);
             } catch (Exception e) {
                 //consider bean does not exist
             }
-            return beanProperty != null;
+            return beanProperty != null && beanProperty != PojoPropertyAccessor.NO_SUCH_PROPERTY;
         }
     }
 
     public static class InPojoFilter<T> implements PojoFilter<T> {
 
-        private final String field;
+        private final PojoPropertyAccessor propertyAccessor;
         private final List<EqualsPojoFilter<T>> equalFilters;
 
         public InPojoFilter(In inFilter) {
+            this(inFilter, PojoPropertyAccessor.compiled(inFilter.getField()));
+        }
+
+        public InPojoFilter(In inFilter, PojoPropertyAccessor propertyAccessor) {
             super();
-            field = inFilter.getField();
-            equalFilters = inFilter.getValues().stream().map(v -> new EqualsPojoFilter<T>(new Equals(field, v))).collect(Collectors.toList());
+            this.propertyAccessor = propertyAccessor;
+            String field = inFilter.getField();
+            equalFilters = inFilter.getValues().stream().map(v -> new EqualsPojoFilter<T>(new Equals(field, v), propertyAccessor)).collect(Collectors.toList());
         }
 
         @Override
         public boolean test(T t) {
             try {
-                Object beanProperty = getBeanProperty(t, field);
+                Object beanProperty = propertyAccessor.get(t);
+                if (beanProperty == PojoPropertyAccessor.NO_SUCH_PROPERTY) {
+                    return false;
+                }
                 return equalFilters.stream().anyMatch(eq -> eq.testProperty(beanProperty));
-            } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
+            } catch (IllegalAccessException | InvocationTargetException e) {
                 return false;
             }
         }
@@ -402,28 +526,72 @@ public class PojoFilters {
     public static class IncludesPojoFilter<T> implements PojoFilter<T> {
 
         private final Includes includesFilter;
+        private final PojoPropertyAccessor propertyAccessor;
 
         public IncludesPojoFilter(Includes includesFilter) {
+            this(includesFilter, PojoPropertyAccessor.compiled(includesFilter.getField()));
+        }
+
+        public IncludesPojoFilter(Includes includesFilter, PojoPropertyAccessor propertyAccessor) {
             super();
             this.includesFilter = includesFilter;
+            this.propertyAccessor = propertyAccessor;
         }
 
         @Override
         public boolean test(T t) {
             try {
-                Object beanProperty = getBeanProperty(t, includesFilter.getField());
+                Object beanProperty = propertyAccessor.get(t);
                 if (beanProperty instanceof java.util.Collection<?> collection) {
                     return collection.contains(includesFilter.getExpectedValue());
                 }
                 return false;
-            } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
+            } catch (IllegalAccessException | InvocationTargetException e) {
                 return false;
             }
         }
     }
 
-    private static Object getBeanProperty(Object t, String fieldName)
-        throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
-        return PojoUtils.getProperty(t, fieldName);
+    private static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+    /**
+     * Compares the numeric values of the provided numbers. Integral and double values are compared
+     * without allocation, other number types are compared as {@link BigDecimal}
+     */
+    public static int compareNumbers(Number n1, Number n2) {
+        if (isIntegral(n1) && isIntegral(n2)) {
+            return Long.compare(n1.longValue(), n2.longValue());
+        } else if (n1 instanceof Double && n2 instanceof Double) {
+            double d1 = n1.doubleValue();
+            double d2 = n2.doubleValue();
+            // 0.0 and -0.0 are considered equal like their BigDecimal representation
+            return d1 == d2 ? 0 : Double.compare(d1, d2);
+        } else if (isIntegral(n1) && n2 instanceof Double) {
+            return compareLongToDouble(n1.longValue(), n2.doubleValue());
+        } else if (n1 instanceof Double && isIntegral(n2)) {
+            return -compareLongToDouble(n2.longValue(), n1.doubleValue());
+        } else {
+            return new BigDecimal(n1.toString()).compareTo(new BigDecimal(n2.toString()));
+        }
+    }
+
+    /**
+     * Exact comparison of a long and a double value
+     */
+    private static int compareLongToDouble(long l, double d) {
+        if (Double.isNaN(d) || d >= 0x1p63) {
+            return -1;
+        } else if (d < -0x1p63) {
+            return 1;
+        }
+        // The truncation is exact as |d| < 2^63
+        long truncated = (long) d;
+        if (l != truncated) {
+            return Long.compare(l, truncated);
+        }
+        double fraction = d - truncated;
+        return fraction > 0 ? -1 : (fraction < 0 ? 1 : 0);
     }
 }
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.beanutils.MethodUtils;
+
+import step.core.accessors.AbstractIdentifiableObject;
+
+/**
+ * Reads the value of a (nested) property of a POJO or a {@link Map} bean.
+ * <p>
+ * The compiled accessors split the dotted path once and resolve the getters of each
+ * bean class once. The getters are then cached as {@link MethodHandle}s, no reflective
+ * lookup or exception is involved when evaluating the accessor on an object. They follow
+ * the semantic of {@link PojoUtils#getProperty(Object, String)}.
+ */
+public interface PojoPropertyAccessor {
+
+    /**
+     * Returned by the accessors when the property doesn't exist on the bean
+     */
+    Object NO_SUCH_PROPERTY = new Object();
+
+    /**
+     * @param bean the object to read the property from
+     * @return the value of the property or {@link #NO_SUCH_PROPERTY} if the property doesn't exist on the bean
+     */
+    Object get(Object bean) throws IllegalAccessException, InvocationTargetException;
+
+    /**
+     * @param path the dotted path of the property
+     * @return an accessor resolving the getters once per bean class
+     */
+    static PojoPropertyAccessor compiled(String path) {
+        if (path.indexOf('[') >= 0 || path.indexOf('(') >= 0) {
+            // Indexed and mapped properties are only supported by the reflective accessor
+            return reflective(path);
+        } else {
+            return new CompiledPropertyAccessor(path);
+        }
+    }
+
+    /**
+     * @param path the dotted path of the property
+     * @return an accessor delegating to {@link PojoUtils#getProperty(Object, String)} on each call
+     */
+    static PojoPropertyAccessor reflective(String path) {
+        return bean -> {
+            try {
+                return PojoUtils.getProperty(bean, path);
+            } catch (NoSuchMethodException e) {
+                return NO_SUCH_PROPERTY;
+            }
+        };
+    }
+
+    class CompiledPropertyAccessor implements PojoPropertyAccessor {
+
+        private static final ClassValue<Map<String, PropertyGetter>> getters = new GetterCache();
+        private static final ClassValue<Map<String, PropertyGetter>> gettersWithFieldFallback = new GetterCache();
+
+        private final String[] segments;
+
+        public CompiledPropertyAccessor(String path) {
+            this.segments = path.split("\\.");
+        }
+
+        @Override
+        public Object get(Object bean) throws InvocationTargetException {
+            Object current = bean;
+            for (String segment : segments) {
+                if (current == null) {
+                    // Null intermediate properties are resolved to null
+                    return null;
+                }
+                if (current instanceof Map) {
+                    current = getPropertyOfMapBean((Map<?, ?>) current, segment);
+                } else {
+                    // Public fields are only considered for simple properties
+                    boolean fieldFallback = segments.length == 1;
+                    Class<?> beanClass = current.getClass();
+                    PropertyGetter getter = (fieldFallback ? gettersWithFieldFallback : getters).get(beanClass)
+                        .computeIfAbsent(segment, s -> resolveGetter(beanClass, s, fieldFallback));
+                    current = getter.get(current);
+                    if (current == NO_SUCH_PROPERTY) {
+                        return NO_SUCH_PROPERTY;
+                    }
+                }
+            }
+            return current;
+        }
+
+        private static Object getPropertyOfMapBean(Map<?, ?> bean, String propertyName) {
+            if (bean instanceof Document && propertyName.equals(AbstractIdentifiableObject.ID)) {
+                return ((Document) bean).getId();
+            } else {
+                return bean.get(propertyName);
+            }
+        }
+
+        private static PropertyGetter resolveGetter(Class<?> beanClass, String propertyName, boolean fieldFallback) {
+            if (propertyName.equals("_class")) {
+                return bean -> bean.getClass().getName();
+            }
+            String name = propertyName.equals("_id") ? AbstractIdentifiableObject.ID : propertyName;
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            MethodType getterType = MethodType.methodType(Object.class, Object.class);
+            try {
+                // The class property is suppressed by the bean utils
+                PropertyDescriptor descriptor = name.equals("class") ? null :
+                    Arrays.stream(Introspector.getBeanInfo(beanClass).getPropertyDescriptors())
+                        .filter(d -> d.getName().equals(name)).findFirst().orElse(null);
+                Method readMethod = descriptor != null && descriptor.getReadMethod() != null ?
+                    MethodUtils.getAccessibleMethod(beanClass, descriptor.getReadMethod()) : null;
+                if (readMethod != null) {
+                    return new MethodHandleGetter(lookup.unreflect(readMethod).asType(getterType));
+                }
+                if (fieldFallback) {
+                    Field field = beanClass.getField(propertyName);
+                    if (Modifier.isPublic(field.getDeclaringClass().getModifiers()) && !Modifier.isStatic(field.getModifiers())) {
+                        return new MethodHandleGetter(lookup.unreflectGetter(field).asType(getterType));
+                    }
+                }
+            } catch (IntrospectionException | IllegalAccessException | NoSuchFieldException e) {
+                // Considered as missing property
+            }
+            return bean -> NO_SUCH_PROPERTY;
+        }
+    }
+
+    class GetterCache extends ClassValue<Map<String, PropertyGetter>> {
+        @Override
+        protected Map<String, PropertyGetter> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    }
+
+    interface PropertyGetter {
+        Object get(Object bean) throws InvocationTargetException;
+    }
+
+    class MethodHandleGetter implements PropertyGetter {
+
+        private final MethodHandle methodHandle;
+
+        public MethodHandleGetter(MethodHandle methodHandle) {
+            this.methodHandle = methodHandle;
+        }
+
+        @Override
+        public Object get(Object bean) throws InvocationTargetException {
+            try {
+                return (Object) methodHandle.invokeExact(bean);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+    }
+}
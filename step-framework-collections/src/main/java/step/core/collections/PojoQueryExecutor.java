@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.bson.types.ObjectId;
+
+/**
+ * Executes the sort, skip and limit of the queries of the collections evaluating their filters
+ * in the JVM like the in-memory and filesystem collections.
+ * <p>
+ * The results are sorted by the provided {@link SearchOrder} and then by id, or by id only if no
+ * order is specified. The skip and limit are pushed down to the sort (see {@link PojoUtils#sort(Stream, Comparator, Integer, Integer)})
+ * so that only the first skip + limit elements are kept when a limit is provided.
+ *
+ * @param <T> the type of the entities
+ */
+public class PojoQueryExecutor<T> {
+
+    private final Function<T, ObjectId> idProvider;
+
+    /**
+     * @param idProvider the function returning the id of an entity
+     */
+    public PojoQueryExecutor(Function<T, ObjectId> idProvider) {
+        this.idProvider = idProvider;
+    }
+
+    /**
+     * @param filteredEntities the (unsorted) entities matching the filter of the query
+     * @param order            the search order. Nullable
+     * @param skip             the number of entities to be skipped. Nullable
+     * @param limit            the maximum number of entities to be returned. Nullable
+     * @return the sorted entities
+     */
+    public Stream<T> find(Stream<T> filteredEntities, SearchOrder order, Integer skip, Integer limit) {
+        Stream<QueryEntry<T>> entries;
+        Comparator<QueryEntry<T>> comparator;
+        if (order != null && !order.getFieldsSearchOrder().isEmpty()) {
+            PojoUtils.SearchOrderComparator<T> searchOrderComparator = new PojoUtils.SearchOrderComparator<>(order.getFieldsSearchOrder());
+            entries = filteredEntities.map(e -> new QueryEntry<>(searchOrderComparator.extractSortKeys(e), idProvider.apply(e), e));
+            comparator = (e1, e2) -> {
+                int comparison = searchOrderComparator.compareSortKeys(e1.sortKeys, e2.sortKeys);
+                return comparison != 0 ? comparison : e1.id.compareTo(e2.id);
+            };
+        } else {
+            entries = filteredEntities.map(e -> new QueryEntry<>(null, idProvider.apply(e), e));
+            comparator = (e1, e2) -> e1.id.compareTo(e2.id);
+        }
+        return PojoUtils.sort(entries, comparator, skip, limit).stream().map(e -> e.entity);
+    }
+
+    /**
+     * @param filteredEntities the entities matching the filter of the query
+     * @param limit            the maximum number of entities to count. Nullable
+     * @return the number of entities, the counting stops as soon as the limit is reached
+     */
+    public long count(Stream<T> filteredEntities, Integer limit) {
+        if (limit != null) {
+            filteredEntities = filteredEntities.limit(limit);
+        }
+        return filteredEntities.count();
+    }
+
+    /**
+     * @param entities   the entities matching the filter of the query
+     * @param columnName the name of the field
+     * @return the distinct string representations of the values of the field in encounter order. Null values and
+     * missing properties are reported as null
+     */
+    public List<String> distinct(Stream<T> entities, String columnName) {
+        PojoPropertyAccessor accessor = PojoPropertyAccessor.compiled(columnName);
+        // Only the distinct values are retained, the entities are not materialized
+        Set<String> values = new LinkedHashSet<>();
+        entities.forEach(e -> {
+            Object value;
+            try {
+                value = accessor.get(e);
+            } catch (IllegalAccessException | InvocationTargetException ex) {
+                throw new RuntimeException(ex);
+            }
+            values.add(value != null && value != PojoPropertyAccessor.NO_SUCH_PROPERTY ? value.toString() : null);
+        });
+        return new ArrayList<>(values);
+    }
+
+    private static class QueryEntry<T> {
+
+        private final Object[] sortKeys;
+        private final ObjectId id;
+        private final T entity;
+
+        private QueryEntry(Object[] sortKeys, ObjectId id, T entity) {
+            this.sortKeys = sortKeys;
+            this.id = id;
+            this.entity = entity;
+        }
+    }
+}
@@ -1,19 +1,39 @@
 package step.core.collections;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.commons.beanutils.BeanUtilsBean;
 import org.apache.commons.beanutils.ConvertUtilsBean;
 import org.apache.commons.beanutils.NestedNullException;
 import org.apache.commons.beanutils.PropertyUtilsBean;
+import org.bson.types.ObjectId;
 import step.core.accessors.AbstractIdentifiableObject;
 
 
 public class PojoUtils {
 
+    /**
+     * Maximum number of elements (skip + limit) kept in a bounded heap by {@link #sort(Stream, Comparator, Integer, Integer)}
+     */
+    public static final int TOP_K_HEAP_MAX_SIZE = 10_000;
+
+    // Order of the types of the values compared by compareValues
+    private static final int RANK_NUMBER = 0;
+    private static final int RANK_STRING = 1;
+    private static final int RANK_OTHER = 2;
+    private static final int RANK_OBJECT_ID = 3;
+    private static final int RANK_BOOLEAN = 4;
+    private static final int RANK_DATE = 5;
+
     private static BeanUtilsBean beanUtilsBean;
 
     public static Object getProperty(Object bean, String propertyName) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
@@ -37,43 +57,133 @@ public class PojoUtils {
         return bean == null ? null : bean.getClass().getField(propertyName).get(bean);
     }
 
+    /**
+     * Compares the values of the properties of two objects natively for numbers, dates, ObjectIds and other
+     * {@link Comparable} of the same type. Null values are lower than any other value. Values of different types
+     * are ordered by type, like the BSON comparison order of MongoDB: numbers, strings, the other types by class
+     * name, ObjectIds, booleans and dates. This keeps the comparison transitive for mixed types.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static int compareValues(Object value1, Object value2) {
+        if (value1 == value2) {
+            return 0;
+        } else if (value1 == null) {
+            return -1;
+        } else if (value2 == null) {
+            return 1;
+        }
+        int rank1 = typeRank(value1);
+        int rank2 = typeRank(value2);
+        if (rank1 != rank2) {
+            return Integer.compare(rank1, rank2);
+        } else if (rank1 == RANK_NUMBER) {
+            return PojoFilters.compareNumbers((Number) value1, (Number) value2);
+        } else if (rank1 == RANK_DATE) {
+            return Long.compare(((Date) value1).getTime(), ((Date) value2).getTime());
+        } else if (value1.getClass() != value2.getClass()) {
+            return value1.getClass().getName().compareTo(value2.getClass().getName());
+        } else if (value1 instanceof Comparable) {
+            // Strings, ObjectIds, booleans, enums...
+            return ((Comparable) value1).compareTo(value2);
+        } else {
+            return value1.toString().compareTo(value2.toString());
+        }
+    }
+
+    private static int typeRank(Object value) {
+        if (value instanceof Number) {
+            return RANK_NUMBER;
+        } else if (value instanceof String) {
+            return RANK_STRING;
+        } else if (value instanceof ObjectId) {
+            return RANK_OBJECT_ID;
+        } else if (value instanceof Boolean) {
+            return RANK_BOOLEAN;
+        } else if (value instanceof Date) {
+            return RANK_DATE;
+        } else {
+            return RANK_OTHER;
+        }
+    }
+
     public static class SearchOrderComparator<T> implements Comparator<T> {
 
         List<SearchOrder.FieldSearchOrder> fieldsSearchOrder;
+        private final PojoPropertyAccessor[] propertyAccessors;
 
         public SearchOrderComparator(List<SearchOrder.FieldSearchOrder> fieldsSearchOrder) {
             this.fieldsSearchOrder = fieldsSearchOrder;
+            this.propertyAccessors = fieldsSearchOrder.stream().map(f -> PojoPropertyAccessor.compiled(f.attributeName))
+                .toArray(PojoPropertyAccessor[]::new);
         }
 
-        private String extractValueAsString(T o, String attributeName) {
-            try {
-                return getProperty(o, attributeName).toString();
-            } catch (NoSuchMethodException e1) {
-                return "";
-            } catch (IllegalAccessException | InvocationTargetException e1) {
-                throw new RuntimeException(e1);
+        /**
+         * Extracts the values of the sort fields of the provided object. Missing properties are considered null
+         *
+         * @param o the object to extract the sort keys from
+         * @return the sort keys to be compared with {@link #compareSortKeys(Object[], Object[])}
+         */
+        public Object[] extractSortKeys(T o) {
+            Object[] sortKeys = new Object[propertyAccessors.length];
+            for (int i = 0; i < propertyAccessors.length; i++) {
+                try {
+                    Object value = propertyAccessors[i].get(o);
+                    sortKeys[i] = value != PojoPropertyAccessor.NO_SUCH_PROPERTY ? value : null;
+                } catch (IllegalAccessException | InvocationTargetException e) {
+                    throw new RuntimeException("Sorting error: " + e.getMessage(), e);
+                }
             }
+            return sortKeys;
+        }
+
+        public int compareSortKeys(Object[] sortKeys1, Object[] sortKeys2) {
+            for (int i = 0; i < sortKeys1.length; i++) {
+                int comparison = compareValues(sortKeys1[i], sortKeys2[i]);
+                if (comparison != 0) {
+                    return fieldsSearchOrder.get(i).order >= 0 ? comparison : -comparison;
+                }
+            }
+            return 0;
         }
 
         @Override
         public int compare(T o1, T o2) {
-            try {
-                for (SearchOrder.FieldSearchOrder fieldSearchOrder : fieldsSearchOrder) {
-                    String attributeName = fieldSearchOrder.attributeName;
-                    String value1 = extractValueAsString(o1, attributeName);
-                    String value2 = extractValueAsString(o2, attributeName);
-
-                    int comparison = value1.compareTo(value2);
+            return compareSortKeys(extractSortKeys(o1), extractSortKeys(o2));
+        }
+    }
 
-                    if (comparison != 0) {
-                        return fieldSearchOrder.order >= 0 ? comparison : -comparison;
-                    }
+    /**
+     * Sorts the provided stream and applies the skip and limit. If a limit is provided and skip + limit doesn't exceed
+     * {@link #TOP_K_HEAP_MAX_SIZE}, only the first skip + limit elements are kept in a bounded heap instead of sorting the whole stream
+     *
+     * @param stream     the stream to be sorted
+     * @param comparator the comparator defining the order of the elements
+     * @param skip       the number of elements to be skipped. Nullable
+     * @param limit      the maximum number of elements to be returned. Nullable
+     * @return the sorted list of elements
+     */
+    public static <E> List<E> sort(Stream<E> stream, Comparator<? super E> comparator, Integer skip, Integer limit) {
+        long topK = limit != null ? (long) (skip != null ? skip : 0) + limit : Long.MAX_VALUE;
+        List<E> sortedElements;
+        if (topK <= TOP_K_HEAP_MAX_SIZE) {
+            Comparator<? super E> reversedComparator = Collections.reverseOrder(comparator);
+            PriorityQueue<E> heap = new PriorityQueue<>((int) topK + 1, reversedComparator);
+            stream.forEachOrdered(e -> {
+                if (heap.size() < topK) {
+                    heap.add(e);
+                } else if (topK > 0 && comparator.compare(e, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(e);
                 }
-            } catch (Exception e) {
-                throw new RuntimeException("Sorting error: " + e.getMessage(), e);
-            }
-            return 0;
+            });
+            sortedElements = new ArrayList<>(heap);
+        } else {
+            sortedElements = stream.collect(Collectors.toCollection(ArrayList::new));
         }
+        sortedElements.sort(comparator);
+        int from = skip != null ? Math.min(skip, sortedElements.size()) : 0;
+        int to = limit != null ? (int) Math.min((long) from + limit, sortedElements.size()) : sortedElements.size();
+        return sortedElements.subList(from, to);
     }
 
     static {
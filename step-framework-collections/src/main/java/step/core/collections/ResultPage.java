@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections;
+
+import java.util.List;
+
+/**
+ * A page of results returned by {@link Collection#findAfter(Filter, SearchOrder, String, int, int)}
+ *
+ * @param <T> the type of the entities
+ */
+public class ResultPage<T> {
+
+    private final List<T> results;
+    private final String continuationToken;
+
+    public ResultPage(List<T> results, String continuationToken) {
+        this.results = results;
+        this.continuationToken = continuationToken;
+    }
+
+    /**
+     * @return the entities of the page
+     */
+    public List<T> getResults() {
+        return results;
+    }
+
+    /**
+     * @return the opaque token to be passed to {@link Collection#findAfter(Filter, SearchOrder, String, int, int)} to get
+     * the next page, or null if this is the last page
+     */
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    public boolean hasNext() {
+        return continuationToken != null;
+    }
+}
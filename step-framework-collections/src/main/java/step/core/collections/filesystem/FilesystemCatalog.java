@@ -0,0 +1,274 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections.filesystem;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import step.core.collections.Document;
+import step.core.collections.Filter;
+import step.core.collections.inmemory.InMemoryIndexes;
+
+/**
+ * In-memory catalog of the entity files of a {@link FilesystemCollection} repository.
+ * <p>
+ * The catalog keeps track of the ids and modification times of the entities as well as the
+ * values of the indexed fields and the words of the text indexed fields. It is maintained by the
+ * collection on save and remove and revalidated by a {@link WatchService} for the files modified
+ * outside the collection. This allows the collection to read only the file of the requested entity
+ * for id lookups and only the files of the candidate entities for filters resolvable by the indexes.
+ * <p>
+ * The indexed values are extracted from the {@link Document} representation of the entities so
+ * that a catalog can be shared by collections of different entity classes. The equals filters on values
+ * represented differently in the documents (like dates) are therefore not resolved by the indexes. As for the in-memory
+ * collection, the indexes only select candidates and the filters are evaluated on each candidate afterwards.
+ */
+public class FilesystemCatalog implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FilesystemCatalog.class);
+
+    private final File repository;
+    private final ObjectMapper mapper;
+    private final Map<ObjectId, Long> lastModifiedById = new ConcurrentHashMap<>();
+    private final InMemoryIndexes indexes = new InMemoryIndexes(true);
+    private final WatchService watchService;
+    private volatile boolean closed = false;
+
+    public FilesystemCatalog(File repository, ObjectMapper mapper) {
+        super();
+        this.repository = repository;
+        this.mapper = mapper;
+        if (!repository.exists()) {
+            repository.mkdirs();
+        }
+        this.watchService = startWatcher();
+        reload();
+    }
+
+    private WatchService startWatcher() {
+        WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            repository.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            throw new FilesystemCollectionException("Unable to watch the repository '" + repository.getAbsolutePath() + "'", e);
+        }
+        Thread watcherThread = new Thread(() -> watch(watchService), "FilesystemCatalogWatcher-" + repository.getName());
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+        return watchService;
+    }
+
+    private void watch(WatchService watchService) {
+        try {
+            while (!closed) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    try {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            reload();
+                        } else {
+                            Path path = (Path) event.context();
+                            ObjectId id = FilesystemCollection.getIdFromFileName(path.getFileName().toString());
+                            if (id != null) {
+                                refresh(id);
+                            }
+                        }
+                    } catch (Exception e) {
+                        logger.error("Error while revalidating the catalog of the repository '" + repository.getAbsolutePath() + "'", e);
+                    }
+                }
+                if (!key.reset()) {
+                    // The repository has been deleted or is not accessible anymore
+                    break;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Catalog closed
+        }
+    }
+
+    /**
+     * Rebuilds the catalog from the files of the repository. The files are only parsed if indexes are defined
+     */
+    public synchronized void reload() {
+        Map<ObjectId, Long> currentFiles = new HashMap<>();
+        File[] files = repository.listFiles(f -> FilesystemCollection.getIdFromFileName(f.getName()) != null);
+        if (files != null) {
+            for (File file : files) {
+                currentFiles.put(FilesystemCollection.getIdFromFileName(file.getName()), file.lastModified());
+            }
+        }
+        lastModifiedById.keySet().removeIf(id -> {
+            if (!currentFiles.containsKey(id)) {
+                indexes.remove(id);
+                return true;
+            } else {
+                return false;
+            }
+        });
+        currentFiles.forEach((id, lastModified) -> {
+            if (!Objects.equals(lastModifiedById.get(id), lastModified)) {
+                refresh(id);
+            }
+        });
+    }
+
+    /**
+     * Revalidates the catalog entry of the provided entity against its file
+     */
+    public synchronized void refresh(ObjectId id) {
+        File file = FilesystemCollection.getFileById(repository, id);
+        if (file.exists()) {
+            long lastModified = file.lastModified();
+            if (!Objects.equals(lastModifiedById.get(id), lastModified)) {
+                if (!indexes.isEmpty()) {
+                    Document document;
+                    try {
+                        document = mapper.readValue(file, Document.class);
+                    } catch (IOException e) {
+                        // The file may be still being written. It will be refreshed by the next modification event
+                        logger.debug("Unable to read the file '" + file.getAbsolutePath() + "'", e);
+                        return;
+                    }
+                    indexes.add(id, document);
+                }
+                lastModifiedById.put(id, lastModified);
+            }
+        } else {
+            removed(id);
+        }
+    }
+
+    /**
+     * Registers an entity saved by the collection
+     *
+     * @param id     the id of the entity
+     * @param entity the saved entity
+     */
+    public synchronized void saved(ObjectId id, Object entity) {
+        if (!indexes.isEmpty()) {
+            indexes.add(id, mapper.convertValue(entity, Document.class));
+        }
+        lastModifiedById.put(id, FilesystemCollection.getFileById(repository, id).lastModified());
+    }
+
+    public synchronized void removed(ObjectId id) {
+        lastModifiedById.remove(id);
+        indexes.remove(id);
+    }
+
+    public synchronized void createIndex(String field) {
+        if (indexes.hasIndex(field)) {
+            return;
+        }
+        indexes.createIndex(field, readDocuments());
+    }
+
+    public synchronized void createTextIndex(List<String> fields) {
+        if (!indexes.getTextFields().equals(fields)) {
+            indexes.createTextIndex(fields, readDocuments());
+        }
+    }
+
+    /**
+     * @return the fields of the text index or an empty list if no text index exists
+     */
+    public List<String> getTextFields() {
+        return indexes.getTextFields();
+    }
+
+    private Map<ObjectId, Document> readDocuments() {
+        Map<ObjectId, Document> documents = new HashMap<>();
+        lastModifiedById.keySet().forEach(id -> {
+            File file = FilesystemCollection.getFileById(repository, id);
+            try {
+                documents.put(id, mapper.readValue(file, Document.class));
+            } catch (IOException e) {
+                throw new FilesystemCollectionException("The file '" + file.getAbsolutePath() + " could not be read", e);
+            }
+        });
+        return documents;
+    }
+
+    public synchronized void dropIndex(String field) {
+        indexes.dropIndex(field);
+    }
+
+    /**
+     * @param filter the filter of the query
+     * @return the ids of the entities that may match the filter
+     */
+    public Set<ObjectId> getCandidates(Filter filter) {
+        Set<ObjectId> candidates = indexes.getCandidates(filter, lastModifiedById);
+        return candidates != null ? candidates : lastModifiedById.keySet();
+    }
+
+    /**
+     * @param field          the field
+     * @param filter         the filter of the query
+     * @param matchingEntity the function returning the entity of the provided id if it matches the filter, null otherwise
+     * @return one matching entity per distinct value of the field or null if the field isn't indexed or if the filter
+     * is resolvable by the indexes (in which case scanning the candidates is cheaper)
+     * @see InMemoryIndexes#getDistinctValueEntities(String, Function)
+     */
+    public <E> List<E> getDistinctValueEntities(String field, Filter filter, Function<ObjectId, E> matchingEntity) {
+        return indexes.getCandidates(filter, lastModifiedById) == null ? indexes.getDistinctValueEntities(field, matchingEntity) : null;
+    }
+
+    public int size() {
+        return lastModifiedById.size();
+    }
+
+    public File getRepository() {
+        return repository;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watchService.close();
+    }
+}
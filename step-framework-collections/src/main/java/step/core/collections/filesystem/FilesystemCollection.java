@@ -20,8 +20,14 @@ package step.core.collections.filesystem;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -40,27 +46,81 @@ import step.core.collections.PojoFilters.PojoFilterFactory;
 public class FilesystemCollection<T> extends AbstractCollection<T> implements Collection<T> {
 
     private static final String FILE_EXTENSION = ".entity";
+    // Number of files read together. The reading of a full scan stops at the end of the chunk reaching the limit of a count
+    private static final int READ_CHUNK_SIZE = 256;
     private final ObjectMapper mapper;
     private File repository;
     private final Class<T> entityClass;
+    private final PojoQueryExecutor<T> queryExecutor = new PojoQueryExecutor<>(this::getId);
+    private final Function<File, FilesystemCatalog> catalogProvider;
+    private final FilesystemEntityReader entityReader;
+    // Fields of the text index per repository path when the repository has no catalog
+    private final Map<String, List<String>> textFields;
 
     public FilesystemCollection(File repository, Class<T> entityClass) {
+        this(repository, entityClass, null);
+    }
+
+    public FilesystemCollection(File repository, Class<T> entityClass, Function<File, FilesystemCatalog> catalogProvider) {
+        this(repository, entityClass, catalogProvider, null);
+    }
+
+    /**
+     * @param repository      the folder containing the entity files
+     * @param entityClass     the class of the entities
+     * @param catalogProvider the function returning the {@link FilesystemCatalog} of a repository.
+     *                        If null the repository is listed and all the files are parsed for each query
+     * @param entityReader    the reader of the entity files. If null the files are read sequentially without caching
+     */
+    public FilesystemCollection(File repository, Class<T> entityClass, Function<File, FilesystemCatalog> catalogProvider,
+                                FilesystemEntityReader entityReader) {
+        this(repository, entityClass, catalogProvider, entityReader, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * @param textFields the fields of the text indexes per repository path, shared by the collections of the same
+     *                   repositories. Only used when the repository has no catalog
+     * @see #FilesystemCollection(File, Class, Function, FilesystemEntityReader)
+     */
+    FilesystemCollection(File repository, Class<T> entityClass, Function<File, FilesystemCatalog> catalogProvider,
+                         FilesystemEntityReader entityReader, Map<String, List<String>> textFields) {
         super();
         this.repository = repository;
         this.entityClass = entityClass;
-        YAMLFactory factory = new YAMLFactory();
-        // Disable native type id to enable conversion to generic Documents
-        factory.disable(YAMLGenerator.Feature.USE_NATIVE_TYPE_ID);
-        this.mapper = DefaultJacksonMapperProvider.getObjectMapper(factory);
+        this.mapper = getObjectMapper();
+        this.catalogProvider = catalogProvider;
+        this.entityReader = entityReader != null ? entityReader : new FilesystemEntityReader(mapper, 0, null);
+        this.textFields = textFields;
         if (!repository.exists()) {
             repository.mkdirs();
         }
     }
 
+    protected static ObjectMapper getObjectMapper() {
+        YAMLFactory factory = new YAMLFactory();
+        // Disable native type id to enable conversion to generic Documents
+        factory.disable(YAMLGenerator.Feature.USE_NATIVE_TYPE_ID);
+        return DefaultJacksonMapperProvider.getObjectMapper(factory);
+    }
+
+    private FilesystemCatalog getCatalog() {
+        return catalogProvider != null ? catalogProvider.apply(repository) : null;
+    }
+
     @Override
     public List<String> distinct(String columnName, Filter filter) {
-        // TODO Auto-generated method stub
-        return null;
+        FilesystemCatalog catalog = getCatalog();
+        if (catalog != null) {
+            PojoFilter<T> pojoFilter = filterFactory().buildFilter(filter);
+            List<T> distinctValueEntities = catalog.getDistinctValueEntities(columnName, filter, id -> {
+                T entity = entityReader.read(List.of(getFileById(repository, id)), entityClass).get(0);
+                return entity != null && pojoFilter.test(entity) ? entity : null;
+            });
+            if (distinctValueEntities != null) {
+                return queryExecutor.distinct(distinctValueEntities.stream(), columnName);
+            }
+        }
+        return queryExecutor.distinct(filteredStream(filter).map(FileAndEntity::getEntity), columnName);
     }
 
     private static class FileAndEntity<T> {
@@ -83,8 +143,41 @@ public class FilesystemCollection<T> extends AbstractCollection<T> implements Co
         }
     }
 
-    private Stream<FileAndEntity<T>> entityStream() {
-        return Arrays.asList(repository.listFiles(f -> f.getName().endsWith(FILE_EXTENSION))).stream().map(f -> new FileAndEntity<>(f, readFile(f)));
+    private Stream<FileAndEntity<T>> entityStream(Filter filter) {
+        FilesystemCatalog catalog = getCatalog();
+        if (catalog != null) {
+            // Only read the files of the candidate entities
+            List<File> files = new ArrayList<>();
+            catalog.getCandidates(filter).forEach(id -> files.add(getFileById(repository, id)));
+            return readFiles(files);
+        } else {
+            return readFiles(listFiles());
+        }
+    }
+
+    private List<File> listFiles() {
+        List<File> files = new ArrayList<>();
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(repository.toPath(), "*" + FILE_EXTENSION)) {
+            directoryStream.forEach(p -> files.add(p.toFile()));
+        } catch (NoSuchFileException e) {
+            // The repository has been dropped
+        } catch (IOException e) {
+            throw new FilesystemCollectionException("The repository '" + repository.getAbsolutePath() + " could not be listed", e);
+        }
+        return files;
+    }
+
+    /**
+     * Reads the files by chunks. The files deleted in the meantime are skipped
+     */
+    private Stream<FileAndEntity<T>> readFiles(List<File> files) {
+        int chunkCount = (files.size() + READ_CHUNK_SIZE - 1) / READ_CHUNK_SIZE;
+        return IntStream.range(0, chunkCount).mapToObj(i -> files.subList(i * READ_CHUNK_SIZE, Math.min(files.size(), (i + 1) * READ_CHUNK_SIZE)))
+            .flatMap(chunk -> {
+                List<T> entities = entityReader.read(chunk, entityClass);
+                return IntStream.range(0, chunk.size()).filter(j -> entities.get(j) != null)
+                    .mapToObj(j -> new FileAndEntity<>(chunk.get(j), entities.get(j)));
+            });
     }
 
     @Override
@@ -94,37 +187,18 @@ public class FilesystemCollection<T> extends AbstractCollection<T> implements Co
 
     @Override
     public long count(Filter filter, Integer limit) {
-        Stream<T> stream = find(filter, null, null, null, 0);
-        if (limit != null) {
-            stream = stream.limit(limit);
-        }
-        return stream.count();
+        return queryExecutor.count(filteredStream(filter).map(FileAndEntity::getEntity), limit);
     }
 
     @Override
     public long estimatedCount() {
-        return repository.list().length;
+        FilesystemCatalog catalog = getCatalog();
+        return catalog != null ? catalog.size() : repository.list().length;
     }
 
     @Override
     public Stream<T> find(Filter filter, SearchOrder order, Integer skip, Integer limit, int maxTime) {
-        Stream<T> stream = filteredStream(filter).map(FileAndEntity::getEntity).sorted(new Comparator<T>() {
-            @Override
-            public int compare(T o1, T o2) {
-                return getId(o1).compareTo(getId(o2));
-            }
-        });
-        if (order != null && !order.getFieldsSearchOrder().isEmpty()) {
-            PojoUtils.SearchOrderComparator<Object> objectSearchOrderComparator = new PojoUtils.SearchOrderComparator<>(order.getFieldsSearchOrder());
-            stream = stream.sorted(objectSearchOrderComparator);
-        }
-        if (skip != null) {
-            stream = stream.skip(skip);
-        }
-        if (limit != null) {
-            stream = stream.limit(limit);
-        }
-        return stream;
+        return queryExecutor.find(filteredStream(filter).map(FileAndEntity::getEntity), order, skip, limit);
     }
 
     @Override
@@ -137,9 +211,15 @@ public class FilesystemCollection<T> extends AbstractCollection<T> implements Co
         return find(filter, order, skip, limit, maxTime);
     }
 
+    private PojoFilterFactory<T> filterFactory() {
+        FilesystemCatalog catalog = getCatalog();
+        return new PojoFilterFactory<>(true, catalog != null ? catalog.getTextFields() :
+            textFields.getOrDefault(repository.getAbsolutePath(), List.of()));
+    }
+
     private Stream<FileAndEntity<T>> filteredStream(Filter filter) {
-        PojoFilter<T> pojoFilter = new PojoFilterFactory<T>().buildFilter(filter);
-        Iterator<FileAndEntity<T>> it = entityStream().iterator();
+        PojoFilter<T> pojoFilter = filterFactory().buildFilter(filter);
+        Iterator<FileAndEntity<T>> it = entityStream(filter).iterator();
         Spliterator<FileAndEntity<T>> spliterator = Spliterators.spliteratorUnknownSize(it, 0);
         Stream<FileAndEntity<T>> filter2 = StreamSupport.stream(spliterator, false).filter(f -> {
             return pojoFilter.test(f.entity);
@@ -149,8 +229,13 @@ public class FilesystemCollection<T> extends AbstractCollection<T> implements Co
 
     @Override
     public void remove(Filter filter) {
+        FilesystemCatalog catalog = getCatalog();
         filteredStream(filter).forEach(f -> {
             f.getFile().delete();
+            entityReader.invalidate(f.getFile());
+            if (catalog != null) {
+                catalog.removed(getId(f.getEntity()));
+            }
         });
     }
 
@@ -161,6 +246,10 @@ public class FilesystemCollection<T> extends AbstractCollection<T> implements Co
         }
         File file = getFile(entity);
         writeEntity(entity, file);
+        FilesystemCatalog catalog = getCatalog();
+        if (catalog != null) {
+            catalog.saved(getId(entity), entity);
+        }
         return entity;
     }
 
@@ -171,64 +260,91 @@ public class FilesystemCollection<T> extends AbstractCollection<T> implements Co
         }
     }
 
-    private T readFile(File file) {
-        try {
-            return mapper.readValue(file, entityClass);
-        } catch (IOException e) {
-            throw new FilesystemCollectionException("The file '" + file.getAbsolutePath() + " could not be read", e);
-        }
-    }
-
     private void writeEntity(T entity, File file) {
         try {
             mapper.writeValue(file, entity);
         } catch (IOException e) {
             throw new FilesystemCollectionException(e);
+        } finally {
+            entityReader.invalidate(file);
         }
     }
 
     private File getFile(T entity) {
         ObjectId id = getId(entity);
-        File file = getFileById(id);
+        File file = getFileById(repository, id);
         return file;
     }
 
-    private File getFileById(ObjectId id) {
+    protected static File getFileById(File repository, ObjectId id) {
         String filename = id.toString() + FILE_EXTENSION;
         File file = new File(repository.getAbsolutePath() + "/" + filename);
         return file;
     }
 
+    /**
+     * @param fileName the name of a file of the repository
+     * @return the id of the entity stored in the file or null if the file isn't an entity file
+     */
+    protected static ObjectId getIdFromFileName(String fileName) {
+        if (fileName.endsWith(FILE_EXTENSION)) {
+            String id = fileName.substring(0, fileName.length() - FILE_EXTENSION.length());
+            return ObjectId.isValid(id) ? new ObjectId(id) : null;
+        } else {
+            return null;
+        }
+    }
+
     @Override
     public void createOrUpdateIndex(String field) {
-        // not supported
+        // Indexes are only supported in catalog mode
+        FilesystemCatalog catalog = getCatalog();
+        if (catalog != null) {
+            catalog.createIndex(field);
+        }
     }
 
     @Override
     public void createOrUpdateIndex(IndexField indexField) {
-        // not supported
+        createOrUpdateIndex(indexField.fieldName);
     }
 
     @Override
     public void createOrUpdateIndex(String field, Order order) {
-        // not supported
+        createOrUpdateIndex(field);
     }
 
     @Override
     public void createOrUpdateCompoundIndex(String... fields) {
-        // not supported
+        Arrays.stream(fields).forEach(this::createOrUpdateIndex);
     }
 
     @Override
     public void createOrUpdateCompoundIndex(LinkedHashSet<IndexField> fields) {
-        // not supported
+        fields.forEach(this::createOrUpdateIndex);
+    }
+
+    @Override
+    public void createOrUpdateTextIndex(String... fields) {
+        FilesystemCatalog catalog = getCatalog();
+        if (catalog != null) {
+            catalog.createTextIndex(List.of(fields));
+        } else {
+            // Without catalog the fulltext filters are evaluated on all the files
+            textFields.put(repository.getAbsolutePath(), List.of(fields));
+        }
     }
 
     @Override
     public void rename(String newName) {
         try {
+            closeCatalog();
             File newRepositoryFile = new File(repository.getParent() + "/" + newName);
             repository.renameTo(newRepositoryFile);
+            List<String> fields = textFields.remove(repository.getAbsolutePath());
+            if (fields != null) {
+                textFields.put(newRepositoryFile.getAbsolutePath(), fields);
+            }
             repository = newRepositoryFile;
         } catch (Exception e) {
             throw new FilesystemCollectionException("The file '" + repository.getAbsolutePath() + " could not be renamed", e);
@@ -237,14 +353,28 @@ public class FilesystemCollection<T> extends AbstractCollection<T> implements Co
 
     @Override
     public void drop() {
+        // The catalog is looked up once: looking it up after closing it would create a new catalog of the repository
+        FilesystemCatalog catalog = getCatalog();
         remove(Filters.empty());
         try {
+            if (catalog != null) {
+                catalog.close();
+            }
+            textFields.remove(repository.getAbsolutePath());
             Files.deleteIfExists(repository.toPath());
         } catch (IOException e) {
             throw new FilesystemCollectionException("The file '" + repository.getAbsolutePath() + " could not be deleted", e);
         }
     }
 
+    private void closeCatalog() throws IOException {
+        FilesystemCatalog catalog = getCatalog();
+        if (catalog != null) {
+            // The catalog provider creates a new catalog for the next access to the repository
+            catalog.close();
+        }
+    }
+
     @Override
     public Class<T> getEntityClass() {
         return entityClass;
@@ -252,6 +382,9 @@ public class FilesystemCollection<T> extends AbstractCollection<T> implements Co
 
     @Override
     public void dropIndex(String indexName) {
-        // not supported
+        FilesystemCatalog catalog = getCatalog();
+        if (catalog != null) {
+            catalog.dropIndex(indexName);
+        }
     }
 }
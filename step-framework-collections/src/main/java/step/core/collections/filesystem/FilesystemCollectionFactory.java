@@ -20,7 +20,15 @@ package step.core.collections.filesystem;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import step.core.collections.Collection;
 import step.core.collections.CollectionFactory;
@@ -29,33 +37,116 @@ import step.core.collections.EntityVersion;
 public class FilesystemCollectionFactory implements CollectionFactory {
 
     public static final String FILESYSTEM_PATH = "path";
+    /**
+     * Enables the {@link FilesystemCatalog} of the collections
+     */
+    public static final String FILESYSTEM_CATALOG = "catalog";
+    /**
+     * The maximum number of parsed files kept in the cache of the {@link FilesystemEntityReader}. 0 disables the cache
+     */
+    public static final String FILESYSTEM_PARSE_CACHE_SIZE = "parseCacheSize";
+    /**
+     * The number of threads used to read the files in parallel. 0 disables the parallel reading
+     */
+    public static final String FILESYSTEM_READER_THREADS = "readerThreads";
+    private static final int DEFAULT_PARSE_CACHE_SIZE = 10_000;
+
     private final File workspace;
+    private final boolean catalogEnabled;
+    private final Map<String, FilesystemCatalog> catalogs = new ConcurrentHashMap<>();
+    // Fields of the text indexes of the repositories without catalog, shared by the collections of this factory
+    private final Map<String, List<String>> textFields = new ConcurrentHashMap<>();
+    private final FilesystemEntityReader entityReader;
+    // The executor created by this factory, if any
+    private final ExecutorService readerExecutor;
 
     public FilesystemCollectionFactory(Properties properties) {
         super();
         this.workspace = new File(properties.getProperty(FILESYSTEM_PATH, "db"));
+        this.catalogEnabled = Boolean.parseBoolean(properties.getProperty(FILESYSTEM_CATALOG, "false"));
+        int parseCacheSize = Integer.parseInt(properties.getProperty(FILESYSTEM_PARSE_CACHE_SIZE, Integer.toString(DEFAULT_PARSE_CACHE_SIZE)));
+        int readerThreads = Integer.parseInt(properties.getProperty(FILESYSTEM_READER_THREADS, Integer.toString(Runtime.getRuntime().availableProcessors())));
+        this.readerExecutor = readerThreads > 0 ? createReaderExecutor(readerThreads) : null;
+        this.entityReader = new FilesystemEntityReader(FilesystemCollection.getObjectMapper(), parseCacheSize, readerExecutor);
     }
 
     public FilesystemCollectionFactory(File workspace) {
+        this(workspace, false);
+    }
+
+    public FilesystemCollectionFactory(File workspace, boolean catalogEnabled) {
+        this(workspace, catalogEnabled, DEFAULT_PARSE_CACHE_SIZE, null);
+    }
+
+    /**
+     * @param workspace      the folder containing the repositories of the collections
+     * @param catalogEnabled if the {@link FilesystemCatalog} of the collections should be enabled
+     * @param parseCacheSize the maximum number of parsed files kept in cache. 0 disables the cache
+     * @param readerExecutor the executor used to read the files in parallel. If null, the files are read sequentially.
+     *                       The lifecycle of the executor is managed by the caller
+     */
+    public FilesystemCollectionFactory(File workspace, boolean catalogEnabled, int parseCacheSize, ExecutorService readerExecutor) {
         super();
         this.workspace = workspace;
+        this.catalogEnabled = catalogEnabled;
+        this.readerExecutor = null;
+        this.entityReader = new FilesystemEntityReader(FilesystemCollection.getObjectMapper(), parseCacheSize, readerExecutor);
+    }
+
+    private static ExecutorService createReaderExecutor(int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "FilesystemCollectionReader-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Release the threads when the collections are idle
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @return the reader of the entity files exposing the statistics of its cache
+     */
+    public FilesystemEntityReader getEntityReader() {
+        return entityReader;
     }
 
     @Override
     public void close() throws IOException {
+        for (FilesystemCatalog catalog : catalogs.values()) {
+            catalog.close();
+        }
+        catalogs.clear();
+        if (readerExecutor != null) {
+            readerExecutor.shutdown();
+        }
+    }
 
+    private FilesystemCatalog getCatalog(File repository) {
+        FilesystemCatalog catalog = catalogs.get(repository.getAbsolutePath());
+        if (catalog != null && !catalog.isClosed()) {
+            return catalog;
+        }
+        if (!repository.exists()) {
+            // Dropped repository: creating a catalog would create the repository again
+            return null;
+        }
+        // Closed catalogs (renamed or dropped collections) are replaced by a new catalog of the repository
+        return catalogs.compute(repository.getAbsolutePath(), (path, existing) -> (existing == null || existing.isClosed()) ?
+            new FilesystemCatalog(repository, FilesystemCollection.getObjectMapper()) : existing);
     }
 
     @Override
     public <T> Collection<T> getCollection(String name, Class<T> entityClass) {
-        return new FilesystemCollection<>(new File(workspace.getAbsolutePath() + "/" + name), entityClass);
+        return new FilesystemCollection<>(new File(workspace.getAbsolutePath() + "/" + name), entityClass, catalogEnabled ? this::getCatalog : null, entityReader, textFields);
     }
 
     @Override
     public Collection<EntityVersion> getVersionedCollection(String name) {
         return new FilesystemCollection<>(
             new File(workspace.getAbsolutePath() + "/" + name + CollectionFactory.VERSION_COLLECTION_SUFFIX),
-            EntityVersion.class);
+            EntityVersion.class, catalogEnabled ? this::getCatalog : null, entityReader, textFields);
     }
 
 }
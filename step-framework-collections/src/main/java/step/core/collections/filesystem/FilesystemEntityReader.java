@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections.filesystem;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * Reads the entity files of the {@link FilesystemCollection}s.
+ * <p>
+ * The parsed content of the files is cached as {@link TokenBuffer} keyed by the path, size and last modification
+ * time of the files. Cache hits therefore skip the parsing while still returning a new instance of the entity to each caller.
+ * The cache is bounded (LRU) and its entries are softly referenced so that they can be reclaimed under memory pressure.
+ * <p>
+ * If an executor is provided, the files of the cache misses are read in parallel.
+ */
+public class FilesystemEntityReader {
+
+    private final ObjectMapper mapper;
+    private final int cacheSize;
+    private final Map<String, CacheEntry> cache;
+    private final ExecutorService executor;
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    /**
+     * @param mapper    the mapper used to parse the files
+     * @param cacheSize the maximum number of files kept in the cache. 0 disables the cache
+     * @param executor  the executor used to read the files in parallel. If null, the files are read sequentially
+     */
+    public FilesystemEntityReader(ObjectMapper mapper, int cacheSize, ExecutorService executor) {
+        super();
+        this.mapper = mapper;
+        this.cacheSize = cacheSize;
+        this.executor = executor;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * @param file        the file to be read
+     * @param entityClass the class of the entity
+     * @return the entity read from the file
+     * @throws NoSuchFileException if the file doesn't exist
+     * @throws IOException         if the file cannot be read or parsed
+     */
+    public <T> T read(File file, Class<T> entityClass) throws IOException {
+        if (cacheSize <= 0) {
+            return mapper.readValue(file, entityClass);
+        }
+        String path = file.getAbsolutePath();
+        BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+
+        CacheEntry entry = cache.get(path);
+        TokenBuffer buffer = entry != null && entry.size == size && entry.lastModified == lastModified ? entry.buffer.get() : null;
+        if (buffer != null) {
+            cacheHits.increment();
+        } else {
+            cacheMisses.increment();
+            buffer = parse(file);
+            // The attributes read before the parsing are cached. Concurrent modifications are thus detected by the next read
+            cache.put(path, new CacheEntry(size, lastModified, buffer));
+        }
+        try (JsonParser parser = buffer.asParser(mapper)) {
+            return mapper.readerFor(entityClass).readValue(parser);
+        }
+    }
+
+    private TokenBuffer parse(File file) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(file)) {
+            TokenBuffer buffer = new TokenBuffer(parser);
+            if (parser.nextToken() == null) {
+                throw new EOFException("No content to map due to end-of-input");
+            }
+            buffer.copyCurrentStructure(parser);
+            return buffer;
+        }
+    }
+
+    /**
+     * Reads the provided files in parallel if an executor is configured
+     *
+     * @param files       the files to be read
+     * @param entityClass the class of the entities
+     * @return the entities in the order of the files. The entities of the files which don't exist anymore are null
+     */
+    public <T> List<T> read(List<File> files, Class<T> entityClass) {
+        List<T> entities = new ArrayList<>(files.size());
+        if (executor == null || files.size() <= 1) {
+            for (File file : files) {
+                entities.add(readIfExists(file, entityClass));
+            }
+        } else {
+            List<Future<T>> futures = new ArrayList<>(files.size());
+            for (File file : files) {
+                futures.add(executor.submit(() -> readIfExists(file, entityClass)));
+            }
+            try {
+                for (Future<T> future : futures) {
+                    entities.add(future.get());
+                }
+            } catch (InterruptedException e) {
+                futures.forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new FilesystemCollectionException("Interrupted while reading the files", e);
+            } catch (ExecutionException e) {
+                futures.forEach(f -> f.cancel(true));
+                Throwable cause = e.getCause();
+                throw cause instanceof FilesystemCollectionException ? (FilesystemCollectionException) cause : new FilesystemCollectionException(cause);
+            }
+        }
+        return entities;
+    }
+
+    private <T> T readIfExists(File file, Class<T> entityClass) {
+        try {
+            return read(file, entityClass);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            if (file.exists()) {
+                throw new FilesystemCollectionException("The file '" + file.getAbsolutePath() + " could not be read", e);
+            } else {
+                return null;
+            }
+        }
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    public int getCacheEntries() {
+        return cache.size();
+    }
+
+    public void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * Removes the cache entry of a file written or deleted by a collection. Rewrites of the same size within the
+     * resolution of the modification time cannot be detected from the attributes of the file
+     *
+     * @param file the written or deleted file
+     */
+    public void invalidate(File file) {
+        if (cacheSize > 0) {
+            cache.remove(file.getAbsolutePath());
+        }
+    }
+
+    private static class CacheEntry {
+
+        private final long size;
+        private final long lastModified;
+        private final SoftReference<TokenBuffer> buffer;
+
+        private CacheEntry(long size, long lastModified, TokenBuffer buffer) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.buffer = new SoftReference<>(buffer);
+        }
+    }
+}
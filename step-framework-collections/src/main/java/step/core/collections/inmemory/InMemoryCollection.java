@@ -20,10 +20,9 @@ package step.core.collections.inmemory;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.IOException;
 import org.bson.types.ObjectId;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -41,7 +40,10 @@ public class InMemoryCollection<T> extends AbstractCollection<T> implements Coll
     private static final Logger logger = LoggerFactory.getLogger(InMemoryCollection.class);
     private final Class<T> entityClass;
     private final Map<ObjectId, T> entities;
+    private final InMemoryIndexes indexes;
+    private final PojoQueryExecutor<T> queryExecutor = new PojoQueryExecutor<>(this::getId);
     private final ObjectMapper mapper = DefaultJacksonMapperProvider.getObjectMapper();
+    private final InMemoryEntityCloner cloner;
 
     private boolean byPassCloning;
     private InMemoryCollectionFactory parentFactory;
@@ -60,31 +62,44 @@ public class InMemoryCollection<T> extends AbstractCollection<T> implements Coll
     }
 
     public InMemoryCollection(boolean byPassCloning, String name) {
+        this(byPassCloning, name, InMemoryEntityCloner.DEFAULT_STRATEGY);
+    }
+
+    public InMemoryCollection(boolean byPassCloning, String name, InMemoryEntityCloner.Strategy cloningStrategy) {
         super();
         this.entityClass = null;
         this.entities = new ConcurrentHashMap<>();
+        this.indexes = new InMemoryIndexes();
         this.byPassCloning = byPassCloning;
         this.name = name;
+        this.cloner = InMemoryEntityCloner.create(cloningStrategy, mapper);
     }
 
-    public InMemoryCollection(InMemoryCollectionFactory parentFactory, String name, Class<T> entityClass, Map<ObjectId, T> entities) {
+    public InMemoryCollection(InMemoryCollectionFactory parentFactory, String name, Class<T> entityClass, Map<ObjectId, T> entities, InMemoryIndexes indexes,
+                              InMemoryEntityCloner cloner) {
         super();
         this.parentFactory = parentFactory;
         this.name = name;
         this.entityClass = entityClass;
         this.entities = entities;
+        this.indexes = indexes;
+        this.cloner = cloner;
     }
 
     @Override
     public List<String> distinct(String columnName, Filter filter) {
-        return filteredStream(filter).map(e -> {
-            try {
-                Object property = PojoUtils.getProperty(e, columnName);
-                return property != null ? property.toString() : null;
-            } catch (Exception ex) {
-                throw new RuntimeException(ex);
+        // Filters not resolvable by the indexes are evaluated on the entities of each indexed value until one matches
+        if (indexes.getCandidates(filter, entities) == null) {
+            PojoFilter<T> pojoFilter = filterFactory().buildFilter(filter);
+            List<T> distinctValueEntities = indexes.getDistinctValueEntities(columnName, id -> {
+                T entity = entities.get(id);
+                return entity != null && pojoFilter.test(entity) ? entity : null;
+            });
+            if (distinctValueEntities != null) {
+                return queryExecutor.distinct(distinctValueEntities.stream(), columnName);
             }
-        }).distinct().collect(Collectors.toList());
+        }
+        return queryExecutor.distinct(filteredStream(filter), columnName);
     }
 
     @Override
@@ -94,11 +109,7 @@ public class InMemoryCollection<T> extends AbstractCollection<T> implements Coll
 
     @Override
     public long count(Filter filter, Integer limit) {
-        Stream<T> stream = find(filter, null, null, null, 0);
-        if (limit != null) {
-            stream = stream.limit(limit);
-        }
-        return stream.count();
+        return queryExecutor.count(filteredStream(filter), limit);
     }
 
     @Override
@@ -109,17 +120,7 @@ public class InMemoryCollection<T> extends AbstractCollection<T> implements Coll
     @SuppressWarnings("unchecked")
     @Override
     public Stream<T> find(Filter filter, SearchOrder order, Integer skip, Integer limit, int maxTime) {
-        Stream<T> stream = filteredStream(filter);
-        if (order != null && !order.getFieldsSearchOrder().isEmpty()) {
-            PojoUtils.SearchOrderComparator<Object> objectSearchOrderComparator = new PojoUtils.SearchOrderComparator<>(order.getFieldsSearchOrder());
-            stream = stream.sorted(objectSearchOrderComparator);
-        }
-        if (skip != null) {
-            stream = stream.skip(skip);
-        }
-        if (limit != null) {
-            stream = stream.limit(limit);
-        }
+        Stream<T> stream = queryExecutor.find(filteredStream(filter), order, skip, limit);
         return stream.map(e -> {
             if (entityClass == Document.class && !(e instanceof Document)) {
                 return (T) mapper.convertValue(e, Document.class);
@@ -141,18 +142,33 @@ public class InMemoryCollection<T> extends AbstractCollection<T> implements Coll
         return find(filter, order, skip, limit, maxTime);
     }
 
+    private PojoFilterFactory<T> filterFactory() {
+        return new PojoFilterFactory<>(true, indexes.getTextFields());
+    }
+
     private Stream<T> filteredStream(Filter filter) {
-        PojoFilter<T> pojoFilter = new PojoFilterFactory<T>().buildFilter(filter);
-        return entityStream().filter(pojoFilter).sorted(Comparator.comparing(this::getId));
+        PojoFilter<T> pojoFilter = filterFactory().buildFilter(filter);
+        return entityStream(filter).filter(pojoFilter);
     }
 
-    private Stream<T> entityStream() {
-        return entities.values().stream();
+    private Stream<T> entityStream(Filter filter) {
+        Set<ObjectId> candidates = indexes.getCandidates(filter, entities);
+        if (candidates != null) {
+            return candidates.stream().map(entities::get).filter(Objects::nonNull);
+        } else {
+            return entities.values().stream();
+        }
     }
 
     @Override
     public void remove(Filter filter) {
-        filteredStream(filter).forEach(f -> entities.remove(getId(f)));
+        filteredStream(filter).forEach(f -> {
+            synchronized (indexes) {
+                ObjectId id = getId(f);
+                entities.remove(id);
+                indexes.remove(id);
+            }
+        });
     }
 
     @Override
@@ -160,14 +176,19 @@ public class InMemoryCollection<T> extends AbstractCollection<T> implements Coll
         if (getId(entity) == null) {
             setId(entity, new ObjectId());
         }
-        entities.put(getId(entity), (byPassCloning) ? entity : clone(entity));
+        T entityToStore = (byPassCloning) ? entity : clone(entity);
+        synchronized (indexes) {
+            ObjectId id = getId(entity);
+            entities.put(id, entityToStore);
+            indexes.add(id, entityToStore);
+        }
         return entity;
     }
 
     private T clone(T entity) {
         try {
-            return (T) mapper.readValue(mapper.writeValueAsString(entity), entity.getClass());
-        } catch (JsonProcessingException e) {
+            return cloner.clone(entity);
+        } catch (IOException e) {
             logger.warn("Unable to clone entity before saving into the inMemory collection, returning same instance.");
             if (logger.isDebugEnabled()) {
                 logger.debug("Unable to clone entity before saving into the inMemory collection", e);
@@ -190,22 +211,29 @@ public class InMemoryCollection<T> extends AbstractCollection<T> implements Coll
 
     @Override
     public void createOrUpdateIndex(IndexField indexField) {
-
+        createOrUpdateIndex(indexField.fieldName, indexField.order);
     }
 
     @Override
     public void createOrUpdateIndex(String field, Order order) {
-
+        // The in-memory indexes can be scanned in both directions, the order is ignored
+        indexes.createIndex(field, entities);
     }
 
     @Override
     public void createOrUpdateCompoundIndex(String... fields) {
-
+        // Compound indexes are emulated by single field indexes, the planner picks the most selective one
+        Arrays.stream(fields).forEach(this::createOrUpdateIndex);
     }
 
     @Override
     public void createOrUpdateCompoundIndex(LinkedHashSet<IndexField> fields) {
+        fields.forEach(this::createOrUpdateIndex);
+    }
 
+    @Override
+    public void createOrUpdateTextIndex(String... fields) {
+        indexes.createTextIndex(List.of(fields), entities);
     }
 
     @Override
@@ -231,6 +259,6 @@ public class InMemoryCollection<T> extends AbstractCollection<T> implements Coll
 
     @Override
     public void dropIndex(String indexName) {
-
+        indexes.dropIndex(indexName);
     }
 }
@@ -25,16 +25,24 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import org.bson.types.ObjectId;
 
+import step.core.accessors.DefaultJacksonMapperProvider;
 import step.core.collections.Collection;
 import step.core.collections.CollectionFactory;
 import step.core.collections.EntityVersion;
 
 public class InMemoryCollectionFactory implements CollectionFactory {
 
+    public static final String CLONING_STRATEGY = "cloningStrategy";
+
     private final Map<String, Map<ObjectId, Object>> collections = new ConcurrentHashMap<>();
+    private final Map<String, InMemoryIndexes> collectionIndexes = new ConcurrentHashMap<>();
+    private final InMemoryEntityCloner cloner;
 
     public InMemoryCollectionFactory(Properties properties) {
         super();
+        InMemoryEntityCloner.Strategy cloningStrategy = InMemoryEntityCloner.Strategy.valueOf(
+            properties.getProperty(CLONING_STRATEGY, InMemoryEntityCloner.DEFAULT_STRATEGY.name()));
+        cloner = InMemoryEntityCloner.create(cloningStrategy, DefaultJacksonMapperProvider.getObjectMapper());
     }
 
     @Override
@@ -46,18 +54,24 @@ public class InMemoryCollectionFactory implements CollectionFactory {
     @Override
     public <T> Collection<T> getCollection(String name, Class<T> entityClass) {
         Map<ObjectId, Object> entities = collections.computeIfAbsent(name, k -> new ConcurrentHashMap<ObjectId, Object>());
-        return new InMemoryCollection<T>(this, name, entityClass, (Map<ObjectId, T>) entities);
+        InMemoryIndexes indexes = collectionIndexes.computeIfAbsent(name, k -> new InMemoryIndexes());
+        return new InMemoryCollection<T>(this, name, entityClass, (Map<ObjectId, T>) entities, indexes, cloner);
     }
 
     @Override
     public Collection<EntityVersion> getVersionedCollection(String name) {
         String versionCollectionName = name + CollectionFactory.VERSION_COLLECTION_SUFFIX;
         Map<ObjectId, Object> entities = collections.computeIfAbsent(versionCollectionName, k -> new ConcurrentHashMap());
-        return new InMemoryCollection(this, versionCollectionName, EntityVersion.class, entities);
+        InMemoryIndexes indexes = collectionIndexes.computeIfAbsent(versionCollectionName, k -> new InMemoryIndexes());
+        return new InMemoryCollection(this, versionCollectionName, EntityVersion.class, entities, indexes, cloner);
     }
 
     public void renameCollection(String name, String newName) {
         Map<ObjectId, Object> data = collections.remove(name);
         collections.put(newName, data);
+        InMemoryIndexes indexes = collectionIndexes.remove(name);
+        if (indexes != null) {
+            collectionIndexes.put(newName, indexes);
+        }
     }
 }
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections.inmemory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * Creates the deep copies of the entities used by the {@link InMemoryCollection} to isolate the
+ * stored entities from the instances passed to or returned by the collection.
+ */
+public abstract class InMemoryEntityCloner {
+
+    public enum Strategy {
+        /**
+         * Serializes the entity to a JSON {@link String} and parses it back
+         */
+        JSON_STRING,
+        /**
+         * Copies the entity structurally by replaying the serialization events buffered in a {@link TokenBuffer}
+         * to the deserializer. No character encoding nor parsing is involved
+         */
+        TOKEN_BUFFER
+    }
+
+    public static final Strategy DEFAULT_STRATEGY = Strategy.TOKEN_BUFFER;
+
+    protected final ObjectMapper mapper;
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    protected InMemoryEntityCloner(ObjectMapper mapper) {
+        super();
+        this.mapper = mapper;
+    }
+
+    public static InMemoryEntityCloner create(Strategy strategy, ObjectMapper mapper) {
+        switch (strategy) {
+            case JSON_STRING:
+                return new JsonStringCloner(mapper);
+            case TOKEN_BUFFER:
+                return new TokenBufferCloner(mapper);
+            default:
+                throw new IllegalArgumentException("Unsupported cloning strategy " + strategy);
+        }
+    }
+
+    /**
+     * @param entity the entity to be copied
+     * @return a deep copy of the entity
+     * @throws IOException if the entity cannot be serialized or deserialized
+     */
+    public abstract <T> T clone(T entity) throws IOException;
+
+    protected ObjectReader reader(Class<?> entityClass) {
+        return readers.computeIfAbsent(entityClass, mapper::readerFor);
+    }
+
+    protected ObjectWriter writer(Class<?> entityClass) {
+        return writers.computeIfAbsent(entityClass, mapper::writerFor);
+    }
+
+    private static class JsonStringCloner extends InMemoryEntityCloner {
+
+        private JsonStringCloner(ObjectMapper mapper) {
+            super(mapper);
+        }
+
+        @Override
+        public <T> T clone(T entity) throws IOException {
+            Class<?> entityClass = entity.getClass();
+            return reader(entityClass).readValue(writer(entityClass).writeValueAsString(entity));
+        }
+    }
+
+    private static class TokenBufferCloner extends InMemoryEntityCloner {
+
+        private TokenBufferCloner(ObjectMapper mapper) {
+            super(mapper);
+        }
+
+        @Override
+        public <T> T clone(T entity) throws IOException {
+            Class<?> entityClass = entity.getClass();
+            // Native type ids are disabled to write the type information exactly like in JSON
+            try (TokenBuffer buffer = new TokenBuffer(mapper, false)) {
+                writer(entityClass).writeValue(buffer, entity);
+                try (JsonParser parser = buffer.asParser(mapper)) {
+                    return reader(entityClass).readValue(parser);
+                }
+            }
+        }
+    }
+}
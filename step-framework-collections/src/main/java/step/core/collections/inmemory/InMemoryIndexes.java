@@ -0,0 +1,424 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections.inmemory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+import org.bson.types.ObjectId;
+
+import step.core.accessors.AbstractIdentifiableObject;
+import step.core.collections.Filter;
+import step.core.collections.FulltextTokenizer;
+import step.core.collections.PojoUtils;
+import step.core.collections.filters.*;
+
+/**
+ * Secondary indexes of an {@link InMemoryCollection}. Each index maintains a hash
+ * index used to resolve {@link Equals} and {@link In} filters and a sorted index
+ * used to resolve {@link Lt}, {@link Lte}, {@link Gt} and {@link Gte} filters. The optional text index maps the
+ * words of the text fields to the entities containing them and is used to resolve {@link Fulltext} filters.
+ * <p>
+ * The indexes are only used to select candidate entities: the planner may return
+ * more ids than matching entities but never less, the filter being evaluated on each
+ * candidate afterwards. The indexed keys of each entity are captured at save time,
+ * entities modified in place (by-passed cloning) have therefore to be saved again to be
+ * re-indexed.
+ * <p>
+ * The indexed entities may also be the {@link step.core.collections.Document} representation of the entities the filters
+ * are evaluated on. The values of such documents are JSON values (a date being for instance represented by its timestamp)
+ * and the {@link Equals} and {@link In} filters are then only resolved by the indexes for the expected values having the
+ * same representation.
+ */
+public class InMemoryIndexes {
+
+    private static final Object NULL_KEY = new Object();
+
+    private final Map<String, InMemoryIndex> indexes = new ConcurrentHashMap<>();
+    private final boolean documentIndexes;
+    private volatile InMemoryTextIndex textIndex;
+
+    public InMemoryIndexes() {
+        this(false);
+    }
+
+    /**
+     * @param documentIndexes if the indexed entities are the {@link step.core.collections.Document} representation of the
+     *                        entities the filters are evaluated on
+     */
+    public InMemoryIndexes(boolean documentIndexes) {
+        this.documentIndexes = documentIndexes;
+    }
+
+    public boolean isEmpty() {
+        return indexes.isEmpty() && textIndex == null;
+    }
+
+    public boolean hasIndex(String field) {
+        return indexes.containsKey(field);
+    }
+
+    /**
+     * Creates the index for the provided field if it doesn't exist yet
+     *
+     * @param field    the field to be indexed
+     * @param entities the current entities of the collection
+     */
+    public synchronized void createIndex(String field, Map<ObjectId, ?> entities) {
+        if (!indexes.containsKey(field)) {
+            InMemoryIndex index = new InMemoryIndex(field);
+            entities.forEach(index::add);
+            indexes.put(field, index);
+        }
+    }
+
+    public synchronized void dropIndex(String field) {
+        indexes.remove(field);
+    }
+
+    /**
+     * Creates the text index for the provided fields, replacing the existing one if its fields differ
+     *
+     * @param fields   the text fields
+     * @param entities the current entities of the collection
+     */
+    public synchronized void createTextIndex(List<String> fields, Map<ObjectId, ?> entities) {
+        if (textIndex == null || !textIndex.fields.equals(fields)) {
+            InMemoryTextIndex index = new InMemoryTextIndex(fields);
+            entities.forEach(index::add);
+            textIndex = index;
+        }
+    }
+
+    /**
+     * @return the fields of the text index or an empty list if no text index exists
+     */
+    public List<String> getTextFields() {
+        InMemoryTextIndex textIndex = this.textIndex;
+        return textIndex != null ? textIndex.fields : List.of();
+    }
+
+    public synchronized void add(ObjectId id, Object entity) {
+        indexes.values().forEach(index -> {
+            index.remove(id);
+            index.add(id, entity);
+        });
+        if (textIndex != null) {
+            textIndex.remove(id);
+            textIndex.add(id, entity);
+        }
+    }
+
+    public synchronized void remove(ObjectId id) {
+        indexes.values().forEach(index -> index.remove(id));
+        if (textIndex != null) {
+            textIndex.remove(id);
+        }
+    }
+
+    /**
+     * Selects the candidate entities for the provided filter using the primary key and the secondary indexes
+     *
+     * @param filter   the filter to be planned
+     * @param entities the entities of the collection
+     * @return the ids of the candidate entities or null if the filter cannot be resolved using the indexes
+     */
+    public Set<ObjectId> getCandidates(Filter filter, Map<ObjectId, ?> entities) {
+        if (filter instanceof And) {
+            // Use the most selective index of the children
+            Set<ObjectId> result = null;
+            for (Filter child : filter.getChildren()) {
+                Set<ObjectId> candidates = getCandidates(child, entities);
+                if (candidates != null && (result == null || candidates.size() < result.size())) {
+                    result = candidates;
+                }
+            }
+            return result;
+        } else if (filter instanceof Or) {
+            Set<ObjectId> result = new HashSet<>();
+            for (Filter child : filter.getChildren()) {
+                Set<ObjectId> candidates = getCandidates(child, entities);
+                if (candidates == null) {
+                    return null;
+                }
+                result.addAll(candidates);
+            }
+            return result;
+        } else if (filter instanceof False) {
+            return Set.of();
+        } else if (filter instanceof Equals) {
+            return getEqualsCandidates(filter.getField(), ((Equals) filter).getExpectedValue(), entities);
+        } else if (filter instanceof In) {
+            Set<ObjectId> result = new HashSet<>();
+            for (Object value : ((In) filter).getValues()) {
+                Set<ObjectId> candidates = getEqualsCandidates(filter.getField(), value, entities);
+                if (candidates == null) {
+                    return null;
+                }
+                result.addAll(candidates);
+            }
+            return result;
+        } else if (filter instanceof Lt) {
+            return getRangeCandidates(filter.getField(), Long.MIN_VALUE, true, ((Lt) filter).getValue(), false);
+        } else if (filter instanceof Lte) {
+            return getRangeCandidates(filter.getField(), Long.MIN_VALUE, true, ((Lte) filter).getValue(), true);
+        } else if (filter instanceof Gt) {
+            return getRangeCandidates(filter.getField(), ((Gt) filter).getValue(), false, Long.MAX_VALUE, true);
+        } else if (filter instanceof Gte) {
+            return getRangeCandidates(filter.getField(), ((Gte) filter).getValue(), true, Long.MAX_VALUE, true);
+        } else if (filter instanceof Fulltext) {
+            InMemoryTextIndex textIndex = this.textIndex;
+            return textIndex != null ? textIndex.get(((Fulltext) filter).getExpression()) : null;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Resolves the distinct values of an indexed field by selecting one matching entity per indexed value.
+     * The numbers sharing the same key (like 1 and 1.0) are distinct values: one entity is selected per representation.
+     *
+     * @param field          the field
+     * @param matchingEntity the function returning the entity of the provided id if it matches the filter of the query, null otherwise
+     * @return one matching entity per distinct value of the field or null if the field isn't indexed
+     */
+    public <E> List<E> getDistinctValueEntities(String field, Function<ObjectId, E> matchingEntity) {
+        InMemoryIndex index = indexes.get(field);
+        if (index == null) {
+            return null;
+        }
+        List<E> result = new ArrayList<>();
+        for (Map.Entry<Object, Set<ObjectId>> bucket : index.hashIndex.entrySet()) {
+            // The other keys have a single representation: the first matching entity is enough
+            boolean number = bucket.getKey() instanceof BigDecimal;
+            Set<String> values = new HashSet<>();
+            for (ObjectId id : bucket.getValue()) {
+                E entity = matchingEntity.apply(id);
+                if (entity != null) {
+                    if (!number) {
+                        result.add(entity);
+                        break;
+                    } else if (values.add(index.getValueAsString(entity))) {
+                        result.add(entity);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private Set<ObjectId> getEqualsCandidates(String field, Object expectedValue, Map<ObjectId, ?> entities) {
+        if (AbstractIdentifiableObject.ID.equals(field)) {
+            ObjectId id;
+            if (expectedValue instanceof ObjectId) {
+                id = (ObjectId) expectedValue;
+            } else if (expectedValue instanceof String && ObjectId.isValid((String) expectedValue)) {
+                id = new ObjectId((String) expectedValue);
+            } else {
+                return null;
+            }
+            return entities.containsKey(id) ? Set.of(id) : Set.of();
+        } else if (documentIndexes && !isJsonValue(expectedValue)) {
+            // The indexed value of a matching entity may differ from the expected value (like the timestamp of a date)
+            return null;
+        } else {
+            InMemoryIndex index = indexes.get(field);
+            return index != null ? index.get(expectedValue) : null;
+        }
+    }
+
+    /**
+     * @return true if the value has the same representation in the documents as in the entities
+     */
+    private static boolean isJsonValue(Object value) {
+        return value == null || value instanceof String || value instanceof Number || value instanceof Boolean || value instanceof ObjectId;
+    }
+
+    private Set<ObjectId> getRangeCandidates(String field, long from, boolean fromInclusive, long to, boolean toInclusive) {
+        InMemoryIndex index = indexes.get(field);
+        return index != null ? index.getRange(from, fromInclusive, to, toInclusive) : null;
+    }
+
+    /**
+     * Normalizes the values so that the values considered equal by the {@link step.core.collections.PojoFilters.EqualsPojoFilter}
+     * share the same key
+     */
+    private static Object toHashKey(Object value) {
+        if (value == null) {
+            return NULL_KEY;
+        } else if (value instanceof Number) {
+            try {
+                return new BigDecimal(value.toString()).stripTrailingZeros();
+            } catch (NumberFormatException e) {
+                // NaN and infinite values
+                return value;
+            }
+        } else if (value instanceof ObjectId) {
+            return ((ObjectId) value).toHexString();
+        } else if (value.getClass().isEnum()) {
+            return value.toString();
+        } else {
+            return value;
+        }
+    }
+
+    private static class InMemoryIndex {
+
+        private final String field;
+        private final Map<Object, Set<ObjectId>> hashIndex = new ConcurrentHashMap<>();
+        private final NavigableMap<Long, Set<ObjectId>> sortedIndex = new ConcurrentSkipListMap<>();
+        // Entities having a null or non-numeric value which cannot be resolved by range queries
+        private final Set<ObjectId> unsortable = ConcurrentHashMap.newKeySet();
+        private final Map<ObjectId, Object> hashKeysById = new HashMap<>();
+        private final Map<ObjectId, Long> sortedKeysById = new HashMap<>();
+
+        public InMemoryIndex(String field) {
+            this.field = field;
+        }
+
+        public void add(ObjectId id, Object entity) {
+            Object value;
+            try {
+                value = PojoUtils.getProperty(entity, field);
+            } catch (NoSuchMethodException e) {
+                // Missing fields are considered null by the equals filter and are ignored by range filters
+                addHashKey(id, NULL_KEY);
+                return;
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                // Such entities are never matched by the filters
+                return;
+            }
+            addHashKey(id, toHashKey(value));
+            if (value instanceof Number) {
+                long sortedKey = ((Number) value).longValue();
+                sortedIndex.computeIfAbsent(sortedKey, k -> ConcurrentHashMap.newKeySet()).add(id);
+                sortedKeysById.put(id, sortedKey);
+            } else {
+                unsortable.add(id);
+            }
+        }
+
+        private void addHashKey(ObjectId id, Object hashKey) {
+            hashIndex.computeIfAbsent(hashKey, k -> ConcurrentHashMap.newKeySet()).add(id);
+            hashKeysById.put(id, hashKey);
+        }
+
+        public void remove(ObjectId id) {
+            Object hashKey = hashKeysById.remove(id);
+            if (hashKey != null) {
+                removeFromBucket(hashIndex, hashKey, id);
+            }
+            Long sortedKey = sortedKeysById.remove(id);
+            if (sortedKey != null) {
+                removeFromBucket(sortedIndex, sortedKey, id);
+            }
+            unsortable.remove(id);
+        }
+
+        private <K> void removeFromBucket(Map<K, Set<ObjectId>> index, K key, ObjectId id) {
+            index.computeIfPresent(key, (k, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+
+        private String getValueAsString(Object entity) {
+            try {
+                return String.valueOf(PojoUtils.getProperty(entity, field));
+            } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        public Set<ObjectId> get(Object value) {
+            return hashIndex.getOrDefault(toHashKey(value), Set.of());
+        }
+
+        public Set<ObjectId> getRange(long from, boolean fromInclusive, long to, boolean toInclusive) {
+            if (!unsortable.isEmpty()) {
+                // Range filters fail on non-numeric values. Let the filter evaluation report it
+                return null;
+            }
+            Set<ObjectId> result = new HashSet<>();
+            sortedIndex.subMap(from, fromInclusive, to, toInclusive).values().forEach(result::addAll);
+            return result;
+        }
+    }
+
+    private static class InMemoryTextIndex {
+
+        private final List<String> fields;
+        private final Map<String, Set<ObjectId>> idsByWord = new ConcurrentHashMap<>();
+        private final Map<ObjectId, Set<String>> wordsById = new HashMap<>();
+
+        public InMemoryTextIndex(List<String> fields) {
+            this.fields = List.copyOf(fields);
+        }
+
+        public void add(ObjectId id, Object entity) {
+            Set<String> words = new HashSet<>();
+            for (String field : fields) {
+                try {
+                    FulltextTokenizer.addWords(PojoUtils.getProperty(entity, field), words);
+                } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+                    // Such fields are ignored by the fulltext filters
+                }
+            }
+            words.forEach(word -> idsByWord.computeIfAbsent(word, k -> ConcurrentHashMap.newKeySet()).add(id));
+            wordsById.put(id, words);
+        }
+
+        public void remove(ObjectId id) {
+            Set<String> words = wordsById.remove(id);
+            if (words != null) {
+                words.forEach(word -> idsByWord.computeIfPresent(word, (k, ids) -> {
+                    ids.remove(id);
+                    return ids.isEmpty() ? null : ids;
+                }));
+            }
+        }
+
+        /**
+         * @return the ids of the entities containing all the words of the expression or null if the expression has no words
+         */
+        public Set<ObjectId> get(String expression) {
+            Set<String> words = FulltextTokenizer.tokenize(expression);
+            if (words.isEmpty()) {
+                return null;
+            }
+            // Intersect the ids of the words starting with the rarest one
+            List<Set<ObjectId>> idSets = new ArrayList<>();
+            for (String word : words) {
+                Set<ObjectId> ids = idsByWord.get(word);
+                if (ids == null) {
+                    return Set.of();
+                }
+                idSets.add(ids);
+            }
+            idSets.sort(Comparator.comparingInt(Set::size));
+            Set<ObjectId> result = new HashSet<>(idSets.get(0));
+            idSets.subList(1, idSets.size()).forEach(result::retainAll);
+            return result;
+        }
+    }
+}
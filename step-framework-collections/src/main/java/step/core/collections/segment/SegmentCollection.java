@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections.segment;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Stream;
+
+import org.bson.types.ObjectId;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import step.core.collections.*;
+import step.core.collections.AbstractCollection;
+import step.core.collections.Collection;
+import step.core.collections.PojoFilters.PojoFilterFactory;
+
+/**
+ * {@link Collection} persisting its entities in a {@link SegmentStore}
+ */
+public class SegmentCollection<T> extends AbstractCollection<T> implements Collection<T> {
+
+    private final SegmentCollectionFactory parentFactory;
+    private final Class<T> entityClass;
+    private final ObjectMapper mapper;
+    private final PojoQueryExecutor<T> queryExecutor = new PojoQueryExecutor<>(this::getId);
+    private String name;
+
+    public SegmentCollection(SegmentCollectionFactory parentFactory, String name, Class<T> entityClass, ObjectMapper mapper) {
+        super();
+        this.parentFactory = parentFactory;
+        this.name = name;
+        this.entityClass = entityClass;
+        this.mapper = mapper;
+    }
+
+    private SegmentStore getStore() {
+        return parentFactory.getStore(name);
+    }
+
+    @Override
+    public List<String> distinct(String columnName, Filter filter) {
+        SegmentStore store = getStore();
+        PojoFilter<T> pojoFilter = filterFactory(store).buildFilter(filter);
+        List<T> distinctValueEntities = store.getDistinctValueEntities(columnName, filter, id -> {
+            T entity = read(store, id);
+            return entity != null && pojoFilter.test(entity) ? entity : null;
+        });
+        if (distinctValueEntities != null) {
+            return queryExecutor.distinct(distinctValueEntities.stream(), columnName);
+        } else {
+            return queryExecutor.distinct(filteredStream(filter), columnName);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long count(Filter filter, Integer limit) {
+        return queryExecutor.count(filteredStream(filter), limit);
+    }
+
+    @Override
+    public long estimatedCount() {
+        return getStore().size();
+    }
+
+    @Override
+    public Stream<T> find(Filter filter, SearchOrder order, Integer skip, Integer limit, int maxTime) {
+        return queryExecutor.find(filteredStream(filter), order, skip, limit);
+    }
+
+    @Override
+    public Stream<T> findLazy(Filter filter, SearchOrder order, Integer skip, Integer limit, int maxTime) {
+        return find(filter, order, skip, limit, maxTime);
+    }
+
+    @Override
+    public Stream<T> findReduced(Filter filter, SearchOrder order, Integer skip, Integer limit, int maxTime, List<String> reduceFields) {
+        return find(filter, order, skip, limit, maxTime);
+    }
+
+    private PojoFilterFactory<T> filterFactory(SegmentStore store) {
+        return new PojoFilterFactory<>(true, store.getTextFields());
+    }
+
+    private Stream<T> filteredStream(Filter filter) {
+        SegmentStore store = getStore();
+        PojoFilter<T> pojoFilter = filterFactory(store).buildFilter(filter);
+        // The entities removed in the meantime are skipped
+        return store.getCandidates(filter).stream().map(id -> read(store, id)).filter(Objects::nonNull).filter(pojoFilter);
+    }
+
+    private T read(SegmentStore store, ObjectId id) {
+        byte[] payload = store.get(id);
+        if (payload != null) {
+            try {
+                return mapper.readValue(payload, entityClass);
+            } catch (IOException e) {
+                throw new SegmentStoreException("Unable to deserialize the entity " + id + " of the collection " + name, e);
+            }
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public void remove(Filter filter) {
+        SegmentStore store = getStore();
+        filteredStream(filter).forEach(e -> store.delete(getId(e)));
+    }
+
+    @Override
+    public T save(T entity) {
+        if (getId(entity) == null) {
+            setId(entity, new ObjectId());
+        }
+        byte[] payload;
+        try {
+            payload = mapper.writeValueAsBytes(entity);
+        } catch (JsonProcessingException e) {
+            throw new SegmentStoreException("Unable to serialize the entity " + getId(entity) + " of the collection " + name, e);
+        }
+        getStore().put(getId(entity), payload);
+        return entity;
+    }
+
+    @Override
+    public void save(Iterable<T> entities) {
+        if (entities != null) {
+            entities.forEach(this::save);
+        }
+    }
+
+    @Override
+    public void createOrUpdateIndex(String field) {
+        getStore().createIndex(field);
+    }
+
+    @Override
+    public void createOrUpdateIndex(IndexField indexField) {
+        createOrUpdateIndex(indexField.fieldName);
+    }
+
+    @Override
+    public void createOrUpdateIndex(String field, Order order) {
+        // The indexes can be scanned in both directions, the order is ignored
+        createOrUpdateIndex(field);
+    }
+
+    @Override
+    public void createOrUpdateCompoundIndex(String... fields) {
+        // Compound indexes are emulated by single field indexes like in the in-memory collection
+        Arrays.stream(fields).forEach(this::createOrUpdateIndex);
+    }
+
+    @Override
+    public void createOrUpdateCompoundIndex(LinkedHashSet<IndexField> fields) {
+        fields.forEach(this::createOrUpdateIndex);
+    }
+
+    @Override
+    public void createOrUpdateTextIndex(String... fields) {
+        getStore().createTextIndex(List.of(fields));
+    }
+
+    @Override
+    public void rename(String newName) {
+        parentFactory.renameCollection(name, newName);
+        this.name = newName;
+    }
+
+    @Override
+    public void drop() {
+        parentFactory.dropCollection(name);
+    }
+
+    @Override
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    @Override
+    public void dropIndex(String indexName) {
+        getStore().dropIndex(indexName);
+    }
+}
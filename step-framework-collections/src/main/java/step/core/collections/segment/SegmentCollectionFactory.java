@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections.segment;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import step.core.accessors.DefaultJacksonMapperProvider;
+import step.core.collections.Collection;
+import step.core.collections.CollectionFactory;
+import step.core.collections.Document;
+import step.core.collections.EntityVersion;
+
+/**
+ * {@link CollectionFactory} storing each collection in a {@link SegmentStore} located in a folder of the workspace.
+ * <p>
+ * The records are encoded with the JSON mapper of {@link DefaultJacksonMapperProvider}. A binary format like Smile can
+ * be used by passing the corresponding mapper to {@link #SegmentCollectionFactory(File, ObjectMapper, int, boolean, long, double)}.
+ */
+public class SegmentCollectionFactory implements CollectionFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentCollectionFactory.class);
+
+    public static final String SEGMENT_PATH = "path";
+    /**
+     * The size in bytes after which the segments are sealed
+     */
+    public static final String SEGMENT_MAX_SIZE = "maxSegmentSize";
+    /**
+     * If each write should be flushed to the storage device
+     */
+    public static final String SEGMENT_FSYNC = "fsync";
+    /**
+     * The interval of the background compaction in ms. 0 disables the background compaction
+     */
+    public static final String SEGMENT_COMPACTION_INTERVAL_MS = "compactionIntervalMs";
+    /**
+     * The minimum ratio of overwritten or deleted records of the segments to be compacted
+     */
+    public static final String SEGMENT_COMPACTION_RATIO = "compactionRatio";
+
+    private final File workspace;
+    private final ObjectMapper mapper;
+    private final int maxSegmentSize;
+    private final boolean fsync;
+    private final double compactionRatio;
+    private final Map<String, SegmentStore> stores = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService compactionExecutor;
+
+    public SegmentCollectionFactory(Properties properties) {
+        this(new File(properties.getProperty(SEGMENT_PATH, "db")), DefaultJacksonMapperProvider.getObjectMapper(),
+            Integer.parseInt(properties.getProperty(SEGMENT_MAX_SIZE, Integer.toString(64 * 1024 * 1024))),
+            Boolean.parseBoolean(properties.getProperty(SEGMENT_FSYNC, "false")),
+            Long.parseLong(properties.getProperty(SEGMENT_COMPACTION_INTERVAL_MS, "60000")),
+            Double.parseDouble(properties.getProperty(SEGMENT_COMPACTION_RATIO, "0.5")));
+    }
+
+    /**
+     * @param workspace            the folder containing the stores of the collections
+     * @param mapper               the mapper used to encode the records
+     * @param maxSegmentSize       the size in bytes after which the segments are sealed
+     * @param fsync                if each write should be flushed to the storage device
+     * @param compactionIntervalMs the interval of the background compaction in ms. 0 disables the background compaction
+     * @param compactionRatio      the minimum ratio of overwritten or deleted records of the segments to be compacted
+     */
+    public SegmentCollectionFactory(File workspace, ObjectMapper mapper, int maxSegmentSize, boolean fsync, long compactionIntervalMs, double compactionRatio) {
+        super();
+        this.workspace = workspace;
+        this.mapper = mapper;
+        this.maxSegmentSize = maxSegmentSize;
+        this.fsync = fsync;
+        this.compactionRatio = compactionRatio;
+        if (compactionIntervalMs > 0) {
+            compactionExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "SegmentCollectionCompaction");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactionExecutor.scheduleWithFixedDelay(this::compact, compactionIntervalMs, compactionIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            compactionExecutor = null;
+        }
+    }
+
+    /**
+     * Compacts the segments of all the open stores
+     */
+    public void compact() {
+        stores.values().forEach(store -> {
+            try {
+                store.compact(compactionRatio);
+            } catch (Exception e) {
+                logger.error("Error while compacting the store '" + store.getDirectory().getAbsolutePath() + "'", e);
+            }
+        });
+    }
+
+    protected SegmentStore getStore(String name) {
+        SegmentStore store = stores.get(name);
+        if (store != null && !store.isClosed()) {
+            return store;
+        }
+        return stores.compute(name, (n, existing) -> (existing == null || existing.isClosed()) ?
+            new SegmentStore(getDirectory(name), maxSegmentSize, fsync, this::decodeDocument) : existing);
+    }
+
+    private Object decodeDocument(byte[] payload) {
+        try {
+            return mapper.readValue(payload, Document.class);
+        } catch (IOException e) {
+            throw new SegmentStoreException("Unable to deserialize the record", e);
+        }
+    }
+
+    private File getDirectory(String name) {
+        return new File(workspace, name);
+    }
+
+    @Override
+    public <T> Collection<T> getCollection(String name, Class<T> entityClass) {
+        return new SegmentCollection<>(this, name, entityClass, mapper);
+    }
+
+    @Override
+    public Collection<EntityVersion> getVersionedCollection(String name) {
+        return new SegmentCollection<>(this, name + CollectionFactory.VERSION_COLLECTION_SUFFIX, EntityVersion.class, mapper);
+    }
+
+    protected synchronized void renameCollection(String name, String newName) {
+        try {
+            closeStore(name);
+            closeStore(newName);
+            File directory = getDirectory(name);
+            if (directory.exists()) {
+                Files.move(directory.toPath(), getDirectory(newName).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new SegmentStoreException("Unable to rename the collection " + name + " to " + newName, e);
+        }
+    }
+
+    protected synchronized void dropCollection(String name) {
+        try {
+            getStore(name).drop();
+        } catch (IOException e) {
+            throw new SegmentStoreException("Unable to drop the collection " + name, e);
+        }
+    }
+
+    private void closeStore(String name) throws IOException {
+        SegmentStore store = stores.remove(name);
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (compactionExecutor != null) {
+            compactionExecutor.shutdown();
+        }
+        for (SegmentStore store : stores.values()) {
+            store.close();
+        }
+        stores.clear();
+    }
+}
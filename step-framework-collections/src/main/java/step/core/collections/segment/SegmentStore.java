@@ -0,0 +1,531 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.collections.segment;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import step.core.collections.Filter;
+import step.core.collections.inmemory.InMemoryIndexes;
+
+/**
+ * Append-only storage of the records of a collection.
+ * <p>
+ * The records are appended to log segments. Each record is length-prefixed and protected by a CRC32 checksum:
+ * <pre>
+ * | length (int) | crc32 (int) | type (byte) | id (12 bytes) | payload |
+ * </pre>
+ * A save appends a PUT record containing the serialized entity and a remove appends a DELETE record (tombstone).
+ * The location of the last PUT record of each entity is kept in an in-memory index rebuilt by replaying the segments
+ * on startup. An incomplete or corrupted record at the end of the last segment (interrupted write) is truncated.
+ * <p>
+ * The segments are rolled once they reach the maximum segment size. The sealed segments are immutable and memory-mapped
+ * for reading. The segments containing mostly overwritten or deleted records are rewritten by {@link #compact(double)}.
+ */
+public class SegmentStore implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentStore.class);
+
+    public static final int MAX_SEGMENT_SIZE = 1 << 30;
+    private static final String SEGMENT_EXTENSION = ".segment";
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int ID_SIZE = 12;
+    // length + crc + type + id
+    private static final int HEADER_SIZE = 4 + 4 + 1 + ID_SIZE;
+    private static final byte[] EMPTY_PAYLOAD = new byte[0];
+
+    private final File directory;
+    private final int maxSegmentSize;
+    private final boolean fsync;
+    private final Function<byte[], Object> indexDecoder;
+    private final Map<ObjectId, Location> locations = new ConcurrentHashMap<>();
+    private final InMemoryIndexes indexes = new InMemoryIndexes(true);
+    // Reads are performed under the read lock, appends, compaction and closing under the write lock
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment activeSegment;
+    private volatile boolean closed = false;
+
+    /**
+     * @param directory      the folder containing the segments of the store
+     * @param maxSegmentSize the size in bytes after which the active segment is sealed and a new segment is created
+     * @param fsync          if each append should be flushed to the storage device
+     * @param indexDecoder   the function decoding the payload of the records into the {@link step.core.collections.Document}
+     *                       representation of the entities used to maintain the secondary indexes
+     */
+    public SegmentStore(File directory, int maxSegmentSize, boolean fsync, Function<byte[], Object> indexDecoder) {
+        super();
+        if (maxSegmentSize <= 0 || maxSegmentSize > MAX_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("The maximum segment size should be between 1 and " + MAX_SEGMENT_SIZE);
+        }
+        this.directory = directory;
+        this.maxSegmentSize = maxSegmentSize;
+        this.fsync = fsync;
+        this.indexDecoder = indexDecoder;
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        try {
+            open();
+        } catch (IOException e) {
+            throw new SegmentStoreException("Unable to open the segments of '" + directory.getAbsolutePath() + "'", e);
+        }
+    }
+
+    private void open() throws IOException {
+        File[] files = directory.listFiles(f -> f.getName().endsWith(SEGMENT_EXTENSION));
+        if (files != null) {
+            Arrays.sort(files, Comparator.comparingLong(SegmentStore::getSequence));
+            for (int i = 0; i < files.length; i++) {
+                Segment segment = new Segment(getSequence(files[i]), files[i]);
+                segments.add(segment);
+                replay(segment, i == files.length - 1);
+            }
+        }
+        for (Segment segment : segments) {
+            segment.seal();
+        }
+        Segment lastSegment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (lastSegment != null && lastSegment.size < maxSegmentSize) {
+            // Continue appending to the last segment
+            lastSegment.mapped = null;
+            activeSegment = lastSegment;
+        } else {
+            roll();
+        }
+    }
+
+    private void replay(Segment segment, boolean lastSegment) throws IOException {
+        ByteBuffer buffer = segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, segment.size);
+        int offset = 0;
+        while (offset < segment.size) {
+            int recordSize = validateRecord(buffer, offset, segment.size);
+            if (recordSize < 0) {
+                if (lastSegment) {
+                    logger.warn("Truncating the incomplete record at offset " + offset + " of the segment '" + segment.file.getAbsolutePath() + "'");
+                    segment.channel.truncate(offset);
+                    segment.size = offset;
+                    break;
+                } else {
+                    throw new SegmentStoreException("The segment '" + segment.file.getAbsolutePath() + "' is corrupted at offset " + offset);
+                }
+            }
+            apply(buffer.get(offset + 8), readId(buffer, offset), new Location(segment, offset, recordSize));
+            offset += recordSize;
+        }
+    }
+
+    /**
+     * @return the size of the record starting at the provided offset or -1 if the record is incomplete or corrupted
+     */
+    private static int validateRecord(ByteBuffer buffer, int offset, long segmentSize) {
+        if (segmentSize - offset < HEADER_SIZE) {
+            return -1;
+        }
+        int length = buffer.getInt(offset);
+        if (length < HEADER_SIZE - 4 || offset + 4L + length > segmentSize) {
+            return -1;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(offset + 8, length - 4));
+        if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+            return -1;
+        }
+        return length + 4;
+    }
+
+    private static ObjectId readId(ByteBuffer buffer, int recordOffset) {
+        byte[] id = new byte[ID_SIZE];
+        buffer.get(recordOffset + 9, id);
+        return new ObjectId(id);
+    }
+
+    private static long getSequence(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_EXTENSION.length()));
+    }
+
+    private void apply(byte type, ObjectId id, Location location) {
+        Location previous = type == PUT ? locations.put(id, location) : locations.remove(id);
+        if (previous != null) {
+            previous.segment.garbage += previous.size;
+        }
+        if (type == DELETE) {
+            // Tombstones are only required to replay the segments
+            location.segment.garbage += location.size;
+        }
+    }
+
+    private void roll() throws IOException {
+        if (activeSegment != null) {
+            activeSegment.seal();
+        }
+        // Continue after the highest existing segment, including when the last segment was already full on open,
+        // so that the segments are replayed in the order of their writes
+        long sequence = segments.stream().mapToLong(s -> s.sequence).max().orElse(0) + 1;
+        File file = new File(directory, String.format("%010d%s", sequence, SEGMENT_EXTENSION));
+        activeSegment = new Segment(sequence, file);
+        segments.add(activeSegment);
+    }
+
+    private void append(byte type, ObjectId id, byte[] payload) throws IOException {
+        int recordSize = HEADER_SIZE + payload.length;
+        if (activeSegment.size > 0 && activeSegment.size + recordSize > maxSegmentSize) {
+            roll();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(recordSize);
+        buffer.putInt(recordSize - 4);
+        buffer.putInt(0);
+        buffer.put(type);
+        buffer.put(id.toByteArray());
+        buffer.put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 8, recordSize - 8);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+
+        long offset = activeSegment.size;
+        while (buffer.hasRemaining()) {
+            activeSegment.channel.write(buffer, offset + buffer.position());
+        }
+        if (fsync) {
+            activeSegment.channel.force(false);
+        }
+        activeSegment.size += recordSize;
+        apply(type, id, new Location(activeSegment, (int) offset, recordSize));
+    }
+
+    private byte[] read(Location location) throws IOException {
+        byte[] payload = new byte[location.size - HEADER_SIZE];
+        int payloadOffset = location.offset + HEADER_SIZE;
+        MappedByteBuffer mapped = location.segment.mapped;
+        if (mapped != null) {
+            mapped.get(payloadOffset, payload);
+        } else {
+            ByteBuffer buffer = ByteBuffer.wrap(payload);
+            while (buffer.hasRemaining()) {
+                if (location.segment.channel.read(buffer, payloadOffset + buffer.position()) < 0) {
+                    throw new EOFException("Unexpected end of segment '" + location.segment.file.getAbsolutePath() + "'");
+                }
+            }
+        }
+        return payload;
+    }
+
+    /**
+     * @param id the id of the entity
+     * @return the payload of the entity or null if the entity doesn't exist
+     */
+    public byte[] get(ObjectId id) {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            Location location = locations.get(id);
+            return location != null ? read(location) : null;
+        } catch (IOException e) {
+            throw new SegmentStoreException("Error while reading the entity " + id + " from '" + directory.getAbsolutePath() + "'", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(ObjectId id, byte[] payload) {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            append(PUT, id, payload);
+            if (!indexes.isEmpty()) {
+                indexes.add(id, indexDecoder.apply(payload));
+            }
+        } catch (IOException e) {
+            throw new SegmentStoreException("Error while writing the entity " + id + " to '" + directory.getAbsolutePath() + "'", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void delete(ObjectId id) {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            if (locations.containsKey(id)) {
+                append(DELETE, id, EMPTY_PAYLOAD);
+                indexes.remove(id);
+            }
+        } catch (IOException e) {
+            throw new SegmentStoreException("Error while deleting the entity " + id + " from '" + directory.getAbsolutePath() + "'", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param filter the filter of the query
+     * @return the ids of the entities that may match the filter
+     */
+    public Set<ObjectId> getCandidates(Filter filter) {
+        Set<ObjectId> candidates = indexes.getCandidates(filter, locations);
+        return candidates != null ? candidates : locations.keySet();
+    }
+
+    /**
+     * @param field          the field
+     * @param filter         the filter of the query
+     * @param matchingEntity the function returning the entity of the provided id if it matches the filter, null otherwise
+     * @return one matching entity per distinct value of the field or null if the field isn't indexed or if the filter
+     * is resolvable by the indexes (in which case scanning the candidates is cheaper)
+     * @see InMemoryIndexes#getDistinctValueEntities(String, Function)
+     */
+    public <E> List<E> getDistinctValueEntities(String field, Filter filter, Function<ObjectId, E> matchingEntity) {
+        return indexes.getCandidates(filter, locations) == null ? indexes.getDistinctValueEntities(field, matchingEntity) : null;
+    }
+
+    public int size() {
+        return locations.size();
+    }
+
+    public void createIndex(String field) {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            if (!indexes.hasIndex(field)) {
+                indexes.createIndex(field, readDocuments());
+            }
+        } catch (IOException e) {
+            throw new SegmentStoreException("Error while creating the index " + field + " of '" + directory.getAbsolutePath() + "'", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void createTextIndex(List<String> fields) {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            if (!indexes.getTextFields().equals(fields)) {
+                indexes.createTextIndex(fields, readDocuments());
+            }
+        } catch (IOException e) {
+            throw new SegmentStoreException("Error while creating the text index " + fields + " of '" + directory.getAbsolutePath() + "'", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the fields of the text index or an empty list if no text index exists
+     */
+    public List<String> getTextFields() {
+        return indexes.getTextFields();
+    }
+
+    private Map<ObjectId, Object> readDocuments() throws IOException {
+        Map<ObjectId, Object> documents = new HashMap<>();
+        for (Map.Entry<ObjectId, Location> entry : locations.entrySet()) {
+            documents.put(entry.getKey(), indexDecoder.apply(read(entry.getValue())));
+        }
+        return documents;
+    }
+
+    public void dropIndex(String field) {
+        indexes.dropIndex(field);
+    }
+
+    /**
+     * Rewrites the live records of the sealed segments whose ratio of overwritten or deleted records exceeds the provided ratio
+     * to the active segment and deletes them.
+     *
+     * @param minGarbageRatio the minimum ratio (between 0 and 1) of garbage bytes of the segments to be compacted
+     */
+    public void compact(double minGarbageRatio) {
+        List<Segment> candidates;
+        lock.readLock().lock();
+        try {
+            candidates = new ArrayList<>(segments);
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (Segment segment : candidates) {
+            lock.writeLock().lock();
+            try {
+                if (!closed && segment != activeSegment && segments.contains(segment) && segment.size > 0
+                    && (double) segment.garbage / segment.size >= minGarbageRatio) {
+                    compact(segment);
+                }
+            } catch (IOException e) {
+                throw new SegmentStoreException("Error while compacting the segment '" + segment.file.getAbsolutePath() + "'", e);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void compact(Segment segment) throws IOException {
+        // Tombstones hide the records of the older segments. They can be dropped if the segment is the oldest one
+        boolean oldestSegment = segments.get(0) == segment;
+        MappedByteBuffer buffer = segment.mapped;
+        int offset = 0;
+        while (offset < segment.size) {
+            int recordSize = buffer.getInt(offset) + 4;
+            byte type = buffer.get(offset + 8);
+            ObjectId id = readId(buffer, offset);
+            if (type == PUT) {
+                Location location = locations.get(id);
+                if (location != null && location.segment == segment && location.offset == offset) {
+                    byte[] payload = new byte[recordSize - HEADER_SIZE];
+                    buffer.get(offset + HEADER_SIZE, payload);
+                    append(PUT, id, payload);
+                }
+            } else if (!oldestSegment && !locations.containsKey(id)) {
+                append(DELETE, id, EMPTY_PAYLOAD);
+            }
+            offset += recordSize;
+        }
+        // The rewritten records have to be persisted before deleting the segment
+        activeSegment.channel.force(false);
+        segments.remove(segment);
+        segment.close();
+        Files.deleteIfExists(segment.file.toPath());
+        logger.debug("Compacted the segment '" + segment.file.getAbsolutePath() + "'");
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new SegmentStoreException("The segment store '" + directory.getAbsolutePath() + "' is closed");
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public int getSegmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!closed) {
+                closed = true;
+                for (Segment segment : segments) {
+                    if (segment == activeSegment) {
+                        segment.channel.force(true);
+                    }
+                    segment.close();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Closes the store and deletes its segments
+     */
+    public void drop() throws IOException {
+        lock.writeLock().lock();
+        try {
+            close();
+            for (Segment segment : segments) {
+                Files.deleteIfExists(segment.file.toPath());
+            }
+            segments.clear();
+            locations.clear();
+            Files.deleteIfExists(directory.toPath());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static class Segment {
+
+        private final long sequence;
+        private final File file;
+        private final FileChannel channel;
+        // The mapping of the sealed segments
+        private volatile MappedByteBuffer mapped;
+        private long size;
+        // The number of bytes of overwritten and deleted records
+        private long garbage;
+
+        private Segment(long sequence, File file) throws IOException {
+            this.sequence = sequence;
+            this.file = file;
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.size = channel.size();
+        }
+
+        private void seal() throws IOException {
+            channel.force(true);
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        private void close() throws IOException {
+            mapped = null;
+            channel.close();
+        }
+    }
+
+    private static class Location {
+
+        private final Segment segment;
+        private final int offset;
+        private final int size;
+
+        private Location(Segment segment, int offset, int size) {
+            this.segment = segment;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+}
@@ -624,6 +624,135 @@ public abstract class AbstractCollectionTest {
         assertEquals(0, result.size());
     }
 
+    @Test
+    public void testFulltextFilter() {
+        collectionFactory.getCollection("fulltextBeans", Bean.class).drop();
+        Collection<Bean> collection = collectionFactory.getCollection("fulltextBeans", Bean.class);
+
+        Bean bean1 = new Bean("Execution of the LOGIN plan");
+        bean1.addAttribute("name", "Nightly");
+        bean1.setStringList(List.of("smoke", "regression"));
+        collection.save(bean1);
+
+        Bean bean2 = new Bean("Execution failed: timeout");
+        bean2.addAttribute("name", "login");
+        collection.save(bean2);
+
+        Bean bean3 = new Bean("Other");
+        collection.save(bean3);
+
+        // Fulltext filters require a text index
+        assertThrows(Throwable.class, () -> collection.find(Filters.fulltext("login"), null, null, null, 0).collect(Collectors.toList()));
+        Collection<Bean> otherCollection = collectionFactory.getCollection("fulltextBeans", Bean.class);
+
+        collection.createOrUpdateTextIndex(PROPERTY1, "attributes.name", "stringList");
+        // Creating the same index again is a no-op
+        collection.createOrUpdateTextIndex(PROPERTY1, "attributes.name", "stringList");
+
+        Bean bean4 = new Bean("Login after the creation of the index");
+        collection.save(bean4);
+
+        Bean bean5 = new Bean("Deployed v1.2 to foo.bar.com");
+        collection.save(bean5);
+
+        assertEquals(List.of(bean1.getId(), bean2.getId(), bean4.getId()), findFulltextIds(collection, Filters.fulltext("login")));
+        // The text index is used by the other instances of the collection
+        assertEquals(List.of(bean1.getId(), bean2.getId(), bean4.getId()), findFulltextIds(otherCollection, Filters.fulltext("login")));
+        // The words are separated by any non-alphanumeric character
+        assertEquals(List.of(bean5.getId()), findFulltextIds(collection, Filters.fulltext("bar")));
+        assertEquals(List.of(bean5.getId()), findFulltextIds(collection, Filters.fulltext("v1.2")));
+        // All the words have to be contained, case-insensitively and in any order
+        assertEquals(List.of(bean1.getId(), bean2.getId()), findFulltextIds(collection, Filters.fulltext("LOGIN execution")));
+        assertEquals(List.of(bean1.getId()), findFulltextIds(collection, Filters.fulltext("plan, login")));
+        assertEquals(List.of(bean1.getId()), findFulltextIds(collection, Filters.fulltext("regression")));
+        // Whole words only
+        assertEquals(List.of(), findFulltextIds(collection, Filters.fulltext("time")));
+        assertEquals(List.of(bean2.getId()), findFulltextIds(collection,
+            Filters.and(List.of(Filters.fulltext("execution"), Filters.equals("attributes.name", "login")))));
+        assertEquals(2, collection.count(Filters.fulltext("execution"), null));
+
+        // Updates and removals are reflected by the index
+        bean2.setProperty1("Succeeded");
+        collection.save(bean2);
+        assertEquals(List.of(bean1.getId()), findFulltextIds(collection, Filters.fulltext("execution")));
+        collection.remove(Filters.id(bean1.getId()));
+        assertEquals(List.of(bean2.getId(), bean4.getId()), findFulltextIds(collection, Filters.fulltext("login")));
+
+        // The index on other fields replaces the existing one
+        collection.createOrUpdateTextIndex(PROPERTY1);
+        assertEquals(List.of(bean4.getId()), findFulltextIds(collection, Filters.fulltext("login")));
+    }
+
+    private List<ObjectId> findFulltextIds(Collection<Bean> collection, Filter filter) {
+        return collection.find(filter, new SearchOrder(AbstractIdentifiableObject.ID, 1), null, null, 0).map(Bean::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testDistinct() {
+        Collection<Bean> beanCollection = collectionFactory.getCollection(COLLECTION, Bean.class);
+        beanCollection.remove(Filters.empty());
+        for (long i = 0; i < 6; i++) {
+            Bean bean = new Bean(i % 2 == 0 ? VALUE1 : VALUE2);
+            bean.setLongProperty(i);
+            beanCollection.save(bean);
+        }
+
+        assertEquals(List.of(VALUE1, VALUE2), sorted(beanCollection.distinct(PROPERTY1, Filters.empty())));
+        assertEquals(List.of(VALUE2), sorted(beanCollection.distinct(PROPERTY1, Filters.equals("longProperty", 3))));
+        assertEquals(List.of(), beanCollection.distinct(PROPERTY1, Filters.equals("longProperty", 10)));
+
+        // Answered from the index if the driver supports it
+        beanCollection.createOrUpdateIndex(PROPERTY1);
+        assertEquals(List.of(VALUE1, VALUE2), sorted(beanCollection.distinct(PROPERTY1, Filters.empty())));
+        assertEquals(List.of(VALUE1), sorted(beanCollection.distinct(PROPERTY1, Filters.lt("longProperty", 1))));
+        assertEquals(List.of(VALUE1, VALUE2), sorted(beanCollection.distinct(PROPERTY1, Filters.in(PROPERTY1, List.of(VALUE1, VALUE2, VALUE3)))));
+    }
+
+    private static List<String> sorted(List<String> values) {
+        return values.stream().sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    public void testFindAfter() {
+        Collection<Bean> beanCollection = collectionFactory.getCollection(COLLECTION, Bean.class);
+        beanCollection.remove(Filters.empty());
+        for (int i = 0; i < 11; i++) {
+            Bean bean = new Bean(i % 2 == 0 ? VALUE1 : VALUE2);
+            // Duplicated and null sort keys
+            bean.setLongProperty(i < 9 ? (long) (i % 3) : null);
+            beanCollection.save(bean);
+        }
+
+        for (SearchOrder order : List.of(new SearchOrder("longProperty", 1), new SearchOrder("longProperty", -1),
+            new SearchOrder(List.of(new SearchOrder.FieldSearchOrder(PROPERTY1, -1), new SearchOrder.FieldSearchOrder("longProperty", 1))))) {
+            List<Bean> expected = beanCollection.find(Filters.empty(), order, null, null, 0).collect(Collectors.toList());
+            List<Bean> actual = new ArrayList<>();
+            String continuationToken = null;
+            int pageCount = 0;
+            do {
+                ResultPage<Bean> page = beanCollection.findAfter(Filters.empty(), order, continuationToken, 4, 0);
+                actual.addAll(page.getResults());
+                continuationToken = page.getContinuationToken();
+                pageCount++;
+            } while (continuationToken != null);
+
+            assertEquals(3, pageCount);
+            // Each entity is returned exactly once, the entities with the same sort keys might be returned in another order
+            assertEquals(11, actual.stream().map(Bean::getId).distinct().count());
+            assertEquals(expected.stream().map(b -> b.getProperty1() + b.getLongProperty()).collect(Collectors.toList()),
+                actual.stream().map(b -> b.getProperty1() + b.getLongProperty()).collect(Collectors.toList()));
+        }
+
+        // Filtered
+        ResultPage<Bean> page = beanCollection.findAfter(Filters.equals(PROPERTY1, VALUE2), null, null, 10, 0);
+        assertEquals(5, page.getResults().size());
+        assertNull(page.getContinuationToken());
+
+        // Tokens created for another order are rejected
+        String continuationToken = beanCollection.findAfter(Filters.empty(), new SearchOrder("longProperty", 1), null, 4, 0).getContinuationToken();
+        assertThrows(IllegalArgumentException.class, () -> beanCollection.findAfter(Filters.empty(), new SearchOrder("longProperty", -1), continuationToken, 4, 0));
+    }
+
     @Test
     public void testRemove() throws Exception {
         Collection<Bean> beanCollection = collectionFactory.getCollection(COLLECTION, Bean.class);
@@ -637,6 +766,22 @@ public abstract class AbstractCollectionTest {
             .findFirst().orElse(null));
     }
 
+    @Test
+    public void testRemoveLowerThan() {
+        Collection<Bean> beanCollection = collectionFactory.getCollection(COLLECTION, Bean.class);
+        beanCollection.remove(Filters.empty());
+        for (long i = 0; i < 10; i++) {
+            Bean bean = new Bean(VALUE1);
+            bean.setLongProperty(i);
+            beanCollection.save(bean);
+        }
+
+        beanCollection.removeLowerThan("longProperty", 4);
+
+        assertEquals(6, beanCollection.count(Filters.empty(), null));
+        assertEquals(0, beanCollection.count(Filters.lt("longProperty", 4), null));
+    }
+
     @Test
     public void testSerializers() throws Exception {
         Collection<Bean> beanCollection = collectionFactory.getCollection(COLLECTION, Bean.class);
@@ -0,0 +1,129 @@
+package step.core.collections;
+
+import org.bson.types.ObjectId;
+import org.junit.Ignore;
+import org.junit.Test;
+import step.core.collections.PojoFilters.PojoFilterFactory;
+import step.core.collections.filters.Equals;
+import step.core.entities.Bean;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class PojoFiltersTest {
+
+    @Test
+    public void testEqualsNumbers() {
+        assertTrue(testProperty(11L, 11));
+        assertTrue(testProperty(11, 11L));
+        assertTrue(testProperty(11L, 11.0));
+        assertTrue(testProperty(11.0, 11L));
+        assertTrue(testProperty(11.5, 11.5));
+        assertTrue(testProperty(0.0, -0.0));
+        assertTrue(testProperty(new BigDecimal("11.50"), 11.5));
+        assertTrue(testProperty(11.5f, new BigDecimal("11.5")));
+        assertFalse(testProperty(11L, 11.5));
+        assertFalse(testProperty(11.5, 11L));
+        assertFalse(testProperty(11L, 12));
+        assertFalse(testProperty(11L, "11"));
+        assertFalse(testProperty(11L, null));
+        assertFalse(testProperty(Long.MAX_VALUE, 0x1p63));
+        assertFalse(testProperty((1L << 60) + 1, (double) (1L << 60)));
+        assertFalse(testProperty(11L, Double.NaN));
+
+        assertEquals(0, PojoFilters.compareNumbers(3, 3.0));
+        assertEquals(-1, PojoFilters.compareNumbers(3, 3.5));
+        assertEquals(1, PojoFilters.compareNumbers(-3, -3.5));
+        assertEquals(1, PojoFilters.compareNumbers(3.5, 3L));
+        assertEquals(-1, PojoFilters.compareNumbers(2L, 10L));
+    }
+
+    @Test
+    public void testEqualsOtherTypes() {
+        ObjectId id = new ObjectId();
+        assertTrue(testProperty(id, new ObjectId(id.toHexString())));
+        assertFalse(testProperty(id, id.toHexString()));
+        assertTrue(testProperty("ASC", Order.ASC));
+        assertTrue(testProperty(Order.ASC, Order.ASC));
+        assertFalse(testProperty(Order.ASC, "ASC"));
+        assertTrue(testProperty("value", "value"));
+        assertFalse(testProperty("value", "other"));
+        assertTrue(testProperty(true, true));
+        assertTrue(testProperty(null, null));
+        assertFalse(testProperty(null, "value"));
+    }
+
+    @Test
+    public void testRangeFilters() {
+        Bean bean = new Bean();
+        bean.setLongProperty(10L);
+        PojoFilterFactory<Bean> factory = new PojoFilterFactory<>();
+        assertTrue(factory.buildFilter(Filters.lt("longProperty", 11)).test(bean));
+        assertFalse(factory.buildFilter(Filters.lt("longProperty", 10)).test(bean));
+        assertTrue(factory.buildFilter(Filters.lte("longProperty", 10)).test(bean));
+        assertTrue(factory.buildFilter(Filters.gt("longProperty", 9)).test(bean));
+        assertFalse(factory.buildFilter(Filters.gt("longProperty", 10)).test(bean));
+        assertTrue(factory.buildFilter(Filters.gte("longProperty", 10)).test(bean));
+        assertFalse(factory.buildFilter(Filters.gte("missing", 10)).test(bean));
+    }
+
+    @Test
+    public void testFulltextFilter() {
+        Bean bean = new Bean("Execution of the LOGIN-plan");
+        bean.setStringList(List.of("smoke", "regression"));
+        PojoFilterFactory<Bean> factory = new PojoFilterFactory<>(true, List.of("property1", "stringList", "missing"));
+        assertTrue(factory.buildFilter(Filters.fulltext("login")).test(bean));
+        assertTrue(factory.buildFilter(Filters.fulltext("plan execution REGRESSION")).test(bean));
+        assertTrue(factory.buildFilter(Filters.fulltext(" ")).test(bean));
+        assertFalse(factory.buildFilter(Filters.fulltext("log")).test(bean));
+        assertFalse(factory.buildFilter(Filters.fulltext("login failed")).test(bean));
+        assertThrows(IllegalArgumentException.class, () -> new PojoFilterFactory<Bean>().buildFilter(Filters.fulltext("login")));
+    }
+
+    private boolean testProperty(Object expectedValue, Object beanProperty) {
+        return new PojoFilters.EqualsPojoFilter<>(new Equals("field", expectedValue)).testProperty(beanProperty);
+    }
+
+    @Test
+    @Ignore
+    public void benchmarkFilters() {
+        int total = 1_000_000;
+        List<Bean> beans = new ArrayList<>(total);
+        for (int i = 0; i < total; i++) {
+            Bean bean = new Bean("property" + (i % 100));
+            bean.setLongProperty((long) i);
+            beans.add(bean);
+        }
+        Filter filter = Filters.and(List.of(Filters.equals("longProperty", 500_000), Filters.gte("longProperty", 0),
+            Filters.equals("property1", "property0")));
+
+        for (int loop = 1; loop <= 5; loop++) {
+            for (boolean compiled : List.of(false, true)) {
+                PojoFilter<Bean> pojoFilter = new PojoFilterFactory<Bean>(compiled).buildFilter(filter);
+                long start = System.currentTimeMillis();
+                long count = beans.stream().filter(pojoFilter).count();
+                long duration = System.currentTimeMillis() - start;
+                System.out.println((compiled ? "compiled" : "reflective") + " filter: " + count + " matches, duration " + duration + " ms, avg: " + (duration * 1_000_000.0 / total) + " ns");
+            }
+
+            // Numeric comparison only: BigDecimal based comparison vs type specialized comparison
+            Long expected = 500_000L;
+            long start = System.currentTimeMillis();
+            long count = beans.stream().filter(b -> new BigDecimal(expected.toString()).compareTo(new BigDecimal(b.getLongProperty().toString())) == 0).count();
+            long duration = System.currentTimeMillis() - start;
+            System.out.println("BigDecimal comparison: " + count + " matches, duration " + duration + " ms");
+
+            PojoFilters.EqualsPojoFilter<Bean> equalsFilter = new PojoFilters.EqualsPojoFilter<>(new Equals("longProperty", expected));
+            start = System.currentTimeMillis();
+            count = beans.stream().filter(b -> equalsFilter.testProperty(b.getLongProperty())).count();
+            duration = System.currentTimeMillis() - start;
+            System.out.println("Specialized comparison: " + count + " matches, duration " + duration + " ms");
+        }
+    }
+}
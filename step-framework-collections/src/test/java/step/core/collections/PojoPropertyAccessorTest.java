@@ -0,0 +1,48 @@
+package step.core.collections;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import step.core.entities.Bean;
+import step.core.entities.SimpleBean;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PojoPropertyAccessorTest {
+
+    @Test
+    public void testCompiledAccessorsMatchReflectiveAccessors() throws Exception {
+        Bean bean = new Bean("value1");
+        bean.setLongProperty(11L);
+        bean.addAttribute("name", "name1");
+        SimpleBean simpleBean = new SimpleBean("simple");
+        simpleBean.setId("simpleId");
+        bean.setSimpleBean(simpleBean);
+
+        Document document = new Document();
+        document.setId(new ObjectId());
+        document.put("property1", "value1");
+        document.put("attributes", Map.of("name", "name1"));
+
+        List<String> paths = List.of("id", "_id", "_class", "property1", "longProperty", "booleanProperty",
+            "attributes.name", "attributes.missing", "simpleBean.id", "simpleBean.stringProperty", "nested.property1",
+            "publicFinalField", "missing", "missing.nested", "simpleBean.missing");
+        for (String path : paths) {
+            for (Object object : List.of(bean, document)) {
+                assertEquals(path, PojoPropertyAccessor.reflective(path).get(object), PojoPropertyAccessor.compiled(path).get(object));
+            }
+        }
+
+        assertEquals(bean.getId(), PojoPropertyAccessor.compiled("id").get(bean));
+        assertEquals(document.getId(), PojoPropertyAccessor.compiled("id").get(document));
+        assertEquals(Bean.class.getName(), PojoPropertyAccessor.compiled("_class").get(bean));
+        assertEquals("simpleId", PojoPropertyAccessor.compiled("simpleBean.id").get(bean));
+        assertEquals("test", PojoPropertyAccessor.compiled("publicFinalField").get(bean));
+        assertNull(PojoPropertyAccessor.compiled("nested.property1").get(bean));
+        assertEquals(PojoPropertyAccessor.NO_SUCH_PROPERTY, PojoPropertyAccessor.compiled("missing").get(bean));
+        assertEquals(PojoPropertyAccessor.NO_SUCH_PROPERTY, PojoPropertyAccessor.compiled("simpleBean.missing").get(bean));
+    }
+}
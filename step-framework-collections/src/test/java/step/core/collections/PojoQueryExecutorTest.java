@@ -0,0 +1,56 @@
+package step.core.collections;
+
+import org.junit.Test;
+import step.core.entities.Bean;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class PojoQueryExecutorTest {
+
+    private final PojoQueryExecutor<Bean> executor = new PojoQueryExecutor<>(Bean::getId);
+
+    @Test
+    public void testFind() {
+        List<Bean> beans = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Bean bean = new Bean("bean" + i);
+            bean.setLongProperty((long) (i % 3));
+            beans.add(bean);
+        }
+        List<Bean> shuffledBeans = new ArrayList<>(beans);
+        Collections.shuffle(shuffledBeans);
+
+        // No order: sorted by id
+        assertEquals(beans, find(shuffledBeans, null, null, null));
+        assertEquals(beans.subList(10, 20), find(shuffledBeans, null, 10, 10));
+
+        // Sorted by order and then by id
+        List<Bean> expected = beans.stream().sorted(Comparator.comparing(Bean::getLongProperty)).collect(Collectors.toList());
+        SearchOrder order = new SearchOrder("longProperty", 1);
+        assertEquals(expected, find(shuffledBeans, order, null, null));
+        assertEquals(expected.subList(30, 40), find(shuffledBeans, order, 30, 10));
+        assertEquals(expected.subList(95, 100), find(shuffledBeans, order, 95, 10));
+        assertEquals(List.of(), find(shuffledBeans, order, 200, 10));
+    }
+
+    @Test
+    public void testCount() {
+        List<Bean> beans = List.of(new Bean("bean1"), new Bean("bean2"), new Bean("bean3"));
+        AtomicInteger evaluatedEntities = new AtomicInteger();
+        assertEquals(2, executor.count(beans.stream().peek(b -> evaluatedEntities.incrementAndGet()), 2));
+        // The counting stops once the limit is reached
+        assertEquals(2, evaluatedEntities.get());
+        assertEquals(3, executor.count(beans.stream(), null));
+    }
+
+    private List<Bean> find(List<Bean> beans, SearchOrder order, Integer skip, Integer limit) {
+        return executor.find(beans.stream(), order, skip, limit).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,90 @@
+package step.core.collections;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import step.core.entities.Bean;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PojoUtilsTest {
+
+    @Test
+    public void testSortNumbers() {
+        Bean bean2 = bean("b", 2L);
+        Bean bean10 = bean("a", 10L);
+        Bean beanNull = bean("c", null);
+        List<Bean> beans = List.of(bean10, beanNull, bean2);
+
+        // Numbers are sorted numerically, null values first
+        assertEquals(List.of(beanNull, bean2, bean10), sort(beans, new SearchOrder("longProperty", 1), null, null));
+        assertEquals(List.of(bean10, bean2, beanNull), sort(beans, new SearchOrder("longProperty", -1), null, null));
+        assertEquals(List.of(bean10, bean2, beanNull), sort(beans, new SearchOrder("property1", 1), null, null));
+        // Missing properties are considered null, the original order is kept
+        assertEquals(beans, sort(beans, new SearchOrder("missing", 1), null, null));
+        // No order
+        assertEquals(List.of(beanNull, bean2), sort(beans, null, 1, 2));
+    }
+
+    @Test
+    public void testSortTopK() {
+        List<Bean> beans = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            beans.add(bean("bean" + i, (long) (i % 10)));
+        }
+        SearchOrder order = new SearchOrder(List.of(new SearchOrder.FieldSearchOrder("longProperty", -1)));
+        // Reference: stable sort of the whole list
+        List<Bean> expected = beans.stream().sorted(Comparator.comparing(Bean::getLongProperty).reversed()).collect(Collectors.toList());
+
+        assertEquals(expected.subList(0, 25), sort(beans, order, null, 25));
+        assertEquals(expected.subList(25, 50), sort(beans, order, 25, 25));
+        assertEquals(expected.subList(990, 1000), sort(beans, order, 990, 100));
+        assertEquals(List.of(), sort(beans, order, 0, 0));
+        // Above the heap threshold
+        assertEquals(expected.subList(10, 1000), sort(beans, order, 10, PojoUtils.TOP_K_HEAP_MAX_SIZE));
+        assertEquals(expected, sort(beans, order, null, null));
+    }
+
+    @Test
+    public void testCompareMixedTypes() {
+        // Values of different types are ordered by type so that the comparison stays transitive
+        assertTrue(PojoUtils.compareValues(9, 10) < 0);
+        assertTrue(PojoUtils.compareValues(10, "9") < 0);
+        assertTrue(PojoUtils.compareValues(9, "9") < 0);
+        assertTrue(PojoUtils.compareValues("9", new ObjectId()) < 0);
+        assertTrue(PojoUtils.compareValues(true, new Date(0)) < 0);
+        assertEquals(0, PojoUtils.compareValues(9L, 9.0));
+
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            values.add(i % 3 == 0 ? String.valueOf(i) : (i % 3 == 1 ? (Object) i : (Object) (i + 0.5)));
+        }
+        values.add(null);
+        Collections.shuffle(values, new Random(0));
+        values.sort(PojoUtils::compareValues);
+        assertNull(values.get(0));
+        assertEquals(1, values.get(1));
+        assertEquals("0", values.get(67));
+    }
+
+    private static List<Bean> sort(List<Bean> beans, SearchOrder order, Integer skip, Integer limit) {
+        // Ties are resolved by the position in the list
+        Comparator<Bean> comparator = order != null ? new PojoUtils.SearchOrderComparator<>(order.getFieldsSearchOrder()) : (b1, b2) -> 0;
+        return PojoUtils.sort(beans.stream(), comparator.thenComparingInt(beans::indexOf), skip, limit);
+    }
+
+    private static Bean bean(String property1, Long longProperty) {
+        Bean bean = new Bean(property1);
+        bean.setLongProperty(longProperty);
+        return bean;
+    }
+}
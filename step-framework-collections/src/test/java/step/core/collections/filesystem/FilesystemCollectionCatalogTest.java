@@ -0,0 +1,141 @@
+package step.core.collections.filesystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import ch.exense.commons.io.FileHelper;
+import step.core.accessors.AbstractIdentifiableObject;
+import step.core.collections.AbstractCollectionTest;
+import step.core.collections.Collection;
+import step.core.collections.Filter;
+import step.core.collections.Filters;
+import step.core.collections.filters.Equals;
+import step.core.entities.Bean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FilesystemCollectionCatalogTest extends AbstractCollectionTest {
+
+    private static File folder;
+
+    public FilesystemCollectionCatalogTest() throws IOException {
+        super(new FilesystemCollectionFactory(getProperties()));
+    }
+
+    private static Properties getProperties() throws IOException {
+        folder = FileHelper.createTempFolder();
+        Properties properties = new Properties();
+        properties.put(FilesystemCollectionFactory.FILESYSTEM_PATH, folder.getAbsolutePath());
+        properties.put(FilesystemCollectionFactory.FILESYSTEM_CATALOG, "true");
+        return properties;
+    }
+
+    @Test
+    public void testCatalog() throws InterruptedException {
+        Collection<Bean> collection = collectionFactory.getCollection("catalogBeans", Bean.class);
+        collection.remove(Filters.empty());
+
+        Bean bean1 = new Bean("value1");
+        bean1.setLongProperty(1L);
+        Bean bean2 = new Bean("value2");
+        bean2.setLongProperty(2L);
+        collection.save(List.of(bean1, bean2));
+        collection.createOrUpdateIndex("property1");
+        collection.createOrUpdateIndex("longProperty");
+
+        Bean bean3 = new Bean("value2");
+        bean3.setLongProperty(3L);
+        collection.save(bean3);
+
+        assertEquals(3, collection.estimatedCount());
+        assertEquals(List.of(bean2, bean3), find(collection, Filters.equals("property1", "value2")));
+        assertEquals(List.of(bean1, bean2), find(collection, Filters.lt("longProperty", 3)));
+        assertEquals(List.of(bean2), find(collection, Filters.id(bean2.getId())));
+
+        // Files deleted outside the collection are removed from the catalog
+        new File(folder, "catalogBeans/" + bean2.getId() + ".entity").delete();
+        assertEquals(List.of(bean3), find(collection, Filters.equals("property1", "value2")));
+        long timeout = System.currentTimeMillis() + 10_000;
+        while (collection.estimatedCount() != 2 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, collection.estimatedCount());
+
+        // Files created outside the collection are added to the catalog
+        Collection<Bean> otherCollection = new FilesystemCollection<>(new File(folder, "catalogBeans"), Bean.class);
+        Bean bean4 = new Bean("value2");
+        otherCollection.save(bean4);
+        timeout = System.currentTimeMillis() + 10_000;
+        while (find(collection, Filters.equals("property1", "value2")).size() != 2 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of(bean3, bean4), find(collection, Filters.equals("property1", "value2")));
+    }
+
+    @Test
+    public void testDropCatalog() {
+        Collection<Bean> collection = collectionFactory.getCollection("droppedBeans", Bean.class);
+        collection.save(new Bean("value1"));
+        collection.createOrUpdateIndex("property1");
+        File repository = new File(folder, "droppedBeans");
+        assertTrue(repository.exists());
+
+        collection.drop();
+        assertFalse(repository.exists());
+        // Accessing the dropped collection doesn't create the repository again
+        assertEquals(0, collection.count(Filters.empty(), null));
+        collection.drop();
+        assertFalse(repository.exists());
+    }
+
+    @Test
+    public void testIndexedDate() {
+        Collection<DatedBean> collection = collectionFactory.getCollection("datedBeans", DatedBean.class);
+        collection.remove(Filters.empty());
+        collection.createOrUpdateIndex("date");
+        DatedBean bean1 = new DatedBean(new Date(1000));
+        DatedBean bean2 = new DatedBean(new Date(2000));
+        collection.save(List.of(bean1, bean2));
+
+        // The dates are indexed as timestamps: they aren't used to narrow the equals filters on dates
+        List<DatedBean> result = collection.find(new Equals("date", new Date(2000)), null, null, null, 0).collect(Collectors.toList());
+        assertEquals(1, result.size());
+        assertEquals(bean2.getId(), result.get(0).getId());
+        result = collection.find(Filters.in("date", List.<Object>of(new Date(1000), new Date(2000))), null, null, null, 0).collect(Collectors.toList());
+        assertEquals(2, result.size());
+    }
+
+    public static class DatedBean extends AbstractIdentifiableObject {
+
+        private Date date;
+
+        public DatedBean() {
+            super();
+        }
+
+        public DatedBean(Date date) {
+            super();
+            this.date = date;
+        }
+
+        public Date getDate() {
+            return date;
+        }
+
+        public void setDate(Date date) {
+            this.date = date;
+        }
+    }
+
+    private List<Bean> find(Collection<Bean> collection, Filter filter) {
+        return collection.find(filter, null, null, null, 0).collect(Collectors.toList());
+    }
+}
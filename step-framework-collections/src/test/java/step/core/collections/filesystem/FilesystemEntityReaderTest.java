@@ -0,0 +1,114 @@
+package step.core.collections.filesystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import ch.exense.commons.io.FileHelper;
+import step.core.collections.Collection;
+import step.core.collections.Filters;
+import step.core.entities.Bean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+public class FilesystemEntityReaderTest {
+
+    @Test
+    public void testCache() throws IOException {
+        File folder = FileHelper.createTempFolder();
+        Collection<Bean> collection = new FilesystemCollection<>(folder, Bean.class);
+        Bean bean = new Bean("value1");
+        collection.save(bean);
+        File file = new File(folder, bean.getId() + ".entity");
+
+        FilesystemEntityReader reader = new FilesystemEntityReader(FilesystemCollection.getObjectMapper(), 10, null);
+        Bean read1 = reader.read(file, Bean.class);
+        Bean read2 = reader.read(file, Bean.class);
+        assertEquals("value1", read2.getProperty1());
+        // Each read returns a new instance
+        assertNotSame(read1, read2);
+        assertEquals(1, reader.getCacheMisses());
+        assertEquals(1, reader.getCacheHits());
+
+        // Modified files are parsed again
+        bean.setProperty1("value2 with a different size");
+        collection.save(bean);
+        assertEquals("value2 with a different size", reader.read(file, Bean.class).getProperty1());
+        assertEquals(2, reader.getCacheMisses());
+        assertEquals(1, reader.getCacheHits());
+    }
+
+    @Test
+    public void testCacheInvalidation() throws IOException {
+        File folder = FileHelper.createTempFolder();
+        FilesystemEntityReader reader = new FilesystemEntityReader(FilesystemCollection.getObjectMapper(), 10, null);
+        Collection<Bean> collection = new FilesystemCollection<>(folder, Bean.class, null, reader);
+        Bean bean = new Bean("value1");
+        collection.save(bean);
+        File file = new File(folder, bean.getId() + ".entity");
+        assertEquals("value1", collection.find(Filters.id(bean.getId()), null, null, null, 0).findFirst().get().getProperty1());
+
+        // Rewrite of the same size within the resolution of the modification time
+        long lastModified = file.lastModified();
+        bean.setProperty1("value2");
+        collection.save(bean);
+        file.setLastModified(lastModified);
+        assertEquals("value2", collection.find(Filters.id(bean.getId()), null, null, null, 0).findFirst().get().getProperty1());
+
+        collection.remove(Filters.id(bean.getId()));
+        assertEquals(0, reader.getCacheEntries());
+    }
+
+    @Test
+    public void testCacheEviction() throws IOException {
+        File folder = FileHelper.createTempFolder();
+        Collection<Bean> collection = new FilesystemCollection<>(folder, Bean.class);
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Bean bean = new Bean("value" + i);
+            collection.save(bean);
+            files.add(new File(folder, bean.getId() + ".entity"));
+        }
+
+        FilesystemEntityReader reader = new FilesystemEntityReader(FilesystemCollection.getObjectMapper(), 2, null);
+        reader.read(files, Bean.class);
+        assertEquals(2, reader.getCacheEntries());
+        // The least recently used file has been evicted
+        reader.read(files.get(0), Bean.class);
+        assertEquals(4, reader.getCacheMisses());
+    }
+
+    @Test
+    public void testParallelRead() throws IOException {
+        File folder = FileHelper.createTempFolder();
+        Collection<Bean> collection = new FilesystemCollection<>(folder, Bean.class);
+        List<File> files = new ArrayList<>();
+        List<String> expectedValues = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Bean bean = new Bean("value" + i);
+            collection.save(bean);
+            files.add(new File(folder, bean.getId() + ".entity"));
+            expectedValues.add(bean.getProperty1());
+        }
+        files.add(new File(folder, "missing.entity"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            FilesystemEntityReader reader = new FilesystemEntityReader(FilesystemCollection.getObjectMapper(), 1000, executor);
+            List<Bean> beans = reader.read(files, Bean.class);
+            // The entities are returned in the order of the files, null for missing files
+            assertArrayEquals(expectedValues.toArray(), beans.subList(0, 100).stream().map(Bean::getProperty1).toArray());
+            assertNull(beans.get(100));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
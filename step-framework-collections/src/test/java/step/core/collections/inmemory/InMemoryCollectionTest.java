@@ -1,8 +1,18 @@
 package step.core.collections.inmemory;
 
+import org.junit.Test;
 import step.core.collections.AbstractCollectionTest;
+import step.core.collections.Collection;
+import step.core.collections.Document;
+import step.core.collections.Filter;
+import step.core.collections.Filters;
+import step.core.entities.Bean;
 
+import java.util.List;
 import java.util.Properties;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
 
 public class InMemoryCollectionTest extends AbstractCollectionTest {
 
@@ -10,4 +20,77 @@ public class InMemoryCollectionTest extends AbstractCollectionTest {
         super(new InMemoryCollectionFactory(new Properties()));
     }
 
+    @Test
+    public void testIndexes() {
+        Collection<Bean> collection = collectionFactory.getCollection("indexedBeans", Bean.class);
+        collection.remove(Filters.empty());
+
+        Bean bean1 = new Bean("value1");
+        bean1.setLongProperty(1L);
+        bean1.addAttribute("name", "name1");
+        Bean bean2 = new Bean("value2");
+        bean2.setLongProperty(2L);
+        bean2.addAttribute("name", "name2");
+        Bean bean3 = new Bean("value2");
+        bean3.setLongProperty(3L);
+        collection.save(List.of(bean1, bean2, bean3));
+
+        collection.createOrUpdateIndex("property1");
+        collection.createOrUpdateCompoundIndex("attributes.name", "longProperty");
+
+        // Indexes are shared by the collections of the same factory
+        Collection<Bean> otherCollection = collectionFactory.getCollection("indexedBeans", Bean.class);
+        Bean bean4 = new Bean("value3");
+        bean4.setLongProperty(4L);
+        otherCollection.save(bean4);
+
+        assertEquals(List.of(bean2, bean3), find(collection, Filters.equals("property1", "value2")));
+        assertEquals(List.of(bean4), find(collection, Filters.equals("property1", "value3")));
+        assertEquals(List.of(), find(collection, Filters.equals("property1", "value4")));
+        assertEquals(List.of(bean1, bean4), find(collection, Filters.in("property1", List.of("value1", "value3"))));
+        assertEquals(List.of(bean3, bean4), find(collection, Filters.equals("attributes.name", (String) null)));
+        assertEquals(List.of(bean2), find(collection, Filters.equals("longProperty", 2)));
+        assertEquals(List.of(bean2, bean3), find(collection, Filters.and(List.of(Filters.gt("longProperty", 1), Filters.lte("longProperty", 3)))));
+        assertEquals(List.of(bean1, bean2), find(collection, Filters.lt("longProperty", 3)));
+        assertEquals(List.of(bean3, bean4), find(collection, Filters.gte("longProperty", 3)));
+        assertEquals(List.of(bean3), find(collection, Filters.and(List.of(Filters.equals("property1", "value2"), Filters.regex("longProperty", "3", true)))));
+        assertEquals(List.of(bean1, bean3), find(collection, Filters.or(List.of(Filters.equals("attributes.name", "name1"), Filters.equals("longProperty", 3)))));
+        assertEquals(List.of(bean2), find(collection, Filters.id(bean2.getId())));
+        assertEquals(List.of(bean2), find(collection, Filters.id(bean2.getId().toHexString())));
+
+        // Updates are reflected in the indexes
+        bean2.setProperty1("value1");
+        collection.save(bean2);
+        assertEquals(List.of(bean3), find(collection, Filters.equals("property1", "value2")));
+        assertEquals(List.of(bean1, bean2), find(collection, Filters.equals("property1", "value1")));
+
+        // Removals are reflected in the indexes
+        collection.remove(Filters.equals("property1", "value1"));
+        assertEquals(List.of(), find(collection, Filters.equals("property1", "value1")));
+        assertEquals(List.of(bean3, bean4), find(collection, Filters.gte("longProperty", 0)));
+        assertEquals(2, collection.count(Filters.empty(), null));
+
+        // Dropped indexes are ignored
+        collection.dropIndex("property1");
+        assertEquals(List.of(bean3), find(collection, Filters.equals("property1", "value2")));
+    }
+
+    @Test
+    public void testDistinctIndexedNumbers() {
+        Collection<Document> collection = collectionFactory.getCollection("indexedNumbers", Document.class);
+        collection.remove(Filters.empty());
+        for (Object value : List.of(1, 1.0, 1, 2)) {
+            Document document = new Document();
+            document.put("value", value);
+            collection.save(document);
+        }
+        collection.createOrUpdateIndex("value");
+
+        // Equal numbers with different representations are reported as distinct values like without index
+        assertEquals(List.of("1", "1.0", "2"), collection.distinct("value", Filters.empty()).stream().sorted().collect(Collectors.toList()));
+    }
+
+    private List<Bean> find(Collection<Bean> collection, Filter filter) {
+        return collection.find(filter, null, null, null, 0).collect(Collectors.toList());
+    }
 }
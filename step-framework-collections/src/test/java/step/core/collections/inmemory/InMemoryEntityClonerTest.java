@@ -0,0 +1,93 @@
+package step.core.collections.inmemory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.json.Json;
+import org.bson.types.ObjectId;
+import org.json.JSONObject;
+import org.junit.Ignore;
+import org.junit.Test;
+import step.core.accessors.DefaultJacksonMapperProvider;
+import step.core.collections.Document;
+import step.core.collections.serialization.DottedKeyMap;
+import step.core.entities.Bean;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+public class InMemoryEntityClonerTest {
+
+    private final ObjectMapper mapper = DefaultJacksonMapperProvider.getObjectMapper();
+
+    @Test
+    public void testClone() throws IOException {
+        for (InMemoryEntityCloner.Strategy strategy : InMemoryEntityCloner.Strategy.values()) {
+            InMemoryEntityCloner cloner = InMemoryEntityCloner.create(strategy, mapper);
+
+            Bean bean = bean(0);
+            Bean clone = cloner.clone(bean);
+            assertNotSame(bean, clone);
+            assertNotSame(bean.getNested(), clone.getNested());
+            assertNotSame(bean.getMap(), clone.getMap());
+            assertEquals(mapper.writeValueAsString(bean), mapper.writeValueAsString(clone));
+
+            Document document = new Document();
+            document.put("property1", "value1");
+            document.put("intProperty", 1);
+            document.put("nested", new Document(document));
+            Document documentClone = cloner.clone(document);
+            assertNotSame(document, documentClone);
+            assertEquals(document, documentClone);
+        }
+    }
+
+    @Test
+    @Ignore
+    public void benchmarkClone() throws IOException {
+        int nIterations = 100_000;
+        List<Bean> beans = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            beans.add(bean(i));
+        }
+        for (InMemoryEntityCloner.Strategy strategy : InMemoryEntityCloner.Strategy.values()) {
+            InMemoryEntityCloner cloner = InMemoryEntityCloner.create(strategy, mapper);
+            // Warm-up
+            for (int i = 0; i < nIterations; i++) {
+                cloner.clone(beans.get(i % beans.size()));
+            }
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            long usedMemoryBefore = runtime.totalMemory() - runtime.freeMemory();
+            List<Bean> clones = new ArrayList<>(nIterations);
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < nIterations; i++) {
+                clones.add(cloner.clone(beans.get(i % beans.size())));
+            }
+            long duration = System.currentTimeMillis() - start;
+            System.gc();
+            long usedMemoryAfter = runtime.totalMemory() - runtime.freeMemory();
+            System.out.println(strategy + ": " + nIterations + " clones in " + duration + "ms, "
+                + ((usedMemoryAfter - usedMemoryBefore) / clones.size()) + " bytes retained per entity");
+        }
+    }
+
+    private static Bean bean(int i) {
+        Bean bean = new Bean("value" + i);
+        bean.setLongProperty((long) i);
+        bean.setBooleanProperty(i % 2 == 0);
+        bean.addAttribute("name", "name" + i);
+        bean.setList(List.of(i, i + 1, i + 2));
+        bean.setStringList(List.of("a" + i, "b" + i));
+        bean.setObjectIdList(List.of(new ObjectId(), new ObjectId()));
+        DottedKeyMap<String, String> map = new DottedKeyMap<>();
+        map.put("key.with.dots", "value" + i);
+        bean.setMap(map);
+        bean.setJsonObject(Json.createObjectBuilder().add("key", "value" + i).build());
+        bean.setJsonOrgObject(new JSONObject().put("key", "value" + i));
+        bean.setNested(new Bean("nested" + i));
+        return bean;
+    }
+}
@@ -0,0 +1,190 @@
+package step.core.collections.segment;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import ch.exense.commons.io.FileHelper;
+import step.core.accessors.AbstractIdentifiableObject;
+import step.core.accessors.DefaultJacksonMapperProvider;
+import step.core.collections.AbstractCollectionTest;
+import step.core.collections.Collection;
+import step.core.collections.Filter;
+import step.core.collections.Filters;
+import step.core.collections.filters.Equals;
+import step.core.entities.Bean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentCollectionTest extends AbstractCollectionTest {
+
+    public SegmentCollectionTest() throws IOException {
+        super(new SegmentCollectionFactory(getProperties()));
+    }
+
+    private static Properties getProperties() throws IOException {
+        File folder = FileHelper.createTempFolder();
+        Properties properties = new Properties();
+        properties.put(SegmentCollectionFactory.SEGMENT_PATH, folder.getAbsolutePath());
+        return properties;
+    }
+
+    @Test
+    public void testRecovery() throws IOException {
+        File folder = FileHelper.createTempFolder();
+        SegmentCollectionFactory factory = newFactory(folder);
+        Collection<Bean> collection = factory.getCollection("beans", Bean.class);
+        Bean bean1 = new Bean("value1");
+        Bean bean2 = new Bean("value2");
+        Bean bean3 = new Bean("value3");
+        collection.save(List.of(bean1, bean2, bean3));
+        bean1.setProperty1("value1 updated");
+        collection.save(bean1);
+        collection.remove(Filters.id(bean2.getId()));
+        factory.close();
+
+        // The entities are restored by replaying the segments
+        factory = newFactory(folder);
+        collection = factory.getCollection("beans", Bean.class);
+        assertEquals(List.of(bean1, bean3), find(collection, Filters.empty()));
+        assertEquals("value1 updated", find(collection, Filters.id(bean1.getId())).get(0).getProperty1());
+        factory.close();
+
+        // Simulate a write interrupted by a crash
+        File segment = new File(folder, "beans/0000000001.segment");
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(file.length() - 10);
+        }
+        factory = newFactory(folder);
+        collection = factory.getCollection("beans", Bean.class);
+        // The incomplete record (removal of bean2) is truncated
+        assertEquals(List.of(bean1, bean2, bean3), find(collection, Filters.empty()));
+        Bean bean4 = new Bean("value4");
+        collection.save(bean4);
+        factory.close();
+
+        factory = newFactory(folder);
+        collection = factory.getCollection("beans", Bean.class);
+        assertEquals(List.of(bean1, bean2, bean3, bean4), find(collection, Filters.empty()));
+        factory.close();
+    }
+
+    @Test
+    public void testReopenFullSegment() throws IOException {
+        File folder = FileHelper.createTempFolder();
+        SegmentCollectionFactory factory = newFactory(folder);
+        Collection<Bean> collection = factory.getCollection("beans", Bean.class);
+        Bean bean1 = new Bean("value1");
+        Bean bean2 = new Bean("value2");
+        collection.save(List.of(bean1, bean2));
+        // Record larger than the maximum segment size: the last segment is full when the store is reopened
+        Bean bigBean = new Bean("x".repeat(5000));
+        collection.save(bigBean);
+        assertEquals(2, factory.getStore("beans").getSegmentCount());
+        factory.close();
+
+        factory = newFactory(folder);
+        collection = factory.getCollection("beans", Bean.class);
+        Bean bean3 = new Bean("value3");
+        collection.save(bean3);
+        collection.remove(Filters.id(bean1.getId()));
+        assertEquals(3, factory.getStore("beans").getSegmentCount());
+        factory.close();
+
+        factory = newFactory(folder);
+        collection = factory.getCollection("beans", Bean.class);
+        assertEquals(List.of(bean2, bigBean, bean3), find(collection, Filters.empty()));
+        factory.close();
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        File folder = FileHelper.createTempFolder();
+        SegmentCollectionFactory factory = newFactory(folder);
+        Collection<Bean> collection = factory.getCollection("beans", Bean.class);
+        collection.createOrUpdateIndex("longProperty");
+        Bean bean1 = new Bean("value1");
+        Bean bean2 = new Bean("value2");
+        Bean bean3 = new Bean("value3");
+        for (long i = 0; i < 100; i++) {
+            bean1.setLongProperty(i);
+            bean2.setLongProperty(i);
+            collection.save(List.of(bean1, bean2));
+        }
+        collection.save(bean3);
+        collection.remove(Filters.id(bean2.getId()));
+
+        SegmentStore store = factory.getStore("beans");
+        int segmentCount = store.getSegmentCount();
+        assertTrue(segmentCount > 10);
+        factory.compact();
+        assertTrue(store.getSegmentCount() < segmentCount);
+
+        assertEquals(List.of(bean1, bean3), find(collection, Filters.empty()));
+        assertEquals(List.of(bean1), find(collection, Filters.equals("longProperty", 99)));
+        factory.close();
+
+        factory = newFactory(folder);
+        collection = factory.getCollection("beans", Bean.class);
+        assertEquals(List.of(bean1, bean3), find(collection, Filters.empty()));
+        assertEquals(99, (long) find(collection, Filters.id(bean1.getId())).get(0).getLongProperty());
+        factory.close();
+    }
+
+    @Test
+    public void testIndexedDate() throws IOException {
+        File folder = FileHelper.createTempFolder();
+        SegmentCollectionFactory factory = newFactory(folder);
+        Collection<DatedBean> collection = factory.getCollection("datedBeans", DatedBean.class);
+        collection.createOrUpdateIndex("date");
+        DatedBean bean1 = new DatedBean(new Date(1000));
+        DatedBean bean2 = new DatedBean(new Date(2000));
+        collection.save(List.of(bean1, bean2));
+
+        // The dates are indexed as timestamps: they aren't used to narrow the equals filters on dates
+        List<DatedBean> result = collection.find(new Equals("date", new Date(2000)), null, null, null, 0).collect(Collectors.toList());
+        assertEquals(1, result.size());
+        assertEquals(bean2.getId(), result.get(0).getId());
+        result = collection.find(Filters.in("date", List.<Object>of(new Date(1000), new Date(2000))), null, null, null, 0).collect(Collectors.toList());
+        assertEquals(2, result.size());
+        factory.close();
+    }
+
+    public static class DatedBean extends AbstractIdentifiableObject {
+
+        private Date date;
+
+        public DatedBean() {
+            super();
+        }
+
+        public DatedBean(Date date) {
+            super();
+            this.date = date;
+        }
+
+        public Date getDate() {
+            return date;
+        }
+
+        public void setDate(Date date) {
+            this.date = date;
+        }
+    }
+
+    private static SegmentCollectionFactory newFactory(File folder) {
+        // Small segments and no background compaction
+        return new SegmentCollectionFactory(folder, DefaultJacksonMapperProvider.getObjectMapper(), 4096, false, 0, 0.5);
+    }
+
+    private List<Bean> find(Collection<Bean> collection, Filter filter) {
+        return collection.find(filter, null, null, null, 0).collect(Collectors.toList());
+    }
+}
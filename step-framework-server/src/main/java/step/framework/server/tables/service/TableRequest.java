@@ -8,6 +8,7 @@ public class TableRequest extends TableQueryRequest {
 
     private Integer skip;
     private Integer limit;
+    private String continuationToken;
 
     private List<Sort> sort;
     private boolean performEnrichment = true;
@@ -29,6 +30,18 @@ public class TableRequest extends TableQueryRequest {
         this.limit = limit;
     }
 
+    /**
+     * @return the continuation token returned with the previous page ({@link TableResponse#getContinuationToken()}).
+     * If set, the page following the previous one is returned and the skip is ignored
+     */
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    public void setContinuationToken(String continuationToken) {
+        this.continuationToken = continuationToken;
+    }
+
     public List<Sort> getSort() {
         return sort;
     }
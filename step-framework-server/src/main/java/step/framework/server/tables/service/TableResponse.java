@@ -8,6 +8,7 @@ public class TableResponse<T> {
     private long recordsFiltered;
     private List<T> data;
     public boolean hasNext;
+    private String continuationToken;
 
     public long getRecordsTotal() {
         return recordsTotal;
@@ -25,6 +26,18 @@ public class TableResponse<T> {
         this.recordsFiltered = recordsFiltered;
     }
 
+    /**
+     * @return the token to be passed with the request of the next page ({@link TableRequest#setContinuationToken(String)}),
+     * or null if there is no next page or the page has been requested by skip
+     */
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    public void setContinuationToken(String continuationToken) {
+        this.continuationToken = continuationToken;
+    }
+
     public List<T> getData() {
         return data;
     }
@@ -6,6 +6,7 @@ import step.core.accessors.AbstractIdentifiableObject;
 import step.core.collections.Collection;
 import step.core.collections.Filter;
 import step.core.collections.Filters;
+import step.core.collections.ResultPage;
 import step.core.collections.SearchOrder;
 import step.core.objectenricher.ObjectFilter;
 import step.core.objectenricher.ObjectHookRegistry;
@@ -70,32 +71,35 @@ public class TableService {
         // Create result list
         List<T> result = table.getResultListFactory().orElse(ArrayList::new).get();
 
-        // If a limit is specified, fetch one extra element to determine whether more data exists beyond the requested range
-        Integer newLimit;
-        Integer requestedLimit = request.getLimit();
-        if (requestedLimit != null) {
-            newLimit = requestedLimit + 1;
-        } else {
-            newLimit = null;
-        }
-
         // Get the search order
         SearchOrder searchOrder = getSearchOrder(request);
 
-        // Perform the search
         Collection<T> collection = table.getCollection();
-        try (Stream<T> tStream = _request(collection, table, filter, request.getSkip(), newLimit, searchOrder, request.isPerformEnrichment(), session, request.getTableParameters())) {
-            tStream.forEachOrdered(result::add);
-        }
-
-        // Determine whether more data exists beyond the requested range
-        // i.e. if the same request for the next range [skip + limit, limit] would return something
+        Integer requestedLimit = request.getLimit();
+        Integer skip = request.getSkip();
+        String continuationToken = request.getContinuationToken();
         boolean hasNext;
-        if (newLimit != null && result.size() == newLimit) {
-            result.remove(result.size() - 1);
-            hasNext = true;
+        String nextContinuationToken;
+        if (requestedLimit != null && (continuationToken != null || skip == null || skip == 0)) {
+            // Cursor based paging for the first and following pages: the cost of a page doesn't depend on its position
+            ResultPage<T> page;
+            try {
+                page = collection.findAfter(filter, searchOrder, continuationToken, requestedLimit, table.getMaxFindDuration().orElse(defaultMaxFindDuration));
+            } catch (IllegalArgumentException e) {
+                if (continuationToken != null) {
+                    throw new TableServiceException(e.getMessage());
+                } else {
+                    throw e;
+                }
+            }
+            try (Stream<T> tStream = postProcess(page.getResults().stream(), table, request.isPerformEnrichment(), session, request.getTableParameters())) {
+                tStream.forEachOrdered(result::add);
+            }
+            hasNext = page.hasNext();
+            nextContinuationToken = page.getContinuationToken();
         } else {
-            hasNext = false;
+            hasNext = requestBySkip(collection, table, filter, searchOrder, request, session, result);
+            nextContinuationToken = null;
         }
 
         // Calculate counts
@@ -115,13 +119,47 @@ public class TableService {
         response.setRecordsTotal(estimatedTotalCount);
         response.setData(result);
         response.hasNext = hasNext;
+        response.setContinuationToken(nextContinuationToken);
         return response;
     }
 
+    private <T> boolean requestBySkip(Collection<T> collection, Table<T> table, Filter filter, SearchOrder searchOrder, TableRequest request,
+                                      Session<?> session, List<T> result) {
+        // If a limit is specified, fetch one extra element to determine whether more data exists beyond the requested range
+        Integer newLimit;
+        Integer requestedLimit = request.getLimit();
+        if (requestedLimit != null) {
+            newLimit = requestedLimit + 1;
+        } else {
+            newLimit = null;
+        }
+
+        // Perform the search
+        try (Stream<T> tStream = _request(collection, table, filter, request.getSkip(), newLimit, searchOrder, request.isPerformEnrichment(), session, request.getTableParameters())) {
+            tStream.forEachOrdered(result::add);
+        }
+
+        // Determine whether more data exists beyond the requested range
+        // i.e. if the same request for the next range [skip + limit, limit] would return something
+        boolean hasNext;
+        if (newLimit != null && result.size() == newLimit) {
+            result.remove(result.size() - 1);
+            hasNext = true;
+        } else {
+            hasNext = false;
+        }
+
+        return hasNext;
+    }
+
     private <T> Stream<T> _request(Collection<T> collection, Table<T> table, Filter filter, Integer skip, Integer limit, SearchOrder searchOrder,
                                    boolean performEnrichment, Session<?> session, TableParameters tableParameters) {
         // Perform the search
         Stream<T> result = collection.findLazy(filter, searchOrder, skip, limit, table.getMaxFindDuration().orElse(defaultMaxFindDuration));
+        return postProcess(result, table, performEnrichment, session, tableParameters);
+    }
+
+    private <T> Stream<T> postProcess(Stream<T> result, Table<T> table, boolean performEnrichment, Session<?> session, TableParameters tableParameters) {
         Optional<BiFunction<T, Session<?>, T>> transformer = table.getResultItemTransformer();
         if (transformer.isPresent()) {
             result = result.map(item -> transformer.get().apply(item, session));
@@ -145,6 +145,23 @@ public class TableServiceTest {
         // Test the export with the same request
         assertEquals(List.of(bean3), tableService.export(SIMPLE_TABLE, request, null).collect(Collectors.toList()));
 
+        // Test continuation token
+        request = new TableRequest();
+        request.setLimit(2);
+        response = tableService.request(SIMPLE_TABLE, request, null);
+        assertEquals(List.of(bean1, bean2), response.getData());
+        assertTrue(response.hasNext);
+        assertNotNull(response.getContinuationToken());
+        request.setContinuationToken(response.getContinuationToken());
+        response = tableService.request(SIMPLE_TABLE, request, null);
+        assertEquals(List.of(bean3), response.getData());
+        assertFalse(response.hasNext);
+        assertNull(response.getContinuationToken());
+
+        request.setContinuationToken("invalid");
+        TableRequest invalidTokenRequest = request;
+        assertThrows(TableServiceException.class, () -> tableService.request(SIMPLE_TABLE, invalidTokenRequest, null));
+
         // Test sort
         request = new TableRequest();
         Sort sort = new Sort();
@@ -17,6 +17,12 @@ public class TimeSeriesAggregationConfig {
 
     private boolean ttlEnabled;
 
+    /**
+     * Merges the buckets in the underlying database when both the time and the group aggregations merge and the
+     * collection supports it. The source buckets are transferred and merged by the pipeline otherwise.
+     */
+    private boolean aggregationPushDownEnabled = true;
+
     public int getResponseMaxIntervals() {
         return responseMaxIntervals;
     }
@@ -43,4 +49,13 @@ public class TimeSeriesAggregationConfig {
         this.ttlEnabled = ttlEnabled;
         return this;
     }
+
+    public boolean isAggregationPushDownEnabled() {
+        return aggregationPushDownEnabled;
+    }
+
+    public TimeSeriesAggregationConfig setAggregationPushDownEnabled(boolean aggregationPushDownEnabled) {
+        this.aggregationPushDownEnabled = aggregationPushDownEnabled;
+        return this;
+    }
 }
@@ -6,12 +6,17 @@ import step.core.collections.*;
 import step.core.collections.inmemory.InMemoryCollection;
 import step.core.timeseries.aggregation.TimeSeriesProcessedParams;
 import step.core.timeseries.bucket.Bucket;
+import step.core.timeseries.bucket.BucketAttributes;
 import step.core.timeseries.ingestion.TimeSeriesIngestionPipeline;
 import step.core.timeseries.query.TimeSeriesQuery;
 import step.core.timeseries.query.TimeSeriesQueryBuilder;
 
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -22,12 +27,22 @@ import static step.core.timeseries.TimeSeriesConfig.DEFAULT_INGESTION_FLUSH_SERI
 public class TimeSeriesCollection {
 
     private static final Logger logger = LoggerFactory.getLogger(TimeSeriesCollection.class);
+    // Fields of the buckets merged by mergeTimeSeries
+    private static final String BUCKET_COUNT = "count";
+    private static final String BUCKET_SUM = "sum";
+    private static final String BUCKET_MIN = "min";
+    private static final String BUCKET_MAX = "max";
+    private static final String BUCKET_DISTRIBUTION = "distribution";
 
     private final Collection<Bucket> mainCollection;
     private final long resolutionMs;
     private final TimeSeriesIngestionPipeline ingestionPipeline;
     private long ttlMs; // In milliseconds. set to 0 in case deletion is never required
     private final Set<String> ignoredAttributes;
+    private final long partitionSizeMs;
+    private final int partitionsAhead;
+    // True if the underlying collection is partitioned by time ranges
+    private final boolean partitioned;
 
     public TimeSeriesCollection(Collection<Bucket> mainCollection, long resolutionMs) {
         this(mainCollection, new TimeSeriesCollectionConfig()
@@ -46,6 +61,29 @@ public class TimeSeriesCollection {
         this.ttlMs = settings.getTtlMs();
         this.ingestionPipeline = new TimeSeriesIngestionPipeline(this, settings);
         this.ignoredAttributes = settings.getIgnoredAttributes();
+        if (settings.getPartitionSizeMs() < 0 || settings.getPartitionsAhead() < 0) {
+            throw new IllegalArgumentException("Negative partition size or number of partitions ahead is not allowed");
+        }
+        this.partitionSizeMs = settings.getPartitionSizeMs();
+        this.partitionsAhead = settings.getPartitionsAhead();
+        this.partitioned = partitionSizeMs > 0 && createPartitionsAhead();
+    }
+
+    /**
+     * Enables the partitioning of the underlying collection by time ranges and creates the partitions of the
+     * retention period and the ones ahead of the current time
+     *
+     * @return true if the underlying collection is partitioned
+     */
+    private boolean createPartitionsAhead() {
+        long now = System.currentTimeMillis();
+        long from = ttlMs > 0 ? now - ttlMs : now;
+        boolean partitioned = mainCollection.enableRangePartitioning(TimeSeriesConstants.TIMESTAMP_ATTRIBUTE, partitionSizeMs,
+            from, now + (partitionsAhead + 1) * partitionSizeMs);
+        if (!partitioned) {
+            logger.info("The collection {} doesn't support the partitioning or isn't empty, the partitioning is disabled.", mainCollection.getName());
+        }
+        return partitioned;
     }
 
     public Collection<Bucket> getUnderlyingCollection() {
@@ -70,19 +108,73 @@ public class TimeSeriesCollection {
      * @return a stream of buckets matching the query parameters
      */
     public Stream<Bucket> queryTimeSeries(TimeSeriesProcessedParams queryParameters) {
-        InMemoryCollection<Bucket> inMemoryCollection = ingestionPipeline.getCurrenStateToInMemoryCollection(queryParameters.getTo());
         Filter filter = TimeSeriesFilterBuilder.buildFilter(queryParameters);
-        return Stream.concat(inMemoryCollection.findLazy(filter, null, null, null, 0),
-            mainCollection.findLazy(filter, null, null, null, 0));
+        return Stream.concat(queryUnflushedTimeSeries(queryParameters), mainCollection.findLazy(filter, null, null, null, 0));
+    }
+
+    /**
+     * @param queryParameters the query parameters
+     * @return a stream of the buckets of the ingestion pipeline not yet flushed matching the query parameters
+     */
+    public Stream<Bucket> queryUnflushedTimeSeries(TimeSeriesProcessedParams queryParameters) {
+        InMemoryCollection<Bucket> inMemoryCollection = ingestionPipeline.getCurrenStateToInMemoryCollection(queryParameters.getTo());
+        return inMemoryCollection.findLazy(TimeSeriesFilterBuilder.buildFilter(queryParameters), null, null, null, 0);
+    }
+
+    /**
+     * Merges the persisted buckets matching the query parameters by group and time slice in the underlying database
+     * (see {@link Collection#aggregate(GroupAggregationQuery)}). The buckets of the ingestion pipeline not yet flushed
+     * aren't included, see {@link #queryUnflushedTimeSeries(TimeSeriesProcessedParams)}
+     *
+     * @param queryParameters the query parameters
+     * @return one partial bucket per group and time slice, starting at the time slice and holding the group attributes,
+     * or an empty optional if the underlying collection doesn't support the aggregation
+     */
+    public Optional<List<Bucket>> mergeTimeSeries(TimeSeriesProcessedParams queryParameters) {
+        Set<String> groupDimensions = queryParameters.getGroupDimensions() != null ? queryParameters.getGroupDimensions() : Set.of();
+        List<String> groupFields = groupDimensions.stream().map(d -> TimeSeriesConstants.ATTRIBUTES_PREFIX + d).collect(Collectors.toList());
+        GroupAggregationQuery query = new GroupAggregationQuery()
+            .setFilter(TimeSeriesFilterBuilder.buildFilter(queryParameters))
+            .setGroupFields(groupFields)
+            .setTimeSlicing(TimeSeriesConstants.TIMESTAMP_ATTRIBUTE, queryParameters.getFrom(), queryParameters.isShrink() ? 0 : queryParameters.getResolution())
+            .setSumFields(List.of(BUCKET_COUNT, BUCKET_SUM))
+            .setMinFields(List.of(BUCKET_MIN))
+            .setMaxFields(List.of(BUCKET_MAX))
+            .setMapSumFields(List.of(BUCKET_DISTRIBUTION));
+        return mainCollection.aggregate(query).map(results -> results.stream().map(result -> {
+            Bucket bucket = new Bucket(result.getTimeSlice());
+            BucketAttributes attributes = new BucketAttributes();
+            result.getGroupValues().forEach((field, value) -> attributes.put(field.substring(TimeSeriesConstants.ATTRIBUTES_PREFIX.length()), value));
+            bucket.setAttributes(attributes);
+            bucket.setCount(result.getSum(BUCKET_COUNT).longValue());
+            bucket.setSum(result.getSum(BUCKET_SUM).longValue());
+            bucket.setMin(result.getMin(BUCKET_MIN).longValue());
+            bucket.setMax(result.getMax(BUCKET_MAX).longValue());
+            Map<Long, Long> distribution = new HashMap<>();
+            Map<String, Long> distributionSum = result.getMapSum(BUCKET_DISTRIBUTION);
+            if (distributionSum != null) {
+                distributionSum.forEach((key, value) -> distribution.put(Long.parseLong(key), value));
+            }
+            bucket.setDistribution(distribution);
+            return bucket;
+        }).collect(Collectors.toList()));
     }
 
     protected void performHousekeeping() {
+        if (partitioned) {
+            createPartitionsAhead();
+        }
         if (ttlMs > 0) {
             long cleanupRangeStart = 0;
             long cleanupRangeEnd = System.currentTimeMillis() - ttlMs;
-            TimeSeriesQuery query = new TimeSeriesQueryBuilder().range(cleanupRangeStart, cleanupRangeEnd).build();
-            Filter filter = TimeSeriesFilterBuilder.buildFilter(query);
-            this.mainCollection.remove(filter);
+            if (partitioned) {
+                // The expired partitions are dropped instead of deleting the buckets one by one
+                this.mainCollection.removeLowerThan(TimeSeriesConstants.TIMESTAMP_ATTRIBUTE, cleanupRangeEnd);
+            } else {
+                TimeSeriesQuery query = new TimeSeriesQueryBuilder().range(cleanupRangeStart, cleanupRangeEnd).build();
+                Filter filter = TimeSeriesFilterBuilder.buildFilter(query);
+                this.mainCollection.remove(filter);
+            }
             logger.debug("Housekeeping successfully performed for collection {}", this.mainCollection.getName());
         }
     }
@@ -136,6 +228,10 @@ public class TimeSeriesCollection {
         return resolutionMs;
     }
 
+    public boolean isPartitioned() {
+        return partitioned;
+    }
+
     public Set<String> getIgnoredAttributes() {
         return ignoredAttributes;
     }
@@ -17,6 +17,11 @@ public class TimeSeriesCollectionConfig {
     private int ingestionFlushAsyncQueueSize;
     private int ingestionFlushSeriesQueueSize;
     private Set<String> ignoredAttributes;
+    // Size of the time ranges of the partitions of the underlying collection, 0 to disable the partitioning.
+    // Only supported by the collections supporting range partitioning and only when the collection is created
+    private long partitionSizeMs;
+    // Number of partitions created ahead of the current time
+    private int partitionsAhead = 2;
 
     public long getResolutionMs() {
         return resolutionMs;
@@ -80,4 +85,22 @@ public class TimeSeriesCollectionConfig {
         this.ignoredAttributes = ignoredAttributes;
         return this;
     }
+
+    public long getPartitionSizeMs() {
+        return partitionSizeMs;
+    }
+
+    public TimeSeriesCollectionConfig setPartitionSizeMs(long partitionSizeMs) {
+        this.partitionSizeMs = partitionSizeMs;
+        return this;
+    }
+
+    public int getPartitionsAhead() {
+        return partitionsAhead;
+    }
+
+    public TimeSeriesCollectionConfig setPartitionsAhead(int partitionsAhead) {
+        this.partitionsAhead = partitionsAhead;
+        return this;
+    }
 }
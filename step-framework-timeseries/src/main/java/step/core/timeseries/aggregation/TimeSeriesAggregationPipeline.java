@@ -15,6 +15,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.atomic.LongAdder;
@@ -34,9 +35,20 @@ public class TimeSeriesAggregationPipeline {
     private final int responseMaxIntervals;
     private final int idealResponseIntervals;
     private boolean ttlEnabled;
+    private final boolean aggregationPushDownEnabled;
 
     public TimeSeriesAggregationPipeline(List<TimeSeriesCollection> collections, int responseMaxIntervals, int idealResponseIntervals, boolean ttlEnabled) {
+        this(collections, responseMaxIntervals, idealResponseIntervals, ttlEnabled, true);
+    }
+
+    /**
+     * @param aggregationPushDownEnabled true to merge the buckets in the underlying database when the query merges on
+     *                                   both axes and the collection supports it
+     */
+    public TimeSeriesAggregationPipeline(List<TimeSeriesCollection> collections, int responseMaxIntervals, int idealResponseIntervals, boolean ttlEnabled,
+                                         boolean aggregationPushDownEnabled) {
         this.ttlEnabled = ttlEnabled;
+        this.aggregationPushDownEnabled = aggregationPushDownEnabled;
         if (responseMaxIntervals <= 0) {
             throw new IllegalArgumentException("responseMaxIntervals must be greater than 0");
         }
@@ -119,24 +131,63 @@ public class TimeSeriesAggregationPipeline {
      * response, and not by the cardinality of the attributes of the source buckets.
      */
     private Map<BucketAttributes, Map<Long, BucketBuilder>> collectByMerging(TimeSeriesAggregationQuery query, TimeSeriesProcessedParams finalParams, TimeSeriesCollection collection) {
+        // The collected attribute values aren't part of the partial buckets merged by the database
+        if (aggregationPushDownEnabled && CollectionUtils.isEmpty(query.getCollectAttributeKeys())) {
+            Map<BucketAttributes, Map<Long, BucketBuilder>> resultBuilder = collectByMergingInDatabase(query, finalParams, collection);
+            if (resultBuilder != null) {
+                return resultBuilder;
+            }
+        }
         Map<BucketAttributes, Map<Long, BucketBuilder>> resultBuilder = new HashMap<>();
         LongAdder bucketCount = new LongAdder();
         long t1 = System.currentTimeMillis();
         try (Stream<Bucket> stream = collection.queryTimeSeries(finalParams)) {
-            stream.forEach(bucket -> {
-                bucketCount.increment();
-                BucketAttributes groupAttributes = getGroupAttributes(bucket, finalParams.getGroupDimensions());
-                long timeSliceIndex = calculateBucketBeginAnchor(bucket.getBegin(), finalParams);
-
-                Map<Long, BucketBuilder> resultSeriesBuilder = resultBuilder.computeIfAbsent(groupAttributes, a -> new TreeMap<>());
-                resultSeriesBuilder.computeIfAbsent(timeSliceIndex, i -> newGroupBucketBuilder(query, finalParams, groupAttributes, i))
-                    .merge(bucket);
-            });
+            stream.forEach(bucket -> mergeIntoResult(resultBuilder, bucket, query, finalParams, bucketCount));
         }
         logAggregationDuration("merge aggregation", t1, bucketCount);
         return resultBuilder;
     }
 
+    /**
+     * Lets the database pre-merge the persisted source buckets per group and time slice, so that only the partial
+     * buckets of the response are transferred. They are then merged with the buckets not yet flushed by the ingestion
+     * pipeline, like the source buckets would be.
+     *
+     * @return the result builders or null if the collection doesn't support the aggregation or if it failed
+     */
+    private Map<BucketAttributes, Map<Long, BucketBuilder>> collectByMergingInDatabase(TimeSeriesAggregationQuery query, TimeSeriesProcessedParams finalParams, TimeSeriesCollection collection) {
+        long t1 = System.currentTimeMillis();
+        Optional<List<Bucket>> partialBuckets;
+        try {
+            partialBuckets = collection.mergeTimeSeries(finalParams);
+        } catch (RuntimeException e) {
+            logger.warn("The merge of the buckets of the collection {} failed in the database. Merging the source buckets instead.", collection.getName(), e);
+            return null;
+        }
+        if (partialBuckets.isEmpty()) {
+            return null;
+        }
+        Map<BucketAttributes, Map<Long, BucketBuilder>> resultBuilder = new HashMap<>();
+        LongAdder bucketCount = new LongAdder();
+        partialBuckets.get().forEach(bucket -> mergeIntoResult(resultBuilder, bucket, query, finalParams, bucketCount));
+        try (Stream<Bucket> stream = collection.queryUnflushedTimeSeries(finalParams)) {
+            stream.forEach(bucket -> mergeIntoResult(resultBuilder, bucket, query, finalParams, bucketCount));
+        }
+        logAggregationDuration("database merge aggregation", t1, bucketCount);
+        return resultBuilder;
+    }
+
+    private void mergeIntoResult(Map<BucketAttributes, Map<Long, BucketBuilder>> resultBuilder, Bucket bucket, TimeSeriesAggregationQuery query,
+                                 TimeSeriesProcessedParams finalParams, LongAdder bucketCount) {
+        bucketCount.increment();
+        BucketAttributes groupAttributes = getGroupAttributes(bucket, finalParams.getGroupDimensions());
+        long timeSliceIndex = calculateBucketBeginAnchor(bucket.getBegin(), finalParams);
+
+        Map<Long, BucketBuilder> resultSeriesBuilder = resultBuilder.computeIfAbsent(groupAttributes, a -> new TreeMap<>());
+        resultSeriesBuilder.computeIfAbsent(timeSliceIndex, i -> newGroupBucketBuilder(query, finalParams, groupAttributes, i))
+            .merge(bucket);
+    }
+
     /**
      * Collects the source buckets when at least one of the axes reduces its inputs to a scalar. The time-window
      * aggregation has then to be applied per series, before the group-by aggregation, which requires the series of
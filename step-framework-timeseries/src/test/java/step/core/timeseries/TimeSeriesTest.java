@@ -7,9 +7,13 @@ import org.junit.experimental.categories.Category;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import step.core.collections.Collection;
+import step.core.collections.Filter;
 import step.core.collections.Filters;
+import step.core.collections.GroupAggregationQuery;
+import step.core.collections.GroupAggregationResult;
 import step.core.collections.IndexField;
 import step.core.collections.Order;
+import step.core.collections.SearchOrder;
 import step.core.collections.inmemory.InMemoryCollection;
 import step.core.collections.mongodb.MongoDBCollectionFactory;
 import step.core.ql.OQLFilterBuilder;
@@ -17,8 +21,10 @@ import step.core.timeseries.aggregation.TimeSeriesAggregationPipeline;
 import step.core.timeseries.aggregation.TimeSeriesAggregationQuery;
 import step.core.timeseries.aggregation.TimeSeriesAggregationQueryBuilder;
 import step.core.timeseries.aggregation.TimeSeriesAggregationResponse;
+import step.core.timeseries.bucket.Aggregation;
 import step.core.timeseries.bucket.Bucket;
 import step.core.timeseries.bucket.BucketAttributes;
+import step.core.timeseries.bucket.BucketBuilder;
 import step.core.timeseries.ingestion.TimeSeriesIngestionPipeline;
 import step.core.timeseries.query.TimeSeriesQuery;
 import step.core.timeseries.query.TimeSeriesQueryBuilder;
@@ -28,6 +34,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 
@@ -334,6 +341,65 @@ public class TimeSeriesTest extends TimeSeriesBaseTest {
         ingestionPipelineParallel(bucketCollection);
     }
 
+    @Test
+    @Category(PerformanceTest.class)
+    public void rawBucketDecodingMongoDB() throws Exception {
+        Properties properties = new Properties();
+        properties.put("host", "central-mongodb.stepcloud-test.ch");
+        properties.put("database", "test");
+        properties.put("username", "tester");
+        properties.put("password", "5dB(rs+4YRJe");
+        MongoDBCollectionFactory factory = new MongoDBCollectionFactory(properties);
+        properties.put("rawDecoding", "false");
+        MongoDBCollectionFactory jacksonFactory = new MongoDBCollectionFactory(properties);
+        // The decoder of Bucket is built automatically
+        try {
+            Collection<Bucket> bucketCollection = factory.getCollection("rawSeries", Bucket.class);
+            Collection<Bucket> jacksonBucketCollection = jacksonFactory.getCollection("rawSeries", Bucket.class);
+            bucketCollection.drop();
+            int total = 50000;
+            List<Bucket> buckets = new ArrayList<>();
+            for (int i = 0; i < total; i++) {
+                buckets.add(BucketBuilder.create(i).withAttributes(new BucketAttributes(Map.of("name", "name" + (i % 10), "eId", "execution")))
+                    .ingest(i).ingest(2L * i).ingest(3L * i).build());
+            }
+            bucketCollection.save(buckets);
+
+            Filter filter = Filters.lt("begin", 100);
+            List<Bucket> actual = bucketCollection.find(filter, new SearchOrder("begin", 1), null, null, 0).collect(Collectors.toList());
+            List<Bucket> expected = jacksonBucketCollection.find(filter, new SearchOrder("begin", 1), null, null, 0).collect(Collectors.toList());
+            assertEquals(100, actual.size());
+            for (int i = 0; i < actual.size(); i++) {
+                Bucket actualBucket = actual.get(i);
+                Bucket expectedBucket = expected.get(i);
+                assertEquals(expectedBucket.getId(), actualBucket.getId());
+                assertEquals(expectedBucket.getBegin(), actualBucket.getBegin());
+                assertEquals(expectedBucket.getEnd(), actualBucket.getEnd());
+                assertEquals(expectedBucket.getAttributes(), actualBucket.getAttributes());
+                assertEquals(expectedBucket.getCount(), actualBucket.getCount());
+                assertEquals(expectedBucket.getSum(), actualBucket.getSum());
+                assertEquals(expectedBucket.getMin(), actualBucket.getMin());
+                assertEquals(expectedBucket.getMax(), actualBucket.getMax());
+                assertEquals(expectedBucket.getPclPrecision(), actualBucket.getPclPrecision());
+                assertEquals(expectedBucket.getDistribution(), actualBucket.getDistribution());
+            }
+
+            for (Collection<Bucket> collection : List.of(jacksonBucketCollection, bucketCollection)) {
+                for (int loop = 1; loop <= 3; loop++) {
+                    long start = System.nanoTime();
+                    assertEquals(total, collection.findLazy(Filters.empty(), null, null, null, 0).count());
+                    long duration = System.nanoTime() - start;
+                    logger.info("{} decoding, loop {}: {} buckets/s", collection == bucketCollection ? "Raw" : "Jackson", loop,
+                        total * 1_000_000_000L / duration);
+                }
+            }
+        } finally {
+            factory.getCollection("rawSeries", Bucket.class).drop();
+            factory.close();
+            jacksonFactory.close();
+        }
+    }
+
     @Test
     public void ingestionPipelineResolution() {
         testResolutionFor10Points(1, 10);
@@ -659,4 +725,108 @@ public class TimeSeriesTest extends TimeSeriesBaseTest {
         timeSeries.getCollection(30);
     }
 
+    @Test
+    public void aggregationPushDown() {
+        LongAdder aggregations = new LongAdder();
+        // Collection merging the buckets itself like a database would do
+        InMemoryCollection<Bucket> bucketCollection = new InMemoryCollection<>() {
+            @Override
+            public Optional<List<GroupAggregationResult>> aggregate(GroupAggregationQuery query) {
+                aggregations.increment();
+                Map<List<Object>, GroupAggregationResult> results = new HashMap<>();
+                find(query.getFilter(), null, null, null, 0).forEach(bucket -> {
+                    Map<String, Object> groupValues = new HashMap<>();
+                    query.getGroupFields().forEach(field -> {
+                        String key = field.substring(TimeSeriesConstants.ATTRIBUTES_PREFIX.length());
+                        if (bucket.getAttributes().containsKey(key)) {
+                            groupValues.put(field, bucket.getAttributes().get(key));
+                        }
+                    });
+                    long timeSlice = query.getTimeSliceSize() > 0 ?
+                        bucket.getBegin() - (bucket.getBegin() - query.getTimeOrigin()) % query.getTimeSliceSize() : query.getTimeOrigin();
+                    GroupAggregationResult result = results.computeIfAbsent(List.of(groupValues, timeSlice), k -> new GroupAggregationResult(groupValues, timeSlice)
+                        .setSum("count", 0L).setSum("sum", 0L).setMin("min", Long.MAX_VALUE).setMax("max", Long.MIN_VALUE)
+                        .setMapSum("distribution", new HashMap<>()));
+                    result.setSum("count", result.getSum("count").longValue() + bucket.getCount());
+                    result.setSum("sum", result.getSum("sum").longValue() + bucket.getSum());
+                    result.setMin("min", Math.min(result.getMin("min").longValue(), bucket.getMin()));
+                    result.setMax("max", Math.max(result.getMax("max").longValue(), bucket.getMax()));
+                    bucket.getDistribution().forEach((key, value) -> result.getMapSum("distribution").merge(key.toString(), value, Long::sum));
+                });
+                return Optional.of(new ArrayList<>(results.values()));
+            }
+        };
+        TimeSeriesCollection collection = new TimeSeriesCollection(bucketCollection, 10);
+        // Persisted buckets
+        for (int i = 0; i < 1000; i++) {
+            collection.save(BucketBuilder.create(i - i % 10).withAttributes(new BucketAttributes(Map.of("name", "name" + (i % 3))))
+                .ingest(i).build());
+        }
+        // Buckets of the ingestion pipeline not yet flushed
+        for (int i = 1000; i < 1100; i++) {
+            collection.getIngestionPipeline().ingestPoint(Map.of("name", "name" + (i % 3)), i, i);
+        }
+
+        TimeSeriesAggregationQuery query = new TimeSeriesAggregationQueryBuilder()
+            .range(0, 1100)
+            .split(7)
+            .groupBy(Set.of("name"), Aggregation.MERGE)
+            .build();
+        TimeSeriesAggregationPipeline pushDownPipeline = new TimeSeriesAggregationPipeline(List.of(collection), 4000, 100, false, true);
+        TimeSeriesAggregationPipeline pipeline = new TimeSeriesAggregationPipeline(List.of(collection), 4000, 100, false, false);
+        Map<BucketAttributes, Map<Long, Bucket>> expected = pipeline.collect(query).getSeries();
+        assertEquals(0, aggregations.longValue());
+        Map<BucketAttributes, Map<Long, Bucket>> actual = pushDownPipeline.collect(query).getSeries();
+        assertEquals(1, aggregations.longValue());
+        assertSameSeries(expected, actual);
+        assertEquals(1100, actual.values().stream().flatMap(series -> series.values().stream()).mapToLong(Bucket::getCount).sum());
+
+        // Single time bucket
+        TimeSeriesAggregationQuery shrinkQuery = new TimeSeriesAggregationQueryBuilder().range(0, 1100).split(1).build();
+        assertSameSeries(pipeline.collect(shrinkQuery).getSeries(), pushDownPipeline.collect(shrinkQuery).getSeries());
+
+        // The attribute collection isn't pushed down
+        TimeSeriesAggregationQuery collectQuery = new TimeSeriesAggregationQueryBuilder().range(0, 1100)
+            .withAttributeCollection(Set.of("name"), 10).build();
+        long aggregationCount = aggregations.longValue();
+        pushDownPipeline.collect(collectQuery);
+        assertEquals(aggregationCount, aggregations.longValue());
+    }
+
+    @Test
+    public void aggregationPushDownFallback() {
+        InMemoryCollection<Bucket> bucketCollection = new InMemoryCollection<>() {
+            @Override
+            public Optional<List<GroupAggregationResult>> aggregate(GroupAggregationQuery query) {
+                throw new RuntimeException("Unsupported aggregation");
+            }
+        };
+        TimeSeriesCollection collection = new TimeSeriesCollection(bucketCollection, 10);
+        for (int i = 0; i < 100; i++) {
+            collection.save(BucketBuilder.create(i - i % 10).ingest(i).build());
+        }
+        TimeSeriesAggregationQuery query = new TimeSeriesAggregationQueryBuilder().range(0, 100).split(1).build();
+        TimeSeriesAggregationPipeline pushDownPipeline = new TimeSeriesAggregationPipeline(List.of(collection), 4000, 100, false, true);
+        Bucket bucket = pushDownPipeline.collect(query).getFirstSeries().values().iterator().next();
+        assertEquals(100, bucket.getCount());
+        assertEquals(4950, bucket.getSum());
+    }
+
+    private static void assertSameSeries(Map<BucketAttributes, Map<Long, Bucket>> expected, Map<BucketAttributes, Map<Long, Bucket>> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((attributes, expectedSeries) -> {
+            Map<Long, Bucket> actualSeries = actual.get(attributes);
+            assertEquals(expectedSeries.keySet(), actualSeries.keySet());
+            expectedSeries.forEach((begin, expectedBucket) -> {
+                Bucket actualBucket = actualSeries.get(begin);
+                assertEquals(expectedBucket.getCount(), actualBucket.getCount());
+                assertEquals(expectedBucket.getSum(), actualBucket.getSum());
+                assertEquals(expectedBucket.getMin(), actualBucket.getMin());
+                assertEquals(expectedBucket.getMax(), actualBucket.getMax());
+                assertEquals(expectedBucket.getEnd(), actualBucket.getEnd());
+                assertEquals(expectedBucket.getDistribution(), actualBucket.getDistribution());
+            });
+        });
+    }
+
 }